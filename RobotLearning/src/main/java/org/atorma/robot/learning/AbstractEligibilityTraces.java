@@ -4,12 +4,36 @@ import java.util.*;
 
 import org.atorma.robot.mdp.DiscretizedStateAction;
 
+/**
+ * Sparse eligibility traces where decaying all traces takes constant time.
+ * <p>
+ * The traces are stored in parallel primitive arrays of slots, and the trace
+ * of a slot is its stored value multiplied by one global scale factor. Each update
+ * decays all traces by multiplying the scale by <tt>discountFactor*traceDecay</tt>.
+ * Traces that have decayed below the removal threshold read as zero and are
+ * pruned lazily when the slots fill up or the scale gets too small,
+ * which also renormalizes the stored values.
+ */
 public abstract class AbstractEligibilityTraces implements EligibilityTraces {
 
+	private static final int INITIAL_CAPACITY = 16; // must be a power of two
+	private static final double MIN_SCALE = 1E-100; // renormalize well before stored values can overflow
+
 	protected final double discountFactor;
 	protected final double traceDecay;
 	protected final double thresholdForRemoval;
-	protected Map<DiscretizedStateAction, Double> traces = new HashMap<>();
+
+	// Trace of slot i is values[i]*scale
+	private int[] stateIds;
+	private int[] actionIds;
+	private double[] values;
+	private int numSlots;
+	private double scale = 1;
+
+	// Open addressing table from packed (state id, action id) keys to slot + 1, 0 meaning empty
+	private long[] slotKeys;
+	private int[] slotIndices;
+	private int slotMask;
 
 	public AbstractEligibilityTraces(double discountFactor, double traceDecay, double thresholdForRemoval) {
 		if (!(discountFactor >= 0 && discountFactor <= 1)) {
@@ -18,10 +42,41 @@ public abstract class AbstractEligibilityTraces implements EligibilityTraces {
 		if (!(traceDecay >= 0 && traceDecay <= 1)) {
 			throw new IllegalArgumentException("Trace decay parameter must be within [0,1]");
 		}
-		
+
 		this.discountFactor = discountFactor;
 		this.traceDecay = traceDecay;
 		this.thresholdForRemoval = thresholdForRemoval;
+
+		allocate(INITIAL_CAPACITY);
+	}
+
+	/**
+	 * Returns the new trace of the updated (state id, action id) given its
+	 * trace after this update's decay. The decayed trace of the updated pair
+	 * is not removed even if it falls below the threshold.
+	 */
+	protected abstract double getUpdatedTrace(double decayedTrace);
+
+	@Override
+	public void update(DiscretizedStateAction stateIdActionId) {
+		update(stateIdActionId.getStateId(), stateIdActionId.getActionId());
+	}
+
+	@Override
+	public void update(int stateId, int actionId) {
+		double decay = traceDecay * discountFactor;
+		double trace = getTraceOfKey(PrimitiveHashQTable.getKey(stateId, actionId));
+		if (decay == 0) {
+			clear();
+		} else {
+			scale *= decay;
+			if (scale < MIN_SCALE) {
+				prune();
+			}
+		}
+
+		int slot = getOrAddSlot(stateId, actionId);
+		values[slot] = getUpdatedTrace(decay * trace) / scale;
 	}
 
 	@Override
@@ -39,20 +94,168 @@ public abstract class AbstractEligibilityTraces implements EligibilityTraces {
 		return thresholdForRemoval;
 	}
 
+	/**
+	 * Returns a new set of the (state id, action id) pairs that have a non-zero trace.
+	 * Prefer iterating over the slots, which does not allocate.
+	 */
 	@Override
 	public Set<DiscretizedStateAction> getNonZeroStateActions() {
-		return traces.keySet();
+		Set<DiscretizedStateAction> stateActions = new LinkedHashSet<>();
+		for (int slot = 0; slot < numSlots; slot++) {
+			if (getTrace(slot) != 0) {
+				stateActions.add(new DiscretizedStateAction(stateIds[slot], actionIds[slot]));
+			}
+		}
+		return stateActions;
 	}
 
 	@Override
 	public double getTrace(DiscretizedStateAction stateIdActionId) {
-		Double trace = traces.get(stateIdActionId);
-		return trace != null ? trace : 0 ;
+		return getTraceOfKey(PrimitiveHashQTable.getKey(stateIdActionId.getStateId(), stateIdActionId.getActionId()));
+	}
+
+	@Override
+	public int getNumberOfSlots() {
+		return numSlots;
+	}
+
+	@Override
+	public int getStateId(int slot) {
+		return stateIds[slot];
+	}
+
+	@Override
+	public int getActionId(int slot) {
+		return actionIds[slot];
+	}
+
+	@Override
+	public double getTrace(int slot) {
+		double trace = values[slot] * scale;
+		return trace < thresholdForRemoval || trace <= 0.0 ? 0 : trace;
+	}
+
+	/**
+	 * Adds <tt>stepSize*trace</tt> to the Q-value of each (state id, action id) with
+	 * a non-zero trace. This is the Q(lambda) update of {@link QLearning} fused into
+	 * one loop over the slot arrays and the array of Q-values.
+	 */
+	void addScaledTraces(ArrayQTable qTable, double stepSize) {
+		int numActions = qTable.getNumberOfActions();
+		double minValue = thresholdForRemoval / scale; // traces below threshold read as zero
+		double valueStep = stepSize * scale;
+
+		if (qTable.isMaxValueCached()) {
+			for (int slot = 0; slot < numSlots; slot++) {
+				double value = values[slot];
+				if (value >= minValue && value > 0.0) {
+					double q = qTable.getValue(stateIds[slot], actionIds[slot]);
+					qTable.setValue(stateIds[slot], actionIds[slot], q + valueStep*value);
+				}
+			}
+			return;
+		}
+
+		double[] q = qTable.getValueArray();
+		for (int slot = 0; slot < numSlots; slot++) {
+			double value = values[slot];
+			if (value >= minValue && value > 0.0) {
+				int actionId = actionIds[slot];
+				if (actionId < 0 || actionId >= numActions) {
+					throw new ArrayIndexOutOfBoundsException(actionId);
+				}
+				q[stateIds[slot]*numActions + actionId] += valueStep*value;
+			}
+		}
 	}
 
 	@Override
 	public void clear() {
-		traces.clear();
+		numSlots = 0;
+		scale = 1;
+		Arrays.fill(slotIndices, 0);
+	}
+
+
+	private double getTraceOfKey(long key) {
+		int i = findKeyIndex(key);
+		return slotIndices[i] != 0 ? getTrace(slotIndices[i] - 1) : 0;
+	}
+
+	private int getOrAddSlot(int stateId, int actionId) {
+		long key = PrimitiveHashQTable.getKey(stateId, actionId);
+		int i = findKeyIndex(key);
+		if (slotIndices[i] != 0) {
+			return slotIndices[i] - 1;
+		}
+
+		if (numSlots == values.length) {
+			prune();
+			if (numSlots > values.length / 2) {
+				allocate(values.length * 2);
+			}
+			i = findKeyIndex(key);
+		}
+
+		int slot = numSlots++;
+		stateIds[slot] = stateId;
+		actionIds[slot] = actionId;
+		values[slot] = 0;
+		slotKeys[i] = key;
+		slotIndices[i] = slot + 1;
+		return slot;
+	}
+
+	/**
+	 * Drops the slots whose trace has decayed to zero, renormalizes
+	 * the remaining values to scale 1 and rebuilds the key table.
+	 */
+	private void prune() {
+		int numRemaining = 0;
+		for (int slot = 0; slot < numSlots; slot++) {
+			double trace = getTrace(slot);
+			if (trace != 0) {
+				stateIds[numRemaining] = stateIds[slot];
+				actionIds[numRemaining] = actionIds[slot];
+				values[numRemaining] = trace;
+				numRemaining++;
+			}
+		}
+		numSlots = numRemaining;
+		scale = 1;
+		rebuildKeyTable();
+	}
+
+	private void allocate(int capacity) {
+		stateIds = Arrays.copyOf(stateIds != null ? stateIds : new int[0], capacity);
+		actionIds = Arrays.copyOf(actionIds != null ? actionIds : new int[0], capacity);
+		values = Arrays.copyOf(values != null ? values : new double[0], capacity);
+		slotKeys = new long[2 * capacity];
+		slotIndices = new int[2 * capacity];
+		slotMask = 2 * capacity - 1;
+		rebuildKeyTable();
+	}
+
+	private void rebuildKeyTable() {
+		Arrays.fill(slotIndices, 0);
+		for (int slot = 0; slot < numSlots; slot++) {
+			long key = PrimitiveHashQTable.getKey(stateIds[slot], actionIds[slot]);
+			int i = findKeyIndex(key);
+			slotKeys[i] = key;
+			slotIndices[i] = slot + 1;
+		}
+	}
+
+	/**
+	 * Returns the index of the key in the key table or, if the key is not
+	 * in the table, the empty index where it would be inserted (linear probing).
+	 */
+	private int findKeyIndex(long key) {
+		int i = PrimitiveHashQTable.hash(key) & slotMask;
+		while (slotIndices[i] != 0 && slotKeys[i] != key) {
+			i = (i + 1) & slotMask;
+		}
+		return i;
 	}
 
 }
\ No newline at end of file
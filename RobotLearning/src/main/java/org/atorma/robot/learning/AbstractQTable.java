@@ -11,35 +11,78 @@ public abstract class AbstractQTable implements QTable {
 	
 	protected abstract Set<Integer> getActionIds();
 	
+	/**
+	 * Sets the random number generator that breaks ties between best actions,
+	 * e.g. a seeded one for reproducible action choices.
+	 */
+	public void setRandom(Random random) {
+		this.random = random;
+	}
+	
+	/**
+	 * Draws from the tie-breaking random number generator a number between
+	 * 0 (inclusive) and <tt>bound</tt> (exclusive).
+	 */
+	protected int nextRandomInt(int bound) {
+		return random.nextInt(bound);
+	}
+	
+	@Override
+	public double getValue(DiscretizedStateAction stateIdActionId) {
+		return getValue(stateIdActionId.getStateId(), stateIdActionId.getActionId());
+	}
+
+	@Override
+	public void setValue(DiscretizedStateAction stateIdActionId, double qValue) {
+		setValue(stateIdActionId.getStateId(), stateIdActionId.getActionId(), qValue);
+	}
+	
 	@Override
 	public DiscretizedStateAction getBestActionInState(int stateId) {
-		Double bestActionValue = null;
-		List<Integer> bestActions = new ArrayList<>();
-		
-		for (int actionId : getActionIds()) {
-			double q = getValue(new DiscretizedStateAction(stateId, actionId));
-			if (bestActionValue == null || q > bestActionValue) {
-				bestActionValue = q;
-				bestActions.clear();
-				bestActions.add(actionId);
-			} else if (q == bestActionValue) {
-				bestActions.add(actionId);
-			}
-		}
-		
-		Integer bestActionId = bestActions.get(random.nextInt(bestActions.size()));
-		
-		return new DiscretizedStateAction(stateId, bestActionId);
+		return new DiscretizedStateAction(stateId, getBestActionId(stateId));
 	}
 	
 	@Override
 	public double getMaxValueInState(int stateId) {
-		return getValue(getBestActionInState(stateId));
+		double max = Double.NEGATIVE_INFINITY;
+		for (int actionId : getActionIds()) {
+			double q = getValue(stateId, actionId);
+			if (q > max) {
+				max = q;
+			}
+		}
+		return max;
 	}
 
 	@Override
 	public Integer getActionId(int stateId) {
-		return getBestActionInState(stateId).getActionId();
+		return getBestActionId(stateId);
+	}
+	
+	/**
+	 * Returns a best action, ties broken randomly. The first pass finds the number of 
+	 * tied best actions and the second pass picks the randomly chosen one of them.
+	 */
+	private int getBestActionId(int stateId) {
+		double bestActionValue = Double.NEGATIVE_INFINITY;
+		int numBestActions = 0;
+		for (int actionId : getActionIds()) {
+			double q = getValue(stateId, actionId);
+			if (numBestActions == 0 || q > bestActionValue) {
+				bestActionValue = q;
+				numBestActions = 1;
+			} else if (q == bestActionValue) {
+				numBestActions++;
+			}
+		}
+		
+		int k = random.nextInt(numBestActions);
+		for (int actionId : getActionIds()) {
+			if (getValue(stateId, actionId) == bestActionValue && k-- == 0) {
+				return actionId;
+			}
+		}
+		throw new IllegalStateException("Action values changed during best action search");
 	}
 	
 }
@@ -5,65 +5,244 @@ import java.util.*;
 import org.atorma.robot.mdp.DiscretizedStateAction;
 
 /**
- * A Q-table that stores the values in a 2D array. State and action ids
- * are required to be integers in the range [0..numStates), [0..numActions).
+ * A Q-table that stores the values in one contiguous array, one row of
+ * actions per state. State and action ids are required to be integers
+ * in the range [0..numStates), [0..numActions).
+ * <p>
+ * Optionally the table caches the maximum value and the best actions of
+ * each state. The cache is updated in {@link #setValue(int, int, double)},
+ * so that {@link #getMaxValueInState(int)} and {@link #getActionId(int)} run in
+ * constant time without allocation. Ties are broken randomly as in
+ * {@link AbstractQTable#getBestActionInState(int)}.
  */
 public class ArrayQTable extends AbstractQTable implements QTable {
-	
+
 	public static final double DEFAULT_Q_VALUE = 0;
-	
+
 	private final double defaultQValue;
 	private final int numStates;
 	private final int numActions;
-	private double[][] qTable;
-	
+	private double[] qTable;
+
 	private final Set<Integer> actionIds; // Action ids available in all states
 
+	// Cache of max values and best actions, the latter as bit masks of action ids
+	private final boolean isMaxValueCached;
+	private double[] maxValues;
+	private long[] bestActions;
+	private int bestActionWordsPerState;
+
 	public ArrayQTable(int numStates, int numActions) {
 		this(numStates, numActions, DEFAULT_Q_VALUE);
 	}
-	
+
 	public ArrayQTable(int numStates, int numActions, double defaultQValue) {
+		this(numStates, numActions, defaultQValue, false);
+	}
+
+	/**
+	 * @param isMaxValueCached
+	 * 	whether to maintain the max value and the best actions of each state
+	 *  on every update
+	 */
+	public ArrayQTable(int numStates, int numActions, double defaultQValue, boolean isMaxValueCached) {
 		if (numStates <= 0 || numActions <= 0) {
 			throw new IllegalArgumentException();
 		}
+		if ((long) numStates * numActions > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("Number of state-action pairs overflow!");
+		}
 		this.numStates = numStates;
 		this.numActions = numActions;
 		this.defaultQValue = defaultQValue;
-		
+		this.isMaxValueCached = isMaxValueCached;
+
 		LinkedHashSet<Integer> ids = new LinkedHashSet<>(numActions);
 		for (int actionId = 0; actionId < numActions; actionId++) {
 			ids.add(actionId);
 		}
 		actionIds = Collections.unmodifiableSet(ids);
-		
+
 		initQTable();
 	}
 
 	private void initQTable() {
-		this.qTable = new double[numStates][numActions];
-		for (int i = 0; i < numStates; i++) {
-			for (int j = 0; j < numActions; j++) {
-				qTable[i][j] = defaultQValue;
+		this.qTable = new double[numStates * numActions];
+		Arrays.fill(qTable, defaultQValue);
+
+		if (isMaxValueCached) {
+			maxValues = new double[numStates];
+			Arrays.fill(maxValues, defaultQValue);
+			bestActionWordsPerState = (numActions + 63) / 64;
+			bestActions = new long[numStates * bestActionWordsPerState];
+			for (int stateId = 0; stateId < numStates; stateId++) {
+				for (int actionId = 0; actionId < numActions; actionId++) {
+					setBestAction(stateId, actionId);
+				}
 			}
 		}
 	}
-	
+
 	@Override
-	public double getValue(DiscretizedStateAction stateIdActionId) {
-		return qTable[stateIdActionId.getStateId()][stateIdActionId.getActionId()];
+	public double getValue(int stateId, int actionId) {
+		return qTable[getIndex(stateId, actionId)];
 	}
 
 	@Override
-	public void setValue(DiscretizedStateAction stateIdActionId, double qValue) {
-		qTable[stateIdActionId.getStateId()][stateIdActionId.getActionId()] = qValue;
+	public void setValue(int stateId, int actionId, double qValue) {
+		qTable[getIndex(stateId, actionId)] = qValue;
+
+		if (isMaxValueCached) {
+			updateMaxValueCache(stateId, actionId, qValue);
+		}
+	}
+
+	@Override
+	public double getMaxValueInState(int stateId) {
+		if (isMaxValueCached) {
+			return maxValues[stateId];
+		}
+
+		int rowStart = stateId*numActions;
+		double max = qTable[rowStart];
+		for (int i = rowStart + 1; i < rowStart + numActions; i++) {
+			if (qTable[i] > max) {
+				max = qTable[i];
+			}
+		}
+		return max;
+	}
+
+	@Override
+	public DiscretizedStateAction getBestActionInState(int stateId) {
+		if (isMaxValueCached) {
+			return new DiscretizedStateAction(stateId, getCachedBestActionId(stateId));
+		}
+		return super.getBestActionInState(stateId);
+	}
+
+	@Override
+	public Integer getActionId(int stateId) {
+		if (isMaxValueCached) {
+			return getCachedBestActionId(stateId);
+		}
+		return super.getActionId(stateId);
 	}
 
 	@Override
 	protected Set<Integer> getActionIds() {
 		return actionIds;
 	}
-	
 
-	
+	public int getNumberOfStates() {
+		return numStates;
+	}
+
+	public int getNumberOfActions() {
+		return numActions;
+	}
+
+	public boolean isMaxValueCached() {
+		return isMaxValueCached;
+	}
+
+	/**
+	 * The values indexed by <tt>stateId*numActions + actionId</tt>, for fused
+	 * updates that write the array directly. Writing the array directly bypasses the
+	 * max value cache, so it must not be done when the max value is cached.
+	 */
+	double[] getValueArray() {
+		return qTable;
+	}
+
+
+	private int getIndex(int stateId, int actionId) {
+		if (actionId < 0 || actionId >= numActions) {
+			throw new ArrayIndexOutOfBoundsException(actionId);
+		}
+		return stateId*numActions + actionId;
+	}
+
+	private void updateMaxValueCache(int stateId, int actionId, double qValue) {
+		double max = maxValues[stateId];
+		if (qValue > max) {
+			maxValues[stateId] = qValue;
+			clearBestActions(stateId);
+			setBestAction(stateId, actionId);
+		} else if (qValue == max) {
+			setBestAction(stateId, actionId);
+		} else if (isBestAction(stateId, actionId)) {
+			unsetBestAction(stateId, actionId);
+			if (countBestActions(stateId) == 0) {
+				rescanRow(stateId);
+			}
+		}
+	}
+
+	private void rescanRow(int stateId) {
+		int rowStart = stateId*numActions;
+		double max = Double.NEGATIVE_INFINITY;
+		for (int actionId = 0; actionId < numActions; actionId++) {
+			double q = qTable[rowStart + actionId];
+			if (q > max) {
+				max = q;
+				clearBestActions(stateId);
+				setBestAction(stateId, actionId);
+			} else if (q == max) {
+				setBestAction(stateId, actionId);
+			}
+		}
+		maxValues[stateId] = max;
+	}
+
+	/**
+	 * Picks uniformly one of the tied best actions. Consumes the random number
+	 * generator and orders the ties by action id exactly as the uncached table does.
+	 */
+	private int getCachedBestActionId(int stateId) {
+		int k = nextRandomInt(countBestActions(stateId));
+		int wordStart = stateId*bestActionWordsPerState;
+		for (int w = 0; w < bestActionWordsPerState; w++) {
+			long word = bestActions[wordStart + w];
+			int bits = Long.bitCount(word);
+			if (k < bits) {
+				for (int i = 0; i < k; i++) {
+					word &= word - 1; // clear lowest set bit
+				}
+				return w*64 + Long.numberOfTrailingZeros(word);
+			}
+			k -= bits;
+		}
+		throw new IllegalStateException("No best action cached for state " + stateId);
+	}
+
+	private int countBestActions(int stateId) {
+		int wordStart = stateId*bestActionWordsPerState;
+		int count = 0;
+		for (int w = 0; w < bestActionWordsPerState; w++) {
+			count += Long.bitCount(bestActions[wordStart + w]);
+		}
+		return count;
+	}
+
+	private boolean isBestAction(int stateId, int actionId) {
+		long word = bestActions[stateId*bestActionWordsPerState + (actionId >>> 6)];
+		return (word & (1L << actionId)) != 0;
+	}
+
+	private void setBestAction(int stateId, int actionId) {
+		bestActions[stateId*bestActionWordsPerState + (actionId >>> 6)] |= 1L << actionId;
+	}
+
+	private void unsetBestAction(int stateId, int actionId) {
+		bestActions[stateId*bestActionWordsPerState + (actionId >>> 6)] &= ~(1L << actionId);
+	}
+
+	private void clearBestActions(int stateId) {
+		int wordStart = stateId*bestActionWordsPerState;
+		for (int w = 0; w < bestActionWordsPerState; w++) {
+			bestActions[wordStart + w] = 0;
+		}
+	}
+
 }
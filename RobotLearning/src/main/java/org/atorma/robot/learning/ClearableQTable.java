@@ -0,0 +1,12 @@
+package org.atorma.robot.learning;
+
+/**
+ * A {@link QTable} that can be emptied in place, e.g. to be reused for a new planning.
+ */
+public interface ClearableQTable extends QTable {
+
+	/**
+	 * Removes all Q-values, keeping the action ids.
+	 */
+	void clear();
+}
@@ -0,0 +1,228 @@
+package org.atorma.robot.learning;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.atorma.robot.mdp.DiscretizedStateAction;
+
+/**
+ * A thread-safe variant of {@link ArrayQTable}. The values are stored as
+ * <tt>double</tt> bits in an {@link AtomicLongArray}, so a planner thread can write
+ * values while another thread reads them or selects greedy actions without any locking.
+ * State and action ids are required to be integers in the range [0..numStates), [0..numActions).
+ * <p>
+ * Each read and write of a single value is atomic. Reads of a whole state are not,
+ * so with concurrent writers the max value and the best action of a state reflect
+ * each action value at some moment during the read. If several threads write
+ * the same (state id, action id) pair, the last write wins.
+ * <p>
+ * Like {@link ArrayQTable}, the table can cache the maximum value of each state. A write
+ * that raises the max updates the cache with a compare-and-set, and a write that lowers
+ * the value of a best action invalidates it, so the next read scans the state again.
+ * Each write also increments a per-state counter, which lets a reader that rescanned
+ * the state detect a write it may have missed and drop the value it cached. The best
+ * action is not cached; it is found by one scan of the state as without the cache.
+ */
+public class ConcurrentArrayQTable extends AbstractQTable implements QTable {
+
+	public static final double DEFAULT_Q_VALUE = 0;
+
+	private final int numStates;
+	private final int numActions;
+	private final AtomicLongArray qTable;
+
+	private final Set<Integer> actionIds; // Action ids available in all states
+
+	// Max value cache as double bits, INVALID when the state must be scanned again
+	private static final long INVALID = 0x7ff80000deadbeefL; // a NaN no arithmetic produces
+	private final boolean isMaxValueCached;
+	private AtomicLongArray maxValues;
+	private AtomicIntegerArray writeCounts;
+
+	public ConcurrentArrayQTable(int numStates, int numActions) {
+		this(numStates, numActions, DEFAULT_Q_VALUE);
+	}
+
+	public ConcurrentArrayQTable(int numStates, int numActions, double defaultQValue) {
+		this(numStates, numActions, defaultQValue, false);
+	}
+
+	/**
+	 * @param isMaxValueCached
+	 * 	whether to maintain the max value of each state on every update
+	 */
+	public ConcurrentArrayQTable(int numStates, int numActions, double defaultQValue, boolean isMaxValueCached) {
+		if (numStates <= 0 || numActions <= 0) {
+			throw new IllegalArgumentException();
+		}
+		if ((long) numStates * numActions > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("Number of state-action pairs overflow!");
+		}
+		this.numStates = numStates;
+		this.numActions = numActions;
+		this.isMaxValueCached = isMaxValueCached;
+
+		LinkedHashSet<Integer> ids = new LinkedHashSet<>(numActions);
+		for (int actionId = 0; actionId < numActions; actionId++) {
+			ids.add(actionId);
+		}
+		actionIds = Collections.unmodifiableSet(ids);
+
+		qTable = new AtomicLongArray(numStates * numActions);
+		long defaultBits = Double.doubleToRawLongBits(defaultQValue);
+		for (int i = 0; i < qTable.length(); i++) {
+			qTable.set(i, defaultBits);
+		}
+
+		if (isMaxValueCached) {
+			maxValues = new AtomicLongArray(numStates);
+			for (int stateId = 0; stateId < numStates; stateId++) {
+				maxValues.set(stateId, defaultBits);
+			}
+			writeCounts = new AtomicIntegerArray(numStates);
+		}
+	}
+
+	@Override
+	public double getValue(int stateId, int actionId) {
+		return Double.longBitsToDouble(qTable.get(getIndex(stateId, actionId)));
+	}
+
+	@Override
+	public void setValue(int stateId, int actionId, double qValue) {
+		long oldBits = qTable.getAndSet(getIndex(stateId, actionId), Double.doubleToRawLongBits(qValue));
+		if (isMaxValueCached) {
+			updateMaxValueCache(stateId, Double.longBitsToDouble(oldBits), qValue);
+		}
+	}
+
+	/**
+	 * Sets the value only if the current value is <tt>expectedQValue</tt>, as compared by
+	 * the <tt>double</tt> bits. Lets a thread detect that another thread has written the
+	 * value after it was read.
+	 * 
+	 * @return <tt>true</tt> if the value was set
+	 */
+	public boolean compareAndSetValue(int stateId, int actionId, double expectedQValue, double qValue) {
+		boolean isSet = qTable.compareAndSet(getIndex(stateId, actionId), Double.doubleToRawLongBits(expectedQValue), Double.doubleToRawLongBits(qValue));
+		if (isSet && isMaxValueCached) {
+			updateMaxValueCache(stateId, expectedQValue, qValue);
+		}
+		return isSet;
+	}
+
+	@Override
+	public double getMaxValueInState(int stateId) {
+		if (!isMaxValueCached) {
+			return scanMaxValue(stateId);
+		}
+
+		long cachedBits = maxValues.get(stateId);
+		if (cachedBits != INVALID) {
+			return Double.longBitsToDouble(cachedBits);
+		}
+		int writeCount = writeCounts.get(stateId);
+		double max = scanMaxValue(stateId);
+		long maxBits = Double.doubleToRawLongBits(max);
+		if (maxValues.compareAndSet(stateId, INVALID, maxBits) && writeCounts.get(stateId) != writeCount) {
+			maxValues.compareAndSet(stateId, maxBits, INVALID); // the scan may have missed a write
+		}
+		return max;
+	}
+
+	private double scanMaxValue(int stateId) {
+		int rowStart = getIndex(stateId, 0);
+		double max = Double.NEGATIVE_INFINITY;
+		for (int i = rowStart; i < rowStart + numActions; i++) {
+			double q = Double.longBitsToDouble(qTable.get(i));
+			if (q > max) {
+				max = q;
+			}
+		}
+		return max;
+	}
+
+	@Override
+	public DiscretizedStateAction getBestActionInState(int stateId) {
+		return new DiscretizedStateAction(stateId, getBestActionId(stateId));
+	}
+
+	@Override
+	public Integer getActionId(int stateId) {
+		return getBestActionId(stateId);
+	}
+
+	@Override
+	protected Set<Integer> getActionIds() {
+		return actionIds;
+	}
+
+	public int getNumberOfStates() {
+		return numStates;
+	}
+
+	public int getNumberOfActions() {
+		return numActions;
+	}
+
+
+	/**
+	 * Called after the value has been written. The write count is incremented before
+	 * the cache is read, so either the writer sees a max cached by a reader that missed
+	 * the write, or the reader sees the incremented count.
+	 */
+	private void updateMaxValueCache(int stateId, double oldQValue, double qValue) {
+		writeCounts.incrementAndGet(stateId);
+		while (true) {
+			long cachedBits = maxValues.get(stateId);
+			if (cachedBits == INVALID) {
+				return;
+			}
+			double max = Double.longBitsToDouble(cachedBits);
+			if (qValue > max) {
+				if (maxValues.compareAndSet(stateId, cachedBits, Double.doubleToRawLongBits(qValue))) {
+					return;
+				}
+			} else if (oldQValue >= max && qValue < oldQValue) {
+				// A best action dropped, or a concurrent raise of this value is yet to reach the cache
+				if (maxValues.compareAndSet(stateId, cachedBits, INVALID)) {
+					return;
+				}
+			} else {
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Reads each value of the state only once and breaks ties by reservoir sampling,
+	 * so unlike the search in {@link AbstractQTable} this cannot fail when another
+	 * thread changes the values during the search.
+	 */
+	private int getBestActionId(int stateId) {
+		int rowStart = getIndex(stateId, 0);
+		double max = Double.NEGATIVE_INFINITY;
+		int bestActionId = 0;
+		int numBestActions = 0;
+		for (int actionId = 0; actionId < numActions; actionId++) {
+			double q = Double.longBitsToDouble(qTable.get(rowStart + actionId));
+			if (q > max) {
+				max = q;
+				bestActionId = actionId;
+				numBestActions = 1;
+			} else if (q == max && nextRandomInt(++numBestActions) == 0) {
+				bestActionId = actionId;
+			}
+		}
+		return bestActionId;
+	}
+
+	private int getIndex(int stateId, int actionId) {
+		if (actionId < 0 || actionId >= numActions) {
+			throw new ArrayIndexOutOfBoundsException(actionId);
+		}
+		return stateId*numActions + actionId;
+	}
+
+}
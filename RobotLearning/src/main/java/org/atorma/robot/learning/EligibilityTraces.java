@@ -18,6 +18,26 @@ public interface EligibilityTraces {
 
 	void update(DiscretizedStateAction stateIdActionId);
 
+	/**
+	 * Same as {@link #update(DiscretizedStateAction)} but does not require
+	 * allocating a <tt>DiscretizedStateAction</tt>.
+	 */
+	void update(int stateId, int actionId);
+
+	/**
+	 * Returns the number of trace slots. Iterating over slots <tt>0..getNumberOfSlots()-1</tt>
+	 * with {@link #getStateId(int)}, {@link #getActionId(int)} and {@link #getTrace(int)}
+	 * visits all non-zero traces without allocation. Slots whose trace has decayed
+	 * below the removal threshold may remain until they are pruned and have trace 0.
+	 */
+	int getNumberOfSlots();
+
+	int getStateId(int slot);
+
+	int getActionId(int slot);
+
+	double getTrace(int slot);
+
 	void clear();
 
 }
\ No newline at end of file
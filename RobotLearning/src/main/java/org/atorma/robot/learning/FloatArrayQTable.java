@@ -0,0 +1,89 @@
+package org.atorma.robot.learning;
+
+import java.util.*;
+
+/**
+ * A Q-table like {@link ArrayQTable} that stores the values in single precision.
+ * It takes half the memory of {@link ArrayQTable}, so twice as many states fit
+ * in the caches, at the cost of rounding each stored value to a <tt>float</tt>
+ * (about 7 significant digits). State and action ids are required to be integers
+ * in the range [0..numStates), [0..numActions).
+ */
+public class FloatArrayQTable extends AbstractQTable implements QTable {
+
+	public static final double DEFAULT_Q_VALUE = 0;
+
+	private final int numStates;
+	private final int numActions;
+	private final float[] qTable;
+
+	private final Set<Integer> actionIds; // Action ids available in all states
+
+	public FloatArrayQTable(int numStates, int numActions) {
+		this(numStates, numActions, DEFAULT_Q_VALUE);
+	}
+
+	public FloatArrayQTable(int numStates, int numActions, double defaultQValue) {
+		if (numStates <= 0 || numActions <= 0) {
+			throw new IllegalArgumentException();
+		}
+		if ((long) numStates * numActions > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("Number of state-action pairs overflow!");
+		}
+		this.numStates = numStates;
+		this.numActions = numActions;
+
+		LinkedHashSet<Integer> ids = new LinkedHashSet<>(numActions);
+		for (int actionId = 0; actionId < numActions; actionId++) {
+			ids.add(actionId);
+		}
+		actionIds = Collections.unmodifiableSet(ids);
+
+		qTable = new float[numStates * numActions];
+		Arrays.fill(qTable, (float) defaultQValue);
+	}
+
+	@Override
+	public double getValue(int stateId, int actionId) {
+		return qTable[getIndex(stateId, actionId)];
+	}
+
+	@Override
+	public void setValue(int stateId, int actionId, double qValue) {
+		qTable[getIndex(stateId, actionId)] = (float) qValue;
+	}
+
+	@Override
+	public double getMaxValueInState(int stateId) {
+		int rowStart = getIndex(stateId, 0);
+		float max = qTable[rowStart];
+		for (int i = rowStart + 1; i < rowStart + numActions; i++) {
+			if (qTable[i] > max) {
+				max = qTable[i];
+			}
+		}
+		return max;
+	}
+
+	@Override
+	protected Set<Integer> getActionIds() {
+		return actionIds;
+	}
+
+	public int getNumberOfStates() {
+		return numStates;
+	}
+
+	public int getNumberOfActions() {
+		return numActions;
+	}
+
+
+	private int getIndex(int stateId, int actionId) {
+		if (actionId < 0 || actionId >= numActions) {
+			throw new ArrayIndexOutOfBoundsException(actionId);
+		}
+		return stateId*numActions + actionId;
+	}
+
+}
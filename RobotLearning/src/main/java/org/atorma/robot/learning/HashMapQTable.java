@@ -8,31 +8,35 @@ import org.atorma.robot.mdp.DiscretizedStateAction;
 /**
  * A Q-table that does not need to know state and actions ids beforehand
  * and they are not restricted to positive integers.
+ * <p>
+ * The values are kept in a {@link PrimitiveHashQTable} keyed by packed <tt>long</tt>s,
+ * so reading or overwriting a value does not allocate anything. Unlike that table,
+ * this one also keeps the set of state ids up to date as values are first set.
  */
-public class HashMapQTable extends AbstractQTable {	
+public class HashMapQTable extends AbstractQTable implements ClearableQTable {	
 	public static final double DEFAULT_Q_VALUE = 0;
 	
-	private Map<DiscretizedStateAction, Double> qTable = new HashMap<>();
-	private double defaultQValue = DEFAULT_Q_VALUE;
+	private PrimitiveHashQTable qTable;
 	private Set<Integer> stateIds = new HashSet<>();
 	private Set<Integer> actionIds = new HashSet<>();
 	
 	public HashMapQTable() {
+		this(DEFAULT_Q_VALUE);
 	}
 	
 	public HashMapQTable(double defaultQValue) {
-		this.defaultQValue = defaultQValue;
+		this.qTable = new PrimitiveHashQTable(defaultQValue);
 	}
 	
 	public HashMapQTable(double defaultQValue, int... actionIds) {
-		this.defaultQValue = defaultQValue;
+		this(defaultQValue);
 		for (int actionId : actionIds) {
 			addActionId(actionId);
 		}
 	}
 	
 	public HashMapQTable(double defaultQValue, DiscreteAction... actions) {
-		this.defaultQValue = defaultQValue;
+		this(defaultQValue);
 		for (DiscreteAction action : actions) {
 			addActionId(action.getId());
 		}
@@ -56,17 +60,28 @@ public class HashMapQTable extends AbstractQTable {
 		this.actionIds.add(actionId);
 	}
 	
+	/**
+	 * Removes all Q-values and state ids, keeping the action ids.
+	 */
 	@Override
-	public double getValue(DiscretizedStateAction stateIdActionId) {
-		Double qValue = qTable.get(stateIdActionId);
-		return qValue != null ? qValue : defaultQValue;
+	public void clear() {
+		qTable.clear();
+		stateIds.clear();
+	}
+	
+	@Override
+	public double getValue(int stateId, int actionId) {
+		return qTable.getValue(stateId, actionId);
 	}
 
 	@Override
-	public void setValue(DiscretizedStateAction stateIdActionId, double qValue) {
-		this.stateIds.add(stateIdActionId.getStateId());
-		this.actionIds.add(stateIdActionId.getActionId());
-		qTable.put(stateIdActionId, qValue);
+	public void setValue(int stateId, int actionId, double qValue) {
+		int sizeBefore = qTable.size();
+		qTable.setValue(stateId, actionId, qValue);
+		if (qTable.size() != sizeBefore) { // only a new state-action can add ids
+			this.stateIds.add(stateId);
+			this.actionIds.add(actionId);
+		}
 	}
 	
 }
@@ -0,0 +1,248 @@
+package org.atorma.robot.learning;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.*;
+
+/**
+ * A Q-table like {@link ArrayQTable} whose values live in a memory-mapped file, so
+ * that learned values survive restarts and a warm start only needs to map the file.
+ * State and action ids are required to be integers in the range [0..numStates), [0..numActions).
+ * <p>
+ * File layout, all numbers big-endian:
+ * <pre>
+ * offset  size  content
+ *      0     4  magic number 0x5154424C ("QTBL")
+ *      4     4  format version, currently 1
+ *      8     4  number of states
+ *     12     4  number of actions
+ *     16     8  default Q-value
+ *     24  8*n*m Q-values as doubles, value of (stateId, actionId) at 24 + 8*(stateId*numActions + actionId)
+ * </pre>
+ * Writes go to the mapped memory and reach the file when the operating system
+ * decides to write them back. Call {@link #checkpoint()} to force them to disk.
+ * {@link #close()} forces them to disk too, after which the table cannot be used.
+ * The mapping itself is released only when the table is garbage collected.
+ */
+public class MappedQTable extends AbstractQTable implements QTable, Closeable {
+
+	public static final int MAGIC = 0x5154424C;
+	public static final int VERSION = 1;
+	public static final int HEADER_SIZE = 24;
+
+	private final File file;
+	private final boolean isReadOnly;
+	private final int numStates;
+	private final int numActions;
+	private final double defaultQValue;
+	private final MappedByteBuffer buffer;
+	private final DoubleBuffer qTable;
+
+	private final Set<Integer> actionIds; // Action ids available in all states
+
+	private boolean isClosed = false;
+
+	/**
+	 * Opens the Q-table in the given file for reading and writing. If the file
+	 * does not exist or is empty, it is created with all values set to <tt>defaultQValue</tt>.
+	 * Otherwise the values learned earlier are used.
+	 *
+	 * @throws IllegalArgumentException
+	 * 	if an existing file has a different number of states or actions, or a different default Q-value
+	 * @throws IOException
+	 * 	if the file cannot be mapped or is not a Q-table file
+	 */
+	public static MappedQTable open(File file, int numStates, int numActions, double defaultQValue) throws IOException {
+		long fileSize = getFileSize(numStates, numActions);
+
+		try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+			boolean isNew = raf.length() == 0;
+			MappedByteBuffer buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, isNew ? fileSize : raf.length());
+			if (isNew) {
+				initialize(buffer, numStates, numActions, defaultQValue);
+			}
+
+			MappedQTable table = new MappedQTable(file, buffer, false);
+			if (table.numStates != numStates || table.numActions != numActions) {
+				throw new IllegalArgumentException("Q-table in " + file + " has " + table.numStates + " states and "
+						+ table.numActions + " actions, expected " + numStates + " and " + numActions);
+			}
+			if (Double.compare(table.defaultQValue, defaultQValue) != 0) {
+				throw new IllegalArgumentException("Q-table in " + file + " has default Q-value " + table.defaultQValue 
+						+ ", expected " + defaultQValue);
+			}
+			return table;
+		}
+	}
+
+	/**
+	 * Opens an existing Q-table file for reading only, e.g. for running a learned policy.
+	 * {@link #setValue(int, int, double)} of the returned table throws an {@link IllegalStateException}.
+	 *
+	 * @throws IOException
+	 * 	if the file cannot be mapped or is not a Q-table file
+	 */
+	public static MappedQTable openReadOnly(File file) throws IOException {
+		try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+			MappedByteBuffer buffer = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length());
+			return new MappedQTable(file, buffer, true);
+		}
+	}
+
+	private static long getFileSize(int numStates, int numActions) {
+		if (numStates <= 0 || numActions <= 0) {
+			throw new IllegalArgumentException();
+		}
+		long fileSize = HEADER_SIZE + 8L*numStates*numActions;
+		if (fileSize > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("Q-table too large to be mapped");
+		}
+		return fileSize;
+	}
+
+	private static void initialize(MappedByteBuffer buffer, int numStates, int numActions, double defaultQValue) {
+		buffer.putInt(0, MAGIC);
+		buffer.putInt(4, VERSION);
+		buffer.putInt(8, numStates);
+		buffer.putInt(12, numActions);
+		buffer.putDouble(16, defaultQValue);
+
+		// A new file is filled with zero bytes, which are already 0.0 values
+		if (Double.doubleToRawLongBits(defaultQValue) != 0) {
+			for (int i = 0; i < numStates*numActions; i++) {
+				buffer.putDouble(HEADER_SIZE + 8*i, defaultQValue);
+			}
+		}
+	}
+
+	private MappedQTable(File file, MappedByteBuffer buffer, boolean isReadOnly) throws IOException {
+		if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+			throw new IOException(file + " is not a Q-table file");
+		}
+		if (buffer.getInt(4) != VERSION) {
+			throw new IOException("Unsupported Q-table file version " + buffer.getInt(4) + " in " + file);
+		}
+		this.file = file;
+		this.isReadOnly = isReadOnly;
+		this.buffer = buffer;
+		this.numStates = buffer.getInt(8);
+		this.numActions = buffer.getInt(12);
+		this.defaultQValue = buffer.getDouble(16);
+		if (numStates <= 0 || numActions <= 0 || buffer.capacity() != HEADER_SIZE + 8L*numStates*numActions) {
+			throw new IOException("Size of " + file + " does not match its header");
+		}
+
+		buffer.position(HEADER_SIZE);
+		ByteBuffer valueBytes = buffer.slice();
+		buffer.position(0);
+		this.qTable = valueBytes.asDoubleBuffer();
+
+		LinkedHashSet<Integer> ids = new LinkedHashSet<>(numActions);
+		for (int actionId = 0; actionId < numActions; actionId++) {
+			ids.add(actionId);
+		}
+		actionIds = Collections.unmodifiableSet(ids);
+	}
+
+	@Override
+	public double getValue(int stateId, int actionId) {
+		return qTable.get(getIndex(stateId, actionId));
+	}
+
+	@Override
+	public void setValue(int stateId, int actionId, double qValue) {
+		if (isReadOnly) {
+			throw new IllegalStateException("Q-table " + file + " is opened read-only");
+		}
+		qTable.put(getIndex(stateId, actionId), qValue);
+	}
+
+	@Override
+	public double getMaxValueInState(int stateId) {
+		int rowStart = getIndex(stateId, 0);
+		double max = qTable.get(rowStart);
+		for (int i = rowStart + 1; i < rowStart + numActions; i++) {
+			double q = qTable.get(i);
+			if (q > max) {
+				max = q;
+			}
+		}
+		return max;
+	}
+
+	@Override
+	protected Set<Integer> getActionIds() {
+		return actionIds;
+	}
+
+	/**
+	 * Forces the values written so far to the storage device.
+	 * Does nothing if the table is read-only.
+	 * 
+	 * @throws IllegalStateException
+	 * 	if the table has been closed
+	 */
+	public void checkpoint() {
+		checkOpen();
+		if (!isReadOnly) {
+			buffer.force();
+		}
+	}
+
+	/**
+	 * Forces the values written so far to the storage device, after which reading
+	 * or writing values throws an {@link IllegalStateException}. Closing a closed 
+	 * table has no effect.
+	 */
+	@Override
+	public void close() {
+		if (!isClosed) {
+			checkpoint();
+			isClosed = true;
+		}
+	}
+
+	public boolean isClosed() {
+		return isClosed;
+	}
+
+	public File getFile() {
+		return file;
+	}
+
+	public boolean isReadOnly() {
+		return isReadOnly;
+	}
+
+	public int getNumberOfStates() {
+		return numStates;
+	}
+
+	public int getNumberOfActions() {
+		return numActions;
+	}
+
+	public double getDefaultQValue() {
+		return defaultQValue;
+	}
+
+
+	private void checkOpen() {
+		if (isClosed) {
+			throw new IllegalStateException("Q-table " + file + " is closed");
+		}
+	}
+
+	// Every access to the values goes through here, so this also rejects use after closing
+	private int getIndex(int stateId, int actionId) {
+		checkOpen();
+		if (actionId < 0 || actionId >= numActions) {
+			throw new ArrayIndexOutOfBoundsException(actionId);
+		}
+		return stateId*numActions + actionId;
+	}
+
+}
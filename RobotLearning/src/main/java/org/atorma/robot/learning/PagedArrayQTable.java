@@ -0,0 +1,154 @@
+package org.atorma.robot.learning;
+
+import java.util.*;
+
+/**
+ * A Q-table like {@link ArrayQTable} for state spaces that are huge but visited sparsely.
+ * The dense index space <tt>stateId*numActions + actionId</tt> is split into fixed-size
+ * pages that are allocated on the first write of a non-default value. Reads of pages
+ * that have not been allocated return the default value, so memory is only used for
+ * the visited regions while access stays a couple of array lookups.
+ * <p>
+ * State and action ids are required to be integers in the range [0..numStates), [0..numActions).
+ * Unlike in {@link ArrayQTable}, their product may exceed the maximum array length.
+ */
+public class PagedArrayQTable extends AbstractQTable implements QTable {
+
+	public static final double DEFAULT_Q_VALUE = 0;
+	public static final int DEFAULT_PAGE_SIZE = 4096;
+
+	private final int numStates;
+	private final int numActions;
+	private final double defaultQValue;
+	private final int pageShift;
+	private final int pageMask;
+	private final double[][] pages;
+	private int numAllocatedPages = 0;
+
+	private final Set<Integer> actionIds; // Action ids available in all states
+
+	public PagedArrayQTable(int numStates, int numActions) {
+		this(numStates, numActions, DEFAULT_Q_VALUE);
+	}
+
+	public PagedArrayQTable(int numStates, int numActions, double defaultQValue) {
+		this(numStates, numActions, defaultQValue, DEFAULT_PAGE_SIZE);
+	}
+
+	/**
+	 * @param pageSize
+	 * 	number of values in a page, must be a power of two
+	 */
+	public PagedArrayQTable(int numStates, int numActions, double defaultQValue, int pageSize) {
+		if (numStates <= 0 || numActions <= 0) {
+			throw new IllegalArgumentException();
+		}
+		if (pageSize <= 0 || Integer.bitCount(pageSize) != 1) {
+			throw new IllegalArgumentException("Page size must be a power of two");
+		}
+		long numValues = (long) numStates * numActions;
+		long numPages = (numValues + pageSize - 1) / pageSize;
+		if (numPages > Integer.MAX_VALUE - 8) {
+			throw new IllegalArgumentException("Too many pages, increase page size");
+		}
+		this.numStates = numStates;
+		this.numActions = numActions;
+		this.defaultQValue = defaultQValue;
+		this.pageShift = Integer.numberOfTrailingZeros(pageSize);
+		this.pageMask = pageSize - 1;
+		this.pages = new double[(int) numPages][];
+
+		LinkedHashSet<Integer> ids = new LinkedHashSet<>(numActions);
+		for (int actionId = 0; actionId < numActions; actionId++) {
+			ids.add(actionId);
+		}
+		actionIds = Collections.unmodifiableSet(ids);
+	}
+
+	@Override
+	public double getValue(int stateId, int actionId) {
+		long index = getIndex(stateId, actionId);
+		double[] page = pages[(int) (index >>> pageShift)];
+		return page != null ? page[(int) index & pageMask] : defaultQValue;
+	}
+
+	@Override
+	public void setValue(int stateId, int actionId, double qValue) {
+		long index = getIndex(stateId, actionId);
+		int pageIndex = (int) (index >>> pageShift);
+		double[] page = pages[pageIndex];
+		if (page == null) {
+			if (Double.doubleToRawLongBits(qValue) == Double.doubleToRawLongBits(defaultQValue)) {
+				return; // reads return the default anyway
+			}
+			page = new double[pageMask + 1];
+			Arrays.fill(page, defaultQValue);
+			pages[pageIndex] = page;
+			numAllocatedPages++;
+		}
+		page[(int) index & pageMask] = qValue;
+	}
+
+	@Override
+	public double getMaxValueInState(int stateId) {
+		double max = getValue(stateId, 0);
+		for (int actionId = 1; actionId < numActions; actionId++) {
+			double q = getValue(stateId, actionId);
+			if (q > max) {
+				max = q;
+			}
+		}
+		return max;
+	}
+
+	@Override
+	protected Set<Integer> getActionIds() {
+		return actionIds;
+	}
+
+	public int getNumberOfStates() {
+		return numStates;
+	}
+
+	public int getNumberOfActions() {
+		return numActions;
+	}
+
+	public int getPageSize() {
+		return pageMask + 1;
+	}
+
+	public int getNumberOfPages() {
+		return pages.length;
+	}
+
+	public int getNumberOfAllocatedPages() {
+		return numAllocatedPages;
+	}
+
+	/**
+	 * @return fraction of pages allocated, in [0,1]
+	 */
+	public double getPageOccupancy() {
+		return (double) numAllocatedPages / pages.length;
+	}
+
+	/**
+	 * @return bytes taken by the allocated pages' values
+	 */
+	public long getAllocatedBytes() {
+		return 8L * numAllocatedPages * getPageSize();
+	}
+
+
+	private long getIndex(int stateId, int actionId) {
+		if (actionId < 0 || actionId >= numActions) {
+			throw new ArrayIndexOutOfBoundsException(actionId);
+		}
+		if (stateId < 0 || stateId >= numStates) {
+			throw new ArrayIndexOutOfBoundsException(stateId);
+		}
+		return (long) stateId*numActions + actionId;
+	}
+
+}
@@ -0,0 +1,338 @@
+package org.atorma.robot.learning;
+
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Runs a {@link Planner} on a background thread while a controller thread acts. The controller
+ * publishes the latest start of planning, e.g. the current state, with {@link #publishStart(Object)}
+ * and reads the plan with {@link #call(Callable)}, which runs on the planning thread between two
+ * planning batches. The planner's state is then only accessed by the planning thread and needs
+ * no locking, and the controller waits for at most one batch.
+ * <p>
+ * Starts and calls are handed over without locks. Only the latest start published before the
+ * planning thread picks it up is given to the planner. When the planner has nothing to do, the
+ * planning thread parks until a new start, a call or {@link #wakeUp()}.
+ * <p>
+ * A start can be published with a budget, e.g. the time the controller has until its next
+ * decision, with {@link #publishStart(Object, long)}. Once the budget is spent, the planning
+ * thread parks until the next start instead of planning on for a decision already made.
+ * <p>
+ * If the planner throws an exception, the planning thread stops and the following calls
+ * throw an <tt>IllegalStateException</tt> caused by it instead of waiting for the thread.
+ *
+ * @param <S> type of planning start
+ */
+public class PlanningExecutor<S> {
+
+	/**
+	 * Planning performed by a {@link PlanningExecutor}. The methods are called on the planning thread.
+	 */
+	public interface Planner<S> {
+
+		/**
+		 * Planning starts again from the given start published to the executor.
+		 */
+		void setStart(S start);
+
+		/**
+		 * Performs a batch of planning until the deadline, a {@link System#nanoTime()} value
+		 * short enough for a controller to wait for. The deadline may be overrun by one iteration.
+		 *
+		 * @return the number of iterations performed, 0 if there was nothing to plan
+		 */
+		int plan(long deadlineNanos);
+	}
+
+	// A controller waits for at most this plus one iteration
+	private static final long BATCH_NANOS = 1000000;
+
+	private final Planner<S> planner;
+	private final Thread thread;
+	private final AtomicReference<S> startMailbox = new AtomicReference<>();
+	private final Queue<Task<?>> tasks = new ConcurrentLinkedQueue<>();
+	private volatile boolean isRunning = false;
+	private volatile boolean isIdle = false;
+	private volatile long deadlineNanos;
+	private volatile boolean hasDeadline = false;
+	private volatile Throwable failure;
+
+	private final AtomicLong numIterations = new AtomicLong();
+	private final AtomicLong numBatches = new AtomicLong();
+	private final AtomicLong numStarts = new AtomicLong();
+	private final AtomicLong numCalls = new AtomicLong();
+	private final AtomicLong planningNanos = new AtomicLong();
+
+	public PlanningExecutor(Planner<S> planner, String threadName) {
+		this.planner = planner;
+		this.thread = new Thread(new PlanningLoop(), threadName);
+		this.thread.setDaemon(true);
+	}
+
+	public synchronized void start() {
+		if (isRunning) {
+			throw new IllegalStateException("Already started");
+		}
+		if (thread.getState() != Thread.State.NEW) {
+			throw new IllegalStateException("Can't be started again once stopped");
+		}
+		isRunning = true;
+		thread.start();
+	}
+
+	/**
+	 * Stops the planning thread and waits for it to finish its current batch.
+	 */
+	public synchronized void stop() {
+		isRunning = false;
+		LockSupport.unpark(thread);
+		try {
+			thread.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Replaces the start that the planner gets next, with no limit on the time planned from it.
+	 * Doesn't wait for the planning thread.
+	 */
+	public void publishStart(S start) {
+		if (start == null) {
+			throw new IllegalArgumentException("Start must not be null");
+		}
+		hasDeadline = false;
+		startMailbox.set(start);
+		LockSupport.unpark(thread);
+	}
+
+	/**
+	 * Replaces the start that the planner gets next and lets the planner plan from it for
+	 * <tt>budgetNanos</tt> from now. Doesn't wait for the planning thread.
+	 */
+	public void publishStart(S start, long budgetNanos) {
+		if (start == null) {
+			throw new IllegalArgumentException("Start must not be null");
+		}
+		setBudget(budgetNanos);
+		startMailbox.set(start);
+		LockSupport.unpark(thread);
+	}
+
+	/**
+	 * Lets the planner plan for <tt>budgetNanos</tt> from now without a new start, e.g. when
+	 * the planner shares the work of other executors' planners. Doesn't wake up the planning thread.
+	 */
+	public void setBudget(long budgetNanos) {
+		if (budgetNanos < 0) {
+			throw new IllegalArgumentException("Budget must not be negative");
+		}
+		deadlineNanos = System.nanoTime() + budgetNanos;
+		hasDeadline = true;
+	}
+
+	/**
+	 * Runs the task on the planning thread after the current planning batch and waits for it.
+	 * The planning continues once the task returns. If the executor isn't running, runs the
+	 * task on this thread.
+	 *
+	 * @return the result of the task
+	 * @throws IllegalStateException if the planner has failed
+	 */
+	public <V> V call(Callable<V> callable) {
+		Task<V> task = new Task<>(callable);
+		numCalls.incrementAndGet();
+		checkNotFailed();
+		if (!isRunning || Thread.currentThread() == thread) {
+			task.run();
+			return task.getResult();
+		}
+
+		tasks.add(task);
+		LockSupport.unpark(thread);
+		while (!task.isDone) {
+			if ((!isRunning || !thread.isAlive()) && tasks.remove(task)) {
+				checkNotFailed();
+				task.run(); // stopped before the planning thread got to it
+			} else {
+				LockSupport.parkNanos(task, 1000000);
+			}
+		}
+		return task.getResult();
+	}
+
+	/**
+	 * Wakes up the planning thread if it's waiting for work, e.g. because the
+	 * planner's work was added to from another thread.
+	 */
+	public void wakeUp() {
+		LockSupport.unpark(thread);
+	}
+
+	/**
+	 * @return <tt>true</tt> if the planner had nothing to plan or its budget is spent,
+	 * 	and the planning thread waits for work
+	 */
+	public boolean isIdle() {
+		return isIdle;
+	}
+
+	public boolean isRunning() {
+		return isRunning;
+	}
+
+	/**
+	 * @return the total number of iterations the planner has reported
+	 */
+	public long getNumberOfIterations() {
+		return numIterations.get();
+	}
+
+	/**
+	 * @return the number of planning batches that performed iterations
+	 */
+	public long getNumberOfBatches() {
+		return numBatches.get();
+	}
+
+	/**
+	 * @return the number of starts given to the planner
+	 */
+	public long getNumberOfStarts() {
+		return numStarts.get();
+	}
+
+	/**
+	 * @return the number of calls made
+	 */
+	public long getNumberOfCalls() {
+		return numCalls.get();
+	}
+
+	/**
+	 * @return <tt>true</tt> if the budget of the latest start has been spent
+	 */
+	public boolean isBudgetSpent() {
+		return hasDeadline && System.nanoTime() - deadlineNanos >= 0;
+	}
+
+	/**
+	 * @return the total time spent in batches that performed iterations
+	 */
+	public long getPlanningNanos() {
+		return planningNanos.get();
+	}
+
+	/**
+	 * @return iterations per second of planning time
+	 */
+	public double getIterationsPerSecond() {
+		long nanos = planningNanos.get();
+		return nanos > 0 ? numIterations.get() / (nanos / 1E9) : 0;
+	}
+
+
+	private void checkNotFailed() {
+		Throwable cause = failure;
+		if (cause != null) {
+			throw new IllegalStateException("Planner failed", cause);
+		}
+	}
+
+	private void runTasks() {
+		Task<?> task;
+		while ((task = tasks.poll()) != null) {
+			task.run();
+		}
+	}
+
+	private class PlanningLoop implements Runnable {
+
+		@Override
+		public void run() {
+			try {
+				planUntilStopped();
+			} catch (RuntimeException | Error e) {
+				// Fail the waiting calls instead of leaving them waiting for a dead thread
+				failure = e;
+				isRunning = false;
+				for (Task<?> task : tasks) {
+					LockSupport.unpark(task.caller);
+				}
+				return;
+			}
+			runTasks();
+		}
+
+		private void planUntilStopped() {
+			while (isRunning) {
+				runTasks();
+
+				S start = startMailbox.getAndSet(null);
+				if (start != null) {
+					planner.setStart(start);
+					numStarts.incrementAndGet();
+				}
+
+				long batchStart = System.nanoTime();
+				long batchDeadline = batchStart + BATCH_NANOS;
+				if (hasDeadline) {
+					long deadline = deadlineNanos;
+					if (deadline - batchDeadline < 0) {
+						batchDeadline = deadline;
+					}
+				}
+				int iterations = batchDeadline - batchStart > 0 ? planner.plan(batchDeadline) : 0;
+				if (iterations > 0) {
+					planningNanos.addAndGet(System.nanoTime() - batchStart);
+					numIterations.addAndGet(iterations);
+					numBatches.incrementAndGet();
+				} else {
+					// Idle before checking the mailboxes, so that work handed over after the check unparks us
+					isIdle = true;
+					if (startMailbox.get() == null && tasks.isEmpty() && isRunning) {
+						LockSupport.park(this);
+					}
+					isIdle = false;
+				}
+			}
+		}
+
+	}
+
+	private static class Task<V> {
+		private final Callable<V> callable;
+		private final Thread caller = Thread.currentThread();
+		private V result;
+		private RuntimeException exception;
+		private volatile boolean isDone = false;
+
+		Task(Callable<V> callable) {
+			this.callable = callable;
+		}
+
+		void run() {
+			try {
+				result = callable.call();
+			} catch (RuntimeException e) {
+				exception = e;
+			} catch (Exception e) {
+				exception = new IllegalStateException(e);
+			}
+			isDone = true;
+			LockSupport.unpark(caller);
+		}
+
+		V getResult() {
+			if (exception != null) {
+				throw exception;
+			}
+			return result;
+		}
+	}
+
+}
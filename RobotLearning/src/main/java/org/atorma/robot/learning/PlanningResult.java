@@ -0,0 +1,49 @@
+package org.atorma.robot.learning;
+
+/**
+ * What a time-budgeted planning call did, e.g.
+ * {@link org.atorma.robot.learning.prioritizedsweeping.PrioritizedSweeping#performIterationsUntil(long)}
+ * or {@link org.atorma.robot.learning.montecarlo.AbstractUctPlanning#performRolloutsUntil(long)}.
+ */
+public class PlanningResult {
+
+	private final int numIterations;
+	private final long elapsedNanos;
+	private final boolean isDeadlineReached;
+
+	public PlanningResult(int numIterations, long elapsedNanos, boolean isDeadlineReached) {
+		this.numIterations = numIterations;
+		this.elapsedNanos = elapsedNanos;
+		this.isDeadlineReached = isDeadlineReached;
+	}
+
+	/**
+	 * @return the number of iterations, e.g. Q-value backups or rollouts, performed
+	 */
+	public int getNumberOfIterations() {
+		return numIterations;
+	}
+
+	public long getElapsedNanos() {
+		return elapsedNanos;
+	}
+
+	/**
+	 * @return <tt>true</tt> if planning stopped at the deadline, <tt>false</tt> if it ran out of work before it,
+	 * e.g. the priority queue ran empty or there was no start state
+	 */
+	public boolean isDeadlineReached() {
+		return isDeadlineReached;
+	}
+
+	public double getIterationsPerSecond() {
+		return elapsedNanos > 0 ? numIterations / (elapsedNanos / 1E9) : 0;
+	}
+
+	@Override
+	public String toString() {
+		return "PlanningResult [numIterations=" + numIterations + ", elapsedNanos=" + elapsedNanos
+				+ ", isDeadlineReached=" + isDeadlineReached + "]";
+	}
+
+}
@@ -0,0 +1,187 @@
+package org.atorma.robot.learning;
+
+import java.util.*;
+
+import org.atorma.robot.mdp.DiscreteAction;
+
+/**
+ * A Q-table that, like {@link HashMapQTable}, does not need to know state and
+ * action ids beforehand and they are not restricted to positive integers.
+ * <p>
+ * The (state id, action id) pairs are packed into primitive <tt>long</tt> keys
+ * of an open-addressing hash table with unboxed <tt>double</tt> values, so reading
+ * or writing a value does not allocate anything once the table has grown large enough.
+ * Each slot is stamped with the generation it was written in, so that {@link #clear()}
+ * empties the table in constant time by starting a new generation.
+ */
+public class PrimitiveHashQTable extends AbstractQTable implements ClearableQTable {
+	public static final double DEFAULT_Q_VALUE = 0;
+
+	private static final int INITIAL_CAPACITY = 64; // must be a power of two
+	private static final double MAX_LOAD_FACTOR = 0.5;
+
+	private long[] keys;
+	private double[] values;
+	private int[] stamps;
+	private int generation = 1;
+	private int size;
+	private int mask;
+	private int resizeThreshold;
+
+	private double defaultQValue = DEFAULT_Q_VALUE;
+	private Set<Integer> addedStateIds = new HashSet<>();
+	private Set<Integer> actionIds = new LinkedHashSet<>();
+	private Set<Integer> actionIdsView = Collections.unmodifiableSet(actionIds);
+
+	public PrimitiveHashQTable() {
+		allocate(INITIAL_CAPACITY);
+	}
+
+	public PrimitiveHashQTable(double defaultQValue) {
+		this();
+		this.defaultQValue = defaultQValue;
+	}
+
+	public PrimitiveHashQTable(double defaultQValue, int... actionIds) {
+		this(defaultQValue);
+		for (int actionId : actionIds) {
+			addActionId(actionId);
+		}
+	}
+
+	public PrimitiveHashQTable(double defaultQValue, DiscreteAction... actions) {
+		this(defaultQValue);
+		for (DiscreteAction action : actions) {
+			addActionId(action.getId());
+		}
+	}
+
+
+	/**
+	 * Returns the ids of the states that have a Q-value set or that were added explicitly.
+	 * Unlike in {@link HashMapQTable}, the set is collected from the table on each call.
+	 */
+	public Set<Integer> getStateIds() {
+		Set<Integer> stateIds = new HashSet<>(addedStateIds);
+		for (int i = 0; i < keys.length; i++) {
+			if (stamps[i] == generation) {
+				stateIds.add(getStateId(keys[i]));
+			}
+		}
+		return Collections.unmodifiableSet(stateIds);
+	}
+
+	public void addStateId(int stateId) {
+		this.addedStateIds.add(stateId);
+	}
+
+	@Override
+	public Set<Integer> getActionIds() {
+		return actionIdsView;
+	}
+
+	public void addActionId(int actionId) {
+		this.actionIds.add(actionId);
+	}
+
+	/**
+	 * Removes all Q-values and added state ids in constant time, keeping the
+	 * action ids and the capacity.
+	 */
+	@Override
+	public void clear() {
+		size = 0;
+		addedStateIds.clear();
+		generation++;
+		if (generation == 0) { // wrapped around, old stamps could come back into use
+			Arrays.fill(stamps, 0);
+			generation = 1;
+		}
+	}
+
+	/**
+	 * @return the number of (state id, action id) pairs that have a Q-value set
+	 */
+	public int size() {
+		return size;
+	}
+
+	@Override
+	public double getValue(int stateId, int actionId) {
+		int slot = findSlot(getKey(stateId, actionId));
+		return stamps[slot] == generation ? values[slot] : defaultQValue;
+	}
+
+	@Override
+	public void setValue(int stateId, int actionId, double qValue) {
+		long key = getKey(stateId, actionId);
+		int slot = findSlot(key);
+		if (stamps[slot] != generation) {
+			if (size >= resizeThreshold) {
+				resize();
+				slot = findSlot(key);
+			}
+			stamps[slot] = generation;
+			keys[slot] = key;
+			size++;
+			addActionId(actionId);
+		}
+		values[slot] = qValue;
+	}
+
+	/**
+	 * Returns the slot that holds the key or, if the key is not in the table,
+	 * the free slot where it would be inserted (linear probing).
+	 */
+	private int findSlot(long key) {
+		int slot = hash(key) & mask;
+		while (stamps[slot] == generation && keys[slot] != key) {
+			slot = (slot + 1) & mask;
+		}
+		return slot;
+	}
+
+	private void resize() {
+		long[] oldKeys = keys;
+		double[] oldValues = values;
+		int[] oldStamps = stamps;
+		int oldGeneration = generation;
+		allocate(keys.length * 2);
+		for (int i = 0; i < oldKeys.length; i++) {
+			if (oldStamps[i] == oldGeneration) {
+				int slot = findSlot(oldKeys[i]);
+				stamps[slot] = generation;
+				keys[slot] = oldKeys[i];
+				values[slot] = oldValues[i];
+			}
+		}
+	}
+
+	private void allocate(int capacity) {
+		keys = new long[capacity];
+		values = new double[capacity];
+		stamps = new int[capacity];
+		generation = 1;
+		mask = capacity - 1;
+		resizeThreshold = (int) (capacity * MAX_LOAD_FACTOR);
+	}
+
+	static long getKey(int stateId, int actionId) {
+		return ((long) stateId << 32) | (actionId & 0xFFFFFFFFL);
+	}
+
+	private static int getStateId(long key) {
+		return (int) (key >>> 32);
+	}
+
+	// Finalization step of MurmurHash3, spreads packed ids over the whole table
+	static int hash(long key) {
+		key ^= key >>> 33;
+		key *= 0xff51afd7ed558ccdL;
+		key ^= key >>> 33;
+		key *= 0xc4ceb9fe1a85ec53L;
+		key ^= key >>> 33;
+		return (int) key;
+	}
+
+}
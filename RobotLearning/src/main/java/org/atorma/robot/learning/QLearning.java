@@ -1,6 +1,6 @@
 package org.atorma.robot.learning;
 
-import org.atorma.robot.mdp.DiscretizedStateAction;
+import org.atorma.robot.learning.replay.ReplayBuffer;
 import org.atorma.robot.mdp.DiscretizedTransitionReward;
 import org.atorma.robot.policy.DiscretePolicy;
 
@@ -12,6 +12,10 @@ public class QLearning implements DiscretePolicy {
 	private double learningRate;
 	private EligibilityTraces traces;
 	
+	// Set when the fused update applies, i.e. both the Q-values and the traces are arrays
+	private ArrayQTable arrayQTable;
+	private AbstractEligibilityTraces arrayTraces;
+	
 	/**
 	 * Standard Q-learning i.e. Q-learning without eligibility traces i.e. Q(0) . 
 	 */
@@ -19,6 +23,7 @@ public class QLearning implements DiscretePolicy {
 		this.learningRate = learningRate;
 		this.traces = new AccumulatingEligibilityTraces(discountFactor, 0, 0); 
 		this.qTable = qTable;
+		initFusedUpdate();
 	}
 	
 	/**
@@ -32,27 +37,70 @@ public class QLearning implements DiscretePolicy {
 		this.learningRate = learningRate;
 		this.traces = traces;
 		this.qTable = qTable;
+		initFusedUpdate();
+	}
+	
+	private void initFusedUpdate() {
+		if (qTable instanceof ArrayQTable && traces instanceof AbstractEligibilityTraces) {
+			arrayQTable = (ArrayQTable) qTable;
+			arrayTraces = (AbstractEligibilityTraces) traces;
+		}
 	}
 
 	public void update(DiscretizedTransitionReward transition) {
 		
-		DiscretizedStateAction fromStateActionIds = transition.getFromStateIdActionId();
-		traces.update(fromStateActionIds);
+		traces.update(transition.getFromStateId(), transition.getByActionId());
 		
-		double oldQ = qTable.getValue(fromStateActionIds);
-		DiscretizedStateAction maxStateActionIds = new DiscretizedStateAction(transition.getToStateId(), getActionId(transition.getToStateId()));
-		double maxQ = qTable.getValue(maxStateActionIds);
+		double oldQ = qTable.getValue(transition.getFromStateId(), transition.getByActionId());
+		double maxQ = qTable.getMaxValueInState(transition.getToStateId());
 		double delta = transition.getReward() + traces.getDiscountFactor()*maxQ - oldQ;
 		
-		for (DiscretizedStateAction sa : traces.getNonZeroStateActions()) {
-			double q = qTable.getValue(sa);
-			double e = traces.getTrace(sa);
+		if (arrayTraces != null) {
+			arrayTraces.addScaledTraces(arrayQTable, learningRate * delta);
+			return;
+		}
+		
+		int numSlots = traces.getNumberOfSlots();
+		for (int slot = 0; slot < numSlots; slot++) {
+			double e = traces.getTrace(slot);
+			if (e == 0) {
+				continue; // decayed, not pruned yet
+			}
+			int stateId = traces.getStateId(slot);
+			int actionId = traces.getActionId(slot);
+			double q = qTable.getValue(stateId, actionId);
 			double newQ  = q + learningRate * delta * e;
-			qTable.setValue(sa, newQ);
+			qTable.setValue(stateId, actionId, newQ);
 		}
 		
 	}
 	
+	/**
+	 * Replays <tt>numSamples</tt> transitions sampled from the buffer with one-step
+	 * Q-learning updates. Eligibility traces are neither used nor changed because the
+	 * samples are not consecutive. The TD errors of the samples are reported to the buffer
+	 * for prioritized sampling. Does nothing if the buffer is empty.
+	 */
+	public void updateBatch(ReplayBuffer replayBuffer, int numSamples) {
+		if (replayBuffer.isEmpty()) {
+			return;
+		}
+		
+		double discountFactor = traces.getDiscountFactor();
+		for (int i = 0; i < numSamples; i++) {
+			int index = replayBuffer.sample();
+			int fromStateId = replayBuffer.getFromStateId(index);
+			int actionId = replayBuffer.getActionId(index);
+			
+			double oldQ = qTable.getValue(fromStateId, actionId);
+			double maxQ = qTable.getMaxValueInState(replayBuffer.getToStateId(index));
+			double delta = replayBuffer.getReward(index) + discountFactor*maxQ - oldQ;
+			qTable.setValue(fromStateId, actionId, oldQ + learningRate * delta);
+			
+			replayBuffer.setTdError(index, delta);
+		}
+	}
+	
 	@Override
 	public Integer getActionId(int stateId) {
 		return qTable.getActionId(stateId);
@@ -9,6 +9,18 @@ public interface QTable extends DiscretePolicy {
 	
 	void setValue(DiscretizedStateAction stateIdActionId, double qValue);
 	
+	/**
+	 * Same as {@link #getValue(DiscretizedStateAction)} but does not require 
+	 * allocating a <tt>DiscretizedStateAction</tt>.
+	 */
+	double getValue(int stateId, int actionId);
+	
+	/**
+	 * Same as {@link #setValue(DiscretizedStateAction, double)} but does not require 
+	 * allocating a <tt>DiscretizedStateAction</tt>.
+	 */
+	void setValue(int stateId, int actionId, double qValue);
+	
 	double getMaxValueInState(int stateId);
 	
 	DiscretizedStateAction getBestActionInState(int stateId);
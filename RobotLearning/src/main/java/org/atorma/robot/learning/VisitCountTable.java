@@ -0,0 +1,188 @@
+package org.atorma.robot.learning;
+
+import java.util.Arrays;
+
+/**
+ * Visit counts of state ids or of (state id, action id) pairs in an open-addressing
+ * hash table of primitive <tt>int</tt>s, keyed like {@link PrimitiveHashQTable}.
+ * One table counts either states or state-action pairs, not both.
+ * <p>
+ * Each slot is stamped with the generation it was written in and only the slots of the
+ * current generation are in use, so {@link #clear()} just starts a new generation. Neither
+ * counting nor clearing allocates anything once the table has grown large enough.
+ */
+public class VisitCountTable {
+
+	/**
+	 * Gives the factors {@link VisitCountTable#decay(DecayFactors)} multiplies the counts with.
+	 */
+	public interface DecayFactors {
+		double getFactor(int stateId);
+	}
+
+	private static final int INITIAL_CAPACITY = 64; // must be a power of two
+	private static final double MAX_LOAD_FACTOR = 0.5;
+
+	private long[] keys;
+	private int[] counts;
+	private int[] stamps;
+	private int generation = 1;
+	private int size;
+	private int mask;
+	private int resizeThreshold;
+
+	// Reused by decay() for the entries that survive it
+	private long[] decayedKeys = new long[0];
+	private int[] decayedCounts = new int[0];
+
+	public VisitCountTable() {
+		allocate(INITIAL_CAPACITY);
+	}
+
+	public int getNumberOfVisits(int stateId) {
+		return get(PrimitiveHashQTable.getKey(stateId, 0));
+	}
+
+	public int getNumberOfVisits(int stateId, int actionId) {
+		return get(PrimitiveHashQTable.getKey(stateId, actionId));
+	}
+
+	/**
+	 * @return the number of visits after the increment
+	 */
+	public int incrementVisits(int stateId) {
+		return increment(PrimitiveHashQTable.getKey(stateId, 0));
+	}
+
+	/**
+	 * @return the number of visits after the increment
+	 */
+	public int incrementVisits(int stateId, int actionId) {
+		return increment(PrimitiveHashQTable.getKey(stateId, actionId));
+	}
+
+	/**
+	 * Overwrites the count, e.g. with any other <tt>int</tt> kept per state-action pair.
+	 */
+	public void setNumberOfVisits(int stateId, int actionId, int count) {
+		int slot = getOrAddSlot(PrimitiveHashQTable.getKey(stateId, actionId));
+		counts[slot] = count;
+	}
+
+	/**
+	 * @return the number of states or state-action pairs visited
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Sets all counts to zero in constant time. The capacity is kept.
+	 */
+	public void clear() {
+		size = 0;
+		generation++;
+		if (generation == 0) { // wrapped around, old stamps could come back into use
+			Arrays.fill(stamps, 0);
+			generation = 1;
+		}
+	}
+
+	/**
+	 * Multiplies the counts by the factors of their states, rounding to the nearest integer.
+	 * All factors are asked for before any count changes. Counts that become zero are removed.
+	 * Allocates nothing once the table has been decayed at its largest size.
+	 */
+	public void decay(DecayFactors factors) {
+		if (decayedKeys.length < size) {
+			decayedKeys = new long[keys.length];
+			decayedCounts = new int[keys.length];
+		}
+		int numDecayed = 0;
+		for (int i = 0; i < keys.length; i++) {
+			if (stamps[i] == generation) {
+				int count = (int) Math.round(counts[i] * factors.getFactor(getStateId(keys[i])));
+				if (count > 0) {
+					decayedKeys[numDecayed] = keys[i];
+					decayedCounts[numDecayed] = count;
+					numDecayed++;
+				}
+			}
+		}
+		clear();
+		for (int i = 0; i < numDecayed; i++) {
+			int slot = findSlot(decayedKeys[i]);
+			stamps[slot] = generation;
+			keys[slot] = decayedKeys[i];
+			counts[slot] = decayedCounts[i];
+		}
+		size = numDecayed;
+	}
+
+	private int get(long key) {
+		int slot = findSlot(key);
+		return stamps[slot] == generation ? counts[slot] : 0;
+	}
+
+	private int increment(long key) {
+		int slot = getOrAddSlot(key); // may resize, so before reading the counts array
+		return ++counts[slot];
+	}
+
+	private int getOrAddSlot(long key) {
+		int slot = findSlot(key);
+		if (stamps[slot] != generation) {
+			if (size >= resizeThreshold) {
+				resize();
+				slot = findSlot(key);
+			}
+			stamps[slot] = generation;
+			keys[slot] = key;
+			counts[slot] = 0;
+			size++;
+		}
+		return slot;
+	}
+
+	/**
+	 * Returns the slot that holds the key or, if the key is not in the table,
+	 * the free slot where it would be inserted (linear probing).
+	 */
+	private int findSlot(long key) {
+		int slot = PrimitiveHashQTable.hash(key) & mask;
+		while (stamps[slot] == generation && keys[slot] != key) {
+			slot = (slot + 1) & mask;
+		}
+		return slot;
+	}
+
+	private void resize() {
+		long[] oldKeys = keys;
+		int[] oldCounts = counts;
+		int[] oldStamps = stamps;
+		int oldGeneration = generation;
+		allocate(keys.length * 2);
+		for (int i = 0; i < oldKeys.length; i++) {
+			if (oldStamps[i] == oldGeneration) {
+				int slot = findSlot(oldKeys[i]);
+				stamps[slot] = generation;
+				keys[slot] = oldKeys[i];
+				counts[slot] = oldCounts[i];
+			}
+		}
+	}
+
+	private static int getStateId(long key) {
+		return (int) (key >>> 32);
+	}
+
+	private void allocate(int capacity) {
+		keys = new long[capacity];
+		counts = new int[capacity];
+		stamps = new int[capacity];
+		generation = 1;
+		mask = capacity - 1;
+		resizeThreshold = (int) (capacity * MAX_LOAD_FACTOR);
+	}
+
+}
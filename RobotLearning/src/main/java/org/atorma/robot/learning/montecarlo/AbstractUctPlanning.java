@@ -6,8 +6,7 @@ import static java.lang.Math.sqrt;
 import java.util.*;
 
 import org.atorma.robot.discretization.StateDiscretizer;
-import org.atorma.robot.learning.HashMapQTable;
-import org.atorma.robot.learning.QTable;
+import org.atorma.robot.learning.*;
 import org.atorma.robot.mdp.*;
 
 public abstract class AbstractUctPlanning {
@@ -20,12 +19,23 @@ public abstract class AbstractUctPlanning {
 	protected int horizon;
 	protected double uctConstant;
 	protected double discountFactor;
-	protected QTable uctQValues = new HashMapQTable();
+	protected ClearableQTable uctQValues;
 	
-	protected Map<DiscretizedStateAction, Integer> stateActionVisits = new HashMap<>();
-	protected Map<Integer, Integer> stateVisits = new HashMap<>();
+	protected VisitCountTable stateActionVisits = new VisitCountTable();
+	protected VisitCountTable stateVisits = new VisitCountTable();
 	
 	protected State startState;
+	
+	protected boolean reuseTree;
+	protected double treeDecay;
+	
+	// Visits of (state id, id of the start state's successor the rollout went through)
+	// and the number of rollouts through each successor, since the start state was set
+	private VisitCountTable branchVisits = new VisitCountTable();
+	private VisitCountTable branchRollouts = new VisitCountTable();
+	private int rolloutStep;
+	private int rolloutBranchId;
+	private int numReusedRollouts;
 
 	private Random random = new Random();
 	
@@ -36,13 +46,69 @@ public abstract class AbstractUctPlanning {
 		this.longTermQValues = parameters.longTermQValues;
 		this.horizon = parameters.planningHorizon;
 		this.uctConstant = parameters.uctConstant;
+		this.reuseTree = parameters.reuseTree;
+		this.treeDecay = parameters.treeDecay;
+		if (treeDecay < 0 || treeDecay > 1) {
+			throw new IllegalArgumentException("Tree decay must be in [0,1]");
+		}
+		this.uctQValues = createPlanningQTable(0);
 	}
 	
+	/**
+	 * Sets the state the following rollouts start from. Unless {@link UctPlanningParameters#reuseTree}
+	 * is set, clears the statistics of the previous rollouts.
+	 * <p>
+	 * When reused, the visits that rollouts from the previous start state made after going through
+	 * the new one are kept, so that its subtree is not explored again. The subtree is known only if
+	 * the new start state was a successor of the previous start state. The other visits are
+	 * multiplied by {@link UctPlanningParameters#treeDecay}. As the statistics are kept by state id,
+	 * a state-action's visits are decayed like the visits of its state. The planning Q-values are
+	 * kept and weigh less as prior estimates the more their visit counts have decayed.
+	 */
 	public void setRolloutStartState(State state) {
+		if (reuseTree && startState != null) {
+			reuseStatistics(stateDiscretizer.getId(state));
+		} else {
+			stateVisits.clear();
+			stateActionVisits.clear();
+			uctQValues.clear();
+		}
 		startState = state;
-		stateVisits.clear();
-		stateActionVisits.clear();
-		uctQValues = new HashMapQTable(); 
+	}
+	
+	private void reuseStatistics(final int startStateId) {
+		VisitCountTable.DecayFactors decayFactors = new VisitCountTable.DecayFactors() {
+			@Override
+			public double getFactor(int stateId) {
+				int visits = stateVisits.getNumberOfVisits(stateId);
+				if (visits == 0) {
+					return treeDecay;
+				}
+				int keptVisits = branchVisits.getNumberOfVisits(stateId, startStateId);
+				return (keptVisits + treeDecay*(visits - keptVisits)) / visits;
+			}
+		};
+		stateActionVisits.decay(decayFactors); // before the state visits the factors depend on
+		stateVisits.decay(decayFactors);
+		numReusedRollouts = branchRollouts.getNumberOfVisits(startStateId);
+		branchVisits.clear();
+		branchRollouts.clear();
+	}
+	
+	/**
+	 * Returns the number of rollouts from the previous start state that went through the
+	 * current one, i.e. the rollouts saved by reusing the tree. Zero unless
+	 * {@link UctPlanningParameters#reuseTree} is set.
+	 */
+	public int getNumberOfReusedRollouts() {
+		return reuseTree ? numReusedRollouts : 0;
+	}
+	
+	/**
+	 * Creates an empty table for planning Q-values.
+	 */
+	protected ClearableQTable createPlanningQTable(double defaultQValue, DiscreteAction... actions) {
+		return new PrimitiveHashQTable(defaultQValue, actions);
 	}
 	
 	public void performRollouts(int num) {
@@ -50,10 +116,33 @@ public abstract class AbstractUctPlanning {
 			return;
 		}
 		for (int i = 0; i < num; i++) {
+			rolloutStep = 0;
 			performRollout(startState);
 		}
 	}
 	
+	/**
+	 * Performs rollouts until the deadline, a {@link System#nanoTime()} value. A rollout
+	 * takes long enough to read the clock after each, so the deadline is overrun by
+	 * at most one rollout. There is nothing to plan without a start state or when the
+	 * start state has no allowed actions.
+	 */
+	public PlanningResult performRolloutsUntil(long deadlineNanos) {
+		long start = System.nanoTime();
+		if (startState == null || model.getAllowedActions(startState).isEmpty()) {
+			return new PlanningResult(0, 0, false);
+		}
+		long now = start;
+		int rollouts = 0;
+		while (deadlineNanos - now > 0) {
+			rolloutStep = 0;
+			performRollout(startState);
+			rollouts++;
+			now = System.nanoTime();
+		}
+		return new PlanningResult(rollouts, now - start, deadlineNanos - now <= 0);
+	}
+	
 	protected abstract void performRollout(State startState);
 		
 	
@@ -72,78 +161,100 @@ public abstract class AbstractUctPlanning {
 		return action;
 	}
 
+	/**
+	 * Picks an unvisited action uniformly at random by reservoir sampling, replacing
+	 * the k:th unvisited action found with probability 1/k, so no list is needed.
+	 */
 	private DiscreteAction getUnvisitedAction(State state, int stateId) {
-		List<DiscreteAction> unvisited = new ArrayList<DiscreteAction>();
+		DiscreteAction unvisited = null;
+		int numUnvisited = 0;
 		for (DiscreteAction action : model.getAllowedActions(state)) {
 			if (getNumberOfVisits(stateId, action.getId()) == 0) { 
-				unvisited.add(action);
+				numUnvisited++;
+				if (numUnvisited == 1 || getRandom().nextInt(numUnvisited) == 0) {
+					unvisited = action;
+				}
 			}
 		}
-		
-		if (unvisited.isEmpty()) {
-			return null;
-		} else {
-			return unvisited.get(random.nextInt(unvisited.size()));
-		}
+		return unvisited;
 	}
 
 	private DiscreteAction getUctAction(State state, int stateId, boolean isExploration) {
 
 		double bestValue = Double.NEGATIVE_INFINITY;
-		List<DiscreteAction> bestActions = new ArrayList<>();
+		DiscreteAction bestAction = null;
+		int numBestActions = 0; // ties broken by reservoir sampling as in getUnvisitedAction
+		int ns = getNumberOfVisits(stateId);
 		
 		for (DiscreteAction action : model.getAllowedActions(state)) {
-			DiscretizedStateAction sa = new DiscretizedStateAction(stateId, action.getId());
+			int actionId = action.getId();
 			
-			double qLt = longTermQValues != null ? 0.5 * longTermQValues.getValue(sa) : 0;
-			double qUct =longTermQValues != null ? 0.5 * uctQValues.getValue(sa) : uctQValues.getValue(sa);
-			
-			int ns = getNumberOfVisits(stateId);
-			int nsa = getNumberOfVisits(stateId, action.getId());
+			int nsa = getNumberOfVisits(stateId, actionId);
 			double expl = isExploration ? uctConstant*sqrt(log(ns)/nsa) : 0;
 			
-//			System.out.println("qLt="+qLt+", qUct="+qUct+", expl="+expl);
-			
-			double q = qLt + qUct + expl; 
+			double q = getActionValue(stateId, actionId, getUctQValue(stateId, actionId)) + expl; 
 			
-			if (q > bestValue) {
-				bestActions.clear();
-				bestActions.add(action);
+			if (numBestActions == 0 || q > bestValue) {
+				bestAction = action;
 				bestValue = q;
-			} else if (q == bestValue) {
-				bestActions.add(action);
+				numBestActions = 1;
+			} else if (q == bestValue && getRandom().nextInt(++numBestActions) == 0) {
+				bestAction = action;
 			}
 		}
 		
-		DiscreteAction bestAction = bestActions.get(random.nextInt(bestActions.size()));
 		return bestAction;
 	}
 	
-	protected int getNumberOfVisits(int stateId, int actionId) {
-		DiscretizedStateAction stateAction = new DiscretizedStateAction(stateId, actionId);
-		if (stateActionVisits.containsKey(stateAction)) {
-			return stateActionVisits.get(stateAction);
+	/**
+	 * Returns the planning Q-value of (state id, action id) computed by the rollouts.
+	 */
+	protected double getUctQValue(int stateId, int actionId) {
+		return uctQValues.getValue(stateId, actionId);
+	}
+	
+	/**
+	 * Returns Q(s,a)_longTerm + Q(s,a)_planning, weighted equally if there are long-term Q-values.
+	 */
+	double getActionValue(int stateId, int actionId, double uctQValue) {
+		if (longTermQValues != null) {
+			return 0.5 * longTermQValues.getValue(stateId, actionId) + 0.5 * uctQValue;
 		} else {
-			return 0;
+			return uctQValue;
 		}
 	}
 	
+	protected Random getRandom() {
+		return random;
+	}
+	
+	protected int getNumberOfVisits(int stateId, int actionId) {
+		return stateActionVisits.getNumberOfVisits(stateId, actionId);
+	}
+	
 	protected void incrementVisits(int stateId, int actionId) {
-		int visits = getNumberOfVisits(stateId, actionId);
-		stateActionVisits.put(new DiscretizedStateAction(stateId, actionId), visits + 1);
+		stateActionVisits.incrementVisits(stateId, actionId);
 	}
 	
 	protected int getNumberOfVisits(int stateId) {
-		if (stateVisits.containsKey(stateId)) {
-			return stateVisits.get(stateId);
-		} else {
-			return 0;
-		}
+		return stateVisits.getNumberOfVisits(stateId);
 	}
 	
+	/**
+	 * Counts a visit to the state at the next step of the current rollout.
+	 */
 	protected void incrementVisits(int stateId) {
-		int visits = getNumberOfVisits(stateId);
-		stateVisits.put(stateId, visits + 1);
+		stateVisits.incrementVisits(stateId);
+		if (reuseTree) {
+			if (rolloutStep == 1) {
+				rolloutBranchId = stateId;
+				branchRollouts.incrementVisits(stateId);
+			}
+			if (rolloutStep >= 1) {
+				branchVisits.incrementVisits(stateId, rolloutBranchId);
+			}
+			rolloutStep++;
+		}
 	}
 	
 	
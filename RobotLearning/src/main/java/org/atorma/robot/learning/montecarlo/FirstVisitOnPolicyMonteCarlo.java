@@ -1,23 +1,27 @@
 package org.atorma.robot.learning.montecarlo;
 
-import java.util.*;
-
 import org.atorma.robot.discretization.StateDiscretizer;
-import org.atorma.robot.learning.HashMapQTable;
-import org.atorma.robot.learning.QTable;
+import org.atorma.robot.learning.*;
 import org.atorma.robot.mdp.*;
 import org.atorma.robot.policy.DiscretePolicy;
 
+/**
+ * Planning Q-values of the given policy computed as the return following the first
+ * visit to (state, action) in rollouts from the given state. A rollout takes at most
+ * horizon + 1 steps, which are recorded into a preallocated trajectory and then
+ * backed up in reverse.
+ */
 public class FirstVisitOnPolicyMonteCarlo implements DiscretePolicy {
 
 	private ForwardModel model;
 	private StateDiscretizer stateDiscretizer;
 	private DiscretePolicy policy;
 	private int horizon;
-	private QTable planningQValues;
+	private ClearableQTable planningQValues = new PrimitiveHashQTable();
 	private double discountFactor;
 
-	private Map<DiscretizedStateAction, Integer> stateActionVisits;
+	private VisitCountTable stateActionVisits = new VisitCountTable();
+	private RolloutTrajectory trajectory;
 	private State startState;
 
 	public FirstVisitOnPolicyMonteCarlo(
@@ -32,45 +36,48 @@ public class FirstVisitOnPolicyMonteCarlo implements DiscretePolicy {
 		this.policy = policy;
 		this.horizon = horizon;
 		this.discountFactor = discountFactor;
+		this.trajectory = new RolloutTrajectory(horizon + 1);
 	}
 	
 	public void setRolloutStartState(State startState) {
 		this.startState = startState;
-		stateActionVisits = new HashMap<>();
-		planningQValues = new HashMapQTable(); 
+		stateActionVisits.clear();
+		planningQValues.clear();
 	}
 	
 	public void performRollouts(int num) {
 		for (int i = 0; i < num; i++) {
-			performRollout(startState, 0, new HashSet<DiscretizedStateAction>());
+			performRollout(startState);
 		}
 	}
 
-	private double performRollout(State state, int depth, Set<DiscretizedStateAction> visitedInRollout) {
-		if (model.getAllowedActions(state).isEmpty() || depth > horizon) {
-			return 0; // terminal state, end recursion and return reward 0
+	private void performRollout(State startState) {
+		trajectory.clear();
+		State state = startState;
+		while (!trajectory.isFull() && !model.getAllowedActions(state).isEmpty()) {
+			int stateId = stateDiscretizer.getId(state);
+			TransitionReward tr = simulatePolicy(state, stateId);
+			
+			int actionId = tr.getAction().getId();
+			stateActionVisits.incrementVisits(stateId, actionId);
+			trajectory.add(stateId, actionId, tr.getReward());
+			state = tr.getToState();
 		}
 		
-		int stateId = stateDiscretizer.getId(state);
-		TransitionReward tr = simulatePolicy(state, stateId);
-		
-		int actionId = tr.getAction().getId();
-		incrementVisits(stateId, actionId);
-		DiscretizedStateAction stateIdActionId = new DiscretizedStateAction(stateId, actionId);
-		boolean firstVisit = visitedInRollout.add(stateIdActionId);
-
-		// Total discounted return following visit to (s,a). Note: recursive.
-		double ret = tr.getReward() + discountFactor*performRollout(tr.getToState(), depth + 1, visitedInRollout);
-		
-		// Update planning Q-value
-		if (firstVisit) {
-			double oldQ = planningQValues.getValue(stateIdActionId);
-			int nsa = getNumberOfVisits(stateId, actionId);
-			double newQ = oldQ + 1.0/nsa * (ret - oldQ);
-			planningQValues.setValue(stateIdActionId, newQ);
+		// Total discounted return following each step, the terminal state's being 0.
+		// Update planning Q-values of first visits to (s,a) with them.
+		double ret = 0;
+		for (int step = trajectory.length() - 1; step >= 0; step--) {
+			ret = trajectory.getReward(step) + discountFactor*ret;
+			if (trajectory.isFirstVisit(step)) {
+				int stateId = trajectory.getStateId(step);
+				int actionId = trajectory.getActionId(step);
+				double oldQ = planningQValues.getValue(stateId, actionId);
+				int nsa = getNumberOfVisits(stateId, actionId);
+				double newQ = oldQ + 1.0/nsa * (ret - oldQ);
+				planningQValues.setValue(stateId, actionId, newQ);
+			}
 		}
-		
-		return ret;
 	}
 	
 	private TransitionReward simulatePolicy(State fromState, int stateId) {
@@ -85,17 +92,7 @@ public class FirstVisitOnPolicyMonteCarlo implements DiscretePolicy {
 	}
 	
 	public int getNumberOfVisits(int stateId, int actionId) {
-		DiscretizedStateAction stateAction = new DiscretizedStateAction(stateId, actionId);
-		if (stateActionVisits.containsKey(stateAction)) {
-			return stateActionVisits.get(stateAction);
-		} else {
-			return 0;
-		}
-	}
-	
-	private void incrementVisits(int stateId, int actionId) {
-		int visits = getNumberOfVisits(stateId, actionId);
-		stateActionVisits.put(new DiscretizedStateAction(stateId, actionId), visits + 1);
+		return stateActionVisits.getNumberOfVisits(stateId, actionId);
 	}
 
 	@Override
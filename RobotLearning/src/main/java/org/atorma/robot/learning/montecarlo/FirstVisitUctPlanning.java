@@ -1,8 +1,5 @@
 package org.atorma.robot.learning.montecarlo;
 
-import java.util.HashSet;
-import java.util.Set;
-
 import org.atorma.robot.mdp.*;
 
 /**
@@ -13,51 +10,50 @@ import org.atorma.robot.mdp.*;
  * are computed by simulating rollouts from given state.
  * <p>
  * This variant computes planning Q-values as return following the
- * first visit to (state, action).
+ * first visit to (state, action). A rollout takes at most horizon + 1 steps,
+ * which are recorded into a preallocated trajectory and then backed up in reverse.
  */
 public class FirstVisitUctPlanning extends AbstractUctPlanning {
 
 	private double discountFactor;
+	private RolloutTrajectory trajectory;
 	
 	public FirstVisitUctPlanning(FirstVisitUctPlanningParameters parameters) {
 		super(parameters);
 		this.discountFactor = parameters.discountFactor;
+		this.trajectory = new RolloutTrajectory(horizon + 1);
 	}
 	
 	@Override
 	protected void performRollout(State startState) {
-		performRollout(startState, 0, new HashSet<DiscretizedStateAction>());
-	}
-	
-	private double performRollout(State state, int depth, Set<DiscretizedStateAction> visitedInRollout) {
-		if (model.getAllowedActions(state).isEmpty() || depth > horizon) {
-			return 0; // terminal state, end recursion and return reward 0
+		trajectory.clear();
+		State state = startState;
+		while (!trajectory.isFull() && !model.getAllowedActions(state).isEmpty()) {
+			int stateId = stateDiscretizer.getId(state);
+			incrementVisits(stateId);
+			
+			DiscreteAction action = chooseAction(state, stateId);
+			incrementVisits(stateId, action.getId());
+			TransitionReward tr = model.simulateAction(new StateAction(state, action));
+			
+			trajectory.add(stateId, action.getId(), tr.getReward());
+			state = tr.getToState();
 		}
 		
-		int stateId = stateDiscretizer.getId(state);
-		incrementVisits(stateId);
-		
-		DiscreteAction action = chooseAction(state, stateId);
-		incrementVisits(stateId, action.getId());
-		TransitionReward tr = model.simulateAction(new StateAction(state, action));
-		//System.out.println(tr);
-		
-		DiscretizedStateAction stateIdActionId = new DiscretizedStateAction(stateId, action.getId());
-		boolean firstVisit = visitedInRollout.add(stateIdActionId);
-
-		// Total discounted return following visit to (s,a). Note: recursive.
-		double ret = tr.getReward() + discountFactor*performRollout(tr.getToState(), depth + 1, visitedInRollout);
-		//System.out.println("Total reward " + ret);
-		
-		// Update UCT planning Q-values
-		if (firstVisit) {
-			double oldQ = uctQValues.getValue(stateIdActionId);
-			int nsa = getNumberOfVisits(stateId, action.getId());
-			double newQ = oldQ + 1.0/nsa * (ret - oldQ);
-			uctQValues.setValue(stateIdActionId, newQ);
+		// Total discounted return following each step, the terminal state's being 0.
+		// Update UCT planning Q-values of first visits to (s,a) with them.
+		double ret = 0;
+		for (int step = trajectory.length() - 1; step >= 0; step--) {
+			ret = trajectory.getReward(step) + discountFactor*ret;
+			if (trajectory.isFirstVisit(step)) {
+				int stateId = trajectory.getStateId(step);
+				int actionId = trajectory.getActionId(step);
+				double oldQ = uctQValues.getValue(stateId, actionId);
+				int nsa = getNumberOfVisits(stateId, actionId);
+				double newQ = oldQ + 1.0/nsa * (ret - oldQ);
+				uctQValues.setValue(stateId, actionId, newQ);
+			}
 		}
-		
-		return ret;
 	}
 
 
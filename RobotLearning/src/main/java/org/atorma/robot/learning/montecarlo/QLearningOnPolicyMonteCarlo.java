@@ -14,7 +14,7 @@ public class QLearningOnPolicyMonteCarlo implements DiscretePolicy {
 	private int horizon;
 	
 	private QLearning qLearning;
-	private QTable planningQValues;
+	private ClearableQTable planningQValues;
 	private double defaultQValue;
 	private EligibilityTraces traces;
 	private double learningRate;
@@ -32,14 +32,14 @@ public class QLearningOnPolicyMonteCarlo implements DiscretePolicy {
 		this.learningRate = parameters.learningRate;
 		this.traces = parameters.traces;
 		this.defaultQValue = parameters.defaultQValue;
-		
+		this.planningQValues = new PrimitiveHashQTable(defaultQValue, allActions);
+		this.qLearning = new QLearning(learningRate, traces, planningQValues);
 	}
 	
 	public void setRolloutStartState(State startState) {
 		this.startState = startState;
 		traces.clear();
-		planningQValues = new HashMapQTable(defaultQValue, allActions);
-		qLearning = new QLearning(learningRate, traces, planningQValues);
+		planningQValues.clear();
 	}
 	
 	public void performRollouts(int num) {
@@ -17,16 +17,20 @@ public class QLearningUctPlanning extends AbstractUctPlanning {
 		this.learningRate = parameters.learningRate;
 		this.traces = parameters.eligibilityTraces;
 		this.actions = parameters.allActions;
+		this.uctQValues = createPlanningQTable(0, actions);
+		this.qLearning = new QLearning(learningRate, traces, uctQValues);
 	}
 
 	
 
+	/**
+	 * Clears the planning Q-values in place, so the same table and Q-learning are
+	 * reused from one start state to the next.
+	 */
 	@Override
 	public void setRolloutStartState(State state) {
 		super.setRolloutStartState(state);
 		traces.clear();
-		uctQValues = new HashMapQTable(0, actions);
-		qLearning = new QLearning(learningRate, traces, uctQValues);
 	}
 
 
@@ -0,0 +1,63 @@
+package org.atorma.robot.learning.montecarlo;
+
+import org.atorma.robot.learning.VisitCountTable;
+
+/**
+ * The steps of one rollout in primitive arrays allocated once for the planning horizon,
+ * so that returns can be computed in a backward pass instead of by recursion. Whether
+ * a step is the first visit to its (state id, action id) in the rollout is detected with
+ * a {@link VisitCountTable}, whose generation stamps make clearing it constant-time.
+ */
+class RolloutTrajectory {
+
+	private final int[] stateIds;
+	private final int[] actionIds;
+	private final double[] rewards;
+	private final boolean[] firstVisits;
+	private final VisitCountTable visits = new VisitCountTable();
+	private int length;
+
+	RolloutTrajectory(int maxLength) {
+		stateIds = new int[maxLength];
+		actionIds = new int[maxLength];
+		rewards = new double[maxLength];
+		firstVisits = new boolean[maxLength];
+	}
+
+	void clear() {
+		length = 0;
+		visits.clear();
+	}
+
+	void add(int stateId, int actionId, double reward) {
+		stateIds[length] = stateId;
+		actionIds[length] = actionId;
+		rewards[length] = reward;
+		firstVisits[length] = visits.incrementVisits(stateId, actionId) == 1;
+		length++;
+	}
+
+	boolean isFull() {
+		return length == stateIds.length;
+	}
+
+	int length() {
+		return length;
+	}
+
+	int getStateId(int step) {
+		return stateIds[step];
+	}
+
+	int getActionId(int step) {
+		return actionIds[step];
+	}
+
+	double getReward(int step) {
+		return rewards[step];
+	}
+
+	boolean isFirstVisit(int step) {
+		return firstVisits[step];
+	}
+}
@@ -0,0 +1,221 @@
+package org.atorma.robot.learning.montecarlo;
+
+import java.util.*;
+import java.util.concurrent.Callable;
+
+import org.atorma.robot.learning.PlanningExecutor;
+import org.atorma.robot.mdp.*;
+
+/**
+ * Root-parallel UCT planning: independent plannings, each with its own visit counts, planning
+ * Q-values and random numbers, perform rollouts from the same start state on their own worker
+ * threads. The planned action is chosen from their statistics merged by visit-weighted averaging
+ * of the planning Q-values. The plannings share nothing but the model and the long-term Q-values,
+ * which must be thread-safe when the workers are started.
+ * <p>
+ * The workers are {@link PlanningExecutor}s that keep performing rollouts from the latest
+ * start state, for as long as its budget lasts if given one. Without starting them,
+ * {@link #performRollouts(int)} performs the rollouts of each planning in turn on the calling thread.
+ */
+public class RootParallelUctPlanning {
+
+	private final List<AbstractUctPlanning> plannings;
+	private final List<PlanningExecutor<State>> workers = new ArrayList<>();
+	private final Random random = new Random();
+	private volatile boolean isStarted = false;
+
+	/**
+	 * @param plannings
+	 * 	plannings with the same model, state discretizer and long-term Q-values, but
+	 * 	each with its own other parameters such as eligibility traces
+	 */
+	public RootParallelUctPlanning(List<? extends AbstractUctPlanning> plannings) {
+		if (plannings.isEmpty()) {
+			throw new IllegalArgumentException("At least one planning required");
+		}
+		this.plannings = new ArrayList<AbstractUctPlanning>(plannings);
+		for (int i = 0; i < plannings.size(); i++) {
+			workers.add(new PlanningExecutor<>(new UctPlanner(plannings.get(i)), "UctPlanner-" + i));
+		}
+	}
+
+	public synchronized void start() {
+		if (isStarted) {
+			throw new IllegalStateException("Already started");
+		}
+		isStarted = true;
+		for (PlanningExecutor<State> worker : workers) {
+			worker.start();
+		}
+	}
+
+	/**
+	 * Stops the workers and waits for them to finish their current rollouts.
+	 */
+	public synchronized void stop() {
+		for (PlanningExecutor<State> worker : workers) {
+			worker.stop();
+		}
+	}
+
+	/**
+	 * Hands the new start state to every planning, which clears its statistics.
+	 * Doesn't wait for the workers.
+	 */
+	public void setRolloutStartState(State state) {
+		if (!isStarted) {
+			for (AbstractUctPlanning planning : plannings) {
+				planning.setRolloutStartState(state);
+			}
+			return;
+		}
+		for (PlanningExecutor<State> worker : workers) {
+			worker.publishStart(state);
+		}
+	}
+
+	/**
+	 * Hands the new start state to every planning like {@link #setRolloutStartState(State)},
+	 * and lets the workers perform rollouts from it for <tt>budgetNanos</tt> from now,
+	 * e.g. until the next decision.
+	 */
+	public void setRolloutStartState(State state, long budgetNanos) {
+		if (!isStarted) {
+			setRolloutStartState(state);
+			return;
+		}
+		for (PlanningExecutor<State> worker : workers) {
+			worker.publishStart(state, budgetNanos);
+		}
+	}
+
+	/**
+	 * Performs <tt>num</tt> rollouts with each planning on this thread.
+	 * Only allowed when the workers are not started.
+	 */
+	public void performRollouts(int num) {
+		if (isStarted) {
+			throw new IllegalStateException("Workers perform the rollouts once started");
+		}
+		for (AbstractUctPlanning planning : plannings) {
+			planning.performRollouts(num);
+		}
+	}
+
+	/**
+	 * Returns the action that maximizes the long-term Q-value plus the average of the plannings'
+	 * Q-values weighted by their visit counts. Each worker pauses for reading its statistics.
+	 * The state id and allowed actions are looked up by the first worker, as the discretizer and
+	 * model of a planning, e.g. a {@link TranspositionTable}, need not be thread-safe.
+	 */
+	public DiscreteAction getPlannedAction(final State state) {
+		final AbstractUctPlanning first = plannings.get(0);
+		final RootStatistics root = workers.get(0).call(new Callable<RootStatistics>() {
+			@Override
+			public RootStatistics call() {
+				int stateId = first.stateDiscretizer.getId(state);
+				List<DiscreteAction> actions = new ArrayList<DiscreteAction>(first.model.getAllowedActions(state));
+				return new RootStatistics(stateId, actions, getStatistics(first, stateId, actions));
+			}
+		});
+		int stateId = root.stateId;
+		List<DiscreteAction> actions = root.actions;
+
+		double[] visits = new double[actions.size()];
+		double[] weightedQValues = new double[actions.size()];
+		for (int i = 0; i < plannings.size(); i++) {
+			final AbstractUctPlanning planning = plannings.get(i);
+			double[][] statistics = i == 0 ? root.statistics : workers.get(i).call(new Callable<double[][]>() {
+				@Override
+				public double[][] call() {
+					return getStatistics(planning, root.stateId, root.actions);
+				}
+			});
+			for (int a = 0; a < actions.size(); a++) {
+				visits[a] += statistics[0][a];
+				weightedQValues[a] += statistics[0][a] * statistics[1][a];
+			}
+		}
+
+		double bestValue = Double.NEGATIVE_INFINITY;
+		List<DiscreteAction> bestActions = new ArrayList<>();
+		for (int a = 0; a < actions.size(); a++) {
+			double uctQValue = visits[a] > 0 ? weightedQValues[a] / visits[a] : 0;
+			double q = first.getActionValue(stateId, actions.get(a).getId(), uctQValue);
+			if (q > bestValue) {
+				bestActions.clear();
+				bestActions.add(actions.get(a));
+				bestValue = q;
+			} else if (q == bestValue) {
+				bestActions.add(actions.get(a));
+			}
+		}
+		return bestActions.get(random.nextInt(bestActions.size()));
+	}
+
+	/**
+	 * @return the total number of rollouts performed by the workers
+	 */
+	public long getNumberOfRollouts() {
+		long rollouts = 0;
+		for (PlanningExecutor<State> worker : workers) {
+			rollouts += worker.getNumberOfIterations();
+		}
+		return rollouts;
+	}
+
+	/**
+	 * @return the planning throughput counters of each worker
+	 */
+	public List<PlanningExecutor<State>> getWorkers() {
+		return Collections.unmodifiableList(workers);
+	}
+
+	public int getNumberOfThreads() {
+		return workers.size();
+	}
+
+
+	// Visit counts and planning Q-values of the actions
+	private static double[][] getStatistics(AbstractUctPlanning planning, int stateId, List<DiscreteAction> actions) {
+		double[][] statistics = new double[2][actions.size()];
+		for (int a = 0; a < actions.size(); a++) {
+			int actionId = actions.get(a).getId();
+			statistics[0][a] = planning.getNumberOfVisits(stateId, actionId);
+			statistics[1][a] = planning.getUctQValue(stateId, actionId);
+		}
+		return statistics;
+	}
+
+	private static class RootStatistics {
+		final int stateId;
+		final List<DiscreteAction> actions;
+		final double[][] statistics;
+
+		RootStatistics(int stateId, List<DiscreteAction> actions, double[][] statistics) {
+			this.stateId = stateId;
+			this.actions = actions;
+			this.statistics = statistics;
+		}
+	}
+
+	private static class UctPlanner implements PlanningExecutor.Planner<State> {
+
+		private final AbstractUctPlanning planning;
+
+		UctPlanner(AbstractUctPlanning planning) {
+			this.planning = planning;
+		}
+
+		@Override
+		public void setStart(State state) {
+			planning.setRolloutStartState(state);
+		}
+
+		@Override
+		public int plan(long deadlineNanos) {
+			return planning.performRolloutsUntil(deadlineNanos).getNumberOfIterations();
+		}
+	}
+
+}
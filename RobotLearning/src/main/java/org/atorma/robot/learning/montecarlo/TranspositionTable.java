@@ -0,0 +1,297 @@
+package org.atorma.robot.learning.montecarlo;
+
+import java.util.*;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import org.atorma.robot.discretization.StateDiscretizer;
+import org.atorma.robot.learning.prioritizedsweeping.PrioritizedSweepingModel;
+import org.atorma.robot.learning.prioritizedsweeping.PrioritizedSweepingModelListener;
+import org.atorma.robot.mdp.*;
+
+/**
+ * A cache of a model and a state discretizer for the rollouts of UCT and Monte Carlo
+ * planning, which reach the same states again and again through different action orders.
+ * Pass the table to the planning both as its {@link ForwardModel} and {@link StateDiscretizer}.
+ * <p>
+ * The states are looked up by {@link HashedState#getStateHash()}, and states with the same hash
+ * are taken to be the same state. For each distinct state the table caches the state id, the
+ * allowed actions and, for each action, the outgoing transitions with their probabilities, so
+ * a repeated visit samples a transition without discretizing the state or asking the model
+ * to create successor states. The cached transitions are those of the first state seen with
+ * the hash. States that are not <tt>HashedState</tt>s are passed through to the model and the
+ * discretizer.
+ * <p>
+ * When the model changes, notify this as its {@link PrioritizedSweepingModelListener}; the cached
+ * transitions are then computed again when next used. A change of one (state, action) invalidates
+ * the transitions cached for its state id and action id, and for the few other (state id, action id)s
+ * that share its version counter, but not the rest. The cache is not thread-safe apart from
+ * the notifications, so give each planning thread its own table. It is cleared when it reaches
+ * its maximum size, which keeps a long-running planner from accumulating states it no longer visits.
+ */
+public class TranspositionTable implements ForwardModel, StateDiscretizer, PrioritizedSweepingModelListener {
+
+	private static final int INITIAL_CAPACITY = 64; // must be a power of two
+	private static final double MAX_LOAD_FACTOR = 0.5;
+	private static final int VERSION_STRIPE_BITS = 12;
+
+	private final PrioritizedSweepingModel model;
+	private final StateDiscretizer stateDiscretizer;
+	private final int maxSize;
+	private final AtomicInteger modelVersion = new AtomicInteger();
+	// Versions of the transitions of (state id, action id)s, which share a counter by their stripe
+	private final AtomicIntegerArray transitionVersions = new AtomicIntegerArray(1 << VERSION_STRIPE_BITS);
+
+	// Open-addressing hash table of entries by state hash, slots in use stamped with the generation
+	private long[] keys;
+	private Entry[] entries;
+	private int[] stamps;
+	private int generation = 1;
+	private int size;
+	private int mask;
+	private int resizeThreshold;
+
+	private long numHits;
+	private long numMisses;
+
+	/**
+	 * @param model
+	 * 	the model whose transitions are cached; its allowed actions and transitions of a state
+	 * 	must not depend on anything but the state hash, apart from the changes notified to this
+	 * @param maxSize
+	 * 	maximum number of distinct states cached
+	 */
+	public TranspositionTable(PrioritizedSweepingModel model, StateDiscretizer stateDiscretizer, int maxSize) {
+		if (maxSize <= 0) {
+			throw new IllegalArgumentException("Maximum size must be positive");
+		}
+		this.model = model;
+		this.stateDiscretizer = stateDiscretizer;
+		this.maxSize = maxSize;
+		allocate(INITIAL_CAPACITY);
+	}
+
+	@Override
+	public int getId(State state) {
+		if (!(state instanceof HashedState)) {
+			return stateDiscretizer.getId(state);
+		}
+		return getEntry((HashedState) state).stateId;
+	}
+
+	@Override
+	public int getNumberOfStates() {
+		return stateDiscretizer.getNumberOfStates();
+	}
+
+	@Override
+	public Set<? extends DiscreteAction> getAllowedActions(State state) {
+		if (!(state instanceof HashedState)) {
+			return model.getAllowedActions(state);
+		}
+		return getEntry((HashedState) state).allowedActions;
+	}
+
+	/**
+	 * Samples one of the cached outgoing transitions. Its from-state is the first state seen
+	 * with the same hash as the given state.
+	 */
+	@Override
+	public TransitionReward simulateAction(StateAction fromStateAction) {
+		if (!(fromStateAction.getState() instanceof HashedState)) {
+			return new Outcomes(model.getOutgoingTransitions(fromStateAction), 0, 0).sample();
+		}
+		Entry entry = getEntry((HashedState) fromStateAction.getState());
+		int actionId = fromStateAction.getAction().getId();
+		Outcomes outcomes = entry.getOutcomes(actionId);
+		// Read before the transitions, so that a change made meanwhile invalidates them
+		int version = modelVersion.get();
+		int transitionVersion = transitionVersions.get(getVersionStripe(entry.stateId, actionId));
+		if (outcomes == null || outcomes.modelVersion != version || outcomes.transitionVersion != transitionVersion) {
+			outcomes = new Outcomes(model.getOutgoingTransitions(fromStateAction), version, transitionVersion);
+			entry.setOutcomes(actionId, outcomes);
+		}
+		return outcomes.sample();
+	}
+
+	/**
+	 * Invalidates the cached transitions of the (state, action)s with the same discretization.
+	 */
+	@Override
+	public void transitionsChanged(StateAction fromStateAction) {
+		int stateId = stateDiscretizer.getId(fromStateAction.getState());
+		transitionVersions.incrementAndGet(getVersionStripe(stateId, fromStateAction.getAction().getId()));
+	}
+
+	@Override
+	public void modelChanged() {
+		modelVersion.incrementAndGet();
+	}
+
+	/**
+	 * Removes all cached states in constant time.
+	 */
+	public void clear() {
+		size = 0;
+		generation++;
+		if (generation == 0) { // wrapped around, old stamps could come back into use
+			Arrays.fill(stamps, 0);
+			generation = 1;
+		}
+	}
+
+	/**
+	 * @return the number of distinct states cached
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * @return the number of state lookups that found the state cached
+	 */
+	public long getNumberOfHits() {
+		return numHits;
+	}
+
+	/**
+	 * @return the number of state lookups that had to discretize and cache the state
+	 */
+	public long getNumberOfMisses() {
+		return numMisses;
+	}
+
+
+	private Entry getEntry(HashedState state) {
+		long key = state.getStateHash();
+		int slot = findSlot(key);
+		if (stamps[slot] == generation) {
+			numHits++;
+			return entries[slot];
+		}
+
+		numMisses++;
+		if (size >= maxSize) {
+			clear();
+			slot = findSlot(key);
+		} else if (size >= resizeThreshold) {
+			resize();
+			slot = findSlot(key);
+		}
+		Entry entry = new Entry(stateDiscretizer.getId(state), Collections.unmodifiableSet(model.getAllowedActions(state)));
+		stamps[slot] = generation;
+		keys[slot] = key;
+		entries[slot] = entry;
+		size++;
+		return entry;
+	}
+
+	/**
+	 * Returns the slot that holds the key or, if the key is not in the table,
+	 * the free slot where it would be inserted (linear probing).
+	 */
+	private int findSlot(long key) {
+		int slot = hash(key) & mask;
+		while (stamps[slot] == generation && keys[slot] != key) {
+			slot = (slot + 1) & mask;
+		}
+		return slot;
+	}
+
+	private void resize() {
+		long[] oldKeys = keys;
+		Entry[] oldEntries = entries;
+		int[] oldStamps = stamps;
+		int oldGeneration = generation;
+		allocate(keys.length * 2);
+		for (int i = 0; i < oldKeys.length; i++) {
+			if (oldStamps[i] == oldGeneration) {
+				int slot = findSlot(oldKeys[i]);
+				stamps[slot] = generation;
+				keys[slot] = oldKeys[i];
+				entries[slot] = oldEntries[i];
+			}
+		}
+	}
+
+	private void allocate(int capacity) {
+		keys = new long[capacity];
+		entries = new Entry[capacity];
+		stamps = new int[capacity];
+		generation = 1;
+		mask = capacity - 1;
+		resizeThreshold = (int) (capacity * MAX_LOAD_FACTOR);
+	}
+
+	// Fibonacci hashing, the top bits of the product are the best mixed
+	private static int getVersionStripe(int stateId, int actionId) {
+		return ((31*stateId + actionId) * 0x9E3779B9) >>> (32 - VERSION_STRIPE_BITS);
+	}
+
+	// The state hashes are well mixed already, fold the high bits into the index too
+	private static int hash(long key) {
+		return (int) (key ^ (key >>> 32));
+	}
+
+
+	// A distinct state
+	private static class Entry {
+		final int stateId;
+		final Set<? extends DiscreteAction> allowedActions;
+		Outcomes[] outcomesByActionId = new Outcomes[0];
+
+		Entry(int stateId, Set<? extends DiscreteAction> allowedActions) {
+			this.stateId = stateId;
+			this.allowedActions = allowedActions;
+		}
+
+		Outcomes getOutcomes(int actionId) {
+			return actionId >= 0 && actionId < outcomesByActionId.length ? outcomesByActionId[actionId] : null;
+		}
+
+		void setOutcomes(int actionId, Outcomes outcomes) {
+			if (actionId >= outcomesByActionId.length) {
+				outcomesByActionId = Arrays.copyOf(outcomesByActionId, actionId + 1);
+			}
+			outcomesByActionId[actionId] = outcomes;
+		}
+	}
+
+	// The outgoing transitions of a (state, action) as a cumulative distribution
+	private static class Outcomes {
+		final TransitionReward[] transitions;
+		final double[] cumulativeProbabilities;
+		final int modelVersion;
+		final int transitionVersion;
+
+		Outcomes(Set<StochasticTransitionReward> outgoing, int modelVersion, int transitionVersion) {
+			this.transitions = new TransitionReward[outgoing.size()];
+			this.cumulativeProbabilities = new double[outgoing.size()];
+			this.modelVersion = modelVersion;
+			this.transitionVersion = transitionVersion;
+			double cumulativeProbability = 0;
+			int i = 0;
+			for (StochasticTransitionReward tr : outgoing) {
+				cumulativeProbability += tr.getProbability();
+				transitions[i] = tr;
+				cumulativeProbabilities[i] = cumulativeProbability;
+				i++;
+			}
+		}
+
+		// Falls back to the last transition if the probabilities sum to less than the sample, like BumperModel
+		TransitionReward sample() {
+			if (transitions.length == 0) {
+				return null;
+			}
+			double sample = ThreadLocalRandom.current().nextDouble();
+			for (int i = 0; i < transitions.length - 1; i++) {
+				if (sample < cumulativeProbabilities[i]) {
+					return transitions[i];
+				}
+			}
+			return transitions[transitions.length - 1];
+		}
+	}
+}
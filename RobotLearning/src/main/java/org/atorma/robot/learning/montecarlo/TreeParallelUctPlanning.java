@@ -0,0 +1,300 @@
+package org.atorma.robot.learning.montecarlo;
+
+import static java.lang.Math.log;
+import static java.lang.Math.sqrt;
+
+import java.util.*;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.atorma.robot.learning.PlanningExecutor;
+import org.atorma.robot.mdp.*;
+
+/**
+ * Tree-parallel UCT planning: several threads perform first-visit rollouts, as in
+ * {@link FirstVisitUctPlanning}, against one set of statistics. Visit counts and sums of
+ * returns are kept in atomic arrays indexed by <tt>stateId*numActions + actionId</tt>, so
+ * the threads need no locking and every rollout improves the same tree. This suits a short
+ * decision window better than {@link RootParallelUctPlanning}, whose rollouts are spread over
+ * as many shallow trees as there are threads.
+ * <p>
+ * A rollout counts each (state, action) it has chosen but not yet got the return of as
+ * a visit with return {@link TreeParallelUctPlanningParameters#virtualLoss}. This virtual
+ * loss steers the other threads to different branches of the tree. The planning Q-value is
+ * (sum of returns + virtual loss * pending rollouts) / (returned rollouts + pending rollouts).
+ * <p>
+ * The rollouts can be performed by the worker threads started with {@link #start()}, or by
+ * any threads calling {@link #performRollouts(int)}. Each thread records its rollouts into its
+ * own preallocated trajectory and backs them up in reverse, as {@link FirstVisitUctPlanning}
+ * does. State ids are required to be integers in the range [0..numStates) of the state discretizer.
+ * <p>
+ * The statistics are kept in two generations of arrays that take turns as the tree of the
+ * current start state. A new start state clears the older generation and makes it current.
+ */
+public class TreeParallelUctPlanning extends AbstractUctPlanning {
+
+	private final double discountFactor;
+	private final double virtualLoss;
+	private final int numStates;
+	private final int numActions;
+	private final List<PlanningExecutor<State>> workers = new ArrayList<>();
+	private boolean isStarted = false;
+
+	private final Statistics[] generations = new Statistics[2];
+	private volatile Statistics statistics;
+
+	private final ThreadLocal<RolloutTrajectory> trajectories = new ThreadLocal<RolloutTrajectory>() {
+		@Override
+		protected RolloutTrajectory initialValue() {
+			return new RolloutTrajectory(horizon + 1);
+		}
+	};
+
+	/**
+	 * @param numThreads
+	 * 	number of worker threads started with {@link #start()}
+	 */
+	public TreeParallelUctPlanning(TreeParallelUctPlanningParameters parameters, int numThreads) {
+		super(parameters);
+		if (numThreads <= 0) {
+			throw new IllegalArgumentException("Number of threads must be positive");
+		}
+		if (parameters.reuseTree) {
+			throw new IllegalArgumentException("Tree reuse not supported");
+		}
+		this.discountFactor = parameters.discountFactor;
+		this.virtualLoss = parameters.virtualLoss;
+		this.numStates = stateDiscretizer.getNumberOfStates();
+		this.numActions = parameters.allActions.length;
+		this.generations[0] = new Statistics(numStates, numActions);
+		this.generations[1] = new Statistics(numStates, numActions);
+		this.statistics = generations[0];
+		for (int i = 0; i < numThreads; i++) {
+			workers.add(new PlanningExecutor<>(new UctPlanner(), "TreeUctPlanner-" + i));
+		}
+	}
+
+	public synchronized void start() {
+		if (isStarted) {
+			throw new IllegalStateException("Already started");
+		}
+		isStarted = true;
+		for (PlanningExecutor<State> worker : workers) {
+			worker.start();
+		}
+	}
+
+	/**
+	 * Stops the workers and waits for them to finish their current rollouts.
+	 */
+	public synchronized void stop() {
+		for (PlanningExecutor<State> worker : workers) {
+			worker.stop();
+		}
+	}
+
+	/**
+	 * Starts a new tree from the state and hands the state to the workers. Rollouts that were
+	 * in progress choose their actions from and back up into the old tree until they finish.
+	 * The old tree is cleared and reused at the start state after this one, so a rollout still
+	 * in progress by then would write into that tree. Doesn't wait for the workers.
+	 */
+	@Override
+	public void setRolloutStartState(State state) {
+		Statistics next = statistics == generations[0] ? generations[1] : generations[0];
+		next.clear();
+		statistics = next;
+		startState = state;
+		for (PlanningExecutor<State> worker : workers) {
+			worker.publishStart(state);
+		}
+	}
+
+	/**
+	 * @return the total number of rollouts performed by the workers
+	 */
+	public long getNumberOfRollouts() {
+		long rollouts = 0;
+		for (PlanningExecutor<State> worker : workers) {
+			rollouts += worker.getNumberOfIterations();
+		}
+		return rollouts;
+	}
+
+	/**
+	 * @return the planning throughput counters of each worker
+	 */
+	public List<PlanningExecutor<State>> getWorkers() {
+		return Collections.unmodifiableList(workers);
+	}
+
+	@Override
+	protected void performRollout(State startState) {
+		Statistics tree = statistics; // the rollout stays on this tree even if a new one is started
+		RolloutTrajectory trajectory = trajectories.get();
+		trajectory.clear();
+		State state = startState;
+		while (!trajectory.isFull() && !model.getAllowedActions(state).isEmpty()) {
+			int stateId = stateDiscretizer.getId(state);
+			tree.stateVisits.incrementAndGet(stateId);
+
+			DiscreteAction action = chooseAction(state, stateId, tree);
+			int index = stateId*numActions + action.getId();
+			tree.stateActionVisits.incrementAndGet(index);
+			TransitionReward tr = model.simulateAction(new StateAction(state, action));
+
+			trajectory.add(stateId, action.getId(), tr.getReward());
+			if (trajectory.isFirstVisit(trajectory.length() - 1)) {
+				tree.pendingReturns.incrementAndGet(index); // virtual loss until the return is known
+			}
+			state = tr.getToState();
+		}
+
+		// Total discounted return following each step, backed up to the first visits
+		double ret = 0;
+		for (int step = trajectory.length() - 1; step >= 0; step--) {
+			ret = trajectory.getReward(step) + discountFactor*ret;
+			if (trajectory.isFirstVisit(step)) {
+				int index = trajectory.getStateId(step)*numActions + trajectory.getActionId(step);
+				tree.addReturn(index, ret);
+				tree.numReturns.incrementAndGet(index);
+				tree.pendingReturns.decrementAndGet(index);
+			}
+		}
+	}
+
+	// As chooseAction(State, int), but reads the visits and planning Q-values of the given tree
+	private DiscreteAction chooseAction(State state, int stateId, Statistics tree) {
+		Random random = ThreadLocalRandom.current();
+		DiscreteAction chosen = null;
+		int numChosen = 0;
+		for (DiscreteAction action : model.getAllowedActions(state)) {
+			if (tree.stateActionVisits.get(stateId*numActions + action.getId()) == 0
+					&& random.nextInt(++numChosen) == 0) {
+				chosen = action;
+			}
+		}
+		if (chosen != null) {
+			return chosen;
+		}
+
+		// Every action visited, so the state has been visited as often at least
+		double logStateVisits = log(tree.stateVisits.get(stateId));
+		double bestValue = Double.NEGATIVE_INFINITY;
+		for (DiscreteAction action : model.getAllowedActions(state)) {
+			int index = stateId*numActions + action.getId();
+			double expl = uctConstant*sqrt(logStateVisits/tree.stateActionVisits.get(index));
+			double q = getActionValue(stateId, action.getId(), tree.getUctQValue(index, virtualLoss)) + expl;
+			if (numChosen == 0 || q > bestValue) {
+				chosen = action;
+				bestValue = q;
+				numChosen = 1;
+			} else if (q == bestValue && random.nextInt(++numChosen) == 0) {
+				chosen = action;
+			}
+		}
+		return chosen;
+	}
+
+	@Override
+	protected double getUctQValue(int stateId, int actionId) {
+		return statistics.getUctQValue(stateId*numActions + actionId, virtualLoss);
+	}
+
+	@Override
+	protected Random getRandom() {
+		return ThreadLocalRandom.current();
+	}
+
+	@Override
+	protected int getNumberOfVisits(int stateId, int actionId) {
+		return statistics.stateActionVisits.get(stateId*numActions + actionId);
+	}
+
+	@Override
+	protected void incrementVisits(int stateId, int actionId) {
+		statistics.stateActionVisits.incrementAndGet(stateId*numActions + actionId);
+	}
+
+	@Override
+	protected int getNumberOfVisits(int stateId) {
+		return statistics.stateVisits.get(stateId);
+	}
+
+	@Override
+	protected void incrementVisits(int stateId) {
+		statistics.stateVisits.incrementAndGet(stateId);
+	}
+
+
+	// The tree of one start state
+	private static class Statistics {
+		final AtomicIntegerArray stateVisits;
+		final AtomicIntegerArray stateActionVisits;
+		final AtomicIntegerArray pendingReturns;
+		final AtomicIntegerArray numReturns;
+		final AtomicLongArray returnSums; // bits of doubles
+
+		Statistics(int numStates, int numActions) {
+			stateVisits = new AtomicIntegerArray(numStates);
+			stateActionVisits = new AtomicIntegerArray(numStates*numActions);
+			pendingReturns = new AtomicIntegerArray(numStates*numActions);
+			numReturns = new AtomicIntegerArray(numStates*numActions);
+			returnSums = new AtomicLongArray(numStates*numActions); // 0L is the bits of 0.0
+		}
+
+		void clear() {
+			for (int i = 0; i < stateVisits.length(); i++) {
+				stateVisits.set(i, 0);
+			}
+			for (int i = 0; i < stateActionVisits.length(); i++) {
+				stateActionVisits.set(i, 0);
+				pendingReturns.set(i, 0);
+				numReturns.set(i, 0);
+				returnSums.set(i, 0L);
+			}
+		}
+
+		void addReturn(int index, double ret) {
+			long sumBits;
+			do {
+				sumBits = returnSums.get(index);
+			} while (!returnSums.compareAndSet(index, sumBits, Double.doubleToRawLongBits(Double.longBitsToDouble(sumBits) + ret)));
+		}
+
+		// (sum of returns + virtual loss * pending rollouts) / (returned rollouts + pending rollouts)
+		double getUctQValue(int index, double virtualLoss) {
+			int pending = pendingReturns.get(index);
+			int returned = numReturns.get(index);
+			if (pending + returned == 0) {
+				return 0;
+			}
+			return (Double.longBitsToDouble(returnSums.get(index)) + virtualLoss*pending) / (pending + returned);
+		}
+	}
+
+	private class UctPlanner implements PlanningExecutor.Planner<State> {
+
+		private State start;
+
+		@Override
+		public void setStart(State state) {
+			start = state;
+		}
+
+		@Override
+		public int plan(long deadlineNanos) {
+			if (start == null) {
+				return 0;
+			}
+			int rollouts = 0;
+			do {
+				performRollout(start);
+				rollouts++;
+			} while (deadlineNanos - System.nanoTime() > 0);
+			return rollouts;
+		}
+	}
+
+}
@@ -0,0 +1,9 @@
+package org.atorma.robot.learning.montecarlo;
+
+import org.atorma.robot.mdp.DiscreteAction;
+
+public class TreeParallelUctPlanningParameters extends FirstVisitUctPlanningParameters {
+
+	public DiscreteAction[] allActions;
+	public double virtualLoss; // return counted for each rollout that has chosen (s,a) but not yet returned
+}
\ No newline at end of file
@@ -10,4 +10,6 @@ public class UctPlanningParameters {
 	public QTable longTermQValues;
 	public int planningHorizon;
 	public double uctConstant;
+	public boolean reuseTree; // keep the statistics under the next rollout start state instead of clearing them
+	public double treeDecay; // multiplies the other visit counts when the tree is reused
 }
\ No newline at end of file
@@ -0,0 +1,367 @@
+package org.atorma.robot.learning.prioritizedsweeping;
+
+import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.atorma.robot.discretization.StateDiscretizer;
+import org.atorma.robot.mdp.*;
+
+/**
+ * A discrete view of a {@link PrioritizedSweepingModel} whose transitions are computed once and
+ * stored in compressed sparse row arrays, so that {@link PrioritizedSweeping} backs up a (state, action)
+ * and finds its predecessors by walking arrays instead of asking the model to create new states,
+ * transitions and sets.
+ * <p>
+ * Each state id is represented by the first state with that id given to {@link #addState(State)},
+ * and its outgoing transitions are those of the representative state. States reachable from it
+ * forward or backward in the model are added too. The predecessors of a state id are found by
+ * inverting the outgoing transitions, so the compiled model is a consistent discrete model even
+ * if the underlying model with continuous states isn't.
+ * <p>
+ * Each state id is explored only once, when it gets its representative. Over the lifetime of the
+ * compiled model the exploration therefore asks the model for at most <tt>numStates*numActions</tt>
+ * sets of outgoing transitions and <tt>numStates</tt> sets of incoming transitions. Most of that
+ * is usually paid by the first call of <tt>addState</tt>, which explores everything reachable
+ * from the first state, e.g. the 128 state ids of the bumper at most.
+ * <p>
+ * When the model changes, notify this as its {@link PrioritizedSweepingModelListener}. The changed
+ * probabilities and rewards of a (state, action) are published to the readers of the graph as new
+ * weight arrays of that row only, so that a reader never sees a partly patched row and a patch costs
+ * no more than the row. If the successor state ids change, the arrays are compiled again when
+ * they're next used. This assumes the
+ * model's changes follow the state discretization given here. The compiled arrays can be read
+ * while another thread adds states or changes the model. Listeners added to this are told
+ * which rows were patched, and that the model changed when the arrays need compiling again.
+ */
+public class CompiledPrioritizedSweepingModel implements PrioritizedSweepingModel, PrioritizedSweepingModelListener {
+
+	private final PrioritizedSweepingModel model;
+	private final StateDiscretizer stateDiscretizer;
+	private final int numActions;
+
+	// The model explored so far, guarded by this
+	private final State[] states; // representative of each state id, null if not added yet
+	private final DiscreteAction[] actions; // by action id
+	private final Row[] rows; // outgoing transitions of each (state id, action id)
+
+	private volatile Graph graph; // null when it needs to be compiled again
+	private final List<PrioritizedSweepingModelListener> listeners = new CopyOnWriteArrayList<>();
+
+	public CompiledPrioritizedSweepingModel(PrioritizedSweepingModel model, StateDiscretizer stateDiscretizer, int numActions) {
+		int numKeys = IndexedHeapStateActionPriorityQueue.getNumberOfKeys(stateDiscretizer, numActions);
+		this.model = model;
+		this.stateDiscretizer = stateDiscretizer;
+		this.numActions = numActions;
+		this.states = new State[stateDiscretizer.getNumberOfStates()];
+		this.actions = new DiscreteAction[numActions];
+		this.rows = new Row[numKeys];
+	}
+
+	/**
+	 * Makes the state the representative of its state id, unless the id already has one,
+	 * and explores the model from it.
+	 *
+	 * @return the state id
+	 */
+	public synchronized int addState(State state) {
+		int stateId = stateDiscretizer.getId(state);
+		if (states[stateId] != null) {
+			return stateId;
+		}
+
+		explore(state);
+		invalidate();
+		return stateId;
+	}
+
+	@Override
+	public synchronized void transitionsChanged(StateAction fromStateAction) {
+		int stateId = stateDiscretizer.getId(fromStateAction.getState());
+		State representative = states[stateId];
+		if (representative == null) {
+			return;
+		}
+		DiscreteAction action = fromStateAction.getAction();
+		int key = stateId*numActions + action.getId();
+		Set<StochasticTransitionReward> transitions = model.getOutgoingTransitions(new StateAction(representative, action));
+		Row row = new Row(transitions);
+		Graph current = graph;
+		boolean isPatched = current != null && rows[key] != null && Arrays.equals(row.toStateIds, rows[key].toStateIds);
+		rows[key] = row;
+		isPatched &= !exploreToStates(transitions);
+		if (isPatched) {
+			current.patch(key, row.probabilities, row.rewards);
+			for (PrioritizedSweepingModelListener listener : listeners) {
+				listener.transitionsChanged(current.stateActions[key]);
+			}
+		} else {
+			invalidate();
+		}
+	}
+
+	@Override
+	public synchronized void modelChanged() {
+		for (int stateId = 0; stateId < states.length; stateId++) {
+			if (states[stateId] != null) {
+				for (int actionId = 0; actionId < numActions; actionId++) {
+					if (rows[stateId*numActions + actionId] != null) {
+						StateAction stateAction = new StateAction(states[stateId], actions[actionId]);
+						Set<StochasticTransitionReward> transitions = model.getOutgoingTransitions(stateAction);
+						rows[stateId*numActions + actionId] = new Row(transitions);
+						exploreToStates(transitions);
+					}
+				}
+			}
+		}
+		invalidate();
+	}
+
+	@Override
+	public Set<? extends DiscreteAction> getAllowedActions(State state) {
+		return model.getAllowedActions(state);
+	}
+
+	@Override
+	public Set<StochasticTransitionReward> getOutgoingTransitions(StateAction fromStateAction) {
+		int stateId = addState(fromStateAction.getState());
+		int key = stateId*numActions + fromStateAction.getAction().getId();
+		Graph graph = getGraph();
+		RowWeights weights = graph.rowWeights.get(key);
+		int start = graph.successorStart[key];
+		Set<StochasticTransitionReward> transitions = new LinkedHashSet<>();
+		for (int i = start; i < graph.successorStart[key + 1]; i++) {
+			transitions.add(new StochasticTransitionReward(fromStateAction.getState(), fromStateAction.getAction(),
+					graph.states[graph.successorStateIds[i]], weights.rewards[i - start], weights.probabilities[i - start]));
+		}
+		return transitions;
+	}
+
+	@Override
+	public Set<StochasticTransitionReward> getIncomingTransitions(State toState) {
+		int stateId = addState(toState);
+		Graph graph = getGraph();
+		Set<StochasticTransitionReward> transitions = new LinkedHashSet<>();
+		for (int i = graph.predecessorStart[stateId]; i < graph.predecessorStart[stateId + 1]; i++) {
+			int key = graph.predecessorKeys[i];
+			int edge = graph.predecessorEdges[i] - graph.successorStart[key];
+			RowWeights weights = graph.rowWeights.get(key);
+			StateAction fromStateAction = graph.stateActions[key];
+			transitions.add(new StochasticTransitionReward(fromStateAction.getState(), fromStateAction.getAction(),
+					toState, weights.rewards[edge], weights.probabilities[edge]));
+		}
+		return transitions;
+	}
+
+	/**
+	 * Adds a listener that is told about rows patched in place, with the (state, action)
+	 * of the row's representative, and about the arrays needing compiling again.
+	 */
+	public void addListener(PrioritizedSweepingModelListener listener) {
+		listeners.add(listener);
+	}
+	
+	public void removeListener(PrioritizedSweepingModelListener listener) {
+		listeners.remove(listener);
+	}
+
+	public int getNumberOfActions() {
+		return numActions;
+	}
+
+	/**
+	 * @return the number of state ids that have a representative state
+	 */
+	public synchronized int getNumberOfStatesAdded() {
+		int count = 0;
+		for (State state : states) {
+			if (state != null) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * @return the arrays compiled from the model explored so far
+	 */
+	Graph getGraph() {
+		Graph current = graph;
+		return current != null ? current : compile();
+	}
+
+
+	StateDiscretizer getStateDiscretizer() {
+		return stateDiscretizer;
+	}
+
+	private void invalidate() {
+		graph = null;
+		for (PrioritizedSweepingModelListener listener : listeners) {
+			listener.modelChanged();
+		}
+	}
+
+	// Makes the state a representative and explores the model from it
+	private void explore(State state) {
+		Deque<State> unexplored = new ArrayDeque<>();
+		states[stateDiscretizer.getId(state)] = state;
+		unexplored.push(state);
+		while (!unexplored.isEmpty()) {
+			State fromState = unexplored.pop();
+			int fromStateId = stateDiscretizer.getId(fromState);
+			for (DiscreteAction action : model.getAllowedActions(fromState)) {
+				actions[action.getId()] = action;
+				Set<StochasticTransitionReward> transitions = model.getOutgoingTransitions(new StateAction(fromState, action));
+				rows[fromStateId*numActions + action.getId()] = new Row(transitions);
+				for (StochasticTransitionReward transition : transitions) {
+					addUnexplored(transition.getToState(), unexplored);
+				}
+			}
+			for (StochasticTransitionReward transition : model.getIncomingTransitions(fromState)) {
+				addUnexplored(transition.getFromState(), unexplored);
+			}
+		}
+	}
+
+	// Explores from the successors that have no representative yet, returns whether there were any
+	private boolean exploreToStates(Set<StochasticTransitionReward> transitions) {
+		boolean isExplored = false;
+		for (StochasticTransitionReward transition : transitions) {
+			if (states[stateDiscretizer.getId(transition.getToState())] == null) {
+				explore(transition.getToState());
+				isExplored = true;
+			}
+		}
+		return isExplored;
+	}
+
+	private void addUnexplored(State state, Deque<State> unexplored) {
+		int stateId = stateDiscretizer.getId(state);
+		if (states[stateId] == null) {
+			states[stateId] = state;
+			unexplored.push(state);
+		}
+	}
+
+	private synchronized Graph compile() {
+		if (graph != null) {
+			return graph; // compiled by another thread meanwhile
+		}
+
+		int[] successorStart = new int[rows.length + 1];
+		int[] predecessorStart = new int[states.length + 1];
+		StateAction[] stateActions = new StateAction[rows.length];
+		for (int key = 0; key < rows.length; key++) {
+			int numSuccessors = rows[key] != null ? rows[key].toStateIds.length : 0;
+			successorStart[key + 1] = successorStart[key] + numSuccessors;
+			for (int i = 0; i < numSuccessors; i++) {
+				predecessorStart[rows[key].toStateIds[i] + 1]++;
+			}
+			if (rows[key] != null) {
+				stateActions[key] = new IndexedStateAction(states[key / numActions], actions[key % numActions], key / numActions, key % numActions);
+			}
+		}
+		for (int stateId = 0; stateId < states.length; stateId++) {
+			predecessorStart[stateId + 1] += predecessorStart[stateId];
+		}
+
+		int numEdges = successorStart[rows.length];
+		int[] successorStateIds = new int[numEdges];
+		AtomicReferenceArray<RowWeights> rowWeights = new AtomicReferenceArray<>(rows.length);
+		int[] predecessorKeys = new int[numEdges];
+		int[] predecessorEdges = new int[numEdges];
+		int[] nextPredecessor = Arrays.copyOf(predecessorStart, states.length);
+		for (int key = 0; key < rows.length; key++) {
+			if (rows[key] == null) {
+				continue;
+			}
+			Row row = rows[key];
+			int start = successorStart[key];
+			System.arraycopy(row.toStateIds, 0, successorStateIds, start, row.toStateIds.length);
+			rowWeights.set(key, new RowWeights(row.probabilities, row.rewards));
+			for (int i = 0; i < row.toStateIds.length; i++) {
+				int predecessor = nextPredecessor[row.toStateIds[i]]++;
+				predecessorKeys[predecessor] = key;
+				predecessorEdges[predecessor] = start + i;
+			}
+		}
+
+		graph = new Graph(Arrays.copyOf(states, states.length), stateActions, successorStart, successorStateIds,
+				rowWeights, predecessorStart, predecessorKeys, predecessorEdges);
+		return graph;
+	}
+
+	// Never changed once created, so its arrays can be shared with the compiled graph
+	private class Row {
+		final int[] toStateIds;
+		final double[] probabilities;
+		final double[] rewards;
+
+		Row(Set<StochasticTransitionReward> transitions) {
+			toStateIds = new int[transitions.size()];
+			probabilities = new double[transitions.size()];
+			rewards = new double[transitions.size()];
+			int i = 0;
+			for (StochasticTransitionReward transition : transitions) {
+				toStateIds[i] = stateDiscretizer.getId(transition.getToState());
+				probabilities[i] = transition.getProbability();
+				rewards[i] = transition.getReward();
+				i++;
+			}
+		}
+	}
+
+	/**
+	 * Compiled transitions. The outgoing transitions of key <tt>stateId*numActions + actionId</tt>
+	 * are at indices [successorStart[key], successorStart[key + 1]) of {@link #successorStateIds},
+	 * and their probabilities and rewards are in the same order in the {@link #rowWeights} of the key.
+	 * The incoming transitions of a state id are at [predecessorStart[stateId], predecessorStart[stateId + 1])
+	 * of the predecessor arrays, which give the key of the predecessor and the index of the
+	 * transition in the successor arrays.
+	 * <p>
+	 * The weights of a row are replaced as a whole when the row is patched, so read the row's
+	 * weights once and use them for the whole backup of the row.
+	 */
+	static class Graph {
+		final State[] states;
+		final StateAction[] stateActions; // IndexedStateAction of each key with transitions
+		final int[] successorStart;
+		final int[] successorStateIds;
+		final AtomicReferenceArray<RowWeights> rowWeights; // by key, null if the key has no transitions
+		final int[] predecessorStart;
+		final int[] predecessorKeys;
+		final int[] predecessorEdges;
+
+		Graph(State[] states, StateAction[] stateActions, int[] successorStart, int[] successorStateIds,
+				AtomicReferenceArray<RowWeights> rowWeights, int[] predecessorStart, int[] predecessorKeys, int[] predecessorEdges) {
+			this.states = states;
+			this.stateActions = stateActions;
+			this.successorStart = successorStart;
+			this.successorStateIds = successorStateIds;
+			this.rowWeights = rowWeights;
+			this.predecessorStart = predecessorStart;
+			this.predecessorKeys = predecessorKeys;
+			this.predecessorEdges = predecessorEdges;
+		}
+
+		void patch(int key, double[] probabilities, double[] rewards) {
+			rowWeights.set(key, new RowWeights(probabilities, rewards));
+		}
+	}
+
+	/**
+	 * Probabilities and rewards of the outgoing transitions of one key, indexed from the start
+	 * of the key's row in the successor arrays of the graph. Never changed once published.
+	 */
+	static class RowWeights {
+		final double[] probabilities;
+		final double[] rewards;
+
+		RowWeights(double[] probabilities, double[] rewards) {
+			this.probabilities = probabilities;
+			this.rewards = rewards;
+		}
+	}
+
+}
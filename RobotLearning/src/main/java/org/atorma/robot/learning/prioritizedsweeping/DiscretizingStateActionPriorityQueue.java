@@ -8,8 +8,10 @@ import org.atorma.robot.mdp.StateAction;
  * This priority queue stores <tt>StateAction</tt>s but so that there's only one
  * per discretization. This prevents the queue from growing too large in 
  * case of continuous states. 
+ * <p>
+ * Backed by a {@link FibonacciHeap}. This is the default queue of {@link PrioritizedSweeping}.
  */
-class DiscretizingStateActionPriorityQueue {
+class DiscretizingStateActionPriorityQueue implements StateActionPriorityQueue {
 	
 	private StateDiscretizer stateDiscretizer;
 	private FibonacciHeap<PrioritizedStateAction> fibonacciHeap = new FibonacciHeap<>();
@@ -18,15 +20,9 @@ class DiscretizingStateActionPriorityQueue {
 		this.stateDiscretizer = stateDiscretizer;
 	}
 	
-	/**
-	 * Adds a <tt>StateAction</tt> or decreases its priority. The <tt>StateAction</tt>
-	 * is considered to be in the queue if there's any <tt>StateAction</tt> that has 
-	 * an equal <tt>DiscretizedStateAction</tt>. Updating the priority 
-	 * does NOT update the queue <tt>StateAction</tt> instance. An update with higher
-	 * priority than existing does nothing.
-	 */
-	public void addOrDecreasePriority(StateAction stateAction, int priority) {
-		int stateId = stateDiscretizer.getId(stateAction.getState()); 			
+	@Override
+	public void addOrDecreasePriority(StateAction stateAction, double priority) {
+		int stateId = IndexedStateAction.getStateId(stateAction, stateDiscretizer); 			
 		int actionId = stateAction.getAction().getId();
 		DiscretizedStateAction discretization = new DiscretizedStateAction(stateId, actionId);
 		PrioritizedStateAction prioritized = new PrioritizedStateAction(stateAction, discretization);
@@ -40,22 +36,31 @@ class DiscretizingStateActionPriorityQueue {
 		}
 	}
 	
+	@Override
 	public boolean isEmpty() {
 		return fibonacciHeap.size() == 0;
 	}
 	
+	@Override
 	public StateAction pollMin() {
 		PrioritizedStateAction prioritized = fibonacciHeap.popMin();
 		return prioritized != null ? prioritized.stateAction : null;
 	}
 
+	@Override
 	public StateAction peekMin() {
 		PrioritizedStateAction prioritized = fibonacciHeap.peekMin();
 		return prioritized != null ? prioritized.stateAction : null;
 	}
 
+	@Override
 	public int size() {
 		return fibonacciHeap.size();
 	}
 
+	@Override
+	public void clear() {
+		fibonacciHeap = new FibonacciHeap<>();
+	}
+
 }
\ No newline at end of file
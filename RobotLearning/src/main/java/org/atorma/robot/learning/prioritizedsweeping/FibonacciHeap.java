@@ -36,7 +36,7 @@ public class FibonacciHeap<T> {
   // private node class
   private static class FibonacciHeapNode<T> {
     private T userObject;
-    private int priority;
+    private double priority;
 
     private FibonacciHeapNode<T> parent;
     private FibonacciHeapNode<T> prevSibling;
@@ -45,7 +45,7 @@ public class FibonacciHeap<T> {
     private int degree;
     private boolean mark;
 
-    FibonacciHeapNode(T userObject, int priority) {
+    FibonacciHeapNode(T userObject, double priority) {
       this.userObject= userObject;
       this.priority= priority;
 
@@ -74,7 +74,7 @@ public class FibonacciHeap<T> {
    *  Adds the Object <code>item</code>, with the supplied
    *  <code>priority</code>.
    */
-  public void add(T item, int priority) {
+  public void add(T item, double priority) {
     if (itemsToNodes.containsKey(item))
       throw new IllegalStateException("heap already contains item! (item= "
                                       + item + ")");
@@ -229,7 +229,7 @@ public class FibonacciHeap<T> {
    * in the heap, or if <code>item</code> already has an equal or
    * lower priority than the supplied<code>priority</code>.
    */
-  public void decreaseKey(T item, int priority) {
+  public void decreaseKey(T item, double priority) {
     FibonacciHeapNode<T> node= itemsToNodes.get(item);
     if (node == null) 
       throw new IllegalStateException("No such element: " + item);
@@ -248,7 +248,7 @@ public class FibonacciHeap<T> {
 
   }
   
-  public int getPriority(T item) {
+  public double getPriority(T item) {
 	  FibonacciHeapNode<T> node= itemsToNodes.get(item);
 	  if (node == null) 
 	      throw new IllegalStateException("No such element: " + item);
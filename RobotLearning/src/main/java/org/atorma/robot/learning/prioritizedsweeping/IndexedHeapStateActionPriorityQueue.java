@@ -0,0 +1,205 @@
+package org.atorma.robot.learning.prioritizedsweeping;
+
+import java.util.Arrays;
+
+import org.atorma.robot.discretization.StateDiscretizer;
+import org.atorma.robot.mdp.StateAction;
+
+/**
+ * A {@link StateActionPriorityQueue} implemented as an indexed d-ary heap in
+ * primitive arrays. The heap is keyed by the dense index <tt>stateId*numActions + actionId</tt>,
+ * and an array from the index to the heap position makes finding an entry
+ * for decreasing its priority a single array lookup. Unlike {@link FibonacciHeap},
+ * it allocates no node per entry and needs no hash lookups.
+ * <p>
+ * State and action ids are required to be integers in the range [0..numStates), [0..numActions).
+ */
+public class IndexedHeapStateActionPriorityQueue implements StateActionPriorityQueue {
+
+	private static final int ARITY = 4; // children per node, adjacent in the priority array
+	private static final int INITIAL_CAPACITY = 16;
+
+	private final StateDiscretizer stateDiscretizer;
+	private final int numActions;
+
+	private final int[] positions; // heap position + 1 of each dense index, 0 if not in the queue
+	private int[] keys = new int[INITIAL_CAPACITY];
+	private double[] priorities = new double[INITIAL_CAPACITY];
+	private StateAction[] stateActions = new StateAction[INITIAL_CAPACITY];
+	private int size = 0;
+
+	public IndexedHeapStateActionPriorityQueue(StateDiscretizer stateDiscretizer, int numActions) {
+		this(stateDiscretizer, numActions, new int[getNumberOfKeys(stateDiscretizer, numActions)]);
+	}
+
+	/**
+	 * Creates a heap that uses the given array of positions. Heaps that hold disjoint
+	 * sets of keys can share the array, see {@link MultiQueueStateActionPriorityQueue}.
+	 */
+	IndexedHeapStateActionPriorityQueue(StateDiscretizer stateDiscretizer, int numActions, int[] positions) {
+		if (positions.length != getNumberOfKeys(stateDiscretizer, numActions)) {
+			throw new IllegalArgumentException();
+		}
+		this.stateDiscretizer = stateDiscretizer;
+		this.numActions = numActions;
+		this.positions = positions;
+	}
+
+	static int getNumberOfKeys(StateDiscretizer stateDiscretizer, int numActions) {
+		long numKeys = (long) stateDiscretizer.getNumberOfStates() * numActions;
+		if (numActions <= 0 || numKeys <= 0) {
+			throw new IllegalArgumentException();
+		}
+		if (numKeys > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("Number of state-action pairs overflow!");
+		}
+		return (int) numKeys;
+	}
+
+	@Override
+	public void addOrDecreasePriority(StateAction stateAction, double priority) {
+		addOrDecreasePriority(getKey(stateAction), stateAction, priority);
+	}
+
+	/**
+	 * @param key
+	 * 	the dense index <tt>stateId*numActions + actionId</tt> of the <tt>stateAction</tt>
+	 */
+	void addOrDecreasePriority(int key, StateAction stateAction, double priority) {
+		int position = positions[key] - 1;
+		if (position >= 0) {
+			if (priorities[position] > priority) {
+				priorities[position] = priority;
+				siftUp(position);
+			}
+			return;
+		}
+
+		if (size == keys.length) {
+			int capacity = 2 * keys.length;
+			keys = Arrays.copyOf(keys, capacity);
+			priorities = Arrays.copyOf(priorities, capacity);
+			stateActions = Arrays.copyOf(stateActions, capacity);
+		}
+		keys[size] = key;
+		priorities[size] = priority;
+		stateActions[size] = stateAction;
+		positions[key] = size + 1;
+		size++;
+		siftUp(size - 1);
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	@Override
+	public StateAction pollMin() {
+		if (size == 0) {
+			return null;
+		}
+		StateAction min = stateActions[0];
+		positions[keys[0]] = 0;
+		size--;
+		if (size > 0) {
+			keys[0] = keys[size];
+			priorities[0] = priorities[size];
+			stateActions[0] = stateActions[size];
+			positions[keys[0]] = 1;
+			siftDown(0);
+		}
+		stateActions[size] = null;
+		return min;
+	}
+
+	@Override
+	public StateAction peekMin() {
+		return size > 0 ? stateActions[0] : null;
+	}
+
+	/**
+	 * @return the minimum priority, or positive infinity if the queue is empty
+	 */
+	double peekMinPriority() {
+		return size > 0 ? priorities[0] : Double.POSITIVE_INFINITY;
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	@Override
+	public void clear() {
+		for (int i = 0; i < size; i++) {
+			positions[keys[i]] = 0;
+			stateActions[i] = null;
+		}
+		size = 0;
+	}
+
+
+	private int getKey(StateAction stateAction) {
+		int stateId = IndexedStateAction.getStateId(stateAction, stateDiscretizer);
+		int actionId = stateAction.getAction().getId();
+		if (actionId < 0 || actionId >= numActions) {
+			throw new ArrayIndexOutOfBoundsException(actionId);
+		}
+		return stateId*numActions + actionId;
+	}
+
+	private void siftUp(int position) {
+		int key = keys[position];
+		double priority = priorities[position];
+		StateAction stateAction = stateActions[position];
+
+		while (position > 0) {
+			int parent = (position - 1) / ARITY;
+			if (priorities[parent] <= priority) {
+				break;
+			}
+			move(parent, position);
+			position = parent;
+		}
+		set(position, key, priority, stateAction);
+	}
+
+	private void siftDown(int position) {
+		int key = keys[position];
+		double priority = priorities[position];
+		StateAction stateAction = stateActions[position];
+
+		while (true) {
+			int firstChild = ARITY*position + 1;
+			if (firstChild >= size) {
+				break;
+			}
+			int minChild = firstChild;
+			int lastChild = Math.min(firstChild + ARITY, size);
+			for (int child = firstChild + 1; child < lastChild; child++) {
+				if (priorities[child] < priorities[minChild]) {
+					minChild = child;
+				}
+			}
+			if (priorities[minChild] >= priority) {
+				break;
+			}
+			move(minChild, position);
+			position = minChild;
+		}
+		set(position, key, priority, stateAction);
+	}
+
+	private void move(int from, int to) {
+		set(to, keys[from], priorities[from], stateActions[from]);
+	}
+
+	private void set(int position, int key, double priority, StateAction stateAction) {
+		keys[position] = key;
+		priorities[position] = priority;
+		stateActions[position] = stateAction;
+		positions[key] = position + 1;
+	}
+
+}
@@ -0,0 +1,36 @@
+package org.atorma.robot.learning.prioritizedsweeping;
+
+import org.atorma.robot.discretization.StateDiscretizer;
+import org.atorma.robot.mdp.DiscreteAction;
+import org.atorma.robot.mdp.State;
+import org.atorma.robot.mdp.StateAction;
+
+/**
+ * A <tt>StateAction</tt> that carries the id of its state, so that it's discretized only once
+ * on its way through the priority queue and the backup. The id must be given by the same
+ * discretizer as the one of the prioritized sweeping and its queue.
+ * <p>
+ * Equality compares only the state and action, as in <tt>StateAction</tt>, so an indexed
+ * (state, action) equals a plain one and is found by it in the queues.
+ */
+class IndexedStateAction extends StateAction {
+
+	final int stateId;
+	final int actionId;
+
+	IndexedStateAction(State state, DiscreteAction action, int stateId, int actionId) {
+		super(state, action);
+		this.stateId = stateId;
+		this.actionId = actionId;
+	}
+
+	/**
+	 * @return the carried state id if the <tt>StateAction</tt> is indexed, otherwise the id given by the discretizer
+	 */
+	static int getStateId(StateAction stateAction, StateDiscretizer stateDiscretizer) {
+		if (stateAction instanceof IndexedStateAction) {
+			return ((IndexedStateAction) stateAction).stateId;
+		}
+		return stateDiscretizer.getId(stateAction.getState());
+	}
+}
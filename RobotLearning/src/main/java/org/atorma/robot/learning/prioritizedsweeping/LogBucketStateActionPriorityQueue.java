@@ -0,0 +1,178 @@
+package org.atorma.robot.learning.prioritizedsweeping;
+
+import org.atorma.robot.discretization.StateDiscretizer;
+import org.atorma.robot.mdp.StateAction;
+
+/**
+ * An approximate {@link StateActionPriorityQueue} that puts the (state, action) pairs
+ * in buckets by the binary exponent of their priority, so that priorities within a factor
+ * of two of each other share a bucket. Adding, decreasing the priority and polling take
+ * constant time, but the order within a bucket is last in, first out instead of by priority.
+ * For {@link PrioritizedSweeping} this means the polled pair's Q-value change is at least half
+ * of the largest one in the queue, which is usually good enough when the queue holds tens
+ * of thousands of predecessors.
+ * <p>
+ * State and action ids are required to be integers in the range [0..numStates), [0..numActions).
+ */
+public class LogBucketStateActionPriorityQueue implements StateActionPriorityQueue {
+
+	// Buckets from the most negative priorities to the most positive: 2048 for
+	// negative exponents in descending order, one for zero and 2048 for positive.
+	private static final int EXPONENTS = Double.MAX_EXPONENT - Double.MIN_EXPONENT + 3; // incl. subnormal and infinite
+	private static final int ZERO_BUCKET = EXPONENTS;
+	private static final int NUM_BUCKETS = 2*EXPONENTS + 1;
+
+	private final StateDiscretizer stateDiscretizer;
+	private final int numActions;
+
+	private final int[] bucketHeads = new int[NUM_BUCKETS]; // key + 1 of the first entry, 0 if empty
+	private final long[] nonEmptyBuckets = new long[(NUM_BUCKETS + 63) / 64];
+	private int minBucket = NUM_BUCKETS; // no non-empty bucket is below this
+
+	private final int[] buckets; // bucket + 1 of each dense index, 0 if not in the queue
+	private final int[] next; // key + 1 of the next entry in the same bucket, 0 if last
+	private final int[] previous;
+	private final double[] priorities;
+	private final StateAction[] stateActions;
+	private int size = 0;
+
+	public LogBucketStateActionPriorityQueue(StateDiscretizer stateDiscretizer, int numActions) {
+		long numKeys = (long) stateDiscretizer.getNumberOfStates() * numActions;
+		if (numActions <= 0 || numKeys <= 0) {
+			throw new IllegalArgumentException();
+		}
+		if (numKeys > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("Number of state-action pairs overflow!");
+		}
+		this.stateDiscretizer = stateDiscretizer;
+		this.numActions = numActions;
+		this.buckets = new int[(int) numKeys];
+		this.next = new int[(int) numKeys];
+		this.previous = new int[(int) numKeys];
+		this.priorities = new double[(int) numKeys];
+		this.stateActions = new StateAction[(int) numKeys];
+	}
+
+	@Override
+	public void addOrDecreasePriority(StateAction stateAction, double priority) {
+		if (Double.isNaN(priority)) {
+			throw new IllegalArgumentException("Priority is NaN");
+		}
+		int key = getKey(stateAction);
+		int bucket = getBucket(priority);
+		int currentBucket = buckets[key] - 1;
+		if (currentBucket >= 0) {
+			if (priorities[key] <= priority) {
+				return;
+			}
+			priorities[key] = priority;
+			if (currentBucket == bucket) {
+				return;
+			}
+			unlink(key, currentBucket);
+		} else {
+			priorities[key] = priority;
+			stateActions[key] = stateAction;
+			size++;
+		}
+		link(key, bucket);
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	@Override
+	public StateAction pollMin() {
+		if (size == 0) {
+			return null;
+		}
+		int bucket = findMinBucket();
+		int key = bucketHeads[bucket] - 1;
+		unlink(key, bucket);
+		StateAction stateAction = stateActions[key];
+		stateActions[key] = null;
+		size--;
+		return stateAction;
+	}
+
+	@Override
+	public StateAction peekMin() {
+		return size > 0 ? stateActions[bucketHeads[findMinBucket()] - 1] : null;
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	@Override
+	public void clear() {
+		while (size > 0) {
+			pollMin();
+		}
+		minBucket = NUM_BUCKETS;
+	}
+
+
+	private int getKey(StateAction stateAction) {
+		int stateId = IndexedStateAction.getStateId(stateAction, stateDiscretizer);
+		int actionId = stateAction.getAction().getId();
+		if (actionId < 0 || actionId >= numActions) {
+			throw new ArrayIndexOutOfBoundsException(actionId);
+		}
+		return stateId*numActions + actionId;
+	}
+
+	private static int getBucket(double priority) {
+		if (priority == 0) {
+			return ZERO_BUCKET;
+		}
+		int exponentIndex = Math.getExponent(priority) - Double.MIN_EXPONENT + 1; // 0 for subnormal
+		return priority < 0 ? ZERO_BUCKET - 1 - exponentIndex : ZERO_BUCKET + 1 + exponentIndex;
+	}
+
+	private int findMinBucket() {
+		for (int word = minBucket >>> 6; word < nonEmptyBuckets.length; word++) {
+			if (nonEmptyBuckets[word] != 0) {
+				minBucket = 64*word + Long.numberOfTrailingZeros(nonEmptyBuckets[word]);
+				return minBucket;
+			}
+		}
+		throw new IllegalStateException("No non-empty bucket although size is " + size);
+	}
+
+	private void link(int key, int bucket) {
+		int head = bucketHeads[bucket];
+		next[key] = head;
+		previous[key] = 0;
+		if (head != 0) {
+			previous[head - 1] = key + 1;
+		}
+		bucketHeads[bucket] = key + 1;
+		buckets[key] = bucket + 1;
+		nonEmptyBuckets[bucket >>> 6] |= 1L << bucket;
+		if (bucket < minBucket) {
+			minBucket = bucket;
+		}
+	}
+
+	private void unlink(int key, int bucket) {
+		int nextKey = next[key];
+		int previousKey = previous[key];
+		if (previousKey != 0) {
+			next[previousKey - 1] = nextKey;
+		} else {
+			bucketHeads[bucket] = nextKey;
+		}
+		if (nextKey != 0) {
+			previous[nextKey - 1] = previousKey;
+		}
+		buckets[key] = 0;
+		if (bucketHeads[bucket] == 0) {
+			nonEmptyBuckets[bucket >>> 6] &= ~(1L << bucket);
+		}
+	}
+
+}
@@ -0,0 +1,176 @@
+package org.atorma.robot.learning.prioritizedsweeping;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.atorma.robot.discretization.StateDiscretizer;
+import org.atorma.robot.mdp.StateAction;
+
+/**
+ * A thread-safe, relaxed {@link StateActionPriorityQueue} for sweeping on several threads,
+ * see {@link ParallelPrioritizedSweeping}. The (state, action) pairs are spread over
+ * several {@link IndexedHeapStateActionPriorityQueue}s, each guarded by its own lock.
+ * A pair always goes to the same heap, so there's still at most one entry per
+ * discretization. Polling picks two heaps at random and takes the minimum of the one
+ * with the lower minimum, so threads rarely wait for each other but the polled pair
+ * is not necessarily the global minimum. {@link #peekMin()} is similarly approximate.
+ * <p>
+ * Having about twice as many heaps as there are threads polling keeps the contention low.
+ * State and action ids are required to be integers in the range [0..numStates), [0..numActions).
+ */
+public class MultiQueueStateActionPriorityQueue implements StateActionPriorityQueue {
+
+	private final StateDiscretizer stateDiscretizer;
+	private final int numActions;
+	private final Subqueue[] queues;
+	private final AtomicInteger size = new AtomicInteger();
+
+	public MultiQueueStateActionPriorityQueue(StateDiscretizer stateDiscretizer, int numActions, int numQueues) {
+		if (numQueues <= 0) {
+			throw new IllegalArgumentException("Number of queues must be positive");
+		}
+		this.stateDiscretizer = stateDiscretizer;
+		this.numActions = numActions;
+		int[] positions = new int[IndexedHeapStateActionPriorityQueue.getNumberOfKeys(stateDiscretizer, numActions)];
+		queues = new Subqueue[numQueues];
+		for (int i = 0; i < numQueues; i++) {
+			// Each key is only in one heap, so the heaps can share the positions
+			queues[i] = new Subqueue(new IndexedHeapStateActionPriorityQueue(stateDiscretizer, numActions, positions));
+		}
+	}
+
+	@Override
+	public void addOrDecreasePriority(StateAction stateAction, double priority) {
+		int key = getKey(stateAction);
+		Subqueue queue = queues[getQueueIndex(key)];
+		queue.lock.lock();
+		try {
+			queue.heap.addOrDecreasePriority(key, stateAction, priority);
+			if (queue.heap.size() > queue.size) {
+				size.incrementAndGet();
+			}
+			queue.update();
+		} finally {
+			queue.lock.unlock();
+		}
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return size.get() == 0;
+	}
+
+	@Override
+	public StateAction pollMin() {
+		while (size.get() > 0) {
+			Subqueue queue = chooseQueue();
+			if (queue == null || !queue.lock.tryLock()) {
+				continue;
+			}
+			try {
+				StateAction stateAction = queue.heap.pollMin();
+				if (stateAction != null) {
+					size.decrementAndGet();
+					queue.update();
+					return stateAction;
+				}
+			} finally {
+				queue.lock.unlock();
+			}
+		}
+		return null;
+	}
+
+	@Override
+	public StateAction peekMin() {
+		Subqueue queue = getMinQueue();
+		if (queue == null) {
+			return null;
+		}
+		queue.lock.lock();
+		try {
+			return queue.heap.peekMin();
+		} finally {
+			queue.lock.unlock();
+		}
+	}
+
+	@Override
+	public int size() {
+		return size.get();
+	}
+
+	@Override
+	public void clear() {
+		for (Subqueue queue : queues) {
+			queue.lock.lock();
+			try {
+				size.addAndGet(-queue.heap.size());
+				queue.heap.clear();
+				queue.update();
+			} finally {
+				queue.lock.unlock();
+			}
+		}
+	}
+
+	public int getNumberOfQueues() {
+		return queues.length;
+	}
+
+
+	private int getKey(StateAction stateAction) {
+		int stateId = IndexedStateAction.getStateId(stateAction, stateDiscretizer);
+		int actionId = stateAction.getAction().getId();
+		if (actionId < 0 || actionId >= numActions) {
+			throw new ArrayIndexOutOfBoundsException(actionId);
+		}
+		return stateId*numActions + actionId;
+	}
+
+	private int getQueueIndex(int key) {
+		int hash = key * 0x9E3779B9; // spreads the actions of a state over the heaps
+		return (int) (((hash & 0xFFFFFFFFL) * queues.length) >>> 32);
+	}
+
+	// The one with lower minimum of two random non-empty heaps, or null if none was found
+	private Subqueue chooseQueue() {
+		ThreadLocalRandom random = ThreadLocalRandom.current();
+		Subqueue first = queues[random.nextInt(queues.length)];
+		Subqueue second = queues[random.nextInt(queues.length)];
+		Subqueue chosen = second.size > 0 && (first.size == 0 || second.minPriority < first.minPriority) ? second : first;
+		if (chosen.size == 0) {
+			return getMinQueue(); // few entries, look at all heaps
+		}
+		return chosen;
+	}
+
+	private Subqueue getMinQueue() {
+		Subqueue min = null;
+		for (Subqueue queue : queues) {
+			if (queue.size > 0 && (min == null || queue.minPriority < min.minPriority)) {
+				min = queue;
+			}
+		}
+		return min;
+	}
+
+	private static class Subqueue {
+		final ReentrantLock lock = new ReentrantLock();
+		final IndexedHeapStateActionPriorityQueue heap;
+		// Copies of the heap's state read without locking to choose a heap
+		volatile int size = 0;
+		volatile double minPriority = Double.POSITIVE_INFINITY;
+
+		Subqueue(IndexedHeapStateActionPriorityQueue heap) {
+			this.heap = heap;
+		}
+
+		void update() {
+			minPriority = heap.peekMinPriority();
+			size = heap.size();
+		}
+	}
+
+}
@@ -0,0 +1,152 @@
+package org.atorma.robot.learning.prioritizedsweeping;
+
+import java.util.*;
+
+import org.atorma.robot.learning.ConcurrentArrayQTable;
+import org.atorma.robot.learning.PlanningExecutor;
+import org.atorma.robot.mdp.StateAction;
+
+/**
+ * Runs the iterations of a {@link PrioritizedSweeping} on several worker threads, each a
+ * {@link PlanningExecutor}. The Q-table of the sweeping must be thread-safe, e.g.
+ * {@link ConcurrentArrayQTable}, and so must the priority queue, e.g.
+ * {@link MultiQueueStateActionPriorityQueue}, and the model.
+ * <p>
+ * Workers that find the queue empty, or that have spent the budget given with
+ * {@link #setSweepStartStateAction(StateAction, long)}, park until a new sweep start is set
+ * with {@link #setSweepStartStateAction(StateAction)}, until {@link #wakeUp()} is called,
+ * or until a working worker finds more queued (state, action) pairs than there are
+ * working workers. Two workers may back up the same (state, action) at once, in which
+ * case the value is recomputed if the other one wrote it first.
+ */
+public class ParallelPrioritizedSweeping {
+
+	private final PrioritizedSweeping prioritizedSweeping;
+	private final List<PlanningExecutor<StateAction>> workers = new ArrayList<>();
+	private boolean isStarted = false;
+
+	public ParallelPrioritizedSweeping(PrioritizedSweeping prioritizedSweeping, int numThreads) {
+		if (numThreads <= 0) {
+			throw new IllegalArgumentException("Number of threads must be positive");
+		}
+		this.prioritizedSweeping = prioritizedSweeping;
+		for (int i = 0; i < numThreads; i++) {
+			workers.add(new PlanningExecutor<>(new Sweeper(), "Sweeper-" + i));
+		}
+	}
+
+	public synchronized void start() {
+		if (isStarted) {
+			throw new IllegalStateException("Already started");
+		}
+		prioritizedSweeping.initialize();
+		isStarted = true;
+		for (PlanningExecutor<StateAction> worker : workers) {
+			worker.start();
+		}
+	}
+
+	/**
+	 * Stops the workers and waits for them to finish their current iterations.
+	 */
+	public synchronized void stop() {
+		for (PlanningExecutor<StateAction> worker : workers) {
+			worker.stop();
+		}
+	}
+
+	/**
+	 * Hands the (state, action) the next iteration starts from to a worker, which
+	 * wakes up if it was idle. Doesn't wait for the workers.
+	 */
+	public void setSweepStartStateAction(StateAction stateAction) {
+		workers.get(0).publishStart(stateAction);
+	}
+
+	/**
+	 * Hands the sweep start to a worker like {@link #setSweepStartStateAction(StateAction)},
+	 * and lets all workers sweep for <tt>budgetNanos</tt> from now, e.g. until the next decision.
+	 */
+	public void setSweepStartStateAction(StateAction stateAction, long budgetNanos) {
+		for (int i = 1; i < workers.size(); i++) {
+			workers.get(i).setBudget(budgetNanos);
+		}
+		workers.get(0).publishStart(stateAction, budgetNanos);
+	}
+
+	/**
+	 * Wakes up the idle workers to sweep from the sweep start and the queue,
+	 * e.g. after adding to the queue from another thread.
+	 */
+	public void wakeUp() {
+		for (PlanningExecutor<StateAction> worker : workers) {
+			worker.wakeUp();
+		}
+	}
+
+	/**
+	 * @return <tt>true</tt> if all workers are waiting for work and the queue is empty
+	 */
+	public boolean isIdle() {
+		return getNumberOfIdleWorkers() == workers.size() && prioritizedSweeping.getPriorityQueue().isEmpty();
+	}
+
+	/**
+	 * @return the total number of iterations i.e. Q-value backups performed by the workers
+	 */
+	public long getNumberOfIterations() {
+		long iterations = 0;
+		for (PlanningExecutor<StateAction> worker : workers) {
+			iterations += worker.getNumberOfIterations();
+		}
+		return iterations;
+	}
+
+	/**
+	 * @return the planning throughput counters of each worker
+	 */
+	public List<PlanningExecutor<StateAction>> getWorkers() {
+		return Collections.unmodifiableList(workers);
+	}
+
+	public int getNumberOfThreads() {
+		return workers.size();
+	}
+
+	public PrioritizedSweeping getPrioritizedSweeping() {
+		return prioritizedSweeping;
+	}
+
+
+	private int getNumberOfIdleWorkers() {
+		int numIdle = 0;
+		for (PlanningExecutor<StateAction> worker : workers) {
+			if (worker.isIdle()) {
+				numIdle++;
+			}
+		}
+		return numIdle;
+	}
+
+	private class Sweeper implements PlanningExecutor.Planner<StateAction> {
+
+		@Override
+		public void setStart(StateAction stateAction) {
+			prioritizedSweeping.setSweepStartStateAction(stateAction);
+		}
+
+		@Override
+		public int plan(long deadlineNanos) {
+			int iterations = prioritizedSweeping.performIterationsUntil(deadlineNanos).getNumberOfIterations();
+			if (iterations > 0) {
+				int numIdle = getNumberOfIdleWorkers();
+				if (numIdle > 0 && prioritizedSweeping.getPriorityQueue().size() > workers.size() - numIdle) {
+					wakeUp();
+				}
+			}
+			return iterations;
+		}
+
+	}
+
+}
@@ -1,6 +1,7 @@
 package org.atorma.robot.learning.prioritizedsweeping;
 
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.atorma.robot.discretization.StateDiscretizer;
 import org.atorma.robot.learning.*;
@@ -12,26 +13,51 @@ public class PrioritizedSweeping implements DiscretePolicy {
 	
 	public static final double DEFAULT_Q_VALUE_CHANGE_THRESHOLD = 1E-5;
 	public static final double DEFAULT_DISCOUNT_FACTOR = 1.0;
+	public static final int ITERATIONS_PER_CLOCK_CHECK = 16;
 
 	private QTable qTable;
+	private ConcurrentArrayQTable concurrentQTable; // same as qTable if it's thread-safe
 	private PrioritizedSweepingModel model;
+	private CompiledPrioritizedSweepingModel compiledModel; // same as model if it's compiled
+	private SmallBackups smallBackups; // created on first use with a compiled model
 	private StateDiscretizer stateDiscretizer;
-	private DiscretizingStateActionPriorityQueue stateActionQueue;
+	private StateActionPriorityQueue stateActionQueue;
 	private double discountFactor = DEFAULT_DISCOUNT_FACTOR;
 	private double qValueChangeThreshold = DEFAULT_Q_VALUE_CHANGE_THRESHOLD;
 	boolean isInitialized = false;
 
-	private StateAction sweepStartStateAction;
+	private final AtomicReference<StateAction> sweepStartStateAction = new AtomicReference<>();
 	
+	// Successor state ids of a backup, reused by each sweeping thread and grown as needed
+	private final ThreadLocal<int[]> toStateIdsScratch = new ThreadLocal<>();
 	
+	
+	/**
+	 * Sets the (state, action) the next iteration starts from. Can be called
+	 * from another thread than the one performing the iterations, e.g. by
+	 * a controller while a planner thread sweeps a thread-safe {@link QTable}
+	 * such as {@link ConcurrentArrayQTable}.
+	 */
 	public void setSweepStartStateAction(StateAction stateAction) {
-		this.sweepStartStateAction = stateAction;
+		this.sweepStartStateAction.set(stateAction);
 	}
 	
 	public void clearPriorityQueue() {
-		this.stateActionQueue = new DiscretizingStateActionPriorityQueue(stateDiscretizer);
+		if (stateActionQueue != null) {
+			stateActionQueue.clear();
+		} else {
+			this.stateActionQueue = new DiscretizingStateActionPriorityQueue(stateDiscretizer);
+		}
 	}
 
+	/**
+	 * Performs at most <tt>num</tt> iterations, each updating the Q-value of the sweep
+	 * start (state, action) or of the (state, action) polled from the priority queue.
+	 * Can be called from several threads at once if the Q-table and the priority queue 
+	 * are thread-safe, see {@link ParallelPrioritizedSweeping}.
+	 * 
+	 * @return the number of iterations performed, less than <tt>num</tt> if the queue ran empty
+	 */
 	public int performIterations(int num) {
 		if (!isInitialized) {
 			initialize();
@@ -40,52 +66,195 @@ public class PrioritizedSweeping implements DiscretePolicy {
 		int i;
 		for (i = 0; i < num; i++) {
 			
-			if (stateActionQueue.isEmpty() && sweepStartStateAction == null) {
-				return 0;
-			}
-			
-			StateAction stateAction;
-			if (sweepStartStateAction != null) {
-				stateAction = sweepStartStateAction;
-				sweepStartStateAction = null;
-			} else {
+			// Reading first keeps the sweeping threads from writing the reference each iteration 
+			StateAction stateAction = sweepStartStateAction.get() != null ? sweepStartStateAction.getAndSet(null) : null;
+			if (stateAction == null) {
 				stateAction = stateActionQueue.pollMin();
+				if (stateAction == null) {
+					return i;
+				}
 			}
 			
-			Set<StochasticTransitionReward> transitions = model.getOutgoingTransitions(stateAction);
-			if (transitions.isEmpty()) { 
+			boolean hasTransitions = compiledModel != null ? backUpCompiled(stateAction) : backUp(stateAction);
+			if (!hasTransitions) {
 				break;
 			}
-			
-			int stateId = stateDiscretizer.getId(stateAction.getState());
-			int actionId = stateAction.getAction().getId();
-			DiscretizedStateAction stateActionId = new DiscretizedStateAction(stateId, actionId);
-			double oldQ = qTable.getValue(stateActionId);
-			
-			double updatedQ = 0;
-			for (StochasticTransitionReward tr : transitions) {
-				int toStateId = stateDiscretizer.getId(tr.getToState());
-				updatedQ += tr.getProbability() * ( tr.getReward() + discountFactor*qTable.getMaxValueInState(toStateId) );
+		}
+		return i;
+	}
+	
+	/**
+	 * Performs iterations until the deadline, a {@link System#nanoTime()} value, or until the
+	 * queue runs empty. The clock is read every {@value #ITERATIONS_PER_CLOCK_CHECK} iterations,
+	 * so the deadline may be overrun by that many backups.
+	 */
+	public PlanningResult performIterationsUntil(long deadlineNanos) {
+		long start = System.nanoTime();
+		long now = start;
+		int iterations = 0;
+		while (deadlineNanos - now > 0) {
+			int performed = performIterations(ITERATIONS_PER_CLOCK_CHECK);
+			iterations += performed;
+			now = System.nanoTime();
+			if (performed < ITERATIONS_PER_CLOCK_CHECK && stateActionQueue.isEmpty()) {
+				return new PlanningResult(iterations, now - start, false);
 			}
-			qTable.setValue(stateActionId, updatedQ);
-				
-			double qValueChange = Math.abs(updatedQ - oldQ);
+		}
+		return new PlanningResult(iterations, now - start, true);
+	}
+	
+	/**
+	 * Alternative to {@link #performIterations(int)} that propagates value changes with small backups:
+	 * each transition caches the successor value its predecessor's Q-value was computed with, and
+	 * when a state is polled, each incoming transition corrects its predecessor's Q-value by
+	 * the probability-weighted change of the cached value instead of recomputing the sum over
+	 * all successors. Converges to the same Q-values. The queue is internal and holds states
+	 * rather than (state, action) pairs, and the sweep start (state, action) gets a full backup.
+	 * <p>
+	 * Requires a {@link CompiledPrioritizedSweepingModel}, whose transition changes the small
+	 * backups listen to. Not thread-safe, and not to be mixed with {@link #performIterations(int)}
+	 * on the same Q-table since those don't update the cached values.
+	 * 
+	 * @return the number of states polled, less than <tt>num</tt> if the queue ran empty
+	 */
+	public int performSmallBackups(int num) {
+		if (compiledModel == null) {
+			throw new IllegalStateException("Small backups require a " + CompiledPrioritizedSweepingModel.class.getSimpleName());
+		}
+		if (smallBackups == null) {
+			smallBackups = new SmallBackups(this, compiledModel);
+			compiledModel.addListener(smallBackups);
+		}
+		return smallBackups.perform(num, sweepStartStateAction.getAndSet(null));
+	}
+	
+	private boolean backUp(StateAction stateAction) {
+		Set<StochasticTransitionReward> transitions = model.getOutgoingTransitions(stateAction);
+		if (transitions.isEmpty()) { 
+			return false;
+		}
+		
+		// Each state is discretized at most once per backup: the polled state carries its id
+		// and the successors are discretized here even if the Q-value is recomputed
+		int stateId = IndexedStateAction.getStateId(stateAction, stateDiscretizer);
+		int actionId = stateAction.getAction().getId();
+		int[] toStateIds = getToStateIdsScratch(transitions.size());
+		int i = 0;
+		for (StochasticTransitionReward tr : transitions) {
+			toStateIds[i++] = tr.getToStateId(stateDiscretizer);
+		}
+		
+		double oldQ = qTable.getValue(stateId, actionId);
+		double updatedQ = getUpdatedQValue(transitions, toStateIds);
+		if (concurrentQTable != null) {
+			// Another thread may have updated the value from newer successor values meanwhile 
+			while (!concurrentQTable.compareAndSetValue(stateId, actionId, oldQ, updatedQ)) {
+				oldQ = qTable.getValue(stateId, actionId);
+				updatedQ = getUpdatedQValue(transitions, toStateIds);
+			}
+		} else {
+			qTable.setValue(stateId, actionId, updatedQ);
+		}
 			
-			if (qValueChange > qValueChangeThreshold) {
-				for (StochasticTransitionReward predecessor : model.getIncomingTransitions(stateAction.getState())) {
-					if (qValueChange * predecessor.getProbability() > qValueChangeThreshold) {
-						// Our priority queue stores minimum priority first and priority must be integer
-						int priority = (int) Math.round(-qValueChange * predecessor.getProbability() / qValueChangeThreshold);
-						stateActionQueue.addOrDecreasePriority(predecessor.getFromStateAction(), priority);
-					}
+		double qValueChange = Math.abs(updatedQ - oldQ);
+		
+		if (qValueChange > qValueChangeThreshold) {
+			for (StochasticTransitionReward predecessor : model.getIncomingTransitions(stateAction.getState())) {
+				if (qValueChange * predecessor.getProbability() > qValueChangeThreshold) {
+					// Our priority queue stores minimum priority first
+					double priority = -qValueChange * predecessor.getProbability();
+					StateAction fromStateAction = new IndexedStateAction(predecessor.getFromState(), predecessor.getAction(), 
+							predecessor.getFromStateId(stateDiscretizer), predecessor.getAction().getId());
+					stateActionQueue.addOrDecreasePriority(fromStateAction, priority);
 				}
 			}
 		}
-		return i;
+		return true;
 	}
 	
-	private void initialize() {
-		this.stateActionQueue = new DiscretizingStateActionPriorityQueue(stateDiscretizer);
+	// Same as backUp() but walks the compiled arrays
+	private boolean backUpCompiled(StateAction stateAction) {
+		int stateId = IndexedStateAction.getStateId(stateAction, stateDiscretizer);
+		int actionId = stateAction.getAction().getId();
+		CompiledPrioritizedSweepingModel.Graph graph = compiledModel.getGraph();
+		if (graph.states[stateId] == null) {
+			compiledModel.addState(stateAction.getState());
+			graph = compiledModel.getGraph();
+		}
+		int key = stateId*compiledModel.getNumberOfActions() + actionId;
+		int start = graph.successorStart[key];
+		int end = graph.successorStart[key + 1];
+		if (start == end) {
+			return false;
+		}
+		
+		double oldQ = qTable.getValue(stateId, actionId);
+		double updatedQ = getUpdatedQValue(graph, key, start, end);
+		if (concurrentQTable != null) {
+			while (!concurrentQTable.compareAndSetValue(stateId, actionId, oldQ, updatedQ)) {
+				oldQ = qTable.getValue(stateId, actionId);
+				updatedQ = getUpdatedQValue(graph, key, start, end);
+			}
+		} else {
+			qTable.setValue(stateId, actionId, updatedQ);
+		}
+		
+		double qValueChange = Math.abs(updatedQ - oldQ);
+		
+		if (qValueChange > qValueChangeThreshold) {
+			for (int i = graph.predecessorStart[stateId]; i < graph.predecessorStart[stateId + 1]; i++) {
+				int predecessorKey = graph.predecessorKeys[i];
+				double probability = graph.rowWeights.get(predecessorKey).probabilities[graph.predecessorEdges[i] - graph.successorStart[predecessorKey]];
+				if (qValueChange * probability > qValueChangeThreshold) {
+					stateActionQueue.addOrDecreasePriority(graph.stateActions[predecessorKey], -qValueChange * probability);
+				}
+			}
+		}
+		return true;
+	}
+	
+	private int[] getToStateIdsScratch(int size) {
+		int[] toStateIds = toStateIdsScratch.get();
+		if (toStateIds == null || toStateIds.length < size) {
+			toStateIds = new int[size];
+			toStateIdsScratch.set(toStateIds);
+		}
+		return toStateIds;
+	}
+	
+	// The ids of the transitions' successors are in the beginning of toStateIds
+	private double getUpdatedQValue(Set<StochasticTransitionReward> transitions, int[] toStateIds) {
+		double updatedQ = 0;
+		int i = 0;
+		for (StochasticTransitionReward tr : transitions) {
+			int toStateId = toStateIds[i++];
+			updatedQ += tr.getProbability() * ( tr.getReward() + discountFactor*qTable.getMaxValueInState(toStateId) );
+		}
+		return updatedQ;
+	}
+	
+	private double getUpdatedQValue(CompiledPrioritizedSweepingModel.Graph graph, int key, int start, int end) {
+		CompiledPrioritizedSweepingModel.RowWeights weights = graph.rowWeights.get(key);
+		double updatedQ = 0;
+		for (int i = start; i < end; i++) {
+			int toStateId = graph.successorStateIds[i];
+			updatedQ += weights.probabilities[i - start] * ( weights.rewards[i - start] + discountFactor*qTable.getMaxValueInState(toStateId) );
+		}
+		return updatedQ;
+	}
+	
+	// The cached values are only valid for the model and Q-table they were computed from
+	private void resetSmallBackups() {
+		if (smallBackups != null) {
+			compiledModel.removeListener(smallBackups);
+			smallBackups = null;
+		}
+	}
+	
+	void initialize() {
+		if (stateActionQueue == null) {
+			this.stateActionQueue = new DiscretizingStateActionPriorityQueue(stateDiscretizer);
+		}
 		isInitialized = true;
 	}
 	
@@ -105,6 +274,7 @@ public class PrioritizedSweeping implements DiscretePolicy {
 		if (discountFactor < 0 || discountFactor > 1) {
 			throw new IllegalArgumentException("Illegal discount factor " + discountFactor);
 		}
+		resetSmallBackups();
 		this.discountFactor = discountFactor;
 	}
 
@@ -112,8 +282,15 @@ public class PrioritizedSweeping implements DiscretePolicy {
 		return model;
 	}
 
+	/**
+	 * Sets the model to sweep. With a {@link CompiledPrioritizedSweepingModel} the iterations
+	 * read the transitions from its arrays, and its state discretizer must be the same as
+	 * the one set here.
+	 */
 	public void setModel(PrioritizedSweepingModel model) {
+		resetSmallBackups();
 		this.model = model;
+		this.compiledModel = model instanceof CompiledPrioritizedSweepingModel ? (CompiledPrioritizedSweepingModel) model : null;
 	}
 	
 	public QTable getQTable() {
@@ -121,7 +298,9 @@ public class PrioritizedSweeping implements DiscretePolicy {
 	}
 
 	public void setQTable(QTable qTable) {
+		resetSmallBackups();
 		this.qTable = qTable;
+		this.concurrentQTable = qTable instanceof ConcurrentArrayQTable ? (ConcurrentArrayQTable) qTable : null;
 	}
 
 	public StateDiscretizer getStateDiscretizer() {
@@ -140,10 +319,20 @@ public class PrioritizedSweeping implements DiscretePolicy {
 		this.qValueChangeThreshold = qValueChangeThreshold;
 	}
 
-	public DiscretizingStateActionPriorityQueue getPriorityQueue() {
+	public StateActionPriorityQueue getPriorityQueue() {
 		return this.stateActionQueue;
 	}
 
+	/**
+	 * Sets the queue of (state, action) pairs to sweep, by default one backed by
+	 * a Fibonacci heap. {@link IndexedHeapStateActionPriorityQueue} is faster when
+	 * the number of states is known. {@link LogBucketStateActionPriorityQueue} 
+	 * trades exact ordering for constant time operations on large queues.
+	 */
+	public void setPriorityQueue(StateActionPriorityQueue priorityQueue) {
+		this.stateActionQueue = priorityQueue;
+	}
+
 	
 	
 }
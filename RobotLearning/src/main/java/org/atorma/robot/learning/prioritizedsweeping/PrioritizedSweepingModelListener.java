@@ -0,0 +1,22 @@
+package org.atorma.robot.learning.prioritizedsweeping;
+
+import org.atorma.robot.mdp.StateAction;
+
+/**
+ * Gets notified when the transitions of a {@link PrioritizedSweepingModel} change,
+ * e.g. by {@link CompiledPrioritizedSweepingModel} to update its cached transitions.
+ */
+public interface PrioritizedSweepingModelListener {
+
+	/**
+	 * The outgoing transitions of the (state, action), and of the (state, action)s that have the
+	 * same discretization, have changed. Called on the thread that changed the model.
+	 */
+	void transitionsChanged(StateAction fromStateAction);
+
+	/**
+	 * Any transitions may have changed.
+	 */
+	void modelChanged();
+
+}
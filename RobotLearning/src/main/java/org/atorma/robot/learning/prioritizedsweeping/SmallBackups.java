@@ -0,0 +1,154 @@
+package org.atorma.robot.learning.prioritizedsweeping;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import org.atorma.robot.learning.QTable;
+import org.atorma.robot.mdp.StateAction;
+
+/**
+ * Prioritized sweeping with small backups, see {@link PrioritizedSweeping#performSmallBackups(int)}.
+ * <p>
+ * For each transition (s, a) -> s' of the compiled model we cache the value of s' that Q(s, a)
+ * has been computed with, so that Q(s, a) = sum over s' of p(s'|s, a)*(r + discountFactor*cached value).
+ * When the value of s' changes, each predecessor Q-value is corrected by the change of its cached
+ * value, weighted by the probability, instead of recomputing the whole expectation. The priority
+ * queue holds states whose value has changed since their predecessors were last corrected.
+ * Patched transition rows and the sweep start (state, action) get a full backup from the cached
+ * values, and a recompiled model starts the caches anew.
+ */
+class SmallBackups implements PrioritizedSweepingModelListener {
+
+	private final PrioritizedSweeping prioritizedSweeping;
+	private final CompiledPrioritizedSweepingModel model;
+	private final int numActions;
+	private final IndexedHeapStateActionPriorityQueue stateQueue; // keyed by state id
+	private final Queue<StateAction> patchedStateActions = new ConcurrentLinkedQueue<>();
+
+	private CompiledPrioritizedSweepingModel.Graph graph;
+	private double[] transitionValues; // cached successor value of each transition of the graph
+	private double[] propagatedValues; // value of each state when its predecessors were last corrected
+
+	SmallBackups(PrioritizedSweeping prioritizedSweeping, CompiledPrioritizedSweepingModel model) {
+		this.prioritizedSweeping = prioritizedSweeping;
+		this.model = model;
+		this.numActions = model.getNumberOfActions();
+		this.stateQueue = new IndexedHeapStateActionPriorityQueue(model.getStateDiscretizer(), 1);
+	}
+
+	/**
+	 * @return the number of states whose value change was propagated to their predecessors
+	 */
+	int perform(int num, StateAction sweepStartStateAction) {
+		QTable qTable = prioritizedSweeping.getQTable();
+		double discountFactor = prioritizedSweeping.getDiscountFactor();
+		double threshold = prioritizedSweeping.getQValueChangeThreshold();
+
+		int startKey = sweepStartStateAction != null ? getKey(sweepStartStateAction) : -1;
+		CompiledPrioritizedSweepingModel.Graph current = model.getGraph();
+		if (startKey >= 0 && current.states[startKey / numActions] == null) {
+			model.addState(sweepStartStateAction.getState()); // recompiles the model
+			current = model.getGraph();
+		}
+		if (current != graph) {
+			initialize(current, qTable, discountFactor, threshold);
+		}
+		StateAction patched;
+		while ((patched = patchedStateActions.poll()) != null) {
+			int key = getKey(patched);
+			backUp(key, qTable, discountFactor, threshold, false);
+		}
+		if (startKey >= 0) {
+			backUp(startKey, qTable, discountFactor, threshold, true);
+		}
+
+		for (int i = 0; i < num; i++) {
+			IndexedStateAction polled = (IndexedStateAction) stateQueue.pollMin();
+			if (polled == null) {
+				return i;
+			}
+			int stateId = polled.stateId;
+			double value = qTable.getMaxValueInState(stateId);
+			propagatedValues[stateId] = value;
+
+			for (int p = graph.predecessorStart[stateId]; p < graph.predecessorStart[stateId + 1]; p++) {
+				int transition = graph.predecessorEdges[p];
+				double valueChange = value - transitionValues[transition];
+				if (valueChange == 0) {
+					continue;
+				}
+				transitionValues[transition] = value;
+				int key = graph.predecessorKeys[p];
+				int predecessorId = key / numActions;
+				int actionId = key % numActions;
+				double probability = graph.rowWeights.get(key).probabilities[transition - graph.successorStart[key]];
+				double qValue = qTable.getValue(predecessorId, actionId) + discountFactor*probability*valueChange;
+				qTable.setValue(predecessorId, actionId, qValue);
+				enqueueIfChanged(key, qTable, threshold);
+			}
+		}
+		return num;
+	}
+
+	@Override
+	public void transitionsChanged(StateAction fromStateAction) {
+		patchedStateActions.add(fromStateAction);
+	}
+
+	@Override
+	public void modelChanged() {
+		// Seen as a new graph in perform()
+	}
+
+
+	// Caches the current state values and backs up every (state, action) from them
+	private void initialize(CompiledPrioritizedSweepingModel.Graph graph, QTable qTable, double discountFactor, double threshold) {
+		this.graph = graph;
+		int numStates = graph.predecessorStart.length - 1;
+		propagatedValues = new double[numStates];
+		for (int stateId = 0; stateId < numStates; stateId++) {
+			propagatedValues[stateId] = qTable.getMaxValueInState(stateId);
+		}
+		transitionValues = new double[graph.successorStateIds.length];
+		for (int transition = 0; transition < transitionValues.length; transition++) {
+			transitionValues[transition] = propagatedValues[graph.successorStateIds[transition]];
+		}
+		stateQueue.clear();
+		patchedStateActions.clear();
+		for (int key = 0; key < graph.stateActions.length; key++) {
+			backUp(key, qTable, discountFactor, threshold, false);
+		}
+	}
+
+	// Recomputes Q(s, a) from the cached successor values, first updating them if requested
+	private void backUp(int key, QTable qTable, double discountFactor, double threshold, boolean isCacheUpdated) {
+		int start = graph.successorStart[key];
+		int end = graph.successorStart[key + 1];
+		if (start == end) {
+			return;
+		}
+		CompiledPrioritizedSweepingModel.RowWeights weights = graph.rowWeights.get(key);
+		double qValue = 0;
+		for (int transition = start; transition < end; transition++) {
+			if (isCacheUpdated) {
+				transitionValues[transition] = qTable.getMaxValueInState(graph.successorStateIds[transition]);
+			}
+			qValue += weights.probabilities[transition - start] * (weights.rewards[transition - start] + discountFactor*transitionValues[transition]);
+		}
+		qTable.setValue(key / numActions, key % numActions, qValue);
+		enqueueIfChanged(key, qTable, threshold);
+	}
+
+	private void enqueueIfChanged(int key, QTable qTable, double threshold) {
+		int stateId = key / numActions;
+		double change = Math.abs(qTable.getMaxValueInState(stateId) - propagatedValues[stateId]);
+		if (change > threshold) {
+			stateQueue.addOrDecreasePriority(stateId, graph.stateActions[key], -change);
+		}
+	}
+
+	private int getKey(StateAction stateAction) {
+		return IndexedStateAction.getStateId(stateAction, model.getStateDiscretizer())*numActions + stateAction.getAction().getId();
+	}
+
+}
@@ -0,0 +1,36 @@
+package org.atorma.robot.learning.prioritizedsweeping;
+
+import org.atorma.robot.mdp.StateAction;
+
+/**
+ * A minimum priority queue of <tt>StateAction</tt>s for {@link PrioritizedSweeping}. 
+ * The queue holds at most one <tt>StateAction</tt> per discretization i.e. per
+ * (state id, action id) pair. This prevents the queue from growing too large in 
+ * case of continuous states. 
+ */
+public interface StateActionPriorityQueue {
+
+	/**
+	 * Adds a <tt>StateAction</tt> or decreases its priority. The <tt>StateAction</tt>
+	 * is considered to be in the queue if there's any <tt>StateAction</tt> that has 
+	 * an equal <tt>DiscretizedStateAction</tt>. Updating the priority 
+	 * does NOT update the queue <tt>StateAction</tt> instance. An update with higher
+	 * priority than existing does nothing.
+	 */
+	void addOrDecreasePriority(StateAction stateAction, double priority);
+
+	boolean isEmpty();
+
+	/**
+	 * Removes and returns the <tt>StateAction</tt> with minimum priority,
+	 * or <tt>null</tt> if the queue is empty.
+	 */
+	StateAction pollMin();
+
+	StateAction peekMin();
+
+	int size();
+
+	void clear();
+
+}
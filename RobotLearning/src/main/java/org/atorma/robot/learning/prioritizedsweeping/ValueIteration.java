@@ -0,0 +1,208 @@
+package org.atorma.robot.learning.prioritizedsweeping;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import org.atorma.robot.discretization.StateDiscretizer;
+import org.atorma.robot.learning.ArrayQTable;
+import org.atorma.robot.learning.QTable;
+import org.atorma.robot.mdp.State;
+
+/**
+ * Solves the Q-values of a model small enough to enumerate by synchronous value iteration,
+ * e.g. to precompute initial Q-values for {@link PrioritizedSweeping} or Q-learning offline.
+ * The model is compiled with {@link CompiledPrioritizedSweepingModel} from the states added with
+ * {@link #addState(State)} and the states reachable from them.
+ * <p>
+ * Each sweep computes every Q-value from the state values of the previous sweep, so the
+ * states can be split over the threads of a fork/join pool without any locking. Sweeping
+ * stops when no Q-value changes more than the convergence threshold or after the maximum
+ * number of sweeps. A (state, action) without transitions keeps its value in the Q-table,
+ * and the value of a state is the maximum Q-value in the Q-table's row of the state, as
+ * in prioritized sweeping.
+ */
+public class ValueIteration {
+
+	public static final double DEFAULT_CONVERGENCE_THRESHOLD = 1E-6;
+	public static final int DEFAULT_MAX_SWEEPS = 10000;
+
+	private static final int STATES_PER_TASK = 256;
+
+	private final CompiledPrioritizedSweepingModel model;
+	private final int numStates;
+	private final int numActions;
+	private double discountFactor = PrioritizedSweeping.DEFAULT_DISCOUNT_FACTOR;
+	private double convergenceThreshold = DEFAULT_CONVERGENCE_THRESHOLD;
+	private int maxSweeps = DEFAULT_MAX_SWEEPS;
+	private ForkJoinPool pool;
+
+	/**
+	 * @param model
+	 * 	the model, compiled unless it already is a {@link CompiledPrioritizedSweepingModel}
+	 * 	over the same discretization
+	 * @param stateDiscretizer
+	 * 	discretizer of the states
+	 * @param numActions
+	 * 	number of actions, action ids are in the range [0..numActions)
+	 */
+	public ValueIteration(PrioritizedSweepingModel model, StateDiscretizer stateDiscretizer, int numActions) {
+		this.model = model instanceof CompiledPrioritizedSweepingModel
+				? (CompiledPrioritizedSweepingModel) model
+				: new CompiledPrioritizedSweepingModel(model, stateDiscretizer, numActions);
+		this.numStates = stateDiscretizer.getNumberOfStates();
+		this.numActions = numActions;
+	}
+
+	/**
+	 * Adds the state and the states reachable from it to the states to solve.
+	 */
+	public void addState(State state) {
+		model.addState(state);
+	}
+
+	/**
+	 * Sweeps until the Q-values converge, starting from and writing the results into
+	 * the given table, e.g. an {@link ArrayQTable} of the same numbers of states and actions.
+	 *
+	 * @return the number of sweeps performed
+	 */
+	public int solve(QTable qTable) {
+		CompiledPrioritizedSweepingModel.Graph graph = model.getGraph();
+		double[] qValues = new double[numStates*numActions];
+		for (int stateId = 0; stateId < numStates; stateId++) {
+			for (int actionId = 0; actionId < numActions; actionId++) {
+				qValues[stateId*numActions + actionId] = qTable.getValue(stateId, actionId);
+			}
+		}
+		double[] stateValues = new double[numStates];
+		double[] nextStateValues = new double[numStates];
+		updateStateValues(qValues, stateValues, 0, numStates);
+
+		ForkJoinPool pool = this.pool != null ? this.pool : new ForkJoinPool();
+		int sweeps = 0;
+		try {
+			double maxChange = Double.POSITIVE_INFINITY;
+			while (maxChange > convergenceThreshold && sweeps < maxSweeps) {
+				maxChange = pool.invoke(new SweepTask(graph, qValues, stateValues, nextStateValues, 0, numStates));
+				double[] swap = stateValues;
+				stateValues = nextStateValues;
+				nextStateValues = swap;
+				sweeps++;
+			}
+		} finally {
+			if (pool != this.pool) {
+				pool.shutdown();
+			}
+		}
+
+		for (int key = 0; key < qValues.length; key++) {
+			if (graph.successorStart[key] < graph.successorStart[key + 1]) {
+				qTable.setValue(key / numActions, key % numActions, qValues[key]);
+			}
+		}
+		return sweeps;
+	}
+
+	public CompiledPrioritizedSweepingModel getCompiledModel() {
+		return model;
+	}
+
+	public double getDiscountFactor() {
+		return discountFactor;
+	}
+
+	public void setDiscountFactor(double discountFactor) {
+		if (discountFactor < 0 || discountFactor > 1) {
+			throw new IllegalArgumentException("Illegal discount factor " + discountFactor);
+		}
+		this.discountFactor = discountFactor;
+	}
+
+	public double getConvergenceThreshold() {
+		return convergenceThreshold;
+	}
+
+	public void setConvergenceThreshold(double convergenceThreshold) {
+		this.convergenceThreshold = convergenceThreshold;
+	}
+
+	public int getMaxSweeps() {
+		return maxSweeps;
+	}
+
+	public void setMaxSweeps(int maxSweeps) {
+		this.maxSweeps = maxSweeps;
+	}
+
+	/**
+	 * Sets the pool that runs the sweeps, by default a new pool with as many threads as there are cores.
+	 */
+	public void setPool(ForkJoinPool pool) {
+		this.pool = pool;
+	}
+
+
+	private void updateStateValues(double[] qValues, double[] stateValues, int fromStateId, int toStateId) {
+		for (int stateId = fromStateId; stateId < toStateId; stateId++) {
+			double max = Double.NEGATIVE_INFINITY;
+			for (int key = stateId*numActions; key < (stateId + 1)*numActions; key++) {
+				max = Math.max(max, qValues[key]);
+			}
+			stateValues[stateId] = max;
+		}
+	}
+
+	// Backs up the Q-values of a range of states and returns the maximum change
+	private class SweepTask extends RecursiveTask<Double> {
+
+		private static final long serialVersionUID = 1L;
+
+		private final CompiledPrioritizedSweepingModel.Graph graph;
+		private final double[] qValues;
+		private final double[] stateValues;
+		private final double[] nextStateValues;
+		private final int fromStateId;
+		private final int toStateId;
+
+		SweepTask(CompiledPrioritizedSweepingModel.Graph graph, double[] qValues, double[] stateValues,
+				double[] nextStateValues, int fromStateId, int toStateId) {
+			this.graph = graph;
+			this.qValues = qValues;
+			this.stateValues = stateValues;
+			this.nextStateValues = nextStateValues;
+			this.fromStateId = fromStateId;
+			this.toStateId = toStateId;
+		}
+
+		@Override
+		protected Double compute() {
+			if (toStateId - fromStateId > STATES_PER_TASK) {
+				int middle = (fromStateId + toStateId) >>> 1;
+				SweepTask left = new SweepTask(graph, qValues, stateValues, nextStateValues, fromStateId, middle);
+				SweepTask right = new SweepTask(graph, qValues, stateValues, nextStateValues, middle, toStateId);
+				left.fork();
+				double rightChange = right.compute();
+				return Math.max(left.join(), rightChange);
+			}
+
+			double maxChange = 0;
+			for (int key = fromStateId*numActions; key < toStateId*numActions; key++) {
+				int start = graph.successorStart[key];
+				int end = graph.successorStart[key + 1];
+				if (start == end) {
+					continue;
+				}
+				CompiledPrioritizedSweepingModel.RowWeights weights = graph.rowWeights.get(key);
+				double updatedQ = 0;
+				for (int i = start; i < end; i++) {
+					updatedQ += weights.probabilities[i - start] * (weights.rewards[i - start] + discountFactor*stateValues[graph.successorStateIds[i]]);
+				}
+				maxChange = Math.max(maxChange, Math.abs(updatedQ - qValues[key]));
+				qValues[key] = updatedQ;
+			}
+			updateStateValues(qValues, nextStateValues, fromStateId, toStateId);
+			return maxChange;
+		}
+	}
+
+}
@@ -0,0 +1,174 @@
+package org.atorma.robot.learning.replay;
+
+import java.util.Random;
+
+import org.atorma.robot.mdp.DiscretizedTransitionReward;
+
+/**
+ * A fixed-size buffer of observed transitions for experience replay. The transitions
+ * are stored field by field in primitive ring buffer arrays, so that adding and
+ * sampling do not allocate. When the buffer is full, the oldest transition is overwritten.
+ * <p>
+ * Sampling is either uniform or prioritized. In prioritized sampling a transition is
+ * sampled with probability proportional to <tt>(|TD error| + {@link #MIN_PRIORITY})^priorityExponent</tt>.
+ * New transitions get the highest priority seen so far so that they are replayed at least once
+ * before their TD error is known. The user reports the TD errors of replayed samples with
+ * {@link #setTdError(int, double)}, as {@link org.atorma.robot.learning.QLearning#updateBatch(ReplayBuffer, int)} does.
+ * <p>
+ * Samples are referred to by their index in the buffer, which stays valid until
+ * the transition is overwritten.
+ */
+public class ReplayBuffer {
+
+	public static final double MIN_PRIORITY = 1E-3; // keeps transitions of zero TD error replayable
+
+	private final int capacity;
+	private final int[] fromStateIds;
+	private final int[] actionIds;
+	private final int[] toStateIds;
+	private final double[] rewards;
+	private int next = 0;
+	private int size = 0;
+
+	private final boolean isPrioritized;
+	private final double priorityExponent;
+	private final SumTree priorities;
+	private double maxPriority = 1;
+
+	private Random random = new Random();
+
+	/**
+	 * Creates a buffer with uniform sampling.
+	 */
+	public ReplayBuffer(int capacity) {
+		this(capacity, false, 0);
+	}
+
+	/**
+	 * Creates a buffer with prioritized sampling.
+	 *
+	 * @param priorityExponent
+	 * 	how much the TD error affects the sampling probability, 0 meaning uniform sampling
+	 */
+	public ReplayBuffer(int capacity, double priorityExponent) {
+		this(capacity, true, priorityExponent);
+	}
+
+	private ReplayBuffer(int capacity, boolean isPrioritized, double priorityExponent) {
+		if (capacity <= 0) {
+			throw new IllegalArgumentException("Capacity must be positive");
+		}
+		if (priorityExponent < 0) {
+			throw new IllegalArgumentException("Priority exponent must be non-negative");
+		}
+		this.capacity = capacity;
+		this.fromStateIds = new int[capacity];
+		this.actionIds = new int[capacity];
+		this.toStateIds = new int[capacity];
+		this.rewards = new double[capacity];
+		this.isPrioritized = isPrioritized;
+		this.priorityExponent = priorityExponent;
+		this.priorities = isPrioritized ? new SumTree(capacity) : null;
+	}
+
+	public void add(DiscretizedTransitionReward transition) {
+		add(transition.getFromStateId(), transition.getByActionId(), transition.getToStateId(), transition.getReward());
+	}
+
+	public void add(int fromStateId, int actionId, int toStateId, double reward) {
+		int index = next;
+		fromStateIds[index] = fromStateId;
+		actionIds[index] = actionId;
+		toStateIds[index] = toStateId;
+		rewards[index] = reward;
+		if (isPrioritized) {
+			priorities.set(index, maxPriority);
+		}
+
+		next = (next + 1) % capacity;
+		if (size < capacity) {
+			size++;
+		}
+	}
+
+	/**
+	 * Returns the index of a randomly sampled transition.
+	 *
+	 * @throws IllegalStateException
+	 * 	if the buffer is empty
+	 */
+	public int sample() {
+		if (size == 0) {
+			throw new IllegalStateException("Replay buffer is empty");
+		}
+		if (isPrioritized) {
+			return priorities.find(random.nextDouble() * priorities.getTotal());
+		}
+		return random.nextInt(size);
+	}
+
+	/**
+	 * Sets the priority of the transition at the index from its latest TD error.
+	 * Does nothing if sampling is uniform.
+	 */
+	public void setTdError(int index, double tdError) {
+		if (!isPrioritized) {
+			return;
+		}
+		double priority = Math.pow(Math.abs(tdError) + MIN_PRIORITY, priorityExponent);
+		priorities.set(index, priority);
+		if (priority > maxPriority) {
+			maxPriority = priority;
+		}
+	}
+
+	public int getFromStateId(int index) {
+		return fromStateIds[index];
+	}
+
+	public int getActionId(int index) {
+		return actionIds[index];
+	}
+
+	public int getToStateId(int index) {
+		return toStateIds[index];
+	}
+
+	public double getReward(int index) {
+		return rewards[index];
+	}
+
+	public double getPriority(int index) {
+		return isPrioritized ? priorities.get(index) : 1;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	public int getCapacity() {
+		return capacity;
+	}
+
+	public boolean isPrioritized() {
+		return isPrioritized;
+	}
+
+	public void clear() {
+		next = 0;
+		size = 0;
+		maxPriority = 1;
+		if (isPrioritized) {
+			priorities.clear();
+		}
+	}
+
+	public void setRandom(Random random) {
+		this.random = random;
+	}
+
+}
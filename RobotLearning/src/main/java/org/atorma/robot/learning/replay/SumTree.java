@@ -0,0 +1,86 @@
+package org.atorma.robot.learning.replay;
+
+import java.util.Arrays;
+
+/**
+ * A binary tree of non-negative priorities where each inner node holds the sum of its
+ * children. Setting a priority and finding the index at a given cumulative priority
+ * both take O(log n) time, which makes sampling indices in proportion
+ * to their priorities cheap.
+ */
+public class SumTree {
+
+	private final int size;
+	private final int numLeaves; // power of two
+	private final double[] tree; // root at 1, children of i at 2i and 2i+1
+
+	public SumTree(int size) {
+		if (size <= 0) {
+			throw new IllegalArgumentException("Size must be positive");
+		}
+		this.size = size;
+		this.numLeaves = Integer.highestOneBit(size) == size ? size : Integer.highestOneBit(size) << 1;
+		this.tree = new double[2 * numLeaves];
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public double getTotal() {
+		return tree[1];
+	}
+
+	public double get(int index) {
+		checkIndex(index);
+		return tree[numLeaves + index];
+	}
+
+	public void set(int index, double priority) {
+		checkIndex(index);
+		if (!(priority >= 0)) {
+			throw new IllegalArgumentException("Illegal priority " + priority);
+		}
+		int node = numLeaves + index;
+		tree[node] = priority;
+		for (node >>>= 1; node >= 1; node >>>= 1) {
+			tree[node] = tree[2*node] + tree[2*node + 1];
+		}
+	}
+
+	/**
+	 * Returns the index whose cumulative priority interval contains <tt>value</tt>, i.e.
+	 * the smallest index i with <tt>value &lt; priority(0) + ... + priority(i)</tt>.
+	 * Never returns an index of zero priority when the total is positive.
+	 *
+	 * @param value
+	 * 	value in [0, {@link #getTotal()})
+	 */
+	public int find(double value) {
+		if (!(getTotal() > 0)) {
+			throw new IllegalStateException("All priorities are zero");
+		}
+		int node = 1;
+		while (node < numLeaves) {
+			int left = 2*node;
+			// Rounding errors in the sums may leave value past the last non-zero leaf
+			if (value >= tree[left] && tree[left + 1] > 0) {
+				value -= tree[left];
+				node = left + 1;
+			} else {
+				node = left;
+			}
+		}
+		return node - numLeaves;
+	}
+
+	public void clear() {
+		Arrays.fill(tree, 0);
+	}
+
+	private void checkIndex(int index) {
+		if (index < 0 || index >= size) {
+			throw new ArrayIndexOutOfBoundsException(index);
+		}
+	}
+}
@@ -0,0 +1,11 @@
+package org.atorma.robot.mdp;
+
+/**
+ * A state with a 64-bit hash that is kept up to date as the state is built, so that
+ * reading it is constant time. States with the same hash are taken to be the same state
+ * e.g. by a {@link org.atorma.robot.learning.montecarlo.TranspositionTable}.
+ */
+public interface HashedState extends State {
+
+	long getStateHash();
+}
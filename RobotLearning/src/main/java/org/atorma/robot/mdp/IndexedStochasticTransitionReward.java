@@ -0,0 +1,43 @@
+package org.atorma.robot.mdp;
+
+import org.atorma.robot.discretization.StateDiscretizer;
+
+/**
+ * A {@link StochasticTransitionReward} that carries the ids its creator already gave its
+ * states, so that e.g. prioritized sweeping doesn't discretize the states again. The ids
+ * are only used when asked with the same discretizer that gave them.
+ */
+public class IndexedStochasticTransitionReward extends StochasticTransitionReward {
+
+	/** Id of a state that wasn't discretized when the transition was created */
+	public static final int UNKNOWN_ID = -1;
+	
+	private final StateDiscretizer stateDiscretizer;
+	private final int fromStateId;
+	private final int toStateId;
+	
+	public IndexedStochasticTransitionReward(Transition tr, double reward, double probability, 
+			StateDiscretizer stateDiscretizer, int fromStateId, int toStateId) {
+		super(tr, reward, probability);
+		this.stateDiscretizer = stateDiscretizer;
+		this.fromStateId = fromStateId;
+		this.toStateId = toStateId;
+	}
+	
+	@Override
+	public int getFromStateId(StateDiscretizer stateDiscretizer) {
+		if (stateDiscretizer == this.stateDiscretizer && fromStateId != UNKNOWN_ID) {
+			return fromStateId;
+		}
+		return super.getFromStateId(stateDiscretizer);
+	}
+	
+	@Override
+	public int getToStateId(StateDiscretizer stateDiscretizer) {
+		if (stateDiscretizer == this.stateDiscretizer && toStateId != UNKNOWN_ID) {
+			return toStateId;
+		}
+		return super.getToStateId(stateDiscretizer);
+	}
+	
+}
@@ -30,13 +30,18 @@ public class StateAction {
 		return result;
 	}
 
+	/**
+	 * Equal to any <tt>StateAction</tt>, including subclasses, with an equal state and action.
+	 * To keep this symmetric, subclasses must not override it: they may only add what's derived
+	 * from the state and action, and compare equal to plain <tt>StateAction</tt>s.
+	 */
 	@Override
 	public boolean equals(Object obj) {
 		if (this == obj)
 			return true;
 		if (obj == null)
 			return false;
-		if (getClass() != obj.getClass())
+		if (!(obj instanceof StateAction))
 			return false;
 		StateAction other = (StateAction) obj;
 		if (action == null) {
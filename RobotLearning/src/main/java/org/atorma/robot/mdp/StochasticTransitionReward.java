@@ -1,5 +1,6 @@
 package org.atorma.robot.mdp;
 
+import org.atorma.robot.discretization.StateDiscretizer;
 
 public class StochasticTransitionReward extends TransitionReward {
 
@@ -23,6 +24,22 @@ public class StochasticTransitionReward extends TransitionReward {
 	public double getProbability() {
 		return probability;
 	}
+	
+	/**
+	 * Returns the id of the from state given by the discretizer. 
+	 * See {@link IndexedStochasticTransitionReward} for transitions that know their ids.
+	 */
+	public int getFromStateId(StateDiscretizer stateDiscretizer) {
+		return stateDiscretizer.getId(getFromState());
+	}
+	
+	/**
+	 * Returns the id of the to state given by the discretizer.
+	 * See {@link IndexedStochasticTransitionReward} for transitions that know their ids.
+	 */
+	public int getToStateId(StateDiscretizer stateDiscretizer) {
+		return stateDiscretizer.getId(getToState());
+	}
 
 	
 }
@@ -12,6 +12,10 @@ import org.atorma.robot.mdp.State;
  * each of which holds max one object distance estimate or observation.
  * The effect of agent's moves can be simulated to get new, estimated
  * models.
+ * <p>
+ * A 64-bit hash of the objects, quantized by {@link #HASH_DISTANCE_QUANTUM}
+ * and {@link #HASH_ANGLE_QUANTUM_DEG}, is updated as they are added, so that models
+ * reached by different moves can be matched in constant time despite rounding errors.
  * 
  * @see TrackedObject
  * @see #afterAgentMoves(double)
@@ -20,8 +24,11 @@ import org.atorma.robot.mdp.State;
 public class ObjectTrackingModel implements State {
 	
 	public static final int DEFAULT_NUMBER_OF_SECTORS = 36;
+	public static final double HASH_DISTANCE_QUANTUM = 0.1;
+	public static final double HASH_ANGLE_QUANTUM_DEG = 0.1;
 	
 	private Map<Integer, TrackedObject> objectsBySector;
+	private long objectsHash; // XOR of the hashes of the objects in their sectors
 	private int numberOfSectors;
 	private CircleSectorDiscretizer circleSectorDiscretizer;
 	
@@ -47,7 +54,7 @@ public class ObjectTrackingModel implements State {
 	 */
 	public void addObservation(TrackedObject obj) {
 		int sectorIndex = circleSectorDiscretizer.discretize(obj.getAngleDeg());
-		objectsBySector.put(sectorIndex, obj);
+		putObject(sectorIndex, obj);
 	}
 
 	public Collection<TrackedObject> getObjects() {
@@ -100,9 +107,39 @@ public class ObjectTrackingModel implements State {
 		int sectorIndex = circleSectorDiscretizer.discretize(obj.getAngleDeg());
 		TrackedObject existing = objectsBySector.get(sectorIndex);
 		if (existing == null || existing.getDistance() > obj.getDistance()) {
-			objectsBySector.put(sectorIndex, obj);
+			putObject(sectorIndex, obj);
 		}
 	}
+	
+	private void putObject(int sectorIndex, TrackedObject obj) {
+		TrackedObject replaced = objectsBySector.put(sectorIndex, obj);
+		if (replaced != null) {
+			objectsHash ^= hash(sectorIndex, replaced);
+		}
+		objectsHash ^= hash(sectorIndex, obj);
+	}
+	
+	/**
+	 * Returns the hash of the objects' sectors and their quantized distances and angles.
+	 * Models with the same objects have the same hash, regardless of the order they were
+	 * added in. Kept up to date as objects are added, so this doesn't iterate the objects.
+	 */
+	public long getObjectsHash() {
+		return objectsHash;
+	}
+	
+	private static long hash(int sectorIndex, TrackedObject obj) {
+		long h = sectorIndex;
+		h = h*0x9E3779B97F4A7C15L + Math.round(obj.getDistance() / HASH_DISTANCE_QUANTUM);
+		h = h*0x9E3779B97F4A7C15L + Math.round(obj.getAngleDeg() / HASH_ANGLE_QUANTUM_DEG);
+		// Finalization step of MurmurHash3
+		h ^= h >>> 33;
+		h *= 0xff51afd7ed558ccdL;
+		h ^= h >>> 33;
+		h *= 0xc4ceb9fe1a85ec53L;
+		h ^= h >>> 33;
+		return h;
+	}
 
 	public TrackedObject getObjectInDirectionDegrees(double sectorDegree) {
 		int sectorIndex = circleSectorDiscretizer.discretize(sectorDegree);
@@ -1,13 +1,16 @@
 package org.atorma.robot.objecttrackingbumper;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
 
-import org.apache.commons.math3.distribution.EnumeratedDistribution;
-import org.apache.commons.math3.stat.Frequency;
-import org.apache.commons.math3.util.Pair;
 import org.atorma.robot.discretization.StateDiscretizer;
 import org.atorma.robot.learning.montecarlo.ForwardModel;
 import org.atorma.robot.learning.prioritizedsweeping.PrioritizedSweepingModel;
+import org.atorma.robot.learning.prioritizedsweeping.PrioritizedSweepingModelListener;
 import org.atorma.robot.mdp.*;
 import org.atorma.robot.simplebumper.BumperAction;
 
@@ -45,7 +48,11 @@ public class BumperModel implements PrioritizedSweepingModel, ForwardModel {
 	private double defaultPriorParamCollision = 1;
 	private double defaultPriorParamNoCollision = 2;
 	
-	private Frequency collStats = new Frequency(); // Observed data N(collision | state, action)
+	// Observed data N(collision | state, action). Concurrent so that a planner thread can read
+	// collision probabilities while the controller thread updates the model.
+	private ConcurrentMap<CollisionObservation, AtomicLong> collStats = new ConcurrentHashMap<>();
+	
+	private List<PrioritizedSweepingModelListener> listeners = new CopyOnWriteArrayList<>();
 
 	/**
 	 * Creates bumper world model where collision probabilities are learned for each (state id, action id)
@@ -76,7 +83,8 @@ public class BumperModel implements PrioritizedSweepingModel, ForwardModel {
 		
 		ModeledBumperState fromState = (ModeledBumperState) stateAction.getState();
 		BumperAction action = (BumperAction) stateAction.getAction();
-		double collisionProbability = getCollisionProbability(fromState, action);
+		int fromStateId = stateDiscretizer.getId(fromState);
+		double collisionProbability = getCollisionProbability(fromStateId, action.getId());
 		
 		// In case of collision being the result, if the agent wasn't already collided
 		// we model that the action was carried out entirely (e.g. moved the full distance).
@@ -88,15 +96,19 @@ public class BumperModel implements PrioritizedSweepingModel, ForwardModel {
 			toStateWhenCollided = (ModeledBumperState) fromState.afterAction(action);
 		}
 		toStateWhenCollided.setCollided(true);
-		double reward = rewardFunction.getReward(new Transition(stateAction, toStateWhenCollided));
-		StochasticTransitionReward transitionRewardWhenCollided = new StochasticTransitionReward(fromState, action, toStateWhenCollided, reward, collisionProbability);
+		Transition transitionWhenCollided = new Transition(stateAction, toStateWhenCollided);
+		double reward = rewardFunction.getReward(transitionWhenCollided);
+		StochasticTransitionReward transitionRewardWhenCollided = new IndexedStochasticTransitionReward(transitionWhenCollided, reward, collisionProbability, 
+				stateDiscretizer, fromStateId, IndexedStochasticTransitionReward.UNKNOWN_ID);
 		transitions.add(transitionRewardWhenCollided);
 		
 		// In case of not colliding, the action changes the state
 		ModeledBumperState toStateWhenNotCollided = (ModeledBumperState) fromState.afterAction(action);
 		toStateWhenNotCollided.setCollided(false);
-		reward = rewardFunction.getReward(new Transition(stateAction, toStateWhenNotCollided));
-		StochasticTransitionReward transitionRewardWhenNotCollided = new StochasticTransitionReward(fromState, action, toStateWhenNotCollided, reward, 1 - collisionProbability);
+		Transition transitionWhenNotCollided = new Transition(stateAction, toStateWhenNotCollided);
+		reward = rewardFunction.getReward(transitionWhenNotCollided);
+		StochasticTransitionReward transitionRewardWhenNotCollided = new IndexedStochasticTransitionReward(transitionWhenNotCollided, reward, 1 - collisionProbability, 
+				stateDiscretizer, fromStateId, IndexedStochasticTransitionReward.UNKNOWN_ID);
 		transitions.add(transitionRewardWhenNotCollided);
 		
 		return transitions;
@@ -117,8 +129,10 @@ public class BumperModel implements PrioritizedSweepingModel, ForwardModel {
 					fromState.setCollided(wasCollided);
 					Transition tr = new Transition(fromState, action, toState);
 					double reward = rewardFunction.getReward(tr);
-					double collisionProbability = getCollisionProbability(fromState, action);
-					transitions.add(new StochasticTransitionReward(tr, reward, collisionProbability));
+					int fromStateId = stateDiscretizer.getId(fromState);
+					double collisionProbability = getCollisionProbability(fromStateId, action.getId());
+					transitions.add(new IndexedStochasticTransitionReward(tr, reward, collisionProbability, 
+							stateDiscretizer, fromStateId, IndexedStochasticTransitionReward.UNKNOWN_ID));
 				}
 			}
 			
@@ -134,8 +148,10 @@ public class BumperModel implements PrioritizedSweepingModel, ForwardModel {
 					fromState.setCollided(wasCollided);
 					Transition tr = new Transition(fromState, action, toState);
 					double reward = rewardFunction.getReward(tr);
-					double noCollisionProbability = 1 - getCollisionProbability(fromState, action);
-					transitions.add(new StochasticTransitionReward(tr, reward, noCollisionProbability));
+					int fromStateId = stateDiscretizer.getId(fromState);
+					double noCollisionProbability = 1 - getCollisionProbability(fromStateId, action.getId());
+					transitions.add(new IndexedStochasticTransitionReward(tr, reward, noCollisionProbability, 
+							stateDiscretizer, fromStateId, IndexedStochasticTransitionReward.UNKNOWN_ID));
 				}
 			}
 		}
@@ -163,7 +179,28 @@ public class BumperModel implements PrioritizedSweepingModel, ForwardModel {
 		ModeledBumperState toState = (ModeledBumperState) transition.getToState();
 		
 		CollisionObservation collisionObservation = new CollisionObservation(fromStateId, transition.getAction().getId(), toState.isCollided());
-		collStats.addValue(collisionObservation);
+		AtomicLong count = collStats.get(collisionObservation);
+		if (count == null) {
+			AtomicLong newCount = new AtomicLong();
+			count = collStats.putIfAbsent(collisionObservation, newCount);
+			if (count == null) {
+				count = newCount;
+			}
+		}
+		count.incrementAndGet();
+		
+		for (PrioritizedSweepingModelListener listener : listeners) {
+			listener.transitionsChanged(transition.getFromStateAction());
+		}
+	}
+	
+	/**
+	 * Adds a listener that is notified when collision probabilities change,
+	 * e.g. a {@link org.atorma.robot.learning.prioritizedsweeping.CompiledPrioritizedSweepingModel}
+	 * of this model.
+	 */
+	public void addListener(PrioritizedSweepingModelListener listener) {
+		listeners.add(listener);
 	}
 
 	
@@ -178,11 +215,19 @@ public class BumperModel implements PrioritizedSweepingModel, ForwardModel {
 		double alpha = getPriorParamCollision(stateId, actionId);
 		double beta = getPriorParamNoCollision(stateId, actionId);
 	
-		double probability = (collStats.getCount(collided) + alpha - 1) / 
-				             (collStats.getCount(collided) + alpha + collStats.getCount(notCollided) + beta - 2);
+		long numCollided = getCount(collided);
+		long numNotCollided = getCount(notCollided);
+	
+		double probability = (numCollided + alpha - 1) / 
+				             (numCollided + alpha + numNotCollided + beta - 2);
 		return probability;
 	}
 	
+	private long getCount(CollisionObservation observation) {
+		AtomicLong count = collStats.get(observation);
+		return count != null ? count.get() : 0;
+	}
+	
 
 	private double getPriorParamCollision(int stateId, int actionId) {
 		Double alpha = priorParamCollision.get(new DiscretizedStateAction(stateId, actionId));
@@ -207,11 +252,19 @@ public class BumperModel implements PrioritizedSweepingModel, ForwardModel {
 	public void setDefaultCollisionProbabilityPrior(double priorParamCollision, double priorParamNoCollision) {
 		this.defaultPriorParamCollision = priorParamCollision;
 		this.defaultPriorParamNoCollision = priorParamNoCollision;
+		fireModelChanged();
 	}
 	
 	public void setCollisionProbabilityPrior(DiscretizedStateAction sa, double priorParamCollision, double priorParamNoCollision) {
 		this.priorParamCollision.put(sa, priorParamCollision);
 		this.priorParamNoCollision.put(sa, priorParamNoCollision);
+		fireModelChanged();
+	}
+	
+	private void fireModelChanged() {
+		for (PrioritizedSweepingModelListener listener : listeners) {
+			listener.modelChanged();
+		}
 	}
 	
 	public double getDefaultPriorParamCollision() {
@@ -225,14 +278,18 @@ public class BumperModel implements PrioritizedSweepingModel, ForwardModel {
 	
 	@Override
 	public TransitionReward simulateAction(StateAction fromStateAction) {
-		Set<StochasticTransitionReward> outgoing = getOutgoingTransitions(fromStateAction);
-
-		List<Pair<StochasticTransitionReward, Double>> pmf = new ArrayList<>(outgoing.size());
-		for (StochasticTransitionReward tr : outgoing) {
-			pmf.add(new Pair<>(tr, tr.getProbability()));
+		// Each thread samples with its own generator, so that parallel planners don't share one
+		double sample = ThreadLocalRandom.current().nextDouble();
+		double cumulativeProbability = 0;
+		StochasticTransitionReward sampled = null;
+		for (StochasticTransitionReward tr : getOutgoingTransitions(fromStateAction)) {
+			sampled = tr;
+			cumulativeProbability += tr.getProbability();
+			if (sample < cumulativeProbability) {
+				break;
+			}
 		}
-		
-		return new EnumeratedDistribution<>(pmf).sample();
+		return sampled;
 	}
 	
 	
@@ -1,11 +1,14 @@
 package org.atorma.robot.objecttrackingbumper;
 
+import org.atorma.robot.mdp.HashedState;
 import org.atorma.robot.objecttracking.ObjectTrackingModel;
 import org.atorma.robot.objecttracking.TrackedObject;
 import org.atorma.robot.simplebumper.*;
 
-public class ModeledBumperState extends ObjectTrackingModel implements CollisionState {
+public class ModeledBumperState extends ObjectTrackingModel implements CollisionState, HashedState {
 
+	private static final long COLLIDED_HASH = 0x2545F4914F6CDD1DL;
+	
 	private boolean isCollided;
 	
 	
@@ -42,6 +45,14 @@ public class ModeledBumperState extends ObjectTrackingModel implements Collision
 		this.isCollided = isCollided;
 	}
 	
+	/**
+	 * Returns the hash of the tracked objects combined with the collision flag. 
+	 */
+	@Override
+	public long getStateHash() {
+		return isCollided ? getObjectsHash() ^ COLLIDED_HASH : getObjectsHash();
+	}
+	
 	public ModeledBumperState afterActionAndObservation(BumperAction previousAction, BumperPercept nextPercept) {
 		ModeledBumperState updatedState;
 		if (this.isCollided && nextPercept.isCollided()) {
@@ -83,11 +94,8 @@ public class ModeledBumperState extends ObjectTrackingModel implements Collision
 	
 	@Override
 	public int hashCode() {
-		final int prime = 31;
-		int result = 1;
-		result = prime * result + (isCollided ? 1231 : 1237);
-		result = prime * result + getObjects().hashCode();
-		return result;
+		long hash = getStateHash();
+		return (int) (hash ^ (hash >>> 32));
 	}
 
 	@Override
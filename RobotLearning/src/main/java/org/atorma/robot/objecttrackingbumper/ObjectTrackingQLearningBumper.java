@@ -1,10 +1,13 @@
 package org.atorma.robot.objecttrackingbumper;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.Arrays;
 import java.util.List;
 
 import org.atorma.robot.DiscreteRobotController;
 import org.atorma.robot.learning.*;
+import org.atorma.robot.learning.replay.ReplayBuffer;
 import org.atorma.robot.mdp.DiscretizedTransitionReward;
 import org.atorma.robot.mdp.StateActionDiscretizer;
 import org.atorma.robot.objecttracking.CircleSector;
@@ -23,6 +26,12 @@ public class ObjectTrackingQLearningBumper implements DiscreteRobotController {
 	private EligibilityTraces traces = new ReplacingEligibilityTraces(discountFactor, traceDecay);
 	private QTable qTable;
 	private QLearning qLearning;
+	private MappedQTable persistentQTable;
+	private int checkpointInterval = 100; // steps between forcing persistent Q-values to disk
+	private int steps = 0;
+	
+	private ReplayBuffer replayBuffer = new ReplayBuffer(10000);
+	private int replaysPerStep = 10; // replayed observations per real observation
 	
 	private double epsilon = 0.1;
 	private EpsilonGreedyPolicy epsilonGreedyPolicy;
@@ -37,11 +46,24 @@ public class ObjectTrackingQLearningBumper implements DiscreteRobotController {
 	
 	
 	public ObjectTrackingQLearningBumper(String logFile) {
-		this();
+		this((File) null);
+		logWriter = new BumperLogWriter(logFile); 
+	}
+	
+	/**
+	 * Stores the Q-values in <tt>qTableFile</tt> so that learning continues
+	 * from the values of earlier runs.
+	 */
+	public ObjectTrackingQLearningBumper(String logFile, File qTableFile) {
+		this(qTableFile);
 		logWriter = new BumperLogWriter(logFile); 
 	}
 	
 	public ObjectTrackingQLearningBumper() {
+		this((File) null);
+	}
+	
+	private ObjectTrackingQLearningBumper(File qTableFile) {
 		List<CircleSector> obstacleSectors = Arrays.asList(
 				new CircleSector(-180, -60),
 				new CircleSector(-60, 60),
@@ -51,7 +73,20 @@ public class ObjectTrackingQLearningBumper implements DiscreteRobotController {
 		
 		transitionDiscretizer = new StateActionDiscretizer(stateDiscretizer, rewardFunction);
 		
-		qTable = new ArrayQTable(stateDiscretizer.getNumberOfStates(), BumperAction.values().length);
+		if (qTableFile != null) {
+			try {
+				persistentQTable = MappedQTable.open(qTableFile, stateDiscretizer.getNumberOfStates(), BumperAction.values().length, ArrayQTable.DEFAULT_Q_VALUE);
+			} catch (IOException e) {
+				throw new RuntimeException(e);
+			}
+			setQTable(persistentQTable);
+		} else {
+			setQTable(new ArrayQTable(stateDiscretizer.getNumberOfStates(), BumperAction.values().length));
+		}
+	}
+	
+	private void setQTable(QTable qTable) {
+		this.qTable = qTable;
 		qLearning = new QLearning(learningRate, traces, qTable);
 //		qLearning = new QLearning(learningRate, discountFactor, qTable);
 		epsilonGreedyPolicy = new EpsilonGreedyPolicy(epsilon, qLearning, BumperAction.values());
@@ -70,7 +105,14 @@ public class ObjectTrackingQLearningBumper implements DiscreteRobotController {
 			currentState = previousState.afterActionAndObservation(previousAction, currentPercept);
 			DiscretizedTransitionReward transition = transitionDiscretizer.discretizeAndComputeReward(previousState, previousAction, currentState);
 			qLearning.update(transition);
+			replayBuffer.add(transition);
+			qLearning.updateBatch(replayBuffer, replaysPerStep);
 			accumulatedReward += transition.getReward();
+			
+			steps++;
+			if (persistentQTable != null && steps % checkpointInterval == 0) {
+				persistentQTable.checkpoint();
+			}
 		} else {
 			currentState = ModeledBumperState.initialize(currentPercept);
 		}
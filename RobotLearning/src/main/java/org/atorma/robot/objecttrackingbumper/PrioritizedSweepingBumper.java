@@ -3,9 +3,9 @@ package org.atorma.robot.objecttrackingbumper;
 import java.util.*;
 
 import org.atorma.robot.DiscreteRobotController;
-import org.atorma.robot.learning.ArrayQTable;
+import org.atorma.robot.learning.ConcurrentArrayQTable;
 import org.atorma.robot.learning.QTable;
-import org.atorma.robot.learning.prioritizedsweeping.PrioritizedSweeping;
+import org.atorma.robot.learning.prioritizedsweeping.*;
 import org.atorma.robot.mdp.*;
 import org.atorma.robot.objecttracking.CircleSector;
 import org.atorma.robot.policy.EpsilonGreedyPolicy;
@@ -20,6 +20,7 @@ public class PrioritizedSweepingBumper implements DiscreteRobotController {
 	private QTable qTable;
 	private double discountFactor = 0.9;
 	private PrioritizedSweeping prioritizedSweeping;
+	private ParallelPrioritizedSweeping parallelSweeping;
 
 	private double epsilon = 0.1;
 	private EpsilonGreedyPolicy epsilonGreedyPolicy;
@@ -32,7 +33,10 @@ public class PrioritizedSweepingBumper implements DiscreteRobotController {
 	
 	private BumperLogWriter logWriter;
 	
-	private volatile boolean actionRequested;
+	// Sweeping gets the time the robot last took to ask for the next action
+	private static final long DEFAULT_PLANNING_NANOS = 40000000;
+	private long planningNanos = DEFAULT_PLANNING_NANOS;
+	private long actionReturnedNanos;
 	
 	
 	public PrioritizedSweepingBumper(String logFile) {
@@ -47,28 +51,42 @@ public class PrioritizedSweepingBumper implements DiscreteRobotController {
 				new CircleSector(60, 180));
 		stateDiscretizer = new BumperStateDiscretizer(obstacleSectors);
 		
-		qTable = new ArrayQTable(stateDiscretizer.getNumberOfStates(), BumperAction.values().length);
+		// The sweeper threads write Q-values while the controller reads them without locking.
+		// The max value cache serves the sweeper, which asks for the max of every successor.
+		qTable = new ConcurrentArrayQTable(stateDiscretizer.getNumberOfStates(), BumperAction.values().length, 
+				ConcurrentArrayQTable.DEFAULT_Q_VALUE, true);
 		
 		model = new BumperModel(rewardFunction, stateDiscretizer);
 		model.setDefaultCollisionProbabilityPrior(2, 10);
 		BumperModelUtils.setPriorCollisionProbabilities(model, stateDiscretizer, 0.8, 0.99);
 		
+		// Sweep the transitions compiled into arrays, patched when the model is updated
+		CompiledPrioritizedSweepingModel compiledModel = new CompiledPrioritizedSweepingModel(model, stateDiscretizer, BumperAction.values().length);
+		model.addListener(compiledModel);
+		
 		prioritizedSweeping = new PrioritizedSweeping();
 		prioritizedSweeping.setDiscountFactor(discountFactor);
 		prioritizedSweeping.setStateDiscretizer(stateDiscretizer);
-		prioritizedSweeping.setModel(model);
+		prioritizedSweeping.setModel(compiledModel);
 		prioritizedSweeping.setQValueChangeThreshold(0.01);
 		prioritizedSweeping.setQTable(qTable);
 		
+		// Leave a core for the controller
+		int numSweeperThreads = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+		prioritizedSweeping.setPriorityQueue(new MultiQueueStateActionPriorityQueue(stateDiscretizer, BumperAction.values().length, 2*numSweeperThreads));
+		
 		epsilonGreedyPolicy = new EpsilonGreedyPolicy(epsilon, qTable, BumperAction.values());
 		
-		Thread sweeperThread = new Thread(new Sweeper());
-		sweeperThread.start();
+		parallelSweeping = new ParallelPrioritizedSweeping(prioritizedSweeping, numSweeperThreads);
+		parallelSweeping.start();
 	}
 
 	@Override
 	public int getActionId(double[] currentPerceptValues) {
 		
+		if (actionReturnedNanos != 0) {
+			planningNanos = System.nanoTime() - actionReturnedNanos;
+		}
 		
 		BumperPercept currentPercept = new BumperPercept(currentPerceptValues);
 		if (currentPercept.isCollided()) {
@@ -88,21 +106,15 @@ public class PrioritizedSweepingBumper implements DiscreteRobotController {
 			currentState = ModeledBumperState.initialize(currentPercept);
 		}
 		
-		BumperAction action;
-		actionRequested = true;
-		synchronized (prioritizedSweeping) { // synchronize on observedTransitions, qTable, prioritizedSweeping
-			
-			if (transitionReward != null) {
-				model.update(transitionReward);
-			}
+		// Model, Q-table and sweep start are thread-safe, so the sweepers keep running meanwhile
+		if (transitionReward != null) {
+			model.update(transitionReward);
+		}
 
-			int currentStateId = stateDiscretizer.getId(currentState);
-			action = BumperAction.getAction(epsilonGreedyPolicy.getActionId(currentStateId));
-			actionRequested = false;
+		int currentStateId = stateDiscretizer.getId(currentState);
+		BumperAction action = BumperAction.getAction(epsilonGreedyPolicy.getActionId(currentStateId));
 
-			prioritizedSweeping.setSweepStartStateAction(new StateAction(currentState, action));
-			prioritizedSweeping.notify();
-		}
+		parallelSweeping.setSweepStartStateAction(new StateAction(currentState, action), planningNanos);
 		
 		if (logWriter != null) {
 			logWriter.log(accumulatedReward, accumulatedCollisions, currentState.isCollided(), action);
@@ -111,37 +123,8 @@ public class PrioritizedSweepingBumper implements DiscreteRobotController {
 		previousState = currentState;
 		previousAction = action;
 
+		actionReturnedNanos = System.nanoTime();
 		return action.getId();
 	}
-	
-	private class Sweeper implements Runnable {
-		
-		private final int minSweeps = 1; // Increase the number of iterations to ensure minimum
-
-		@Override
-		public void run() {
-			int sweepsBetweenObservations = 0;
-			
-			while (true) {
-				
-				synchronized (prioritizedSweeping) {
-					while (actionRequested) {
-						try {
-							prioritizedSweeping.wait();
-						} catch (InterruptedException e) {}
-//						System.out.println("sweeps between observations " + sweepsBetweenObservations);
-						sweepsBetweenObservations = 0;
-					}
-				}
-				
-				synchronized (prioritizedSweeping) {
-					sweepsBetweenObservations += prioritizedSweeping.performIterations(minSweeps); 
-				}
-				
-			}
-			
-		}
-		
-	}
 
 }
@@ -6,6 +6,8 @@ import org.atorma.robot.DiscreteRobotController;
 import org.atorma.robot.learning.*;
 import org.atorma.robot.learning.montecarlo.QLearningUctPlanning;
 import org.atorma.robot.learning.montecarlo.QLearningUctPlanningParameters;
+import org.atorma.robot.learning.montecarlo.RootParallelUctPlanning;
+import org.atorma.robot.learning.montecarlo.TranspositionTable;
 import org.atorma.robot.mdp.*;
 import org.atorma.robot.objecttracking.CircleSector;
 import org.atorma.robot.simplebumper.*;
@@ -29,11 +31,14 @@ public class QLearningUctPlanningBumper implements DiscreteRobotController {
 	private Random random = new Random();
 	private double epsilon = 0.1;
 	
-	private QLearningUctPlanning uctPlanning;
+	private RootParallelUctPlanning uctPlanning;
+	private int numPlanningThreads = Runtime.getRuntime().availableProcessors();
 	private int planningHorizon = 10;
 	private double learningRatePlanning = 0.2;
 	private double traceDecayPlanning = 0.8;
 	private double uctConstant = (1 + 100)/(1- discountFactor);
+	private double treeDecay = 0.5;
+	private int transpositionTableSize = 100000;
 	
 	private ModeledBumperState previousState;
 	private BumperAction previousAction;
@@ -43,7 +48,10 @@ public class QLearningUctPlanningBumper implements DiscreteRobotController {
 	
 	private BumperLogWriter logWriter;
 	
-	private volatile boolean actionRequested;
+	// Planning gets the time the robot last took to ask for the next action
+	private static final long DEFAULT_PLANNING_NANOS = 40000000;
+	private long planningNanos = DEFAULT_PLANNING_NANOS;
+	private long actionReturnedNanos;
 
 	
 	public QLearningUctPlanningBumper(String logFile) {
@@ -65,29 +73,49 @@ public class QLearningUctPlanningBumper implements DiscreteRobotController {
 		model.setDefaultCollisionProbabilityPrior(2, 10);
 		BumperModelUtils.setPriorCollisionProbabilities(model, stateDiscretizer, 0.8, 0.99);
 		
-		qTable = new ArrayQTable(stateDiscretizer.getNumberOfStates(), BumperAction.values().length);
+		// Updated by the controller thread and read by the planner thread
+		qTable = new ConcurrentArrayQTable(stateDiscretizer.getNumberOfStates(), BumperAction.values().length);
 		traces = new ReplacingEligibilityTraces(discountFactor, traceDecay);
 		qLearning = new QLearning(learningRate, traces, qTable);
 		
-		QLearningUctPlanningParameters uctParams = new QLearningUctPlanningParameters();
-		uctParams.model = model;
-		uctParams.allActions = BumperAction.values();
-		uctParams.stateDiscretizer = stateDiscretizer;
-		uctParams.planningHorizon = planningHorizon;
-		uctParams.learningRate = learningRatePlanning;
-		uctParams.eligibilityTraces = new ReplacingEligibilityTraces(discountFactor, traceDecayPlanning);
-		uctParams.uctConstant = uctConstant;
-		uctParams.longTermQValues = qTable;
-		uctPlanning = new QLearningUctPlanning(uctParams);
-		
-		Thread sweeperThread = new Thread(new Sweeper());
-		sweeperThread.start();
+		// One planning per core, each on its own thread with its own traces and transposition table
+		List<QLearningUctPlanning> plannings = new ArrayList<>();
+		for (int i = 0; i < numPlanningThreads; i++) {
+			TranspositionTable transpositionTable = new TranspositionTable(model, stateDiscretizer, transpositionTableSize);
+			model.addListener(transpositionTable);
+			
+			QLearningUctPlanningParameters uctParams = new QLearningUctPlanningParameters();
+			uctParams.model = transpositionTable;
+			uctParams.allActions = BumperAction.values();
+			uctParams.stateDiscretizer = transpositionTable;
+			uctParams.planningHorizon = planningHorizon;
+			uctParams.learningRate = learningRatePlanning;
+			uctParams.eligibilityTraces = new ReplacingEligibilityTraces(discountFactor, traceDecayPlanning);
+			uctParams.uctConstant = uctConstant;
+			uctParams.longTermQValues = qTable;
+			uctParams.reuseTree = true; // the next state has usually been explored by the previous rollouts
+			uctParams.treeDecay = treeDecay;
+			plannings.add(new QLearningUctPlanning(uctParams));
+		}
+		uctPlanning = new RootParallelUctPlanning(plannings);
+		uctPlanning.start();
+	}
+	
+	/**
+	 * Stops the planner threads and waits for them to finish their current rollouts.
+	 */
+	public void stop() {
+		uctPlanning.stop();
 	}
 
 	
 	@Override
 	public int getActionId(double[] currentPerceptValues) {
 		
+		if (actionReturnedNanos != 0) {
+			planningNanos = System.nanoTime() - actionReturnedNanos;
+		}
+		
 		BumperPercept currentPercept = new BumperPercept(currentPerceptValues);
 		if (currentPercept.isCollided()) {
 			accumulatedCollisions++;
@@ -105,24 +133,19 @@ public class QLearningUctPlanningBumper implements DiscreteRobotController {
 			currentState = ModeledBumperState.initialize(currentPercept);
 		}
 		
-		actionRequested = true;
-		BumperAction action;
-		synchronized(uctPlanning) {
-			if (transitionReward != null) {
-				model.update(transitionReward);
-				qLearning.update(transitionDiscretizer.discretize(transitionReward));
-			}
-			
-			action = (BumperAction) uctPlanning.getPlannedAction(currentState);
-			if (random.nextDouble() < epsilon) {
-				action = BumperAction.values()[random.nextInt(BumperAction.values().length)];
-			}
-			actionRequested = false;
-			
-			uctPlanning.setRolloutStartState(currentState);
-			uctPlanning.notify();
+		// Model and long-term Q-values are thread-safe, so the planner threads keep running meanwhile
+		if (transitionReward != null) {
+			model.update(transitionReward);
+			qLearning.update(transitionDiscretizer.discretize(transitionReward));
 		}
 		
+		// Each planning tree is only accessed by its planner thread, which pauses for reading it
+		BumperAction action = (BumperAction) uctPlanning.getPlannedAction(currentState);
+		if (random.nextDouble() < epsilon) {
+			action = BumperAction.values()[random.nextInt(BumperAction.values().length)];
+		}
+		uctPlanning.setRolloutStartState(currentState, planningNanos);
+		
 		previousState = currentState;
 		previousAction = action;
 		
@@ -130,37 +153,11 @@ public class QLearningUctPlanningBumper implements DiscreteRobotController {
 			logWriter.log(accumulatedReward, accumulatedCollisions, currentState.isCollided(), action);
 		}
 		
+		actionReturnedNanos = System.nanoTime();
 		return action.getId();
 	}
 	
-
-	private class Sweeper implements Runnable {
-		
-		private final int minRollouts = 1;
-
-		@Override
-		public void run() {
-			int rolloutsBetweenActions = 0;
-			
-			while (true) {
-				
-				synchronized (uctPlanning) {
-					while (actionRequested) {
-						try {
-							uctPlanning.wait();
-						} catch (InterruptedException e) {}
-//						System.out.println("Rollouts: " + rolloutsBetweenActions);
-						rolloutsBetweenActions = 0;
-					}
-				}
-				
-				synchronized (uctPlanning) {
-					uctPlanning.performRollouts(minRollouts); // Increase the number to ensure minimum	
-				}
-				rolloutsBetweenActions += minRollouts;
-			}
-			
-		}
-		
+	List<PlanningExecutor<State>> getPlanningWorkers() {
+		return uctPlanning.getWorkers();
 	}
 }
@@ -7,7 +7,6 @@ import java.util.Arrays;
 import org.apache.commons.math3.distribution.EnumeratedIntegerDistribution;
 import org.atorma.robot.learning.QTable;
 import org.atorma.robot.mdp.DiscreteAction;
-import org.atorma.robot.mdp.DiscretizedStateAction;
 
 public class BoltzmannActionSelection implements DiscretePolicy {
 	
@@ -39,8 +38,7 @@ public class BoltzmannActionSelection implements DiscretePolicy {
 	public EnumeratedIntegerDistribution getActionDistribution(int stateId) {
 		double[] probMass = new double[actionIds.length];
 		for (int i = 0; i < actionIds.length; i++) {
-			DiscretizedStateAction stateAction = new DiscretizedStateAction(stateId, actionIds[i]);
-			probMass[i] = exp(qTable.getValue(stateAction)/temperature);
+			probMass[i] = exp(qTable.getValue(stateId, actionIds[i])/temperature);
 		}
 		return new EnumeratedIntegerDistribution(actionIds, probMass);
 	}
@@ -3,12 +3,16 @@ package org.atorma.robot.policy;
 import java.util.*;
 
 import org.atorma.robot.learning.QTable;
+import org.atorma.robot.learning.VisitCountTable;
 import org.atorma.robot.mdp.DiscreteAction;
 import org.atorma.robot.mdp.DiscretizedStateAction;
 
 /**
  * A Q-Table decorator that gives an exploration bonus to the
  * underlying Q-table as in Bakker et al (2006).
+ * <p>
+ * The try counts and the steps when last tried are kept in primitive tables keyed by
+ * (state id, action id), so the <tt>int</tt> overloads do not allocate anything.
  */
 public class DirectedExploration implements QTable {
 	
@@ -16,8 +20,8 @@ public class DirectedExploration implements QTable {
 	private double bonusMultiplier;
 	private double defaultCount;
 	private int[] actionIds;
-	private Map<DiscretizedStateAction, Integer> stepWhenLastTriedMap = new HashMap<>();
-	private Map<DiscretizedStateAction, Integer> timesTriedMap = new HashMap<>();
+	private VisitCountTable stepWhenLastTried = new VisitCountTable(); // step numbers kept as the counts
+	private VisitCountTable timesTried = new VisitCountTable();
 	private int totalTimeSteps = 0;
 	
 	public DirectedExploration(QTable qTable, double bonusMultiplier, double defaultCount, int... actionIds) {
@@ -46,18 +50,32 @@ public class DirectedExploration implements QTable {
 
 	@Override
 	public double getValue(DiscretizedStateAction stateIdActionId) {
-		int stepWhenLastTried = stepWhenLastTriedMap.get(stateIdActionId) != null ? stepWhenLastTriedMap.get(stateIdActionId) : 0;
-		int stepsSinceLastTried = totalTimeSteps - stepWhenLastTried;
-		
-		double timesTried = timesTriedMap.get(stateIdActionId) != null ? timesTriedMap.get(stateIdActionId) : defaultCount;
-		
-		return qTable.getValue(stateIdActionId) + bonusMultiplier*Math.sqrt(stepsSinceLastTried)/timesTried;
+		return qTable.getValue(stateIdActionId) + getExplorationBonus(stateIdActionId.getStateId(), stateIdActionId.getActionId());
 	}
 
 	@Override
 	public void setValue(DiscretizedStateAction stateIdActionId, double qValue) {
 		qTable.setValue(stateIdActionId, qValue);
 	}
+	
+	@Override
+	public double getValue(int stateId, int actionId) {
+		return qTable.getValue(stateId, actionId) + getExplorationBonus(stateId, actionId);
+	}
+
+	@Override
+	public void setValue(int stateId, int actionId, double qValue) {
+		qTable.setValue(stateId, actionId, qValue);
+	}
+	
+	private double getExplorationBonus(int stateId, int actionId) {
+		int stepsSinceLastTried = totalTimeSteps - stepWhenLastTried.getNumberOfVisits(stateId, actionId);
+		
+		int count = timesTried.getNumberOfVisits(stateId, actionId);
+		double timesTried = count > 0 ? count : defaultCount;
+		
+		return bonusMultiplier*Math.sqrt(stepsSinceLastTried)/timesTried;
+	}
 
 	@Override
 	public double getMaxValueInState(int stateId) {
@@ -81,15 +99,13 @@ public class DirectedExploration implements QTable {
 
 
 	public void recordStateAction(DiscretizedStateAction stateIdActionId) {
+		recordStateAction(stateIdActionId.getStateId(), stateIdActionId.getActionId());
+	}
+	
+	public void recordStateAction(int stateId, int actionId) {
 		totalTimeSteps++;
-		stepWhenLastTriedMap.put(stateIdActionId, totalTimeSteps);
-		
-		Integer timesTried = timesTriedMap.get(stateIdActionId);
-		if (timesTried == null) {
-			timesTriedMap.put(stateIdActionId, 1);
-		} else {
-			timesTriedMap.put(stateIdActionId, timesTried + 1);
-		}
+		stepWhenLastTried.setNumberOfVisits(stateId, actionId, totalTimeSteps);
+		timesTried.incrementVisits(stateId, actionId);
 	}
 
 }
@@ -0,0 +1,74 @@
+package org.atorma.robot.learning;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import org.atorma.robot.mdp.DiscretizedStateAction;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ArrayQTableTests {
+
+	private int numStates = 50;
+	private int numActions = 4;
+	private ArrayQTable uncachedTable;
+	private ArrayQTable cachedTable;
+
+	@Before
+	public void setUp() {
+		uncachedTable = new ArrayQTable(numStates, numActions, 1.0);
+		cachedTable = new ArrayQTable(numStates, numActions, 1.0, true);
+	}
+
+	@Test
+	public void max_value_cache_follows_updates() {
+		Random random = new Random(2);
+		for (int i = 0; i < 10000; i++) {
+			DiscretizedStateAction sa = new DiscretizedStateAction(random.nextInt(numStates), random.nextInt(numActions));
+			double q = random.nextInt(5) - 2; // small integers to produce ties
+			uncachedTable.setValue(sa, q);
+			cachedTable.setValue(sa, q);
+
+			int stateId = sa.getStateId();
+			assertEquals(uncachedTable.getMaxValueInState(stateId), cachedTable.getMaxValueInState(stateId), 0);
+		}
+	}
+
+	@Test
+	public void ties_are_broken_exactly_as_without_cache() {
+		Random random = new Random(3);
+		for (int i = 0; i < 500; i++) {
+			DiscretizedStateAction sa = new DiscretizedStateAction(random.nextInt(numStates), random.nextInt(numActions));
+			double q = random.nextInt(3);
+			uncachedTable.setValue(sa, q);
+			cachedTable.setValue(sa, q);
+		}
+
+		uncachedTable.setRandom(new Random(4));
+		cachedTable.setRandom(new Random(4));
+		for (int i = 0; i < 10; i++) {
+			for (int stateId = 0; stateId < numStates; stateId++) {
+				assertEquals(uncachedTable.getActionId(stateId), cachedTable.getActionId(stateId));
+				assertEquals(uncachedTable.getBestActionInState(stateId), cachedTable.getBestActionInState(stateId));
+			}
+		}
+	}
+
+	@Test
+	public void more_than_64_actions() {
+		ArrayQTable table = new ArrayQTable(2, 130, 0, true);
+		table.setValue(new DiscretizedStateAction(1, 129), 2);
+		table.setValue(new DiscretizedStateAction(1, 70), 2);
+		assertEquals(2, table.getMaxValueInState(1), 0);
+		for (int i = 0; i < 20; i++) {
+			int actionId = table.getActionId(1);
+			assertTrue(actionId == 129 || actionId == 70);
+		}
+
+		table.setValue(new DiscretizedStateAction(1, 129), -1);
+		table.setValue(new DiscretizedStateAction(1, 70), -1);
+		assertEquals(0, table.getMaxValueInState(1), 0);
+		assertEquals(0, table.getMaxValueInState(0), 0);
+	}
+}
@@ -0,0 +1,161 @@
+package org.atorma.robot.learning;
+
+import static org.junit.Assert.*;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+public class ConcurrentArrayQTableTests {
+
+	private int numStates = 50;
+	private int numActions = 4;
+
+	@Test
+	public void behaves_like_ArrayQTable() {
+		assertBehavesLikeArrayQTable(new ConcurrentArrayQTable(numStates, numActions, 1.0));
+	}
+
+	@Test
+	public void with_max_value_cache_behaves_like_ArrayQTable() {
+		assertBehavesLikeArrayQTable(new ConcurrentArrayQTable(numStates, numActions, 1.0, true));
+	}
+
+	private void assertBehavesLikeArrayQTable(ConcurrentArrayQTable concurrentTable) {
+		ArrayQTable arrayTable = new ArrayQTable(numStates, numActions, 1.0);
+		Random random = new Random(1);
+
+		for (int i = 0; i < 5000; i++) {
+			int stateId = random.nextInt(numStates);
+			int actionId = random.nextInt(numActions);
+			double q = random.nextInt(5) - 2; // small integers to produce ties
+			concurrentTable.setValue(stateId, actionId, q);
+			arrayTable.setValue(stateId, actionId, q);
+		}
+
+		for (int stateId = 0; stateId < numStates; stateId++) {
+			for (int actionId = 0; actionId < numActions; actionId++) {
+				assertEquals(arrayTable.getValue(stateId, actionId), concurrentTable.getValue(stateId, actionId), 0);
+			}
+			double max = arrayTable.getMaxValueInState(stateId);
+			assertEquals(max, concurrentTable.getMaxValueInState(stateId), 0);
+			assertEquals(max, concurrentTable.getValue(stateId, concurrentTable.getActionId(stateId)), 0);
+		}
+	}
+
+	@Test
+	public void ties_are_broken_uniformly() {
+		ConcurrentArrayQTable table = new ConcurrentArrayQTable(1, numActions);
+		table.setValue(0, 2, -1);
+
+		int[] counts = new int[numActions];
+		for (int i = 0; i < 30000; i++) {
+			counts[table.getActionId(0)]++;
+		}
+
+		assertEquals(0, counts[2]);
+		for (int actionId : new int[] {0, 1, 3}) {
+			assertEquals(10000, counts[actionId], 500);
+		}
+	}
+
+	@Test
+	public void greedy_reads_succeed_while_another_thread_writes() throws InterruptedException {
+		final ConcurrentArrayQTable table = new ConcurrentArrayQTable(numStates, numActions);
+		final AtomicBoolean isWriting = new AtomicBoolean(true);
+		final AtomicReference<Throwable> writerError = new AtomicReference<>();
+
+		Thread writer = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					Random random = new Random(2);
+					while (isWriting.get()) {
+						table.setValue(random.nextInt(numStates), random.nextInt(numActions), random.nextInt(3));
+					}
+				} catch (Throwable t) {
+					writerError.set(t);
+				}
+			}
+		});
+		writer.start();
+
+		try {
+			for (int i = 0; i < 200000; i++) {
+				int stateId = i % numStates;
+				int actionId = table.getActionId(stateId);
+				assertTrue(actionId >= 0 && actionId < numActions);
+				double max = table.getMaxValueInState(stateId);
+				assertTrue(max >= 0 && max <= 2);
+			}
+		} finally {
+			isWriting.set(false);
+			writer.join();
+		}
+		assertNull(writerError.get());
+	}
+
+	@Test
+	public void cached_max_values_are_exact_after_concurrent_writes() throws InterruptedException {
+		// Few states, so that the threads race on the same cached max values
+		final int numContendedStates = 2;
+		final AtomicReference<Throwable> error = new AtomicReference<>();
+
+		for (int round = 0; round < 50; round++) {
+			final ConcurrentArrayQTable table = new ConcurrentArrayQTable(numContendedStates, numActions, 0, true);
+			List<Thread> threads = new ArrayList<>();
+			for (int t = 0; t < 4; t++) {
+				final long seed = 4*round + t;
+				threads.add(new Thread(new Runnable() {
+					@Override
+					public void run() {
+						try {
+							Random random = new Random(seed);
+							for (int i = 0; i < 20000; i++) {
+								int stateId = random.nextInt(numContendedStates);
+								if (random.nextBoolean()) {
+									table.getMaxValueInState(stateId);
+								} else {
+									table.setValue(stateId, random.nextInt(numActions), random.nextInt(5));
+								}
+							}
+						} catch (Throwable t) {
+							error.set(t);
+						}
+					}
+				}));
+			}
+			for (Thread thread : threads) {
+				thread.start();
+			}
+			for (Thread thread : threads) {
+				thread.join();
+			}
+			assertNull(error.get());
+
+			for (int stateId = 0; stateId < numContendedStates; stateId++) {
+				double max = Double.NEGATIVE_INFINITY;
+				for (int actionId = 0; actionId < numActions; actionId++) {
+					max = Math.max(max, table.getValue(stateId, actionId));
+				}
+				assertEquals(max, table.getMaxValueInState(stateId), 0);
+			}
+		}
+	}
+
+	@Test
+	public void compare_and_set_value() {
+		ConcurrentArrayQTable table = new ConcurrentArrayQTable(numStates, numActions, 1.0);
+		assertTrue(table.compareAndSetValue(3, 2, 1.0, 5.0));
+		assertFalse(table.compareAndSetValue(3, 2, 1.0, 7.0));
+		assertEquals(5.0, table.getValue(3, 2), 0);
+		assertEquals(1.0, table.getValue(3, 1), 0);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void too_many_state_action_pairs_rejected() {
+		new ConcurrentArrayQTable(Integer.MAX_VALUE, 2);
+	}
+}
@@ -0,0 +1,113 @@
+package org.atorma.robot.learning;
+
+import static org.junit.Assert.*;
+
+import java.util.*;
+import java.util.Map.Entry;
+
+import org.atorma.robot.mdp.DiscretizedStateAction;
+import org.junit.Test;
+
+public class EligibilityTracesTests {
+
+	@Test
+	public void replacing_traces_decay_and_are_removed_below_threshold() {
+		ReplacingEligibilityTraces traces = new ReplacingEligibilityTraces(0.5, 0.5, 0.01);
+		DiscretizedStateAction sa = new DiscretizedStateAction(1, 2);
+
+		traces.update(sa);
+		assertEquals(1, traces.getTrace(sa), 0);
+		traces.update(3, 0);
+		assertEquals(0.25, traces.getTrace(sa), 1e-12);
+		traces.update(sa);
+		assertEquals(1, traces.getTrace(sa), 0);
+		traces.update(3, 0);
+		traces.update(3, 0);
+		traces.update(3, 0);
+		assertEquals(1.0/64, traces.getTrace(sa), 1e-12);
+		traces.update(3, 0);
+		assertEquals(0, traces.getTrace(sa), 0);
+
+		assertEquals(Collections.singleton(new DiscretizedStateAction(3, 0)), traces.getNonZeroStateActions());
+	}
+
+	@Test
+	public void accumulating_traces_add_to_decayed_trace() {
+		AccumulatingEligibilityTraces traces = new AccumulatingEligibilityTraces(1, 0.5);
+		traces.update(0, 0);
+		traces.update(0, 0);
+		traces.update(0, 0);
+		assertEquals(1.75, traces.getTrace(new DiscretizedStateAction(0, 0)), 1e-12);
+	}
+
+	@Test
+	public void zero_trace_decay_keeps_only_latest() {
+		AccumulatingEligibilityTraces traces = new AccumulatingEligibilityTraces(0.9, 0, 0);
+		traces.update(0, 0);
+		traces.update(1, 1);
+		assertEquals(1, traces.getNumberOfSlots());
+		assertEquals(1, traces.getTrace(0), 0);
+		assertEquals(1, traces.getStateId(0));
+		assertEquals(1, traces.getActionId(0));
+	}
+
+	@Test
+	public void traces_equal_those_of_decaying_every_trace_each_update() {
+		Random random = new Random(1);
+		for (double traceDecay : new double[] {0.1, 0.8, 0.99, 1}) {
+			AccumulatingEligibilityTraces accumulating = new AccumulatingEligibilityTraces(0.9, traceDecay);
+			ReplacingEligibilityTraces replacing = new ReplacingEligibilityTraces(0.9, traceDecay);
+			Map<DiscretizedStateAction, Double> expectedAccumulating = new HashMap<>();
+			Map<DiscretizedStateAction, Double> expectedReplacing = new HashMap<>();
+
+			for (int i = 0; i < 20000; i++) {
+				DiscretizedStateAction sa = new DiscretizedStateAction(random.nextInt(200), random.nextInt(4));
+				accumulating.update(sa);
+				replacing.update(sa);
+				update(expectedAccumulating, sa, 0.9*traceDecay, true, accumulating.getThresholdForRemoval());
+				update(expectedReplacing, sa, 0.9*traceDecay, false, replacing.getThresholdForRemoval());
+
+				if (i % 100 == 0) {
+					assertTracesEqual(expectedAccumulating, accumulating);
+					assertTracesEqual(expectedReplacing, replacing);
+				}
+			}
+		}
+	}
+
+	// The straightforward algorithm that decays and prunes every trace on every update
+	private void update(Map<DiscretizedStateAction, Double> traces, DiscretizedStateAction sa, double decay, boolean isAccumulating, double threshold) {
+		Double old = traces.get(sa);
+		double newValue = isAccumulating && old != null ? decay*old + 1 : 1;
+		traces.put(sa, newValue);
+		for (Iterator<Entry<DiscretizedStateAction, Double>> iter = traces.entrySet().iterator(); iter.hasNext(); ) {
+			Entry<DiscretizedStateAction, Double> entry = iter.next();
+			if (entry.getKey().equals(sa)) {
+				continue;
+			}
+			double decayed = decay*entry.getValue();
+			if (decayed < threshold) {
+				iter.remove();
+			} else {
+				entry.setValue(decayed);
+			}
+		}
+	}
+
+	private void assertTracesEqual(Map<DiscretizedStateAction, Double> expected, EligibilityTraces traces) {
+		for (Entry<DiscretizedStateAction, Double> entry : expected.entrySet()) {
+			assertEquals(entry.getValue(), traces.getTrace(entry.getKey()), 1e-9);
+		}
+
+		int numNonZero = 0;
+		for (int slot = 0; slot < traces.getNumberOfSlots(); slot++) {
+			if (traces.getTrace(slot) != 0) {
+				numNonZero++;
+				DiscretizedStateAction sa = new DiscretizedStateAction(traces.getStateId(slot), traces.getActionId(slot));
+				assertEquals(expected.get(sa), traces.getTrace(slot), 1e-9);
+			}
+		}
+		assertEquals(expected.size(), numNonZero);
+		assertEquals(expected.keySet(), traces.getNonZeroStateActions());
+	}
+}
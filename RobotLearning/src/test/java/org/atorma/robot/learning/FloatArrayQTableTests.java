@@ -0,0 +1,68 @@
+package org.atorma.robot.learning;
+
+import static org.junit.Assert.*;
+
+import java.util.*;
+
+import org.atorma.robot.discretization.StateDiscretizer;
+import org.atorma.robot.learning.cliffworld.*;
+import org.atorma.robot.mdp.*;
+import org.junit.Test;
+
+public class FloatArrayQTableTests {
+
+	private StateDiscretizer stateDiscretizer = new CliffWorldStateDiscretizer();
+	private RewardFunction rewardFunction = new CliffWorldRewardFunction();
+
+	@Test
+	public void values_are_stored_in_single_precision() {
+		FloatArrayQTable table = new FloatArrayQTable(3, 2, 0.1);
+		assertEquals((float) 0.1, table.getValue(2, 1), 0);
+
+		table.setValue(1, 0, 1.0/3);
+		table.setValue(1, 1, -5);
+		assertEquals((float) (1.0/3), table.getValue(1, 0), 0);
+		assertEquals((float) (1.0/3), table.getMaxValueInState(1), 0);
+		assertEquals(0, (int) table.getActionId(1));
+	}
+
+	@Test
+	public void cliff_world_q_learning_learns_optimal_policy_as_with_double_precision() {
+		for (long seed = 1; seed <= 5; seed++) {
+			List<CliffWorldAction> doublePath = learnPath(new ArrayQTable(stateDiscretizer.getNumberOfStates(), CliffWorldAction.values().length), seed);
+			List<CliffWorldAction> floatPath = learnPath(new FloatArrayQTable(stateDiscretizer.getNumberOfStates(), CliffWorldAction.values().length), seed);
+			assertEquals(CliffWorldEnvironment.OPTIMAL_PATH, doublePath);
+			assertEquals(CliffWorldEnvironment.OPTIMAL_PATH, floatPath);
+		}
+	}
+
+	// Standard Q-learning with epsilon greedy exploration where all random choices are made with the given seed
+	private List<CliffWorldAction> learnPath(AbstractQTable qTable, long seed) {
+		qTable.setRandom(new Random(seed));
+		Random random = new Random(seed);
+		QLearning qLearning = new QLearning(0.2, 1, qTable);
+
+		for (int episode = 0; episode < 250; episode++) {
+			CliffWorldState fromState = CliffWorldState.START;
+			CliffWorldState toState;
+			do {
+				int fromStateId = stateDiscretizer.getId(fromState);
+				int actionId = random.nextDouble() < 0.1 ? random.nextInt(CliffWorldAction.values().length) : qTable.getActionId(fromStateId);
+				CliffWorldAction action = CliffWorldAction.getActionById(actionId);
+				toState = fromState.getNextState(action);
+				double reward = rewardFunction.getReward(new Transition(fromState, action, toState));
+				qLearning.update(new DiscretizedTransitionReward(fromStateId, actionId, stateDiscretizer.getId(toState), reward));
+				fromState = toState;
+			} while (!toState.isEnd());
+		}
+
+		CliffWorldState state = CliffWorldState.START;
+		List<CliffWorldAction> path = new ArrayList<>();
+		while (!state.isGoal() && path.size() <= 5*CliffWorldEnvironment.OPTIMAL_PATH.size()) {
+			CliffWorldAction action = CliffWorldAction.getActionById(qTable.getActionId(stateDiscretizer.getId(state)));
+			path.add(action);
+			state = state.getNextState(action);
+		}
+		return path;
+	}
+}
@@ -0,0 +1,120 @@
+package org.atorma.robot.learning;
+
+import static org.junit.Assert.*;
+
+import java.io.*;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class MappedQTableTests {
+
+	private int numStates = 50;
+	private int numActions = 4;
+	private File file;
+
+	@Before
+	public void setUp() throws IOException {
+		file = File.createTempFile("qtable", ".bin");
+		file.delete();
+	}
+
+	@After
+	public void tearDown() {
+		file.delete();
+	}
+
+	@Test
+	public void new_table_has_default_values_and_documented_header() throws IOException {
+		MappedQTable table = MappedQTable.open(file, numStates, numActions, -1.5);
+		assertEquals(-1.5, table.getValue(numStates - 1, numActions - 1), 0);
+		assertEquals(-1.5, table.getMaxValueInState(0), 0);
+		table.close();
+
+		assertEquals(MappedQTable.HEADER_SIZE + 8*numStates*numActions, file.length());
+
+		try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+			assertEquals(MappedQTable.MAGIC, in.readInt());
+			assertEquals(MappedQTable.VERSION, in.readInt());
+			assertEquals(numStates, in.readInt());
+			assertEquals(numActions, in.readInt());
+			assertEquals(-1.5, in.readDouble(), 0);
+			assertEquals(-1.5, in.readDouble(), 0);
+		}
+	}
+
+	@Test
+	public void values_survive_reopening() throws IOException {
+		MappedQTable table = MappedQTable.open(file, numStates, numActions, 0);
+		ArrayQTable expected = new ArrayQTable(numStates, numActions);
+		Random random = new Random(1);
+		for (int i = 0; i < 1000; i++) {
+			int stateId = random.nextInt(numStates);
+			int actionId = random.nextInt(numActions);
+			double q = random.nextGaussian();
+			table.setValue(stateId, actionId, q);
+			expected.setValue(stateId, actionId, q);
+		}
+		table.checkpoint();
+
+		MappedQTable reopened = MappedQTable.open(file, numStates, numActions, 0);
+		MappedQTable readOnly = MappedQTable.openReadOnly(file);
+		for (int stateId = 0; stateId < numStates; stateId++) {
+			for (int actionId = 0; actionId < numActions; actionId++) {
+				assertEquals(expected.getValue(stateId, actionId), reopened.getValue(stateId, actionId), 0);
+				assertEquals(expected.getValue(stateId, actionId), readOnly.getValue(stateId, actionId), 0);
+			}
+			assertEquals(expected.getMaxValueInState(stateId), readOnly.getMaxValueInState(stateId), 0);
+		}
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void read_only_table_cannot_be_updated() throws IOException {
+		MappedQTable.open(file, numStates, numActions, 0).close();
+		MappedQTable table = MappedQTable.openReadOnly(file);
+
+		assertTrue(table.isReadOnly());
+		table.setValue(0, 0, 1);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void reopening_with_different_dimensions_is_rejected() throws IOException {
+		MappedQTable.open(file, numStates, numActions, 0).close();
+		MappedQTable.open(file, numStates + 1, numActions, 0);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void reopening_with_different_default_value_is_rejected() throws IOException {
+		MappedQTable.open(file, numStates, numActions, 0).close();
+		MappedQTable.open(file, numStates, numActions, 1);
+	}
+
+	@Test
+	public void closed_table_cannot_be_used() throws IOException {
+		MappedQTable table = MappedQTable.open(file, numStates, numActions, 0);
+		table.close();
+		table.close();
+
+		assertTrue(table.isClosed());
+		try {
+			table.getValue(0, 0);
+			fail();
+		} catch (IllegalStateException e) {
+		}
+		try {
+			table.setValue(0, 0, 1);
+			fail();
+		} catch (IllegalStateException e) {
+		}
+	}
+
+	@Test(expected = IOException.class)
+	public void other_files_are_rejected() throws IOException {
+		try (FileOutputStream out = new FileOutputStream(file)) {
+			out.write(new byte[100]);
+		}
+		MappedQTable.openReadOnly(file);
+	}
+}
@@ -0,0 +1,61 @@
+package org.atorma.robot.learning;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+public class PagedArrayQTableTests {
+
+	@Test
+	public void behaves_like_ArrayQTable() {
+		int numStates = 1000;
+		int numActions = 3; // rows cross page boundaries
+		PagedArrayQTable pagedTable = new PagedArrayQTable(numStates, numActions, -1, 64);
+		ArrayQTable arrayTable = new ArrayQTable(numStates, numActions, -1);
+		Random random = new Random(1);
+
+		for (int i = 0; i < 2000; i++) {
+			int stateId = random.nextInt(numStates);
+			int actionId = random.nextInt(numActions);
+			double q = random.nextGaussian();
+			pagedTable.setValue(stateId, actionId, q);
+			arrayTable.setValue(stateId, actionId, q);
+		}
+
+		for (int stateId = 0; stateId < numStates; stateId++) {
+			for (int actionId = 0; actionId < numActions; actionId++) {
+				assertEquals(arrayTable.getValue(stateId, actionId), pagedTable.getValue(stateId, actionId), 0);
+			}
+			assertEquals(arrayTable.getMaxValueInState(stateId), pagedTable.getMaxValueInState(stateId), 0);
+		}
+	}
+
+	@Test
+	public void pages_are_allocated_on_first_non_default_write() {
+		// 4 billion state-action pairs would not fit in one array
+		PagedArrayQTable table = new PagedArrayQTable(Integer.MAX_VALUE, 2, 0.5, 1 << 16);
+		assertEquals(0, table.getNumberOfAllocatedPages());
+		assertEquals(0.5, table.getValue(Integer.MAX_VALUE - 1, 1), 0);
+
+		table.setValue(0, 0, 0.5);
+		assertEquals(0, table.getNumberOfAllocatedPages());
+
+		table.setValue(Integer.MAX_VALUE - 1, 1, 2);
+		table.setValue(Integer.MAX_VALUE - 1, 0, 3);
+		table.setValue(100, 0, 1);
+		assertEquals(2, table.getNumberOfAllocatedPages());
+		assertEquals(2.0 / table.getNumberOfPages(), table.getPageOccupancy(), 1e-15);
+		assertEquals(2L * 8 * (1 << 16), table.getAllocatedBytes());
+
+		assertEquals(2, table.getValue(Integer.MAX_VALUE - 1, 1), 0);
+		assertEquals(3, table.getMaxValueInState(Integer.MAX_VALUE - 1), 0);
+		assertEquals(0.5, table.getValue(100, 1), 0);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void page_size_must_be_power_of_two() {
+		new PagedArrayQTable(10, 2, 0, 100);
+	}
+}
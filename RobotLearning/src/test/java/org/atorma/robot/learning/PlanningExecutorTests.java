@@ -0,0 +1,177 @@
+package org.atorma.robot.learning;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.locks.LockSupport;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class PlanningExecutorTests {
+
+	private CountdownPlanner planner;
+	private PlanningExecutor<Integer> executor;
+
+	@Before
+	public void setUp() {
+		planner = new CountdownPlanner();
+		executor = new PlanningExecutor<>(planner, "TestPlanner");
+	}
+
+	@After
+	public void tearDown() {
+		executor.stop();
+	}
+
+	@Test
+	public void plans_from_published_start_until_out_of_work() {
+		executor.start();
+		executor.publishStart(1000);
+		waitUntilIdleAfterStarts(1);
+
+		assertEquals(1000, executor.getNumberOfIterations());
+		assertEquals(1000, executor.getNumberOfBatches());
+		assertTrue(executor.getPlanningNanos() > 0);
+		assertTrue(executor.getIterationsPerSecond() > 0);
+
+		executor.publishStart(10);
+		waitUntilIdleAfterStarts(2);
+		assertEquals(1010, executor.getNumberOfIterations());
+	}
+
+	@Test
+	public void stops_planning_when_budget_is_spent() throws InterruptedException {
+		executor.start();
+		long budgetNanos = 20000000;
+		executor.publishStart(Integer.MAX_VALUE, budgetNanos); // would keep planning
+		Thread.sleep(100);
+
+		assertTrue(executor.isBudgetSpent());
+		assertTrue(executor.isIdle());
+		long iterations = executor.getNumberOfIterations();
+		assertTrue(iterations > 0);
+		assertTrue(executor.getPlanningNanos() <= budgetNanos + 5000000);
+
+		executor.wakeUp();
+		Thread.sleep(10);
+		assertEquals(iterations, executor.getNumberOfIterations());
+
+		executor.publishStart(10);
+		waitUntilIdleAfterStarts(2);
+		assertFalse(executor.isBudgetSpent());
+		assertEquals(iterations + 10, executor.getNumberOfIterations());
+	}
+
+	@Test
+	public void call_runs_on_the_planning_thread_between_batches() {
+		executor.start();
+		executor.publishStart(Integer.MAX_VALUE); // keeps planning
+
+		for (int i = 0; i < 100; i++) {
+			String threadName = executor.call(new Callable<String>() {
+				@Override
+				public String call() {
+					assertFalse(planner.isPlanning);
+					return Thread.currentThread().getName();
+				}
+			});
+			assertEquals("TestPlanner", threadName);
+		}
+		assertEquals(100, executor.getNumberOfCalls());
+		assertFalse(executor.isIdle());
+	}
+
+	@Test
+	public void call_runs_on_calling_thread_when_not_running() {
+		String threadName = executor.call(new Callable<String>() {
+			@Override
+			public String call() {
+				return Thread.currentThread().getName();
+			}
+		});
+		assertEquals(Thread.currentThread().getName(), threadName);
+	}
+
+	@Test(expected = UnsupportedOperationException.class)
+	public void call_throws_exception_thrown_by_task() {
+		executor.start();
+		executor.call(new Callable<Void>() {
+			@Override
+			public Void call() {
+				throw new UnsupportedOperationException();
+			}
+		});
+	}
+
+	@Test(timeout = 10000)
+	public void call_throws_instead_of_waiting_when_planner_has_failed() throws InterruptedException {
+		final CountDownLatch isPlanning = new CountDownLatch(1);
+		executor = new PlanningExecutor<>(new PlanningExecutor.Planner<Integer>() {
+			@Override
+			public void setStart(Integer start) {
+			}
+
+			@Override
+			public int plan(long deadlineNanos) {
+				isPlanning.countDown();
+				LockSupport.parkNanos(50000000); // fails while the call waits
+				throw new UnsupportedOperationException();
+			}
+		}, "FailingPlanner");
+		executor.start();
+		isPlanning.await();
+
+		for (int i = 0; i < 2; i++) { // waiting for the failing thread, then after it has died
+			try {
+				executor.call(new Callable<Void>() {
+					@Override
+					public Void call() {
+						return null;
+					}
+				});
+				fail("Planner failure not thrown");
+			} catch (IllegalStateException e) {
+				assertTrue(e.getCause() instanceof UnsupportedOperationException);
+			}
+		}
+		assertFalse(executor.isRunning());
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void can_not_be_started_twice() {
+		executor.start();
+		executor.start();
+	}
+
+	private void waitUntilIdleAfterStarts(int numStarts) {
+		while (executor.getNumberOfStarts() < numStarts || !executor.isIdle()) {
+			Thread.yield();
+		}
+	}
+
+	// Performs one iteration per batch, as many as the start says
+	private static class CountdownPlanner implements PlanningExecutor.Planner<Integer> {
+
+		volatile boolean isPlanning = false;
+		private int iterationsLeft = 0;
+
+		@Override
+		public void setStart(Integer numIterations) {
+			iterationsLeft = numIterations;
+		}
+
+		@Override
+		public int plan(long deadlineNanos) {
+			if (iterationsLeft == 0) {
+				return 0;
+			}
+			isPlanning = true;
+			iterationsLeft--;
+			isPlanning = false;
+			return 1;
+		}
+	}
+}
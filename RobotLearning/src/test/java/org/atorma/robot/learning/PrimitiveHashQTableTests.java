@@ -0,0 +1,79 @@
+package org.atorma.robot.learning;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import org.atorma.robot.mdp.DiscretizedStateAction;
+import org.junit.Test;
+
+public class PrimitiveHashQTableTests {
+
+	@Test
+	public void unknown_state_actions_have_default_value() {
+		PrimitiveHashQTable qTable = new PrimitiveHashQTable(-1.5, 0, 1);
+
+		assertEquals(-1.5, qTable.getValue(new DiscretizedStateAction(123, 0)), 0);
+		assertEquals(-1.5, qTable.getValue(new DiscretizedStateAction(-7, 5)), 0);
+		assertEquals(0, qTable.size());
+	}
+
+	@Test
+	public void state_and_action_ids_are_not_restricted_to_positive_integers() {
+		PrimitiveHashQTable qTable = new PrimitiveHashQTable();
+		qTable.setValue(new DiscretizedStateAction(-1, -1), 1);
+		qTable.setValue(new DiscretizedStateAction(Integer.MIN_VALUE, 0), 2);
+		qTable.setValue(new DiscretizedStateAction(Integer.MAX_VALUE, Integer.MIN_VALUE), 3);
+
+		assertEquals(1, qTable.getValue(new DiscretizedStateAction(-1, -1)), 0);
+		assertEquals(2, qTable.getValue(new DiscretizedStateAction(Integer.MIN_VALUE, 0)), 0);
+		assertEquals(3, qTable.getValue(new DiscretizedStateAction(Integer.MAX_VALUE, Integer.MIN_VALUE)), 0);
+		assertEquals(0, qTable.getValue(new DiscretizedStateAction(-1, 0)), 0);
+		assertTrue(qTable.getStateIds().contains(Integer.MIN_VALUE));
+		assertTrue(qTable.getActionIds().contains(Integer.MIN_VALUE));
+	}
+
+	@Test
+	public void behaves_like_HashMapQTable() {
+		PrimitiveHashQTable primitiveTable = new PrimitiveHashQTable(0.5, 0, 1, 2);
+		HashMapQTable hashMapTable = new HashMapQTable(0.5, 0, 1, 2);
+		Random random = new Random(1);
+
+		for (int i = 0; i < 20000; i++) {
+			DiscretizedStateAction sa = new DiscretizedStateAction(random.nextInt(5000) - 100, random.nextInt(4));
+			double q = random.nextGaussian();
+			primitiveTable.setValue(sa, q);
+			hashMapTable.setValue(sa, q);
+		}
+
+		for (int stateId = -100; stateId < 5000; stateId++) {
+			for (int actionId = 0; actionId < 4; actionId++) {
+				DiscretizedStateAction sa = new DiscretizedStateAction(stateId, actionId);
+				assertEquals(hashMapTable.getValue(sa), primitiveTable.getValue(sa), 0);
+			}
+			assertEquals(hashMapTable.getMaxValueInState(stateId), primitiveTable.getMaxValueInState(stateId), 0);
+		}
+		assertEquals(hashMapTable.getStateIds(), primitiveTable.getStateIds());
+		assertEquals(hashMapTable.getActionIds(), primitiveTable.getActionIds());
+	}
+
+	@Test
+	public void clear_removes_values_but_keeps_action_ids() {
+		PrimitiveHashQTable qTable = new PrimitiveHashQTable(0.5, 0, 1);
+		for (int stateId = 0; stateId < 1000; stateId++) {
+			qTable.setValue(stateId, 2, stateId);
+		}
+
+		qTable.clear();
+
+		assertEquals(0, qTable.size());
+		assertEquals(0.5, qTable.getValue(10, 2), 0);
+		assertTrue(qTable.getStateIds().isEmpty());
+		assertEquals(3, qTable.getActionIds().size());
+
+		qTable.setValue(10, 1, -1);
+		assertEquals(-1, qTable.getValue(10, 1), 0);
+		assertEquals(0.5, qTable.getValue(10, 2), 0);
+		assertEquals(1, qTable.size());
+	}
+}
@@ -0,0 +1,124 @@
+package org.atorma.robot.learning;
+
+import static org.junit.Assert.*;
+
+import java.util.*;
+
+import org.atorma.robot.learning.replay.ReplayBuffer;
+import org.atorma.robot.mdp.DiscretizedTransitionReward;
+import org.junit.Ignore;
+import org.junit.Test;
+
+public class QLearningTests {
+
+	private int numStates = 1000;
+	private int numActions = 4;
+
+	@Test
+	public void fused_update_equals_generic_update() {
+		for (boolean isMaxValueCached : new boolean[] {false, true}) {
+			ArrayQTable fusedTable = new ArrayQTable(numStates, numActions, 0, isMaxValueCached);
+			ArrayQTable genericTable = new ArrayQTable(numStates, numActions, 0, isMaxValueCached);
+			QLearning fused = new QLearning(0.2, new ReplacingEligibilityTraces(0.9, 0.9), fusedTable);
+			QLearning generic = new QLearning(0.2, new ReplacingEligibilityTraces(0.9, 0.9), new DelegatingQTable(genericTable));
+
+			Random random = new Random(1);
+			for (int i = 0; i < 5000; i++) {
+				DiscretizedTransitionReward transition = randomTransition(random, numStates);
+				fused.update(transition);
+				generic.update(transition);
+			}
+
+			for (int stateId = 0; stateId < numStates; stateId++) {
+				for (int actionId = 0; actionId < numActions; actionId++) {
+					assertEquals(genericTable.getValue(stateId, actionId), fusedTable.getValue(stateId, actionId), 1e-9);
+				}
+				assertEquals(genericTable.getMaxValueInState(stateId), fusedTable.getMaxValueInState(stateId), 1e-9);
+			}
+		}
+	}
+
+	@Test
+	public void replaying_a_chain_propagates_reward_to_its_start() {
+		for (ReplayBuffer buffer : new ReplayBuffer[] {new ReplayBuffer(100), new ReplayBuffer(100, 0.6)}) {
+			ArrayQTable qTable = new ArrayQTable(6, 1);
+			QLearning qLearning = new QLearning(0.5, 0.9, qTable);
+			for (int stateId = 0; stateId < 5; stateId++) {
+				DiscretizedTransitionReward transition = new DiscretizedTransitionReward(stateId, 0, stateId + 1, stateId == 4 ? 1 : 0);
+				qLearning.update(transition);
+				buffer.add(transition);
+			}
+			assertEquals(0, qTable.getValue(0, 0), 0);
+
+			qLearning.updateBatch(buffer, 2000);
+
+			for (int stateId = 0; stateId < 5; stateId++) {
+				assertEquals(Math.pow(0.9, 4 - stateId), qTable.getValue(stateId, 0), 1e-6);
+			}
+		}
+	}
+
+	@Test @Ignore // Benchmark, prints update times of the fused and the generic update
+	public void benchmark_fused_update() {
+		for (int numTraces : new int[] {10, 100, 1000, 10000}) {
+			int numUpdates = 10000000 / numTraces;
+			long fusedNanos = timeUpdates(new ArrayQTable(numTraces, numActions), numTraces, numUpdates);
+			long genericNanos = timeUpdates(new DelegatingQTable(new ArrayQTable(numTraces, numActions)), numTraces, numUpdates);
+			System.out.println(numTraces + " traces: fused " + fusedNanos/numUpdates + " ns/update, generic "
+					+ genericNanos/numUpdates + " ns/update, speedup " + (double) genericNanos/fusedNanos);
+		}
+	}
+
+	private long timeUpdates(QTable qTable, int numTraces, int numUpdates) {
+		// No decay so that all traces stay non-zero
+		QLearning qLearning = new QLearning(0.1, new ReplacingEligibilityTraces(1, 1), qTable);
+		Random random = new Random(2);
+		for (int stateId = 0; stateId < numTraces; stateId++) {
+			qLearning.update(new DiscretizedTransitionReward(stateId, 0, stateId, 0));
+		}
+		for (int i = 0; i < numUpdates; i++) { // warm-up
+			qLearning.update(randomTransition(random, numTraces));
+		}
+
+		long start = System.nanoTime();
+		for (int i = 0; i < numUpdates; i++) {
+			qLearning.update(randomTransition(random, numTraces));
+		}
+		return System.nanoTime() - start;
+	}
+
+	private DiscretizedTransitionReward randomTransition(Random random, int numStates) {
+		return new DiscretizedTransitionReward(random.nextInt(numStates), random.nextInt(numActions),
+				random.nextInt(numStates), random.nextGaussian());
+	}
+
+	// Hides the array implementation so that QLearning takes the generic path
+	private static class DelegatingQTable extends AbstractQTable {
+
+		private final ArrayQTable qTable;
+
+		public DelegatingQTable(ArrayQTable qTable) {
+			this.qTable = qTable;
+		}
+
+		@Override
+		public double getValue(int stateId, int actionId) {
+			return qTable.getValue(stateId, actionId);
+		}
+
+		@Override
+		public void setValue(int stateId, int actionId, double qValue) {
+			qTable.setValue(stateId, actionId, qValue);
+		}
+
+		@Override
+		public double getMaxValueInState(int stateId) {
+			return qTable.getMaxValueInState(stateId);
+		}
+
+		@Override
+		protected Set<Integer> getActionIds() {
+			return qTable.getActionIds();
+		}
+	}
+}
@@ -0,0 +1,127 @@
+package org.atorma.robot.learning;
+
+import static org.junit.Assert.*;
+
+import java.util.*;
+
+import org.atorma.robot.mdp.DiscretizedStateAction;
+import org.junit.Test;
+
+public class VisitCountTableTests {
+
+	@Test
+	public void unvisited_states_and_state_actions_have_zero_visits() {
+		VisitCountTable visits = new VisitCountTable();
+
+		assertEquals(0, visits.getNumberOfVisits(5));
+		assertEquals(0, visits.getNumberOfVisits(5, 1));
+		assertEquals(0, visits.size());
+	}
+
+	@Test
+	public void increment_returns_number_of_visits_after_increment() {
+		VisitCountTable visits = new VisitCountTable();
+
+		assertEquals(1, visits.incrementVisits(-3, Integer.MIN_VALUE));
+		assertEquals(2, visits.incrementVisits(-3, Integer.MIN_VALUE));
+		assertEquals(1, visits.incrementVisits(-3, 0));
+
+		assertEquals(2, visits.getNumberOfVisits(-3, Integer.MIN_VALUE));
+		assertEquals(1, visits.getNumberOfVisits(-3, 0));
+		assertEquals(2, visits.size());
+	}
+
+	@Test
+	public void set_count_overwrites_visits() {
+		VisitCountTable visits = new VisitCountTable();
+
+		visits.setNumberOfVisits(2, 1, 40);
+		assertEquals(41, visits.incrementVisits(2, 1));
+		visits.setNumberOfVisits(2, 1, 7);
+
+		assertEquals(7, visits.getNumberOfVisits(2, 1));
+		assertEquals(1, visits.size());
+	}
+
+	@Test
+	public void counts_like_a_hash_map() {
+		VisitCountTable visits = new VisitCountTable();
+		Map<DiscretizedStateAction, Integer> expected = new HashMap<>();
+		Random random = new Random(1);
+
+		for (int i = 0; i < 20000; i++) {
+			DiscretizedStateAction sa = new DiscretizedStateAction(random.nextInt(5000) - 100, random.nextInt(4));
+			Integer count = expected.get(sa);
+			expected.put(sa, count == null ? 1 : count + 1);
+			visits.incrementVisits(sa.getStateId(), sa.getActionId());
+		}
+
+		for (int stateId = -100; stateId < 5000; stateId++) {
+			for (int actionId = 0; actionId < 4; actionId++) {
+				Integer count = expected.get(new DiscretizedStateAction(stateId, actionId));
+				assertEquals(count == null ? 0 : count, visits.getNumberOfVisits(stateId, actionId));
+			}
+		}
+		assertEquals(expected.size(), visits.size());
+	}
+
+	@Test
+	public void clear_sets_all_counts_to_zero() {
+		VisitCountTable visits = new VisitCountTable();
+		for (int stateId = 0; stateId < 1000; stateId++) {
+			visits.incrementVisits(stateId);
+		}
+
+		for (int i = 0; i < 3; i++) {
+			visits.clear();
+
+			assertEquals(0, visits.size());
+			for (int stateId = 0; stateId < 1000; stateId++) {
+				assertEquals(0, visits.getNumberOfVisits(stateId));
+			}
+			assertEquals(1, visits.incrementVisits(7));
+			assertEquals(2, visits.incrementVisits(7));
+		}
+	}
+
+	@Test
+	public void decay_multiplies_counts_by_factors_of_their_states() {
+		VisitCountTable visits = new VisitCountTable();
+		for (int stateId = 0; stateId < 1000; stateId++) {
+			for (int actionId = 0; actionId < 3; actionId++) {
+				for (int i = 0; i < 4 + actionId; i++) {
+					visits.incrementVisits(stateId, actionId);
+				}
+			}
+		}
+
+		visits.decay(new VisitCountTable.DecayFactors() {
+			@Override
+			public double getFactor(int stateId) {
+				return stateId % 10 == 0 ? 1 : 0.3;
+			}
+		});
+
+		for (int stateId = 0; stateId < 1000; stateId++) {
+			boolean isKept = stateId % 10 == 0;
+			assertEquals(isKept ? 4 : 1, visits.getNumberOfVisits(stateId, 0));
+			assertEquals(isKept ? 5 : 2, visits.getNumberOfVisits(stateId, 1));
+			assertEquals(isKept ? 6 : 2, visits.getNumberOfVisits(stateId, 2));
+		}
+		assertEquals(3000, visits.size());
+
+		visits.decay(new VisitCountTable.DecayFactors() {
+			@Override
+			public double getFactor(int stateId) {
+				return stateId == 10 ? 1 : 0.4;
+			}
+		});
+
+		assertEquals(5, visits.getNumberOfVisits(10, 1));
+		assertEquals(2, visits.getNumberOfVisits(20, 0));
+		assertEquals(0, visits.getNumberOfVisits(21, 0));
+		assertEquals(1, visits.getNumberOfVisits(21, 1));
+		assertEquals(3 + 99*3 + 900*2, visits.size());
+		assertEquals(1, visits.incrementVisits(21, 0));
+	}
+}
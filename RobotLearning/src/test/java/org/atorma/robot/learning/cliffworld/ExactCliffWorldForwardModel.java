@@ -1,15 +1,16 @@
 package org.atorma.robot.learning.cliffworld;
 
 import java.util.Collections;
+import java.util.EnumSet;
 import java.util.Set;
 
 import org.atorma.robot.learning.montecarlo.ForwardModel;
 import org.atorma.robot.mdp.*;
 
-import com.google.common.collect.Sets;
-
 public class ExactCliffWorldForwardModel implements ForwardModel {
 	
+	private static final Set<CliffWorldAction> ALL_ACTIONS = Collections.unmodifiableSet(EnumSet.allOf(CliffWorldAction.class));
+	
 	private RewardFunction rewardFunction;
 	
 	public ExactCliffWorldForwardModel(RewardFunction rewardFunction) {
@@ -22,7 +23,7 @@ public class ExactCliffWorldForwardModel implements ForwardModel {
 		if (cliffWorldState.isEnd()) {
 			return Collections.emptySet();
 		} else {
-			return Sets.newHashSet(CliffWorldAction.values());
+			return ALL_ACTIONS;
 		}
 	}
 
@@ -13,6 +13,7 @@ import org.junit.*;
 public class CliffFirstVisitUctPlanningTests {
 	
 	private FirstVisitUctPlanning uctPlanning;
+	private FirstVisitUctPlanningParameters uctParams;
 	private double discountFactor = 1;
 	
 	private QLearning qLearning;
@@ -33,7 +34,7 @@ public class CliffFirstVisitUctPlanningTests {
 		qTable = new ArrayQTable(stateDiscretizer.getNumberOfStates(), CliffWorldAction.values().length, 1);
 		qLearning = new QLearning(learningRate, discountFactor, qTable);
 		
-		FirstVisitUctPlanningParameters uctParams = new FirstVisitUctPlanningParameters();
+		uctParams = new FirstVisitUctPlanningParameters();
 		uctParams.discountFactor = discountFactor;
 		uctParams.planningHorizon = planningHorizon;
 		uctParams.model = model;
@@ -70,6 +71,140 @@ public class CliffFirstVisitUctPlanningTests {
 		assertTrue(CliffWorldAction.RIGHT != plannedAction);
 	}
 
+	@Test
+	public void performs_rollouts_until_deadline() {
+		PlanningResult noStart = uctPlanning.performRolloutsUntil(System.nanoTime() + 1000000000L);
+		assertEquals(0, noStart.getNumberOfIterations());
+		assertFalse(noStart.isDeadlineReached());
+		
+		uctPlanning.setRolloutStartState(new CliffWorldState(CliffWorldState.X_MAX, CliffWorldState.Y_MIN)); // goal, no allowed actions
+		long goalDeadlineNanos = System.nanoTime() + 1000000000L;
+		PlanningResult atGoal = uctPlanning.performRolloutsUntil(goalDeadlineNanos);
+		assertEquals(0, atGoal.getNumberOfIterations());
+		assertFalse(atGoal.isDeadlineReached());
+		assertTrue(goalDeadlineNanos - System.nanoTime() > 0);
+		
+		CliffWorldState state = new CliffWorldState(11, 1);
+		uctPlanning.setRolloutStartState(state);
+		long deadlineNanos = System.nanoTime() + 50000000;
+		PlanningResult result = uctPlanning.performRolloutsUntil(deadlineNanos);
+		
+		assertTrue(result.isDeadlineReached());
+		assertTrue(System.nanoTime() - deadlineNanos >= 0);
+		assertTrue(result.getNumberOfIterations() > 0);
+		assertEquals(CliffWorldAction.DOWN, uctPlanning.getPlannedAction(state));
+	}
+	
+	@Test
+	public void new_start_state_clears_visits_and_planning_values() {
+		CliffWorldState state = new CliffWorldState(11, 1);
+		int stateId = stateDiscretizer.getId(state);
+		uctPlanning.setRolloutStartState(state);
+		uctPlanning.performRollouts(20);
+		assertTrue(uctPlanning.getNumberOfVisits(stateId) >= 20);
+
+		uctPlanning.setRolloutStartState(CliffWorldState.START);
+
+		assertEquals(0, uctPlanning.getNumberOfVisits(stateId));
+		for (CliffWorldAction action : CliffWorldAction.values()) {
+			assertEquals(0, uctPlanning.getNumberOfVisits(stateId, action.getId()));
+			assertEquals(0, uctPlanning.getUctQValue(stateId, action.getId()), 0);
+		}
+	}
+	
+	@Test
+	public void reused_tree_keeps_visits_of_next_start_state() {
+		uctParams.reuseTree = true;
+		uctParams.treeDecay = 1;
+		uctPlanning = new FirstVisitUctPlanning(uctParams);
+		CliffWorldState state = new CliffWorldState(6, 2);
+		uctPlanning.setRolloutStartState(state);
+		uctPlanning.performRollouts(200);
+		assertEquals(0, uctPlanning.getNumberOfReusedRollouts());
+		
+		State nextState = getNextState(state, uctPlanning.getPlannedAction(state));
+		int nextStateId = stateDiscretizer.getId(nextState);
+		int nextStateVisits = uctPlanning.getNumberOfVisits(nextStateId);
+		int nextStateActionVisits = uctPlanning.getNumberOfVisits(nextStateId, CliffWorldAction.RIGHT.getId());
+		double nextStateActionValue = uctPlanning.getUctQValue(nextStateId, CliffWorldAction.RIGHT.getId());
+		
+		uctPlanning.setRolloutStartState(nextState);
+		
+		assertEquals(nextStateVisits, uctPlanning.getNumberOfVisits(nextStateId));
+		assertEquals(nextStateActionVisits, uctPlanning.getNumberOfVisits(nextStateId, CliffWorldAction.RIGHT.getId()));
+		assertEquals(nextStateActionValue, uctPlanning.getUctQValue(nextStateId, CliffWorldAction.RIGHT.getId()), 0);
+		assertTrue(uctPlanning.getNumberOfReusedRollouts() > 0);
+		assertTrue(uctPlanning.getNumberOfReusedRollouts() < 200);
+	}
+	
+	@Test
+	public void reused_tree_decays_visits_not_made_through_next_start_state() {
+		uctParams.reuseTree = true;
+		uctParams.treeDecay = 0;
+		uctPlanning = new FirstVisitUctPlanning(uctParams);
+		CliffWorldState state = new CliffWorldState(6, 2);
+		uctPlanning.setRolloutStartState(state);
+		uctPlanning.performRollouts(200);
+		
+		State nextState = getNextState(state, uctPlanning.getPlannedAction(state));
+		int nextStateId = stateDiscretizer.getId(nextState);
+		int nextStateVisits = uctPlanning.getNumberOfVisits(nextStateId);
+		int startStateVisits = uctPlanning.getNumberOfVisits(stateDiscretizer.getId(state));
+		
+		uctPlanning.setRolloutStartState(nextState);
+		
+		assertTrue(uctPlanning.getNumberOfVisits(nextStateId) > 0);
+		assertTrue(uctPlanning.getNumberOfVisits(nextStateId) <= nextStateVisits);
+		assertTrue(uctPlanning.getNumberOfVisits(stateDiscretizer.getId(state)) < startStateVisits);
+		
+		uctPlanning.performRollouts(10);
+		assertTrue(uctPlanning.getNumberOfVisits(nextStateId) >= 10);
+	}
+	
+	@Test
+	public void tree_is_not_reused_by_default() {
+		CliffWorldState state = new CliffWorldState(6, 2);
+		uctPlanning.setRolloutStartState(state);
+		uctPlanning.performRollouts(200);
+		
+		State nextState = getNextState(state, uctPlanning.getPlannedAction(state));
+		uctPlanning.setRolloutStartState(nextState);
+		
+		assertEquals(0, uctPlanning.getNumberOfVisits(stateDiscretizer.getId(nextState)));
+		assertEquals(0, uctPlanning.getNumberOfReusedRollouts());
+	}
+	
+	@Test
+	public void rollout_length_is_not_limited_by_stack_depth() {
+		uctParams.planningHorizon = 200000;
+		uctPlanning = new FirstVisitUctPlanning(uctParams);
+		CliffWorldState state = CliffWorldState.START;
+		
+		uctPlanning.setRolloutStartState(state);
+		uctPlanning.performRollouts(1);
+		
+		assertTrue(uctPlanning.getNumberOfVisits(stateDiscretizer.getId(state)) > 0);
+	}
+	
+	@Test @Ignore // Benchmark, prints rollouts per second and bytes allocated per rollout
+	public void benchmark_rollouts() {
+		com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) java.lang.management.ManagementFactory.getThreadMXBean();
+		long threadId = Thread.currentThread().getId();
+		for (int round = 0; round < 5; round++) {
+			long startBytes = threadBean.getThreadAllocatedBytes(threadId);
+			long start = System.nanoTime();
+			int rollouts = 0;
+			for (int step = 0; step < 200; step++) {
+				uctPlanning.setRolloutStartState(CliffWorldState.START);
+				uctPlanning.performRollouts(100);
+				rollouts += 100;
+			}
+			long nanos = System.nanoTime() - start;
+			long bytes = threadBean.getThreadAllocatedBytes(threadId) - startBytes;
+			System.out.println(rollouts * 1000000000L / nanos + " rollouts/s, " + bytes / rollouts + " bytes/rollout");
+		}
+	}
+	
 	// Slow in learning because of the reward setting. The agent gets negative rewards when
 	// moving and a big negative reward if falling of the cliff. In action 
 	// planning falling off the cliff is much more likely than ending up in the goal state,
@@ -108,6 +243,10 @@ public class CliffFirstVisitUctPlanningTests {
 		assertEquals(CliffWorldEnvironment.OPTIMAL_PATH, learnedPath);
 	}
 	
+	private State getNextState(State state, DiscreteAction action) {
+		return model.simulateAction(new StateAction(state, action)).getToState();
+	}
+	
 	private List<CliffWorldAction> getLearnedPath() {
 		CliffWorldState state = CliffWorldState.START;
 		List<CliffWorldAction> learnedActions = new ArrayList<>();
@@ -71,6 +71,25 @@ public class CliffWorldFirstVisitOnPolicyMonteCarloTests {
 		assertTrue(CliffWorldAction.RIGHT != plannedAction);
 	}
 	
+	@Test
+	public void rollout_length_is_not_limited_by_stack_depth() {
+		DiscretePolicy alwaysLeft = new DiscretePolicy() {
+			@Override
+			public Integer getActionId(int stateId) {
+				return CliffWorldAction.LEFT.getId(); // stays in start state
+			}
+		};
+		int horizon = 200000;
+		monteCarlo = new FirstVisitOnPolicyMonteCarlo(model, stateDiscretizer, alwaysLeft, horizon, discountFactor);
+		
+		monteCarlo.setRolloutStartState(CliffWorldState.START);
+		monteCarlo.performRollouts(1);
+		
+		int stateId = stateDiscretizer.getId(CliffWorldState.START);
+		assertEquals(horizon + 1, monteCarlo.getNumberOfVisits(stateId, CliffWorldAction.LEFT.getId()));
+		assertEquals(CliffWorldAction.LEFT.getId(), (int) monteCarlo.getActionId(stateId));
+	}
+	
 	// Requires a function that rewards highly on getting to goal. 
 	// Otherwise action planning is simply too pessimistic to ever take a step towards the goal (except by accident).
 	@Test @Ignore // Fairly slow, but works
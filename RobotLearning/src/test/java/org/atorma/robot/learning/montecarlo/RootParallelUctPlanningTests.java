@@ -0,0 +1,146 @@
+package org.atorma.robot.learning.montecarlo;
+
+import static org.junit.Assert.*;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.atorma.robot.learning.*;
+import org.atorma.robot.learning.cliffworld.*;
+import org.atorma.robot.mdp.*;
+import org.junit.*;
+
+public class RootParallelUctPlanningTests {
+
+	private double discountFactor = 1;
+	private int planningHorizon = 25;
+	private CliffWorldStateDiscretizer stateDiscretizer = new CliffWorldStateDiscretizer();
+	private QTable qTable;
+	private ExactCliffWorldForwardModel model;
+	private RootParallelUctPlanning uctPlanning;
+
+	@Before
+	public void setUp() {
+		model = new ExactCliffWorldForwardModel(new ModifiedCliffWorldRewardFunction());
+		qTable = new ConcurrentArrayQTable(stateDiscretizer.getNumberOfStates(), CliffWorldAction.values().length);
+	}
+
+	@After
+	public void tearDown() {
+		if (uctPlanning != null) {
+			uctPlanning.stop();
+		}
+	}
+
+	@Test
+	public void next_to_goal_planned_action_is_to_go_goal() {
+		uctPlanning = new RootParallelUctPlanning(createPlannings(4));
+		CliffWorldState state = new CliffWorldState(11, 1);
+
+		uctPlanning.setRolloutStartState(state);
+		uctPlanning.performRollouts(4);
+
+		assertEquals(CliffWorldAction.DOWN, uctPlanning.getPlannedAction(state));
+	}
+
+	@Test
+	public void next_to_cliff_planned_action_is_not_to_fall_off_the_cliff() {
+		uctPlanning = new RootParallelUctPlanning(createPlannings(4));
+		CliffWorldState state = CliffWorldState.START;
+
+		uctPlanning.setRolloutStartState(state);
+		uctPlanning.performRollouts(100);
+
+		assertTrue(CliffWorldAction.RIGHT != uctPlanning.getPlannedAction(state));
+	}
+
+	@Test
+	public void one_planning_plans_same_action_as_the_planning() {
+		List<FirstVisitUctPlanning> plannings = createPlannings(1);
+		uctPlanning = new RootParallelUctPlanning(plannings);
+		CliffWorldState state = CliffWorldState.START;
+
+		uctPlanning.setRolloutStartState(state);
+		uctPlanning.performRollouts(200);
+
+		assertEquals(plannings.get(0).getPlannedAction(state), uctPlanning.getPlannedAction(state));
+	}
+
+	@Test
+	public void workers_perform_rollouts_from_published_start_state() {
+		uctPlanning = new RootParallelUctPlanning(createPlannings(2));
+		uctPlanning.start();
+		CliffWorldState state = new CliffWorldState(11, 1);
+
+		uctPlanning.setRolloutStartState(state);
+		while (uctPlanning.getWorkers().get(0).getNumberOfIterations() < 10 || uctPlanning.getWorkers().get(1).getNumberOfIterations() < 10) {
+			Thread.yield();
+		}
+
+		assertEquals(CliffWorldAction.DOWN, uctPlanning.getPlannedAction(state));
+	}
+
+	@Test
+	public void planned_action_is_looked_up_on_the_worker_threads_once_started() {
+		final Set<String> threadNames = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+		stateDiscretizer = new CliffWorldStateDiscretizer() {
+			@Override
+			public int getId(State state) {
+				threadNames.add(Thread.currentThread().getName());
+				return super.getId(state);
+			}
+		};
+		uctPlanning = new RootParallelUctPlanning(createPlannings(2));
+		uctPlanning.start();
+		CliffWorldState state = new CliffWorldState(11, 1);
+
+		uctPlanning.setRolloutStartState(state);
+		while (uctPlanning.getNumberOfRollouts() < 10) {
+			Thread.yield();
+		}
+		uctPlanning.getPlannedAction(state);
+
+		for (String threadName : threadNames) {
+			assertTrue(threadName, threadName.startsWith("UctPlanner-"));
+		}
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void rollouts_are_not_performed_on_calling_thread_once_started() {
+		uctPlanning = new RootParallelUctPlanning(createPlannings(2));
+		uctPlanning.start();
+		uctPlanning.performRollouts(1);
+	}
+
+	@Test @Ignore // Benchmark, prints rollouts per second with different numbers of planner threads
+	public void benchmark_root_parallel_rollouts() throws InterruptedException {
+		System.out.println(Runtime.getRuntime().availableProcessors() + " cores");
+		for (int numThreads : new int[] {1, 2, 4, 8}) {
+			uctPlanning = new RootParallelUctPlanning(createPlannings(numThreads));
+			uctPlanning.start();
+			uctPlanning.setRolloutStartState(CliffWorldState.START);
+			Thread.sleep(1000); // warm-up
+			long startRollouts = uctPlanning.getNumberOfRollouts();
+			Thread.sleep(2000);
+			long rollouts = uctPlanning.getNumberOfRollouts() - startRollouts;
+			uctPlanning.stop();
+			System.out.println(numThreads + " threads: " + rollouts / 2 + " rollouts/s");
+		}
+		uctPlanning = null;
+	}
+
+	private List<FirstVisitUctPlanning> createPlannings(int num) {
+		List<FirstVisitUctPlanning> plannings = new ArrayList<>();
+		for (int i = 0; i < num; i++) {
+			FirstVisitUctPlanningParameters uctParams = new FirstVisitUctPlanningParameters();
+			uctParams.discountFactor = discountFactor;
+			uctParams.planningHorizon = planningHorizon;
+			uctParams.model = model;
+			uctParams.longTermQValues = qTable;
+			uctParams.stateDiscretizer = stateDiscretizer;
+			uctParams.uctConstant = 3.0;
+			plannings.add(new FirstVisitUctPlanning(uctParams));
+		}
+		return plannings;
+	}
+}
@@ -0,0 +1,134 @@
+package org.atorma.robot.learning.montecarlo;
+
+import static org.junit.Assert.*;
+
+import org.atorma.robot.learning.*;
+import org.atorma.robot.learning.cliffworld.*;
+import org.junit.*;
+
+public class TreeParallelUctPlanningTests {
+
+	private CliffWorldStateDiscretizer stateDiscretizer = new CliffWorldStateDiscretizer();
+	private TreeParallelUctPlanningParameters uctParams;
+	private TreeParallelUctPlanning uctPlanning;
+
+	@Before
+	public void setUp() {
+		uctParams = new TreeParallelUctPlanningParameters();
+		uctParams.discountFactor = 1;
+		uctParams.planningHorizon = 25;
+		uctParams.model = new ExactCliffWorldForwardModel(new ModifiedCliffWorldRewardFunction());
+		uctParams.longTermQValues = new ConcurrentArrayQTable(stateDiscretizer.getNumberOfStates(), CliffWorldAction.values().length);
+		uctParams.stateDiscretizer = stateDiscretizer;
+		uctParams.uctConstant = 3.0;
+		uctParams.allActions = CliffWorldAction.values();
+		uctParams.virtualLoss = -100;
+	}
+
+	@After
+	public void tearDown() {
+		if (uctPlanning != null) {
+			uctPlanning.stop();
+		}
+	}
+
+	@Test
+	public void next_to_goal_planned_action_is_to_go_goal() {
+		uctPlanning = new TreeParallelUctPlanning(uctParams, 1);
+		CliffWorldState state = new CliffWorldState(11, 1);
+
+		uctPlanning.setRolloutStartState(state);
+		uctPlanning.performRollouts(4);
+
+		assertEquals(CliffWorldAction.DOWN, uctPlanning.getPlannedAction(state));
+	}
+
+	@Test
+	public void next_to_cliff_planned_action_is_not_to_fall_off_the_cliff() {
+		uctPlanning = new TreeParallelUctPlanning(uctParams, 1);
+		CliffWorldState state = CliffWorldState.START;
+
+		uctPlanning.setRolloutStartState(state);
+		uctPlanning.performRollouts(100);
+
+		assertTrue(CliffWorldAction.RIGHT != uctPlanning.getPlannedAction(state));
+	}
+
+	@Test
+	public void concurrent_rollouts_count_every_visit() throws InterruptedException {
+		uctPlanning = new TreeParallelUctPlanning(uctParams, 1);
+		CliffWorldState state = new CliffWorldState(6, 2);
+		uctPlanning.setRolloutStartState(state);
+
+		Thread[] threads = new Thread[4];
+		for (int i = 0; i < threads.length; i++) {
+			threads[i] = new Thread() {
+				@Override
+				public void run() {
+					uctPlanning.performRollouts(500);
+				}
+			};
+			threads[i].start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+
+		int stateId = stateDiscretizer.getId(state);
+		int stateActionVisits = 0;
+		for (CliffWorldAction action : CliffWorldAction.values()) {
+			stateActionVisits += uctPlanning.getNumberOfVisits(stateId, action.getId());
+		}
+		assertTrue(uctPlanning.getNumberOfVisits(stateId) >= 2000);
+		assertEquals(uctPlanning.getNumberOfVisits(stateId), stateActionVisits);
+	}
+
+	@Test
+	public void new_start_state_starts_from_cleared_tree() {
+		uctPlanning = new TreeParallelUctPlanning(uctParams, 1);
+		CliffWorldState state = new CliffWorldState(6, 2);
+		int stateId = stateDiscretizer.getId(state);
+
+		for (int i = 0; i < 3; i++) { // both generations of the tree, then the first one reused
+			uctPlanning.setRolloutStartState(state);
+			assertEquals(0, uctPlanning.getNumberOfVisits(stateId));
+			for (CliffWorldAction action : CliffWorldAction.values()) {
+				assertEquals(0, uctPlanning.getNumberOfVisits(stateId, action.getId()));
+				assertEquals(0, uctPlanning.getUctQValue(stateId, action.getId()), 0);
+			}
+			uctPlanning.performRollouts(20);
+			assertTrue(uctPlanning.getNumberOfVisits(stateId) >= 20);
+		}
+	}
+
+	@Test
+	public void workers_perform_rollouts_from_start_state() {
+		uctPlanning = new TreeParallelUctPlanning(uctParams, 2);
+		uctPlanning.start();
+		CliffWorldState state = new CliffWorldState(11, 1);
+
+		uctPlanning.setRolloutStartState(state);
+		while (uctPlanning.getWorkers().get(0).getNumberOfIterations() < 10 || uctPlanning.getWorkers().get(1).getNumberOfIterations() < 10) {
+			Thread.yield();
+		}
+
+		assertEquals(CliffWorldAction.DOWN, uctPlanning.getPlannedAction(state));
+	}
+
+	@Test @Ignore // Benchmark, prints rollouts per second with different numbers of planner threads
+	public void benchmark_tree_parallel_rollouts() throws InterruptedException {
+		System.out.println(Runtime.getRuntime().availableProcessors() + " cores");
+		for (int numThreads : new int[] {1, 2, 4, 8}) {
+			uctPlanning = new TreeParallelUctPlanning(uctParams, numThreads);
+			uctPlanning.start();
+			uctPlanning.setRolloutStartState(CliffWorldState.START);
+			Thread.sleep(1000); // warm-up
+			long startRollouts = uctPlanning.getNumberOfRollouts();
+			Thread.sleep(2000);
+			long rollouts = uctPlanning.getNumberOfRollouts() - startRollouts;
+			uctPlanning.stop();
+			System.out.println(numThreads + " threads: " + rollouts / 2 + " rollouts/s");
+		}
+		uctPlanning = null;
+	}
+}
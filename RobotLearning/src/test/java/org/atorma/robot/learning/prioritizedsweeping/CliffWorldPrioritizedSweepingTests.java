@@ -1,15 +1,16 @@
 package org.atorma.robot.learning.prioritizedsweeping;
 
-import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.*;
 
 import java.util.*;
 
-import org.atorma.robot.learning.HashMapQTable;
+import org.atorma.robot.learning.*;
 import org.atorma.robot.learning.cliffworld.*;
 import org.atorma.robot.learning.prioritizedsweeping.PrioritizedSweeping;
 import org.atorma.robot.mdp.*;
 import org.atorma.robot.policy.EpsilonGreedyPolicy;
 import org.junit.Before;
+import org.junit.Ignore;
 import org.junit.Test;
 
 public class CliffWorldPrioritizedSweepingTests {
@@ -93,6 +94,255 @@ public class CliffWorldPrioritizedSweepingTests {
 		assertEquals(CliffWorldEnvironment.OPTIMAL_PATH, learnedPath);
 	}
 	
+	@Test
+	public void bucket_queue_converges_to_same_values_as_exact_queue() {
+		learnFullModel(new CliffWorldRewardFunction());
+		int numActions = CliffWorldAction.values().length;
+		
+		QTable exactTable = sweepUntilQueueEmpty(new ArrayQTable(stateDiscretizer.getNumberOfStates(), numActions), 
+				new IndexedHeapStateActionPriorityQueue(stateDiscretizer, numActions));
+		QTable bucketTable = sweepUntilQueueEmpty(new ArrayQTable(stateDiscretizer.getNumberOfStates(), numActions), 
+				new LogBucketStateActionPriorityQueue(stateDiscretizer, numActions));
+		
+		assertSameValues(exactTable, bucketTable, 1E-3);
+		int startStateId = stateDiscretizer.getId(CliffWorldState.START);
+		assertEquals(1 - CliffWorldEnvironment.OPTIMAL_PATH.size(), bucketTable.getMaxValueInState(startStateId), 1E-3); // no reward from the goal
+	}
+	
+	@Test
+	public void float_precision_q_table_converges_to_same_values() {
+		learnFullModel(new CliffWorldRewardFunction());
+		int numActions = CliffWorldAction.values().length;
+		
+		QTable doubleTable = sweepUntilQueueEmpty(new ArrayQTable(stateDiscretizer.getNumberOfStates(), numActions), 
+				new IndexedHeapStateActionPriorityQueue(stateDiscretizer, numActions));
+		QTable floatTable = sweepUntilQueueEmpty(new FloatArrayQTable(stateDiscretizer.getNumberOfStates(), numActions), 
+				new IndexedHeapStateActionPriorityQueue(stateDiscretizer, numActions));
+		
+		assertSameValues(doubleTable, floatTable, 1E-3);
+	}
+	
+	@Test
+	public void parallel_sweeping_converges_to_same_values() {
+		learnFullModel(new CliffWorldRewardFunction());
+		int numActions = CliffWorldAction.values().length;
+		
+		QTable exactTable = sweepUntilQueueEmpty(new ArrayQTable(stateDiscretizer.getNumberOfStates(), numActions), 
+				new IndexedHeapStateActionPriorityQueue(stateDiscretizer, numActions));
+		QTable parallelTable = new ConcurrentArrayQTable(stateDiscretizer.getNumberOfStates(), numActions);
+		sweepInParallelUntilIdle(parallelTable, 4);
+		
+		assertSameValues(exactTable, parallelTable, 1E-3);
+	}
+	
+	@Test
+	public void compiled_model_converges_to_same_values() {
+		learnFullModel(new CliffWorldRewardFunction());
+		int numActions = CliffWorldAction.values().length;
+		
+		QTable exactTable = sweepUntilQueueEmpty(new ArrayQTable(stateDiscretizer.getNumberOfStates(), numActions), 
+				new IndexedHeapStateActionPriorityQueue(stateDiscretizer, numActions));
+		sweeping.setModel(new CompiledPrioritizedSweepingModel(model, stateDiscretizer, numActions));
+		QTable compiledTable = sweepUntilQueueEmpty(new ArrayQTable(stateDiscretizer.getNumberOfStates(), numActions), 
+				new IndexedHeapStateActionPriorityQueue(stateDiscretizer, numActions));
+		
+		assertSameValues(exactTable, compiledTable, 1E-3);
+	}
+	
+	@Test
+	public void patched_transitions_are_published_without_changing_weights_being_read() {
+		learnFullModel(new CliffWorldRewardFunction());
+		int numActions = CliffWorldAction.values().length;
+		CompiledPrioritizedSweepingModel compiledModel = new CompiledPrioritizedSweepingModel(model, stateDiscretizer, numActions);
+		compiledModel.addState(CliffWorldState.START);
+		CompiledPrioritizedSweepingModel.Graph graph = compiledModel.getGraph();
+		int key = stateDiscretizer.getId(CliffWorldState.START)*numActions + CliffWorldAction.UP.getId();
+		int otherKey = stateDiscretizer.getId(CliffWorldState.START)*numActions + CliffWorldAction.RIGHT.getId();
+		CompiledPrioritizedSweepingModel.RowWeights weightsBeingRead = graph.rowWeights.get(key);
+		CompiledPrioritizedSweepingModel.RowWeights otherWeights = graph.rowWeights.get(otherKey);
+		double[] probabilitiesBefore = weightsBeingRead.probabilities.clone();
+		double[] rewardsBefore = weightsBeingRead.rewards.clone();
+		
+		// Same successor with another reward is patched into the compiled arrays
+		Transition transition = new Transition(CliffWorldState.START, CliffWorldAction.UP, CliffWorldState.START.getNextState(CliffWorldAction.UP));
+		model.update(new TransitionReward(transition, -5));
+		compiledModel.transitionsChanged(transition.getFromStateAction());
+		
+		assertSame(graph, compiledModel.getGraph());
+		assertNotSame(weightsBeingRead, graph.rowWeights.get(key));
+		assertSame(otherWeights, graph.rowWeights.get(otherKey));
+		assertArrayEquals(probabilitiesBefore, weightsBeingRead.probabilities, 0);
+		assertArrayEquals(rewardsBefore, weightsBeingRead.rewards, 0);
+		assertEquals(-5, graph.rowWeights.get(key).rewards[0], 0);
+		assertEquals(1, graph.rowWeights.get(key).probabilities[0], 0);
+	}
+	
+	@Test
+	public void small_backups_converge_to_same_values() {
+		learnFullModel(new CliffWorldRewardFunction());
+		int numActions = CliffWorldAction.values().length;
+		
+		QTable exactTable = sweepUntilQueueEmpty(new ArrayQTable(stateDiscretizer.getNumberOfStates(), numActions), 
+				new IndexedHeapStateActionPriorityQueue(stateDiscretizer, numActions));
+		QTable smallBackupTable = new ArrayQTable(stateDiscretizer.getNumberOfStates(), numActions);
+		sweepWithSmallBackupsUntilQueueEmpty(smallBackupTable);
+		
+		assertSameValues(exactTable, smallBackupTable, 1E-3);
+	}
+	
+	@Test(expected = IllegalStateException.class)
+	public void small_backups_require_compiled_model() {
+		sweeping.performSmallBackups(1);
+	}
+	
+	@Test
+	public void performs_iterations_until_deadline_or_empty_queue() {
+		learnFullModel(new CliffWorldRewardFunction());
+		int numActions = CliffWorldAction.values().length;
+		StateActionPriorityQueue priorityQueue = new IndexedHeapStateActionPriorityQueue(stateDiscretizer, numActions);
+		sweeping.setPriorityQueue(priorityQueue);
+		sweeping.setQValueChangeThreshold(1E-4);
+		for (StateAction stateAction : getAllStateActions()) {
+			priorityQueue.addOrDecreasePriority(stateAction, 0);
+		}
+		
+		PlanningResult result = sweeping.performIterationsUntil(System.nanoTime()); // already passed
+		assertEquals(0, result.getNumberOfIterations());
+		assertTrue(result.isDeadlineReached());
+		
+		result = sweeping.performIterationsUntil(System.nanoTime() + 10000000000L);
+		assertFalse(result.isDeadlineReached());
+		assertTrue(result.getNumberOfIterations() > 0);
+		assertTrue(priorityQueue.isEmpty());
+	}
+	
+	@Test @Ignore // Benchmark, prints backups per second with different numbers of sweeper threads
+	public void benchmark_parallel_sweeping() {
+		learnFullModel(new CliffWorldRewardFunction());
+		int numActions = CliffWorldAction.values().length;
+		
+		System.out.println("Cliff world, " + Runtime.getRuntime().availableProcessors() + " cores");
+		for (int numThreads : new int[] {1, 2, 4, 8}) {
+			long iterations = 0;
+			long nanos = 0;
+			for (int round = 0; round < 500; round++) {
+				long[] iterationsAndNanos = sweepInParallelUntilIdle(new ConcurrentArrayQTable(stateDiscretizer.getNumberOfStates(), numActions), numThreads);
+				if (round >= 100) { // warm-up
+					iterations += iterationsAndNanos[0];
+					nanos += iterationsAndNanos[1];
+				}
+			}
+			System.out.println(numThreads + " threads: " + (long) (iterations / (nanos / 1E9)) + " backups/s, " 
+					+ iterations / 400 + " backups per sweep until converged");
+		}
+	}
+	
+	@Test @Ignore // Benchmark, prints the time to converge with full and with small backups
+	public void benchmark_small_backups() {
+		learnFullModel(new CliffWorldRewardFunction());
+		int numActions = CliffWorldAction.values().length;
+		
+		for (int round = 0; round < 2; round++) { // second round after warm-up
+			long start = System.nanoTime();
+			for (int i = 0; i < 1000; i++) {
+				sweeping.setModel(new CompiledPrioritizedSweepingModel(model, stateDiscretizer, numActions));
+				sweepUntilQueueEmpty(new ArrayQTable(stateDiscretizer.getNumberOfStates(), numActions), 
+						new IndexedHeapStateActionPriorityQueue(stateDiscretizer, numActions));
+			}
+			System.out.println("Full backups: " + (System.nanoTime() - start) / 1000 / 1000 + " us per convergence");
+			
+			long iterations = 0;
+			start = System.nanoTime();
+			for (int i = 0; i < 1000; i++) {
+				iterations += sweepWithSmallBackupsUntilQueueEmpty(new ArrayQTable(stateDiscretizer.getNumberOfStates(), numActions));
+			}
+			System.out.println("Small backups: " + (System.nanoTime() - start) / 1000 / 1000 + " us per convergence, " 
+					+ iterations / 1000 + " states polled");
+		}
+	}
+	
+	private void learnFullModel(CliffWorldRewardFunction rewardFunction) {
+		for (StateAction stateAction : getAllStateActions()) {
+			CliffWorldState fromState = (CliffWorldState) stateAction.getState();
+			CliffWorldAction action = (CliffWorldAction) stateAction.getAction();
+			Transition transition = new Transition(fromState, action, fromState.getNextState(action));
+			model.update(new TransitionReward(transition, rewardFunction.getReward(transition)));
+		}
+	}
+	
+	private List<StateAction> getAllStateActions() {
+		List<StateAction> stateActions = new ArrayList<>();
+		for (int x = CliffWorldState.X_MIN; x <= CliffWorldState.X_MAX; x++) {
+			for (int y = CliffWorldState.Y_MIN; y <= CliffWorldState.Y_MAX; y++) {
+				CliffWorldState state = new CliffWorldState(x, y);
+				for (CliffWorldAction action : model.getAllowedActions(state)) {
+					stateActions.add(new StateAction(state, action));
+				}
+			}
+		}
+		return stateActions;
+	}
+	
+	private QTable sweepUntilQueueEmpty(QTable qTable, StateActionPriorityQueue priorityQueue) {
+		sweeping.setQTable(qTable);
+		sweeping.setPriorityQueue(priorityQueue);
+		sweeping.setQValueChangeThreshold(1E-4);
+		for (StateAction stateAction : getAllStateActions()) {
+			priorityQueue.addOrDecreasePriority(stateAction, 0); // after any Q-value change
+		}
+		sweeping.performIterations(100000);
+		assertTrue(priorityQueue.isEmpty());
+		return qTable;
+	}
+	
+	// Returns the number of states polled
+	private int sweepWithSmallBackupsUntilQueueEmpty(QTable qTable) {
+		int numActions = CliffWorldAction.values().length;
+		CompiledPrioritizedSweepingModel compiledModel = new CompiledPrioritizedSweepingModel(model, stateDiscretizer, numActions);
+		compiledModel.addState(CliffWorldState.START);
+		sweeping.setModel(compiledModel);
+		sweeping.setQTable(qTable);
+		sweeping.setQValueChangeThreshold(1E-4);
+		int iterations = sweeping.performSmallBackups(100000);
+		assertTrue(iterations < 100000);
+		return iterations;
+	}
+	
+	// Returns the number of iterations and the nanoseconds it took to converge
+	private long[] sweepInParallelUntilIdle(QTable qTable, int numThreads) {
+		PrioritizedSweeping parallelSweeping = new PrioritizedSweeping();
+		parallelSweeping.setDiscountFactor(discountFactor);
+		parallelSweeping.setStateDiscretizer(stateDiscretizer);
+		parallelSweeping.setModel(model); // read-only once the full model is learned
+		parallelSweeping.setQTable(qTable);
+		parallelSweeping.setQValueChangeThreshold(1E-4);
+		StateActionPriorityQueue priorityQueue = new MultiQueueStateActionPriorityQueue(stateDiscretizer, CliffWorldAction.values().length, 2*numThreads);
+		parallelSweeping.setPriorityQueue(priorityQueue);
+		
+		ParallelPrioritizedSweeping sweepers = new ParallelPrioritizedSweeping(parallelSweeping, numThreads);
+		sweepers.start();
+		long start = System.nanoTime();
+		for (StateAction stateAction : getAllStateActions()) {
+			priorityQueue.addOrDecreasePriority(stateAction, 0);
+		}
+		sweepers.wakeUp();
+		while (!sweepers.isIdle()) {
+			Thread.yield();
+		}
+		long nanos = System.nanoTime() - start;
+		sweepers.stop();
+		return new long[] {sweepers.getNumberOfIterations(), nanos};
+	}
+	
+	// The greedy action of the actual table must be a greedy action of the expected table
+	private void assertSameValues(QTable expected, QTable actual, double delta) {
+		for (int stateId = 0; stateId < stateDiscretizer.getNumberOfStates(); stateId++) {
+			double maxValue = expected.getMaxValueInState(stateId);
+			assertEquals(maxValue, actual.getMaxValueInState(stateId), delta);
+			assertEquals(maxValue, expected.getValue(stateId, actual.getActionId(stateId)), delta);
+		}
+	}
+	
 	private List<CliffWorldAction> getLearnedPath() {
 		CliffWorldState state = CliffWorldState.START;
 		List<CliffWorldAction> learnedActions = new ArrayList<>();
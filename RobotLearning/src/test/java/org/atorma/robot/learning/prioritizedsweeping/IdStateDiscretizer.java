@@ -0,0 +1,67 @@
+package org.atorma.robot.learning.prioritizedsweeping;
+
+import org.atorma.robot.discretization.StateDiscretizer;
+import org.atorma.robot.mdp.*;
+
+/**
+ * Discretizes states that are just their ids. Preallocates the <tt>StateAction</tt>s 
+ * of all ids so that creating them is not measured in the queue benchmarks.
+ */
+class IdStateDiscretizer implements StateDiscretizer {
+	
+	private final StateAction[][] stateActions;
+
+	IdStateDiscretizer(int numStates, int numActions) {
+		stateActions = new StateAction[numStates][numActions];
+		for (int stateId = 0; stateId < numStates; stateId++) {
+			for (int actionId = 0; actionId < numActions; actionId++) {
+				stateActions[stateId][actionId] = new StateAction(new IdState(stateId), new IdAction(actionId));
+			}
+		}
+	}
+
+	StateAction getStateAction(int stateId, int actionId) {
+		return stateActions[stateId][actionId];
+	}
+
+	int getNumberOfActions() {
+		return stateActions[0].length;
+	}
+
+	@Override
+	public int getId(State state) {
+		return ((IdState) state).id;
+	}
+
+	@Override
+	public int getNumberOfStates() {
+		return stateActions.length;
+	}
+	
+	
+	private static class IdState implements State {
+		final int id;
+
+		IdState(int id) {
+			this.id = id;
+		}
+
+		@Override
+		public double[] getValues() {
+			return new double[] {id};
+		}
+	}
+
+	private static class IdAction implements DiscreteAction {
+		final int id;
+
+		IdAction(int id) {
+			this.id = id;
+		}
+
+		@Override
+		public int getId() {
+			return id;
+		}
+	}
+}
@@ -0,0 +1,111 @@
+package org.atorma.robot.learning.prioritizedsweeping;
+
+import static org.junit.Assert.*;
+
+import java.util.*;
+
+import org.atorma.robot.mdp.StateAction;
+import org.junit.Ignore;
+import org.junit.Test;
+
+public class IndexedHeapStateActionPriorityQueueTests {
+
+	private int numActions = 4;
+
+	@Test
+	public void add_or_update_priority() {
+		IdStateDiscretizer stateDiscretizer = new IdStateDiscretizer(20, numActions);
+		IndexedHeapStateActionPriorityQueue priorityQueue = new IndexedHeapStateActionPriorityQueue(stateDiscretizer, numActions);
+		StateAction stateAction1 = stateDiscretizer.getStateAction(1, 1);
+		StateAction stateAction2 = stateDiscretizer.getStateAction(12, 2);
+		StateAction stateAction3 = stateDiscretizer.getStateAction(12, 2);
+
+		priorityQueue.addOrDecreasePriority(stateAction1, 1);
+		priorityQueue.addOrDecreasePriority(stateAction2, 2);
+		assertEquals(2, priorityQueue.size());
+		assertEquals(stateAction1, priorityQueue.peekMin());
+
+		priorityQueue.addOrDecreasePriority(stateAction3, 3); // higher priority does nothing
+		priorityQueue.addOrDecreasePriority(stateAction3, -1); // same discretization as stateAction2
+		assertEquals(2, priorityQueue.size());
+		assertSame(stateAction2, priorityQueue.pollMin());
+		assertSame(stateAction1, priorityQueue.pollMin());
+		assertNull(priorityQueue.pollMin());
+		assertTrue(priorityQueue.isEmpty());
+
+		priorityQueue.addOrDecreasePriority(stateAction2, 5);
+		priorityQueue.clear();
+		assertTrue(priorityQueue.isEmpty());
+		priorityQueue.addOrDecreasePriority(stateAction2, 5);
+		assertEquals(1, priorityQueue.size());
+	}
+
+	@Test
+	public void polls_in_the_same_order_as_fibonacci_heap() {
+		IdStateDiscretizer stateDiscretizer = new IdStateDiscretizer(500, numActions);
+		IndexedHeapStateActionPriorityQueue heapQueue = new IndexedHeapStateActionPriorityQueue(stateDiscretizer, numActions);
+		DiscretizingStateActionPriorityQueue fibonacciQueue = new DiscretizingStateActionPriorityQueue(stateDiscretizer);
+		Random random = new Random(1);
+
+		// Distinct priorities, so that the order is unique
+		List<Integer> priorities = new ArrayList<>();
+		for (int i = 0; i < 100000; i++) {
+			priorities.add(-i);
+		}
+		Collections.shuffle(priorities, random);
+
+		for (int priority : priorities) {
+			if (random.nextInt(4) == 0) {
+				assertSame(fibonacciQueue.pollMin(), heapQueue.pollMin());
+			} else {
+				StateAction stateAction = stateDiscretizer.getStateAction(random.nextInt(500), random.nextInt(numActions));
+				fibonacciQueue.addOrDecreasePriority(stateAction, priority);
+				heapQueue.addOrDecreasePriority(stateAction, priority);
+			}
+			assertEquals(fibonacciQueue.size(), heapQueue.size());
+		}
+		while (!fibonacciQueue.isEmpty()) {
+			assertSame(fibonacciQueue.pollMin(), heapQueue.pollMin());
+		}
+		assertTrue(heapQueue.isEmpty());
+	}
+
+	@Test @Ignore // Benchmark, prints times of prioritized sweeping queue operations
+	public void benchmark_against_fibonacci_heap() {
+		// Bumper tests have 128 states (512 state-actions) and queues of about 300 entries
+		for (int numStates : new int[] {32, 128, 1024, 16384}) {
+			IdStateDiscretizer stateDiscretizer = new IdStateDiscretizer(numStates, numActions);
+			int numOperations = 2000000;
+			long fibonacciNanos = timeOperations(new DiscretizingStateActionPriorityQueue(stateDiscretizer), stateDiscretizer, numOperations);
+			long heapNanos = timeOperations(new IndexedHeapStateActionPriorityQueue(stateDiscretizer, numActions), stateDiscretizer, numOperations);
+			System.out.println(numStates*numActions + " state-actions: Fibonacci heap " + fibonacciNanos/numOperations
+					+ " ns/operation, indexed heap " + heapNanos/numOperations + " ns/operation, speedup " + (double) fibonacciNanos/heapNanos);
+		}
+	}
+
+	// Like prioritized sweeping: each poll is followed by updates of a few predecessors
+	// with priorities over a few orders of magnitude
+	static long timeOperations(StateActionPriorityQueue queue, IdStateDiscretizer stateDiscretizer, int numOperations) {
+		Random random = new Random(2);
+		StateAction[] stateActions = new StateAction[numOperations];
+		double[] priorities = new double[numOperations];
+		for (int i = 0; i < numOperations; i++) {
+			stateActions[i] = stateDiscretizer.getStateAction(random.nextInt(stateDiscretizer.getNumberOfStates()), random.nextInt(stateDiscretizer.getNumberOfActions()));
+			priorities[i] = -Math.pow(10, -4*random.nextDouble());
+		}
+		
+		long start = 0;
+		for (int round = 0; round < 2; round++) { // first round is warm-up
+			start = System.nanoTime();
+			for (int i = 0; i < numOperations; i++) {
+				if (i % 8 == 0) {
+					queue.pollMin();
+				} else {
+					queue.addOrDecreasePriority(stateActions[i], priorities[i]);
+				}
+			}
+			queue.clear();
+		}
+		return System.nanoTime() - start;
+	}
+}
@@ -0,0 +1,105 @@
+package org.atorma.robot.learning.prioritizedsweeping;
+
+import static org.junit.Assert.*;
+
+import java.util.*;
+
+import org.atorma.robot.mdp.StateAction;
+import org.junit.Ignore;
+import org.junit.Test;
+
+public class LogBucketStateActionPriorityQueueTests {
+
+	private int numActions = 4;
+
+	@Test
+	public void polls_by_binary_exponent_of_priority() {
+		IdStateDiscretizer stateDiscretizer = new IdStateDiscretizer(10, numActions);
+		LogBucketStateActionPriorityQueue priorityQueue = new LogBucketStateActionPriorityQueue(stateDiscretizer, numActions);
+		double[] priorities = {-1, -100, 0.5, -3, 0, -1.5, Double.NEGATIVE_INFINITY, 1E-320};
+		for (int stateId = 0; stateId < priorities.length; stateId++) {
+			priorityQueue.addOrDecreasePriority(stateDiscretizer.getStateAction(stateId, 0), priorities[stateId]);
+		}
+		assertEquals(priorities.length, priorityQueue.size());
+
+		// -1.5 and -1 share a bucket and come out last in, first out
+		int[] expectedStateIds = {6, 1, 3, 5, 0, 4, 7, 2};
+		for (int stateId : expectedStateIds) {
+			assertSame(stateDiscretizer.getStateAction(stateId, 0), priorityQueue.peekMin());
+			assertSame(stateDiscretizer.getStateAction(stateId, 0), priorityQueue.pollMin());
+		}
+		assertNull(priorityQueue.pollMin());
+		assertTrue(priorityQueue.isEmpty());
+	}
+
+	@Test
+	public void add_or_decrease_priority() {
+		IdStateDiscretizer stateDiscretizer = new IdStateDiscretizer(20, numActions);
+		LogBucketStateActionPriorityQueue priorityQueue = new LogBucketStateActionPriorityQueue(stateDiscretizer, numActions);
+		StateAction stateAction1 = stateDiscretizer.getStateAction(1, 1);
+		StateAction stateAction2 = stateDiscretizer.getStateAction(12, 2);
+
+		priorityQueue.addOrDecreasePriority(stateAction1, -10);
+		priorityQueue.addOrDecreasePriority(stateAction2, -1);
+		priorityQueue.addOrDecreasePriority(stateAction2, 5); // higher priority does nothing
+		assertEquals(2, priorityQueue.size());
+		assertSame(stateAction1, priorityQueue.peekMin());
+
+		priorityQueue.addOrDecreasePriority(stateAction2, -20);
+		assertEquals(2, priorityQueue.size());
+		assertSame(stateAction2, priorityQueue.pollMin());
+		assertSame(stateAction1, priorityQueue.pollMin());
+
+		priorityQueue.addOrDecreasePriority(stateAction2, -5);
+		priorityQueue.clear();
+		assertTrue(priorityQueue.isEmpty());
+		priorityQueue.addOrDecreasePriority(stateAction1, 3);
+		assertSame(stateAction1, priorityQueue.pollMin());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void priority_must_not_be_NaN() {
+		IdStateDiscretizer stateDiscretizer = new IdStateDiscretizer(1, numActions);
+		new LogBucketStateActionPriorityQueue(stateDiscretizer, numActions).addOrDecreasePriority(stateDiscretizer.getStateAction(0, 0), Double.NaN);
+	}
+
+	@Test
+	public void polled_priority_is_within_factor_of_two_from_minimum() {
+		IdStateDiscretizer stateDiscretizer = new IdStateDiscretizer(500, numActions);
+		LogBucketStateActionPriorityQueue priorityQueue = new LogBucketStateActionPriorityQueue(stateDiscretizer, numActions);
+		Map<StateAction, Double> priorities = new HashMap<>();
+		Random random = new Random(1);
+
+		for (int i = 0; i < 100000; i++) {
+			if (random.nextInt(4) == 0) {
+				StateAction polled = priorityQueue.pollMin();
+				if (polled != null) {
+					double min = Collections.min(priorities.values());
+					double priority = priorities.remove(polled);
+					assertTrue(priority + " vs " + min, priority <= min / 2);
+				}
+			} else {
+				StateAction stateAction = stateDiscretizer.getStateAction(random.nextInt(500), random.nextInt(numActions));
+				double priority = -Math.pow(10, -4*random.nextDouble());
+				priorityQueue.addOrDecreasePriority(stateAction, priority);
+				Double current = priorities.get(stateAction);
+				priorities.put(stateAction, current != null ? Math.min(current, priority) : priority);
+			}
+			assertEquals(priorities.size(), priorityQueue.size());
+		}
+	}
+
+	@Test @Ignore // Benchmark, prints times of prioritized sweeping queue operations
+	public void benchmark_against_indexed_heap() {
+		for (int numStates : new int[] {128, 16384, 262144}) {
+			IdStateDiscretizer stateDiscretizer = new IdStateDiscretizer(numStates, numActions);
+			int numOperations = 4000000;
+			long heapNanos = IndexedHeapStateActionPriorityQueueTests.timeOperations(
+					new IndexedHeapStateActionPriorityQueue(stateDiscretizer, numActions), stateDiscretizer, numOperations);
+			long bucketNanos = IndexedHeapStateActionPriorityQueueTests.timeOperations(
+					new LogBucketStateActionPriorityQueue(stateDiscretizer, numActions), stateDiscretizer, numOperations);
+			System.out.println(numStates*numActions + " state-actions: indexed heap " + heapNanos/numOperations
+					+ " ns/operation, log buckets " + bucketNanos/numOperations + " ns/operation, speedup " + (double) heapNanos/bucketNanos);
+		}
+	}
+}
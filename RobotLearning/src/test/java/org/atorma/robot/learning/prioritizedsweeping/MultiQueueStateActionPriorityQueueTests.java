@@ -0,0 +1,110 @@
+package org.atorma.robot.learning.prioritizedsweeping;
+
+import static org.junit.Assert.*;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.atorma.robot.mdp.StateAction;
+import org.junit.Test;
+
+public class MultiQueueStateActionPriorityQueueTests {
+
+	private int numActions = 4;
+
+	@Test
+	public void add_or_decrease_priority() {
+		IdStateDiscretizer stateDiscretizer = new IdStateDiscretizer(20, numActions);
+		MultiQueueStateActionPriorityQueue priorityQueue = new MultiQueueStateActionPriorityQueue(stateDiscretizer, numActions, 4);
+		StateAction stateAction1 = stateDiscretizer.getStateAction(1, 1);
+		StateAction stateAction2 = stateDiscretizer.getStateAction(12, 2);
+
+		priorityQueue.addOrDecreasePriority(stateAction1, -10);
+		priorityQueue.addOrDecreasePriority(stateAction2, -1);
+		priorityQueue.addOrDecreasePriority(stateAction2, 5); // higher priority does nothing
+		assertEquals(2, priorityQueue.size());
+		assertSame(stateAction1, priorityQueue.peekMin());
+
+		priorityQueue.addOrDecreasePriority(stateAction2, -20);
+		assertEquals(2, priorityQueue.size());
+		assertSame(stateAction2, priorityQueue.peekMin());
+
+		priorityQueue.clear();
+		assertTrue(priorityQueue.isEmpty());
+		assertNull(priorityQueue.peekMin());
+		assertNull(priorityQueue.pollMin());
+	}
+
+	@Test
+	public void with_one_queue_polls_in_the_same_order_as_indexed_heap() {
+		IdStateDiscretizer stateDiscretizer = new IdStateDiscretizer(500, numActions);
+		MultiQueueStateActionPriorityQueue multiQueue = new MultiQueueStateActionPriorityQueue(stateDiscretizer, numActions, 1);
+		IndexedHeapStateActionPriorityQueue heapQueue = new IndexedHeapStateActionPriorityQueue(stateDiscretizer, numActions);
+		Random random = new Random(1);
+
+		for (int i = 0; i < 100000; i++) {
+			if (random.nextInt(4) == 0) {
+				assertSame(heapQueue.pollMin(), multiQueue.pollMin());
+			} else {
+				StateAction stateAction = stateDiscretizer.getStateAction(random.nextInt(500), random.nextInt(numActions));
+				double priority = -random.nextDouble();
+				heapQueue.addOrDecreasePriority(stateAction, priority);
+				multiQueue.addOrDecreasePriority(stateAction, priority);
+			}
+			assertEquals(heapQueue.size(), multiQueue.size());
+		}
+	}
+
+	@Test
+	public void concurrent_threads_poll_all_added_pairs() throws Exception {
+		final int numStates = 5000;
+		final IdStateDiscretizer stateDiscretizer = new IdStateDiscretizer(numStates, numActions);
+		final MultiQueueStateActionPriorityQueue priorityQueue = new MultiQueueStateActionPriorityQueue(stateDiscretizer, numActions, 8);
+		final ConcurrentMap<StateAction, AtomicInteger> timesPolled = new ConcurrentHashMap<>();
+		final int numThreads = 4;
+
+		// Each thread adds the pairs of its own states twice and polls a pair after each add
+		ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+		List<Future<?>> futures = new ArrayList<>();
+		for (int t = 0; t < numThreads; t++) {
+			final int thread = t;
+			futures.add(executor.submit(new Runnable() {
+				@Override
+				public void run() {
+					Random random = new Random(thread);
+					for (int round = 0; round < 2; round++) {
+						for (int stateId = thread; stateId < numStates; stateId += numThreads) {
+							for (int actionId = 0; actionId < numActions; actionId++) {
+								priorityQueue.addOrDecreasePriority(stateDiscretizer.getStateAction(stateId, actionId), -random.nextDouble());
+								StateAction stateAction = priorityQueue.pollMin();
+								if (stateAction != null) {
+									countPoll(timesPolled, stateAction);
+								}
+							}
+						}
+					}
+				}
+			}));
+		}
+		for (Future<?> future : futures) {
+			future.get();
+		}
+		executor.shutdown();
+		while (!priorityQueue.isEmpty()) {
+			countPoll(timesPolled, priorityQueue.pollMin());
+		}
+
+		// Each pair was added twice, so it was polled once or, if polled in between, twice
+		assertEquals(numStates*numActions, timesPolled.size());
+		for (AtomicInteger count : timesPolled.values()) {
+			assertTrue(count.get() == 1 || count.get() == 2);
+		}
+		assertEquals(0, priorityQueue.size());
+	}
+
+	private void countPoll(ConcurrentMap<StateAction, AtomicInteger> timesPolled, StateAction stateAction) {
+		timesPolled.putIfAbsent(stateAction, new AtomicInteger());
+		timesPolled.get(stateAction).incrementAndGet();
+	}
+}
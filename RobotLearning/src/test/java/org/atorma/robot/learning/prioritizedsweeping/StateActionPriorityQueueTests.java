@@ -54,6 +54,18 @@ public class StateActionPriorityQueueTests {
 		assertEquals(stateAction1, priorityQueue.peekMin());
 	}
 	
+	@Test
+	public void indexed_StateAction_and_plain_StateAction_are_equal_both_ways() {
+		State state = mock(State.class);
+		DiscreteAction action = mock(DiscreteAction.class);
+		StateAction plain = new StateAction(state, action);
+		StateAction indexed = new IndexedStateAction(state, action, 1, 1);
+		
+		assertEquals(plain, indexed);
+		assertEquals(indexed, plain);
+		assertEquals(plain.hashCode(), indexed.hashCode());
+	}
+	
 	private StateAction mockStateAction(int stateId, int actionId) {
 		State state = mock(State.class);
 		DiscreteAction action = mock(DiscreteAction.class);
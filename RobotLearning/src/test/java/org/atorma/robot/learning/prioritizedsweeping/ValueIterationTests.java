@@ -0,0 +1,200 @@
+package org.atorma.robot.learning.prioritizedsweeping;
+
+import static org.junit.Assert.*;
+
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+
+import org.atorma.robot.learning.ArrayQTable;
+import org.atorma.robot.learning.cliffworld.*;
+import org.atorma.robot.mdp.*;
+import org.junit.Before;
+import org.junit.Ignore;
+import org.junit.Test;
+
+public class ValueIterationTests {
+
+	private CliffWorldStateDiscretizer stateDiscretizer = new CliffWorldStateDiscretizer();
+	private int numActions = CliffWorldAction.values().length;
+	private LearningCliffWorldModel model;
+
+	@Before
+	public void setUp() {
+		model = new LearningCliffWorldModel();
+		CliffWorldRewardFunction rewardFunction = new CliffWorldRewardFunction();
+		for (int x = CliffWorldState.X_MIN; x <= CliffWorldState.X_MAX; x++) {
+			for (int y = CliffWorldState.Y_MIN; y <= CliffWorldState.Y_MAX; y++) {
+				CliffWorldState state = new CliffWorldState(x, y);
+				for (CliffWorldAction action : model.getAllowedActions(state)) {
+					Transition transition = new Transition(state, action, state.getNextState(action));
+					model.update(new TransitionReward(transition, rewardFunction.getReward(transition)));
+				}
+			}
+		}
+	}
+
+	@Test
+	public void solves_optimal_path_of_cliff_world() {
+		ValueIteration valueIteration = new ValueIteration(model, stateDiscretizer, numActions);
+		valueIteration.addState(CliffWorldState.START);
+		ArrayQTable qTable = new ArrayQTable(stateDiscretizer.getNumberOfStates(), numActions);
+
+		int sweeps = valueIteration.solve(qTable);
+
+		assertTrue(sweeps < ValueIteration.DEFAULT_MAX_SWEEPS);
+		int startStateId = stateDiscretizer.getId(CliffWorldState.START);
+		assertEquals(1 - CliffWorldEnvironment.OPTIMAL_PATH.size(), qTable.getMaxValueInState(startStateId), 1E-6);
+		assertEquals(CliffWorldEnvironment.OPTIMAL_PATH, getGreedyPath(qTable));
+	}
+
+	@Test
+	public void parallel_sweeps_give_same_values_as_one_thread() {
+		RandomModel randomModel = new RandomModel(2000, numActions, 3, 1);
+		
+		ValueIteration valueIteration = randomModel.createValueIteration();
+		valueIteration.setPool(new ForkJoinPool(1));
+		ArrayQTable oneThreadTable = new ArrayQTable(randomModel.getNumberOfStates(), numActions);
+		int oneThreadSweeps = valueIteration.solve(oneThreadTable);
+
+		valueIteration.setPool(new ForkJoinPool(4));
+		ArrayQTable parallelTable = new ArrayQTable(randomModel.getNumberOfStates(), numActions);
+		int parallelSweeps = valueIteration.solve(parallelTable);
+
+		assertEquals(oneThreadSweeps, parallelSweeps);
+		for (int stateId = 0; stateId < randomModel.getNumberOfStates(); stateId++) {
+			for (int actionId = 0; actionId < numActions; actionId++) {
+				assertEquals(oneThreadTable.getValue(stateId, actionId), parallelTable.getValue(stateId, actionId), 0);
+			}
+		}
+	}
+	
+	@Test
+	public void converges_to_same_values_as_prioritized_sweeping() {
+		RandomModel randomModel = new RandomModel(500, numActions, 3, 2);
+		ArrayQTable valueIterationTable = new ArrayQTable(randomModel.getNumberOfStates(), numActions);
+		randomModel.createValueIteration().solve(valueIterationTable);
+		
+		PrioritizedSweeping sweeping = new PrioritizedSweeping();
+		sweeping.setDiscountFactor(RandomModel.DISCOUNT_FACTOR);
+		sweeping.setStateDiscretizer(randomModel.stateDiscretizer);
+		sweeping.setModel(randomModel);
+		ArrayQTable sweepingTable = new ArrayQTable(randomModel.getNumberOfStates(), numActions);
+		sweeping.setQTable(sweepingTable);
+		sweeping.setQValueChangeThreshold(1E-7);
+		IndexedHeapStateActionPriorityQueue priorityQueue = new IndexedHeapStateActionPriorityQueue(randomModel.stateDiscretizer, numActions);
+		sweeping.setPriorityQueue(priorityQueue);
+		for (int stateId = 0; stateId < randomModel.getNumberOfStates(); stateId++) {
+			for (int actionId = 0; actionId < numActions; actionId++) {
+				priorityQueue.addOrDecreasePriority(randomModel.stateDiscretizer.getStateAction(stateId, actionId), 0);
+			}
+		}
+		sweeping.performIterations(Integer.MAX_VALUE);
+		
+		for (int stateId = 0; stateId < randomModel.getNumberOfStates(); stateId++) {
+			assertEquals(sweepingTable.getMaxValueInState(stateId), valueIterationTable.getMaxValueInState(stateId), 1E-4);
+		}
+	}
+	
+	@Test @Ignore // Benchmark, prints the time to solve a random model with different numbers of threads
+	public void benchmark_parallel_sweeps() {
+		RandomModel randomModel = new RandomModel(200000, numActions, 4, 3);
+		ValueIteration valueIteration = randomModel.createValueIteration();
+		
+		System.out.println(Runtime.getRuntime().availableProcessors() + " cores");
+		for (int numThreads : new int[] {1, 2, 4, 8, 1, 2, 4, 8}) { // second round after warm-up
+			valueIteration.setPool(new ForkJoinPool(numThreads));
+			long start = System.nanoTime();
+			int sweeps = valueIteration.solve(new ArrayQTable(randomModel.getNumberOfStates(), numActions));
+			long millis = (System.nanoTime() - start) / 1000000;
+			System.out.println(numThreads + " threads: " + sweeps + " sweeps in " + millis + " ms");
+		}
+	}
+	
+	@Test
+	public void stops_after_max_sweeps() {
+		ValueIteration valueIteration = new ValueIteration(model, stateDiscretizer, numActions);
+		valueIteration.addState(CliffWorldState.START);
+		valueIteration.setMaxSweeps(3);
+
+		assertEquals(3, valueIteration.solve(new ArrayQTable(stateDiscretizer.getNumberOfStates(), numActions)));
+	}
+
+	// Rewards and successors drawn at random for each (state, action)
+	private static class RandomModel implements PrioritizedSweepingModel {
+		
+		static final double DISCOUNT_FACTOR = 0.9;
+		
+		final IdStateDiscretizer stateDiscretizer;
+		private final Map<StateAction, Set<StochasticTransitionReward>> outgoing = new HashMap<>();
+		private final Map<State, Set<StochasticTransitionReward>> incoming = new HashMap<>();
+		
+		RandomModel(int numStates, int numActions, int numSuccessors, long seed) {
+			stateDiscretizer = new IdStateDiscretizer(numStates, numActions);
+			Random random = new Random(seed);
+			for (int stateId = 0; stateId < numStates; stateId++) {
+				for (int actionId = 0; actionId < numActions; actionId++) {
+					StateAction stateAction = stateDiscretizer.getStateAction(stateId, actionId);
+					Set<StochasticTransitionReward> transitions = new LinkedHashSet<>();
+					for (int i = 0; i < numSuccessors; i++) {
+						State toState = stateDiscretizer.getStateAction(random.nextInt(numStates), 0).getState();
+						StochasticTransitionReward transition = new StochasticTransitionReward(stateAction.getState(), 
+								stateAction.getAction(), toState, random.nextDouble() - 0.5, 1.0 / numSuccessors);
+						transitions.add(transition);
+						getIncomingTransitions(toState).add(transition);
+					}
+					outgoing.put(stateAction, transitions);
+				}
+			}
+		}
+		
+		ValueIteration createValueIteration() {
+			ValueIteration valueIteration = new ValueIteration(this, stateDiscretizer, stateDiscretizer.getNumberOfActions());
+			valueIteration.setDiscountFactor(DISCOUNT_FACTOR);
+			valueIteration.setConvergenceThreshold(1E-8);
+			for (int stateId = 0; stateId < getNumberOfStates(); stateId++) {
+				valueIteration.addState(stateDiscretizer.getStateAction(stateId, 0).getState());
+			}
+			return valueIteration;
+		}
+		
+		int getNumberOfStates() {
+			return stateDiscretizer.getNumberOfStates();
+		}
+
+		@Override
+		public Set<? extends DiscreteAction> getAllowedActions(State state) {
+			Set<DiscreteAction> actions = new LinkedHashSet<>();
+			for (int actionId = 0; actionId < stateDiscretizer.getNumberOfActions(); actionId++) {
+				actions.add(stateDiscretizer.getStateAction(stateDiscretizer.getId(state), actionId).getAction());
+			}
+			return actions;
+		}
+
+		@Override
+		public Set<StochasticTransitionReward> getOutgoingTransitions(StateAction stateAction) {
+			StateAction key = stateDiscretizer.getStateAction(stateDiscretizer.getId(stateAction.getState()), stateAction.getAction().getId());
+			return outgoing.get(key);
+		}
+
+		@Override
+		public Set<StochasticTransitionReward> getIncomingTransitions(State toState) {
+			Set<StochasticTransitionReward> transitions = incoming.get(toState);
+			if (transitions == null) {
+				transitions = new LinkedHashSet<>();
+				incoming.put(toState, transitions);
+			}
+			return transitions;
+		}
+	}
+
+	private List<CliffWorldAction> getGreedyPath(ArrayQTable qTable) {
+		CliffWorldState state = CliffWorldState.START;
+		List<CliffWorldAction> path = new ArrayList<>();
+		while (!state.isEnd() && path.size() <= 2*CliffWorldEnvironment.OPTIMAL_PATH.size()) {
+			CliffWorldAction action = CliffWorldAction.getActionById(qTable.getActionId(stateDiscretizer.getId(state)));
+			path.add(action);
+			state = state.getNextState(action);
+		}
+		return path;
+	}
+}
@@ -0,0 +1,80 @@
+package org.atorma.robot.learning.replay;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import org.atorma.robot.mdp.DiscretizedTransitionReward;
+import org.junit.Test;
+
+public class ReplayBufferTests {
+
+	@Test
+	public void oldest_transitions_are_overwritten_when_full() {
+		ReplayBuffer buffer = new ReplayBuffer(3);
+		for (int i = 0; i < 5; i++) {
+			buffer.add(new DiscretizedTransitionReward(i, i % 2, i + 1, -i));
+		}
+
+		assertEquals(3, buffer.size());
+		assertEquals(3, buffer.getFromStateId(0));
+		assertEquals(1, buffer.getActionId(0));
+		assertEquals(4, buffer.getToStateId(0));
+		assertEquals(-3, buffer.getReward(0), 0);
+		assertEquals(4, buffer.getFromStateId(1));
+		assertEquals(2, buffer.getFromStateId(2));
+	}
+
+	@Test
+	public void uniform_sampling_covers_stored_transitions_only() {
+		ReplayBuffer buffer = new ReplayBuffer(100);
+		buffer.setRandom(new Random(1));
+		for (int i = 0; i < 4; i++) {
+			buffer.add(i, 0, i, 0);
+		}
+
+		int[] counts = new int[4];
+		for (int i = 0; i < 40000; i++) {
+			counts[buffer.sample()]++;
+		}
+		for (int count : counts) {
+			assertEquals(10000, count, 500);
+		}
+	}
+
+	@Test
+	public void prioritized_sampling_is_proportional_to_td_error() {
+		ReplayBuffer buffer = new ReplayBuffer(4, 1);
+		buffer.setRandom(new Random(2));
+		for (int i = 0; i < 4; i++) {
+			buffer.add(i, 0, i, 0);
+		}
+		buffer.setTdError(0, 3 - ReplayBuffer.MIN_PRIORITY);
+		buffer.setTdError(1, -(1 - ReplayBuffer.MIN_PRIORITY));
+		buffer.setTdError(2, 0);
+		buffer.setTdError(3, 0);
+
+		int[] counts = new int[4];
+		for (int i = 0; i < 40000; i++) {
+			counts[buffer.sample()]++;
+		}
+		assertEquals(30000, counts[0], 600);
+		assertEquals(10000, counts[1], 600);
+		assertEquals(0, counts[2] + counts[3], 100);
+	}
+
+	@Test
+	public void new_transitions_get_max_priority() {
+		ReplayBuffer buffer = new ReplayBuffer(4, 1);
+		buffer.add(0, 0, 0, 0);
+		buffer.setTdError(0, 5);
+		buffer.add(1, 0, 1, 0);
+
+		assertEquals(buffer.getPriority(0), buffer.getPriority(1), 0);
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void cannot_sample_empty_buffer() {
+		new ReplayBuffer(3).sample();
+	}
+}
@@ -0,0 +1,34 @@
+package org.atorma.robot.learning.replay;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class SumTreeTests {
+
+	@Test
+	public void finds_index_by_cumulative_priority() {
+		SumTree tree = new SumTree(5);
+		tree.set(0, 1);
+		tree.set(1, 0);
+		tree.set(2, 2);
+		tree.set(4, 0.5);
+
+		assertEquals(3.5, tree.getTotal(), 1e-12);
+		assertEquals(0, tree.find(0));
+		assertEquals(0, tree.find(0.99));
+		assertEquals(2, tree.find(1));
+		assertEquals(2, tree.find(2.99));
+		assertEquals(4, tree.find(3));
+		assertEquals(4, tree.find(3.5)); // rounding past the total stays on a non-zero leaf
+
+		tree.set(2, 0);
+		assertEquals(1.5, tree.getTotal(), 1e-12);
+		assertEquals(4, tree.find(1.2));
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void cannot_find_when_all_priorities_are_zero() {
+		new SumTree(3).find(0);
+	}
+}
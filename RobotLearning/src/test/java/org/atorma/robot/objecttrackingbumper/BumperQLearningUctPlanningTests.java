@@ -0,0 +1,197 @@
+package org.atorma.robot.objecttrackingbumper;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.atorma.robot.learning.*;
+import org.atorma.robot.learning.montecarlo.QLearningUctPlanning;
+import org.atorma.robot.learning.montecarlo.QLearningUctPlanningParameters;
+import org.atorma.robot.learning.montecarlo.TranspositionTable;
+import org.atorma.robot.mdp.*;
+import org.atorma.robot.objecttracking.CircleSector;
+import org.atorma.robot.objecttracking.TrackedObject;
+import org.atorma.robot.simplebumper.BumperAction;
+import org.atorma.robot.simplebumper.BumperPercept;
+import org.atorma.robot.simplebumper.BumperRewardFunction;
+import org.junit.*;
+
+public class BumperQLearningUctPlanningTests {
+
+	private double discountFactor = 0.7;
+	private BumperStateDiscretizer stateDiscretizer;
+	private BumperModel model;
+	private QLearningUctPlanningParameters uctParams;
+
+	private QLearningUctPlanningBumper controller;
+
+	@After
+	public void tearDown() {
+		if (controller != null) {
+			controller.stop();
+		}
+	}
+
+	@Before
+	public void setUp() {
+		stateDiscretizer = new BumperStateDiscretizer(Arrays.asList(
+				new CircleSector(-67.5, -22.5),
+				new CircleSector(-22.5, 22.5),
+				new CircleSector(22.5, 67.5)));
+		model = new BumperModel(new BumperRewardFunction(), stateDiscretizer);
+		model.setDefaultCollisionProbabilityPrior(2, 10);
+		BumperModelUtils.setPriorCollisionProbabilities(model, stateDiscretizer, 0.8, 0.99);
+
+		// As in QLearningUctPlanningBumper
+		uctParams = new QLearningUctPlanningParameters();
+		uctParams.model = model;
+		uctParams.allActions = BumperAction.values();
+		uctParams.stateDiscretizer = stateDiscretizer;
+		uctParams.planningHorizon = 10;
+		uctParams.learningRate = 0.2;
+		uctParams.eligibilityTraces = new ReplacingEligibilityTraces(discountFactor, 0.8);
+		uctParams.uctConstant = (1 + 100)/(1 - discountFactor);
+		uctParams.longTermQValues = new ArrayQTable(stateDiscretizer.getNumberOfStates(), BumperAction.values().length);
+	}
+
+	@Test
+	public void reused_tree_saves_rollouts_of_simulated_next_states() {
+		uctParams.reuseTree = true;
+		uctParams.treeDecay = 0.5;
+
+		assertTrue(getReusedRolloutsPerDecision(new QLearningUctPlanning(uctParams), 20, 200) > 0);
+	}
+
+	@Test(timeout = 10000)
+	public void controller_plans_only_until_the_measured_time_of_the_next_decision() throws InterruptedException {
+		controller = new QLearningUctPlanningBumper();
+		double[] perceptValues = new BumperPercept(50, false).getValues();
+
+		controller.getActionId(perceptValues);
+		Thread.sleep(20);
+		controller.getActionId(perceptValues); // measures the gap as the planning budget
+		
+		for (PlanningExecutor<State> worker : controller.getPlanningWorkers()) {
+			while (worker.getNumberOfStarts() < 2 || !worker.isBudgetSpent() || !worker.isIdle()) {
+				Thread.sleep(1);
+			}
+			assertTrue(worker.getNumberOfIterations() > 0);
+			
+			long iterations = worker.getNumberOfIterations();
+			worker.wakeUp();
+			Thread.sleep(10);
+			assertEquals(iterations, worker.getNumberOfIterations());
+		}
+	}
+
+	@Test(timeout = 60000)
+	public void controller_decides_while_workers_plan() {
+		controller = new QLearningUctPlanningBumper();
+		Random random = new Random(0);
+
+		for (int i = 0; i < 500; i++) { // budgets of a few microseconds, deciding while the workers plan
+			double[] perceptValues = new BumperPercept(BumperPercept.MIN_ULTRASONIC_DIST + random.nextInt(100), random.nextInt(10) == 0).getValues();
+			BumperAction action = BumperAction.getAction(controller.getActionId(perceptValues));
+			assertNotNull(action);
+		}
+		for (PlanningExecutor<State> worker : controller.getPlanningWorkers()) {
+			assertTrue(worker.isRunning()); // a worker that failed would have stopped
+		}
+	}
+
+	@Test @Ignore // Benchmark, prints rollouts needed per decision to visit the start state a fixed number of times
+	public void benchmark_tree_reuse() {
+		int startStateVisits = 200;
+		uctParams.reuseTree = false;
+		double withoutReuse = getRolloutsToStartStateVisits(new StartStateVisitsUctPlanning(uctParams), 500, startStateVisits);
+		System.out.println(String.format("Without reuse: %.1f rollouts per decision to %d start state visits",
+				withoutReuse, startStateVisits));
+		for (double treeDecay : new double[] {0, 0.5, 0.9}) {
+			uctParams.reuseTree = true;
+			uctParams.treeDecay = treeDecay;
+			double withReuse = getRolloutsToStartStateVisits(new StartStateVisitsUctPlanning(uctParams), 500, startStateVisits);
+			System.out.println(String.format("Tree decay %.1f: %.1f rollouts per decision to %d start state visits (%.0f%% saved)",
+					treeDecay, withReuse, startStateVisits, 100*(withoutReuse - withReuse)/withoutReuse));
+		}
+	}
+
+	@Test @Ignore // Benchmark, prints rollouts per second with and without a transposition table
+	public void benchmark_transposition_table() {
+		for (int round = 0; round < 3; round++) {
+			uctParams.model = model;
+			uctParams.stateDiscretizer = stateDiscretizer;
+			double withoutTable = getRolloutsPerSecond(new QLearningUctPlanning(uctParams), 100000);
+
+			TranspositionTable table = new TranspositionTable(model, stateDiscretizer, 100000);
+			model.addListener(table);
+			uctParams.model = table;
+			uctParams.stateDiscretizer = table;
+			double withTable = getRolloutsPerSecond(new QLearningUctPlanning(uctParams), 100000);
+
+			System.out.println(String.format("Without table %.0f rollouts/s, with table %.0f rollouts/s (%d states, %.1f%% hits)",
+					withoutTable, withTable, table.size(),
+					100.0*table.getNumberOfHits()/(table.getNumberOfHits() + table.getNumberOfMisses())));
+		}
+	}
+
+	private double getRolloutsPerSecond(QLearningUctPlanning uctPlanning, int rollouts) {
+		ModeledBumperState state = new ModeledBumperState();
+		state.addObservation(TrackedObject.inPolarDegreeCoordinates(30, 0));
+		state.addObservation(TrackedObject.inPolarDegreeCoordinates(22.6, 199));
+		uctPlanning.setRolloutStartState(state);
+
+		long start = System.nanoTime();
+		uctPlanning.performRollouts(rollouts);
+		return rollouts / ((System.nanoTime() - start) / 1e9);
+	}
+
+	// Plans each decision from the state the model simulates for the previous planned action
+	private double getReusedRolloutsPerDecision(QLearningUctPlanning uctPlanning, int decisions, int rolloutsPerDecision) {
+		ModeledBumperState state = new ModeledBumperState();
+		state.addObservation(TrackedObject.inPolarDegreeCoordinates(30, 0));
+		state.addObservation(TrackedObject.inPolarDegreeCoordinates(22.6, 199));
+
+		long reused = 0;
+		for (int i = 0; i < decisions; i++) {
+			uctPlanning.setRolloutStartState(state);
+			reused += uctPlanning.getNumberOfReusedRollouts();
+			uctPlanning.performRollouts(rolloutsPerDecision);
+			DiscreteAction action = uctPlanning.getPlannedAction(state);
+			state = (ModeledBumperState) model.simulateAction(new StateAction(state, action)).getToState();
+		}
+		return (double) reused / decisions;
+	}
+
+	// Plans each decision like getReusedRolloutsPerDecision() but performs rollouts only until the
+	// start state has been visited the given number of times, and returns the mean rollouts needed
+	private double getRolloutsToStartStateVisits(StartStateVisitsUctPlanning uctPlanning, int decisions, int startStateVisits) {
+		ModeledBumperState state = new ModeledBumperState();
+		state.addObservation(TrackedObject.inPolarDegreeCoordinates(30, 0));
+		state.addObservation(TrackedObject.inPolarDegreeCoordinates(22.6, 199));
+
+		long rollouts = 0;
+		for (int i = 0; i < decisions; i++) {
+			uctPlanning.setRolloutStartState(state);
+			while (uctPlanning.getNumberOfStartStateVisits() < startStateVisits) {
+				uctPlanning.performRollouts(1);
+				rollouts++;
+			}
+			DiscreteAction action = uctPlanning.getPlannedAction(state);
+			state = (ModeledBumperState) model.simulateAction(new StateAction(state, action)).getToState();
+		}
+		return (double) rollouts / decisions;
+	}
+
+	private static class StartStateVisitsUctPlanning extends QLearningUctPlanning {
+
+		StartStateVisitsUctPlanning(QLearningUctPlanningParameters parameters) {
+			super(parameters);
+		}
+
+		// Visits kept from the previous start state count too
+		int getNumberOfStartStateVisits() {
+			return getNumberOfVisits(stateDiscretizer.getId(startState));
+		}
+	}
+}
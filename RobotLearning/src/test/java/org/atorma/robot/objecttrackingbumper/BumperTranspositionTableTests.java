@@ -0,0 +1,131 @@
+package org.atorma.robot.objecttrackingbumper;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import java.util.Arrays;
+
+import org.atorma.robot.learning.montecarlo.TranspositionTable;
+import org.atorma.robot.mdp.*;
+import org.atorma.robot.objecttracking.CircleSector;
+import org.atorma.robot.objecttracking.TrackedObject;
+import org.atorma.robot.simplebumper.BumperAction;
+import org.atorma.robot.simplebumper.BumperRewardFunction;
+import org.junit.*;
+
+public class BumperTranspositionTableTests {
+
+	private BumperStateDiscretizer stateDiscretizer;
+	private BumperModel model;
+	private TranspositionTable table;
+	private ModeledBumperState state;
+
+	@Before
+	public void setUp() {
+		stateDiscretizer = new BumperStateDiscretizer(Arrays.asList(
+				new CircleSector(-67.5, -22.5),
+				new CircleSector(-22.5, 22.5),
+				new CircleSector(22.5, 67.5)));
+		model = new BumperModel(new BumperRewardFunction(), stateDiscretizer);
+		model.setDefaultCollisionProbabilityPrior(2, 10);
+		table = new TranspositionTable(model, stateDiscretizer, 1000);
+		model.addListener(table);
+
+		state = new ModeledBumperState();
+		state.addObservation(TrackedObject.inPolarDegreeCoordinates(10, 0));
+		state.addObservation(TrackedObject.inPolarDegreeCoordinates(22.6, 199));
+	}
+
+	@Test
+	public void caches_state_id_and_allowed_actions() {
+		assertEquals(stateDiscretizer.getId(state), table.getId(state));
+		assertEquals(model.getAllowedActions(state), table.getAllowedActions(state));
+		assertEquals(1, table.getNumberOfMisses());
+		assertEquals(1, table.getNumberOfHits());
+		assertEquals(1, table.size());
+	}
+
+	@Test
+	public void states_reached_by_different_action_orders_are_looked_up_once() {
+		ModeledBumperState leftFirst = state.afterAction(BumperAction.LEFT).afterAction(BumperAction.FORWARD).afterAction(BumperAction.RIGHT);
+		ModeledBumperState rightFirst = state.afterAction(BumperAction.RIGHT).afterAction(BumperAction.LEFT).afterAction(BumperAction.LEFT)
+				.afterAction(BumperAction.FORWARD).afterAction(BumperAction.RIGHT);
+
+		int stateId = table.getId(leftFirst);
+
+		assertEquals(stateId, table.getId(rightFirst));
+		assertEquals(stateDiscretizer.getId(rightFirst), stateId);
+		assertEquals(1, table.getNumberOfHits());
+		assertEquals(1, table.size());
+	}
+
+	@Test
+	public void simulated_transitions_follow_model_probabilities() {
+		StateAction forward = new StateAction(state, BumperAction.FORWARD);
+		double collisionProbability = model.getCollisionProbability(state, BumperAction.FORWARD);
+
+		assertEquals(collisionProbability, getSimulatedCollisionFrequency(forward), 0.02);
+		assertEquals(1, table.size()); // successor states aren't looked up before they're simulated from
+	}
+
+	@Test
+	public void transitions_are_simulated_again_when_model_changes() {
+		StateAction forward = new StateAction(state, BumperAction.FORWARD);
+		assertTrue(getSimulatedCollisionFrequency(forward) < 0.3);
+
+		ModeledBumperState collided = state.afterAction(BumperAction.FORWARD);
+		collided.setCollided(true);
+		for (int i = 0; i < 100; i++) {
+			model.update(new TransitionReward(state, BumperAction.FORWARD, collided, 0));
+		}
+
+		assertEquals(model.getCollisionProbability(state, BumperAction.FORWARD), getSimulatedCollisionFrequency(forward), 0.02);
+		assertTrue(getSimulatedCollisionFrequency(forward) > 0.8);
+	}
+
+	@Test
+	public void only_transitions_of_changed_state_action_are_simulated_again() {
+		BumperModel spiedModel = spy(model);
+		table = new TranspositionTable(spiedModel, stateDiscretizer, 1000);
+		spiedModel.addListener(table);
+		StateAction forward = new StateAction(state, BumperAction.FORWARD);
+		StateAction backward = new StateAction(state, BumperAction.BACKWARD);
+		table.simulateAction(forward);
+		table.simulateAction(backward);
+
+		ModeledBumperState collided = state.afterAction(BumperAction.FORWARD);
+		collided.setCollided(true);
+		spiedModel.update(new TransitionReward(state, BumperAction.FORWARD, collided, 0));
+		table.simulateAction(forward);
+		table.simulateAction(backward);
+
+		verify(spiedModel, times(2)).getOutgoingTransitions(forward);
+		verify(spiedModel, times(1)).getOutgoingTransitions(backward);
+	}
+
+	@Test
+	public void cleared_when_full() {
+		table = new TranspositionTable(model, stateDiscretizer, 2);
+		ModeledBumperState next = state.afterAction(BumperAction.FORWARD);
+		ModeledBumperState nextNext = next.afterAction(BumperAction.FORWARD);
+
+		table.getId(state);
+		table.getId(next);
+		assertEquals(2, table.size());
+
+		assertEquals(stateDiscretizer.getId(nextNext), table.getId(nextNext));
+		assertEquals(1, table.size());
+	}
+
+	private double getSimulatedCollisionFrequency(StateAction stateAction) {
+		int collisions = 0;
+		int samples = 10000;
+		for (int i = 0; i < samples; i++) {
+			ModeledBumperState toState = (ModeledBumperState) table.simulateAction(stateAction).getToState();
+			if (toState.isCollided()) {
+				collisions++;
+			}
+		}
+		return (double) collisions / samples;
+	}
+}
@@ -62,4 +62,36 @@ public class ModeledBumperStateTests {
 		assertEquals(10, nextState.getObjectInDirectionDegrees(90).getDistance(), 0);
 		assertEquals(5, nextState.getObjectInDirectionDegrees(0).getDistance(), 0);
 	}
+	
+	@Test
+	public void state_hash_does_not_depend_on_order_of_adding_objects() {
+		state.addObservation(TrackedObject.inPolarDegreeCoordinates(10, 90));
+		state.addObservation(TrackedObject.inPolarDegreeCoordinates(20, 0));
+		ModeledBumperState other = new ModeledBumperState();
+		other.addObservation(TrackedObject.inPolarDegreeCoordinates(20, 0));
+		other.addObservation(TrackedObject.inPolarDegreeCoordinates(10, 90));
+		
+		assertEquals(state.getStateHash(), other.getStateHash());
+		assertEquals(state.hashCode(), other.hashCode());
+		
+		other.setCollided(true);
+		assertTrue(state.getStateHash() != other.getStateHash());
+		
+		other.setCollided(false);
+		other.addObservation(TrackedObject.inPolarDegreeCoordinates(5, 90)); // replaces the object at 10 cm
+		assertTrue(state.getStateHash() != other.getStateHash());
+	}
+	
+	@Test
+	public void state_reached_by_different_action_orders_has_same_hash() {
+		state.addObservation(TrackedObject.inPolarDegreeCoordinates(30, 10));
+		state.addObservation(TrackedObject.inPolarDegreeCoordinates(22.6, 199));
+		
+		ModeledBumperState leftFirst = state.afterAction(BumperAction.LEFT).afterAction(BumperAction.FORWARD).afterAction(BumperAction.RIGHT);
+		ModeledBumperState rightFirst = state.afterAction(BumperAction.RIGHT).afterAction(BumperAction.LEFT).afterAction(BumperAction.LEFT)
+				.afterAction(BumperAction.FORWARD).afterAction(BumperAction.RIGHT);
+		
+		assertEquals(leftFirst.getStateHash(), rightFirst.getStateHash());
+		assertEquals(state.getStateHash(), state.afterAction(BumperAction.LEFT).afterAction(BumperAction.RIGHT).getStateHash());
+	}
 }
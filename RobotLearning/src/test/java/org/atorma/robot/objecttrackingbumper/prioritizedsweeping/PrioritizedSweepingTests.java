@@ -1,20 +1,24 @@
 package org.atorma.robot.objecttrackingbumper.prioritizedsweeping;
 
-import static org.junit.Assert.assertFalse;
-import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.*;
 
-import java.util.Arrays;
-import java.util.List;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
 
+import org.atorma.robot.discretization.StateDiscretizer;
 import org.atorma.robot.learning.ArrayQTable;
-import org.atorma.robot.learning.prioritizedsweeping.PrioritizedSweeping;
-import org.atorma.robot.mdp.StateAction;
+import org.atorma.robot.learning.ConcurrentArrayQTable;
+import org.atorma.robot.learning.FloatArrayQTable;
+import org.atorma.robot.learning.QTable;
+import org.atorma.robot.learning.prioritizedsweeping.*;
+import org.atorma.robot.mdp.*;
 import org.atorma.robot.objecttracking.CircleSector;
 import org.atorma.robot.objecttracking.TrackedObject;
 import org.atorma.robot.objecttrackingbumper.*;
 import org.atorma.robot.simplebumper.BumperAction;
 import org.atorma.robot.simplebumper.BumperRewardFunction;
 import org.junit.Before;
+import org.junit.Ignore;
 import org.junit.Test;
 
 public class PrioritizedSweepingTests {
@@ -108,6 +112,248 @@ public class PrioritizedSweepingTests {
 		assertTrue(action == BumperAction.FORWARD);
 	}
 
+	@Test
+	public void float_precision_q_table_gives_same_policy() {
+		PrioritizedSweeping floatSweeping = new PrioritizedSweeping();
+		floatSweeping.setDiscountFactor(discountFactor);
+		floatSweeping.setStateDiscretizer(bumperStateDiscretizer);
+		floatSweeping.setQTable(new FloatArrayQTable(bumperStateDiscretizer.getNumberOfStates(), BumperAction.values().length));
+		
+		ModeledBumperState currentState = new ModeledBumperState();
+		currentState.addObservation(TrackedObject.inPolarDegreeCoordinates(7, 0));
+		currentState.addObservation(TrackedObject.inPolarDegreeCoordinates(22.6, 199));
+		currentState.setCollided(true);
+		
+		// The model keeps creating new states, so its queue never runs empty and the values after a
+		// fixed number of backups depend on the order of the exact double priorities. The compiled 
+		// model has a finite set of states, so both sweeps can run until they converge.
+		CompiledPrioritizedSweepingModel compiledModel = new CompiledPrioritizedSweepingModel(model, bumperStateDiscretizer, BumperAction.values().length);
+		addStatesWithinActions(compiledModel, currentState, 5);
+		for (PrioritizedSweeping sweeping : Arrays.asList(prioritizedSweeping, floatSweeping)) {
+			sweeping.setModel(compiledModel);
+			sweeping.setQValueChangeThreshold(1E-6);
+			sweeping.setSweepStartStateAction(new StateAction(currentState, BumperAction.FORWARD));
+			assertTrue(sweeping.performIterations(1000000) < 1000000);
+		}
+		
+		// The greedy action of the float table must be a greedy action of the double table
+		QTable doubleTable = prioritizedSweeping.getQTable();
+		QTable floatTable = floatSweeping.getQTable();
+		for (int stateId = 0; stateId < bumperStateDiscretizer.getNumberOfStates(); stateId++) {
+			double maxValue = doubleTable.getMaxValueInState(stateId);
+			assertEquals(maxValue, floatTable.getMaxValueInState(stateId), 1E-4);
+			assertEquals(maxValue, doubleTable.getValue(stateId, floatTable.getActionId(stateId)), 1E-4);
+		}
+	}
+
+	@Test
+	public void compiled_model_follows_model_updates() {
+		CompiledPrioritizedSweepingModel compiledModel = new CompiledPrioritizedSweepingModel(model, bumperStateDiscretizer, BumperAction.values().length);
+		model.addListener(compiledModel);
+		ModeledBumperState fromState = new ModeledBumperState();
+		fromState.addObservation(TrackedObject.inPolarDegreeCoordinates(15, 0));
+		StateAction stateAction = new StateAction(fromState, BumperAction.FORWARD);
+		compiledModel.addState(fromState);
+		double priorCollisionProbability = getCollisionProbability(compiledModel.getOutgoingTransitions(stateAction));
+		assertEquals(getCollisionProbability(model.getOutgoingTransitions(stateAction)), priorCollisionProbability, 1E-9);
+		
+		ModeledBumperState toState = fromState.afterAction(BumperAction.FORWARD);
+		toState.setCollided(true);
+		for (int i = 0; i < 10; i++) {
+			model.update(new TransitionReward(fromState, BumperAction.FORWARD, toState, rewardFunction.getReward(new Transition(fromState, BumperAction.FORWARD, toState))));
+		}
+		
+		double collisionProbability = getCollisionProbability(compiledModel.getOutgoingTransitions(stateAction));
+		assertTrue(collisionProbability > priorCollisionProbability);
+		assertEquals(getCollisionProbability(model.getOutgoingTransitions(stateAction)), collisionProbability, 1E-9);
+	}
+	
+	@Test
+	public void small_backups_follow_model_updates() {
+		int numActions = BumperAction.values().length;
+		CompiledPrioritizedSweepingModel compiledModel = new CompiledPrioritizedSweepingModel(model, bumperStateDiscretizer, numActions);
+		model.addListener(compiledModel);
+		prioritizedSweeping.setModel(compiledModel);
+		prioritizedSweeping.setQValueChangeThreshold(1E-7);
+		ModeledBumperState fromState = new ModeledBumperState();
+		fromState.addObservation(TrackedObject.inPolarDegreeCoordinates(15, 0));
+		prioritizedSweeping.setSweepStartStateAction(new StateAction(fromState, BumperAction.FORWARD));
+		assertTrue(prioritizedSweeping.performSmallBackups(100000) < 100000);
+		
+		ModeledBumperState toState = fromState.afterAction(BumperAction.FORWARD);
+		toState.setCollided(true);
+		for (int i = 0; i < 10; i++) {
+			model.update(new TransitionReward(fromState, BumperAction.FORWARD, toState, rewardFunction.getReward(new Transition(fromState, BumperAction.FORWARD, toState))));
+		}
+		assertTrue(prioritizedSweeping.performSmallBackups(100000) < 100000);
+		
+		ValueIteration valueIteration = new ValueIteration(compiledModel, bumperStateDiscretizer, numActions);
+		valueIteration.setDiscountFactor(discountFactor);
+		valueIteration.setConvergenceThreshold(1E-9);
+		ArrayQTable expectedTable = new ArrayQTable(bumperStateDiscretizer.getNumberOfStates(), numActions);
+		valueIteration.solve(expectedTable);
+		for (int stateId = 0; stateId < bumperStateDiscretizer.getNumberOfStates(); stateId++) {
+			assertEquals(expectedTable.getMaxValueInState(stateId), prioritizedSweeping.getQTable().getMaxValueInState(stateId), 1E-5);
+		}
+	}
+	
+	@Test @Ignore // Benchmark, prints convergences per second with full and with small backups
+	public void benchmark_small_backups() {
+		ModeledBumperState currentState = new ModeledBumperState();
+		currentState.addObservation(TrackedObject.inPolarDegreeCoordinates(7, 0));
+		currentState.addObservation(TrackedObject.inPolarDegreeCoordinates(22.6, 199));
+		currentState.setCollided(true);
+		int numActions = BumperAction.values().length;
+		
+		CompiledPrioritizedSweepingModel compiledModel = new CompiledPrioritizedSweepingModel(model, bumperStateDiscretizer, numActions);
+		compiledModel.addState(currentState);
+		prioritizedSweeping.setModel(compiledModel);
+		prioritizedSweeping.setQValueChangeThreshold(1E-4);
+		prioritizedSweeping.setPriorityQueue(new IndexedHeapStateActionPriorityQueue(bumperStateDiscretizer, numActions));
+		for (boolean isSmall : new boolean[] {false, true, false, true}) { // second round after warm-up
+			long convergences = 0;
+			long iterations = 0;
+			long start = System.nanoTime();
+			while (System.nanoTime() - start < 2E9) {
+				prioritizedSweeping.setQTable(new ArrayQTable(bumperStateDiscretizer.getNumberOfStates(), numActions));
+				prioritizedSweeping.clearPriorityQueue();
+				prioritizedSweeping.setSweepStartStateAction(new StateAction(currentState, BumperAction.FORWARD));
+				int performed;
+				do {
+					performed = isSmall ? prioritizedSweeping.performSmallBackups(1000) : prioritizedSweeping.performIterations(1000);
+					iterations += performed;
+				} while (performed == 1000);
+				convergences++;
+			}
+			System.out.println((isSmall ? "Small backups: " : "Full backups: ") + convergences / 2 + " convergences/s, " 
+					+ iterations / convergences + " iterations per convergence");
+		}
+	}
+	
+	@Test
+	public void model_transitions_carry_ids_of_its_discretizer() {
+		ModeledBumperState state = new ModeledBumperState();
+		state.addObservation(TrackedObject.inPolarDegreeCoordinates(15, 0));
+		BumperStateDiscretizer otherDiscretizer = new BumperStateDiscretizer(Arrays.asList(new CircleSector(-90, 90)));
+		
+		for (StochasticTransitionReward transition : model.getIncomingTransitions(state)) {
+			assertTrue(transition instanceof IndexedStochasticTransitionReward);
+			assertEquals(bumperStateDiscretizer.getId(transition.getFromState()), transition.getFromStateId(bumperStateDiscretizer));
+			assertEquals(otherDiscretizer.getId(transition.getFromState()), transition.getFromStateId(otherDiscretizer));
+			assertEquals(bumperStateDiscretizer.getId(state), transition.getToStateId(bumperStateDiscretizer));
+		}
+	}
+	
+	@Test @Ignore // Benchmark, prints backups per second of the model and the compiled model
+	public void benchmark_compiled_model() {
+		ModeledBumperState currentState = new ModeledBumperState();
+		currentState.addObservation(TrackedObject.inPolarDegreeCoordinates(7, 0));
+		currentState.addObservation(TrackedObject.inPolarDegreeCoordinates(22.6, 199));
+		currentState.setCollided(true);
+		
+		CompiledPrioritizedSweepingModel compiledModel = new CompiledPrioritizedSweepingModel(model, bumperStateDiscretizer, BumperAction.values().length);
+		compiledModel.addState(currentState);
+		System.out.println("Compiled " + compiledModel.getNumberOfStatesAdded() + " states");
+		for (PrioritizedSweepingModel sweptModel : Arrays.asList(model, compiledModel, model, compiledModel)) { // second round after warm-up
+			prioritizedSweeping.setModel(sweptModel);
+			prioritizedSweeping.setQTable(new ArrayQTable(bumperStateDiscretizer.getNumberOfStates(), BumperAction.values().length));
+			prioritizedSweeping.clearPriorityQueue();
+			long iterations = 0;
+			long start = System.nanoTime();
+			while (System.nanoTime() - start < 2E9) {
+				prioritizedSweeping.setSweepStartStateAction(new StateAction(currentState, BumperAction.FORWARD));
+				iterations += prioritizedSweeping.performIterations(1000);
+			}
+			System.out.println(sweptModel.getClass().getSimpleName() + ": " + iterations / 2 + " backups/s");
+		}
+	}
+	
+	@Test @Ignore // Benchmark, prints backups per second with different numbers of sweeper threads
+	public void benchmark_parallel_sweeping() throws InterruptedException {
+		ModeledBumperState currentState = new ModeledBumperState();
+		currentState.addObservation(TrackedObject.inPolarDegreeCoordinates(7, 0));
+		currentState.addObservation(TrackedObject.inPolarDegreeCoordinates(22.6, 199));
+		currentState.setCollided(true);
+		
+		System.out.println("Bumper, " + Runtime.getRuntime().availableProcessors() + " cores");
+		for (int numThreads : new int[] {1, 2, 4, 8}) {
+			PrioritizedSweeping sweeping = new PrioritizedSweeping();
+			sweeping.setDiscountFactor(discountFactor);
+			sweeping.setStateDiscretizer(bumperStateDiscretizer);
+			sweeping.setModel(model);
+			sweeping.setQValueChangeThreshold(1E-2);
+			sweeping.setQTable(new ConcurrentArrayQTable(bumperStateDiscretizer.getNumberOfStates(), BumperAction.values().length));
+			sweeping.setPriorityQueue(new MultiQueueStateActionPriorityQueue(bumperStateDiscretizer, BumperAction.values().length, 2*numThreads));
+			
+			// The bumper model keeps the queue from running empty
+			ParallelPrioritizedSweeping sweepers = new ParallelPrioritizedSweeping(sweeping, numThreads);
+			sweeping.setSweepStartStateAction(new StateAction(currentState, BumperAction.FORWARD));
+			sweepers.start();
+			Thread.sleep(1000); // warm-up
+			long startIterations = sweepers.getNumberOfIterations();
+			Thread.sleep(2000);
+			long iterations = sweepers.getNumberOfIterations() - startIterations;
+			sweepers.stop();
+			System.out.println(numThreads + " threads: " + iterations / 2 + " backups/s");
+		}
+	}
+
+	@Test @Ignore // Benchmark, prints state discretizations per backup and backups per second of the model
+	public void benchmark_discretizations_per_backup() {
+		ModeledBumperState currentState = new ModeledBumperState();
+		currentState.addObservation(TrackedObject.inPolarDegreeCoordinates(7, 0));
+		currentState.addObservation(TrackedObject.inPolarDegreeCoordinates(22.6, 199));
+		currentState.setCollided(true);
+		final AtomicLong discretizations = new AtomicLong();
+		StateDiscretizer countingDiscretizer = new StateDiscretizer() {
+			@Override
+			public int getId(State state) {
+				discretizations.incrementAndGet();
+				return bumperStateDiscretizer.getId(state);
+			}
+			@Override
+			public int getNumberOfStates() {
+				return bumperStateDiscretizer.getNumberOfStates();
+			}
+		};
+		BumperModel countingModel = new BumperModel(rewardFunction, countingDiscretizer); // counts the model's discretizations too
+		countingModel.setDefaultCollisionProbabilityPrior(1, 2);
+		BumperModelUtils.setPriorCollisionProbabilities(countingModel, bumperStateDiscretizer, 0.8, 0.99);
+		prioritizedSweeping.setModel(countingModel);
+		prioritizedSweeping.setStateDiscretizer(countingDiscretizer);
+		
+		for (int round = 0; round < 2; round++) { // second round after warm-up
+			prioritizedSweeping.setQTable(new ArrayQTable(bumperStateDiscretizer.getNumberOfStates(), BumperAction.values().length));
+			prioritizedSweeping.setPriorityQueue(new IndexedHeapStateActionPriorityQueue(countingDiscretizer, BumperAction.values().length));
+			discretizations.set(0);
+			long iterations = 0;
+			long start = System.nanoTime();
+			while (System.nanoTime() - start < 2E9) {
+				prioritizedSweeping.setSweepStartStateAction(new StateAction(currentState, BumperAction.FORWARD));
+				iterations += prioritizedSweeping.performIterations(1000);
+			}
+			System.out.println(iterations / 2 + " backups/s, " + (double) discretizations.get() / iterations + " discretizations per backup");
+		}
+	}
+	
+	private void addStatesWithinActions(CompiledPrioritizedSweepingModel compiledModel, ModeledBumperState state, int numActions) {
+		compiledModel.addState(state);
+		if (numActions > 0) {
+			for (BumperAction action : BumperAction.values()) {
+				addStatesWithinActions(compiledModel, state.afterAction(action), numActions - 1);
+			}
+		}
+	}
+	
+	private double getCollisionProbability(Set<StochasticTransitionReward> transitions) {
+		for (StochasticTransitionReward transition : transitions) {
+			if (((ModeledBumperState) transition.getToState()).isCollided()) {
+				return transition.getProbability();
+			}
+		}
+		throw new AssertionError("No collision transition");
+	}
+	
 	private BumperAction getBestActionInState(ModeledBumperState state) {
 		int stateId = bumperStateDiscretizer.getId(state);
 		Integer actionId = prioritizedSweeping.getActionId(stateId);
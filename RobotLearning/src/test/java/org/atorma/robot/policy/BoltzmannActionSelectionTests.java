@@ -6,7 +6,6 @@ import static org.mockito.Mockito.*;
 import org.apache.commons.math3.distribution.EnumeratedIntegerDistribution;
 import org.apache.commons.math3.stat.Frequency;
 import org.atorma.robot.learning.QTable;
-import org.atorma.robot.mdp.DiscretizedStateAction;
 import org.junit.Before;
 import org.junit.Test;
 import org.mockito.Mock;
@@ -28,16 +27,12 @@ public class BoltzmannActionSelectionTests {
 	
 	@Test
 	public void test_distribution_computation_and_action_selection() {
-		DiscretizedStateAction stateAction00 = new DiscretizedStateAction(0, 0);
-		when(qTable.getValue(stateAction00)).thenReturn(0.0);
-		DiscretizedStateAction stateAction01 = new DiscretizedStateAction(0, 1);
-		when(qTable.getValue(stateAction01)).thenReturn(-1.0);
-		DiscretizedStateAction stateAction02 = new DiscretizedStateAction(0, 2);
-		when(qTable.getValue(stateAction02)).thenReturn(-2.0);
+		when(qTable.getValue(0, 0)).thenReturn(0.0);
+		when(qTable.getValue(0, 1)).thenReturn(-1.0);
+		when(qTable.getValue(0, 2)).thenReturn(-2.0);
 		
 		// Different state than the others!
-		DiscretizedStateAction stateAction10 = new DiscretizedStateAction(1, 0);
-		when(qTable.getValue(stateAction10)).thenReturn(100.0);
+		when(qTable.getValue(1, 0)).thenReturn(100.0);
 		
 		EnumeratedIntegerDistribution distribution = boltzmann.getActionDistribution(0);
 		assertTrue(distribution.probability(0) > distribution.probability(1));
@@ -1,7 +1,6 @@
 package org.atorma.robot.policy;
 
 import static org.junit.Assert.*;
-import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 import static java.lang.Math.*;
 
@@ -20,7 +19,8 @@ public class DirectedExplorationQTableTests {
 	private int[] actionIds = new int[] {0, 1, 2};
 	
 	@Mock private QTable underlyingQTable;
-	@Mock private DiscretizedStateAction stateAction;
+	private DiscretizedStateAction stateAction = new DiscretizedStateAction(5, 1);
+	private int otherStateId = 100;
 	
 	@Before
 	public void setUp() {
@@ -40,7 +40,7 @@ public class DirectedExplorationQTableTests {
 	public void when_state_action_never_tried_at_all_but_some_time_steps_recorder() {
 		when(underlyingQTable.getValue(stateAction)).thenReturn(1.0);
 		for (int i = 0; i < 10; i++) {
-			directedExploration.recordStateAction(mock(DiscretizedStateAction.class));
+			directedExploration.recordStateAction(new DiscretizedStateAction(otherStateId++, 0));
 		}
 		
 		double expectedQ = 1.0 + bonusMultiplier * sqrt(10)/defaultCount;
@@ -53,11 +53,11 @@ public class DirectedExplorationQTableTests {
 		
 		directedExploration.recordStateAction(stateAction);
 		for (int i = 0; i < 10; i++) {
-			directedExploration.recordStateAction(mock(DiscretizedStateAction.class));
+			directedExploration.recordStateAction(new DiscretizedStateAction(otherStateId++, 0));
 		}
 		directedExploration.recordStateAction(stateAction);
 		for (int i = 0; i < 10; i++) {
-			directedExploration.recordStateAction(mock(DiscretizedStateAction.class));
+			directedExploration.recordStateAction(new DiscretizedStateAction(otherStateId++, 0));
 		}
 		
 		double expectedQ = 1.0 + bonusMultiplier * sqrt(10)/2; 
@@ -82,4 +82,19 @@ public class DirectedExplorationQTableTests {
 		assertEquals(Integer.valueOf(1), directedExploration.getActionId(0));
 	}
 	
+	@Test
+	public void int_overload_adds_same_bonus() {
+		when(underlyingQTable.getValue(stateAction)).thenReturn(1.0);
+		when(underlyingQTable.getValue(stateAction.getStateId(), stateAction.getActionId())).thenReturn(1.0);
+		
+		directedExploration.recordStateAction(stateAction);
+		for (int i = 0; i < 10; i++) {
+			directedExploration.recordStateAction(otherStateId++, 0);
+		}
+		
+		assertEquals(directedExploration.getValue(stateAction), 
+				directedExploration.getValue(stateAction.getStateId(), stateAction.getActionId()), 0);
+		assertTrue(directedExploration.getValue(stateAction) > 1.0);
+	}
+	
 }